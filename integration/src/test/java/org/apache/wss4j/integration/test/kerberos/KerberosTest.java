@@ -26,6 +26,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.SecretKey;
 import javax.security.auth.callback.Callback;
@@ -45,6 +46,7 @@ import javax.xml.transform.stream.StreamResult;
 import org.apache.kerby.kerberos.kerb.server.SimpleKdcServer;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.kerberos.KerberosContextAndServiceNameCallback;
+import org.apache.wss4j.common.kerberos.KerberosServiceLoginCache;
 import org.apache.wss4j.common.spnego.SpnegoTokenContext;
 import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.util.KeyUtils;
@@ -215,6 +217,72 @@ public class KerberosTest {
         assertTrue(principal.getName().contains("alice"));
     }
 
+    /**
+     * Validate several Kerberos tokens with a KerberosServiceLoginCache, so that the service only
+     * logs in once.
+     */
+    @Test
+    public void testKerberosProcessingLoginCache() throws Exception {
+        if (!runTests) {
+            System.out.println("Skipping test because kerberos server could not be started");
+            return;
+        }
+
+        final AtomicInteger serviceLogins = new AtomicInteger();
+        CallbackHandler callbackHandler = new CallbackHandler() {
+            @Override
+            public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                PasswordCallback passwordCallback = (PasswordCallback)callbacks[0];
+                if (passwordCallback.getPrompt().contains("alice")) {
+                    passwordCallback.setPassword("alice".toCharArray());
+                } else if (passwordCallback.getPrompt().contains("bob")) {
+                    serviceLogins.incrementAndGet();
+                    passwordCallback.setPassword("bob".toCharArray());
+                }
+            }
+        };
+
+        try (KerberosServiceLoginCache loginCache = new KerberosServiceLoginCache()) {
+            // Configure the Validator
+            WSSConfig wssConfig = WSSConfig.getNewInstance();
+            KerberosTokenValidator validator = new KerberosTokenValidator();
+            validator.setContextName("bob");
+            validator.setServiceName("bob@service.ws.apache.org");
+            validator.setKerberosServiceLoginCache(loginCache);
+            wssConfig.setValidator(WSConstants.BINARY_TOKEN, validator);
+            WSSecurityEngine secEngine = new WSSecurityEngine();
+            secEngine.setWssConfig(wssConfig);
+
+            for (int i = 0; i < 3; i++) {
+                Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+                WSSecHeader secHeader = new WSSecHeader(doc);
+                secHeader.insertSecurityHeader();
+
+                KerberosSecurity bst = new KerberosSecurity(doc);
+                bst.retrieveServiceTicket("alice", callbackHandler, "bob@service.ws.apache.org");
+                WSSecurityUtil.prependChildElement(secHeader.getSecurityHeaderElement(), bst.getElement());
+
+                WSHandlerResult results =
+                    secEngine.processSecurityHeader(doc, null, callbackHandler, null);
+                WSSecurityEngineResult actionResult =
+                    results.getActionResults().get(WSConstants.BST).get(0);
+                Principal principal = (Principal)actionResult.get(WSSecurityEngineResult.TAG_PRINCIPAL);
+                assertTrue(principal instanceof KerberosPrincipal);
+                assertTrue(principal.getName().contains("alice"));
+            }
+
+            assertEquals(1, serviceLogins.get());
+            assertEquals(1, loginCache.size());
+
+            // A new login is performed after the cached login was invalidated
+            loginCache.invalidate("bob", "bob@service.ws.apache.org");
+            assertEquals(0, loginCache.size());
+            assertNotNull(loginCache.getSubject("bob", "bob@service.ws.apache.org", callbackHandler));
+            assertEquals(2, serviceLogins.get());
+        }
+    }
+
     /**
      * Get and validate a SPNEGO token.
      */
@@ -839,6 +907,106 @@ public class KerberosTest {
         }
     }
 
+    @Test
+    public void testKerberosSignatureInboundLoginCache() throws Exception {
+        if (!runTests) {
+            System.out.println("Skipping test because kerberos server could not be started");
+            return;
+        }
+
+        final AtomicInteger serviceLogins = new AtomicInteger();
+        try (KerberosServiceLoginCache loginCache = new KerberosServiceLoginCache()) {
+            for (int i = 0; i < 2; i++) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                {
+                    Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+                    WSSecHeader secHeader = new WSSecHeader(doc);
+                    secHeader.insertSecurityHeader();
+
+                    KerberosSecurity bst = new KerberosSecurity(doc);
+                    CallbackHandler callbackHandler = new CallbackHandler() {
+                        @Override
+                        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                            if (callbacks[0] instanceof PasswordCallback) {
+                                PasswordCallback passwordCallback = (PasswordCallback) callbacks[0];
+                                if (passwordCallback.getPrompt().contains("alice")) {
+                                    passwordCallback.setPassword("alice".toCharArray());
+                                }
+                            }
+                        }
+                    };
+                    bst.retrieveServiceTicket("alice", callbackHandler, "bob@service.ws.apache.org");
+                    bst.setID("Id-" + bst.hashCode());
+
+                    WSSecSignature sign = new WSSecSignature(secHeader);
+                    sign.setSignatureAlgorithm(SignatureMethod.HMAC_SHA1);
+                    sign.setKeyIdentifierType(WSConstants.CUSTOM_SYMM_SIGNING);
+                    sign.setCustomTokenId(bst.getID());
+                    sign.setCustomTokenValueType(WSConstants.WSS_GSS_KRB_V5_AP_REQ);
+
+                    SecretKey secretKey = bst.getSecretKey();
+                    sign.setSecretKey(secretKey.getEncoded());
+
+                    sign.build(null);
+                    WSSecurityUtil.prependChildElement(secHeader.getSecurityHeaderElement(), bst.getElement());
+
+                    javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+                    transformer.transform(new DOMSource(doc), new StreamResult(baos));
+                }
+
+                {
+                    WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+                    securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+                    securityProperties.setKerberosServiceLoginCache(loginCache);
+                    securityProperties.setCallbackHandler(new CallbackHandler() {
+                        @Override
+                        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                            if (callbacks[0] instanceof PasswordCallback) {
+                                PasswordCallback passwordCallback = (PasswordCallback) callbacks[0];
+                                if (passwordCallback.getPrompt().contains("bob")) {
+                                    serviceLogins.incrementAndGet();
+                                    passwordCallback.setPassword("bob".toCharArray());
+                                }
+                            } else if (callbacks[0] instanceof KerberosContextAndServiceNameCallback) {
+                                KerberosContextAndServiceNameCallback cb = (KerberosContextAndServiceNameCallback) callbacks[0];
+                                cb.setContextName("bob");
+                                cb.setServiceName("bob@service.ws.apache.org");
+                            }
+                        }
+                    });
+
+                    final List<KerberosTokenSecurityEvent> kerberosTokenSecurityEvents = new ArrayList<>();
+
+                    InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+                    SecurityEventListener securityEventListener = new SecurityEventListener() {
+                        @Override
+                        public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+                            if (securityEvent instanceof KerberosTokenSecurityEvent) {
+                                kerberosTokenSecurityEvents.add((KerberosTokenSecurityEvent) securityEvent);
+                            }
+                        }
+                    };
+                    XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(
+                            new ByteArrayInputStream(baos.toByteArray())), null, securityEventListener);
+
+                    Document document = StAX2DOM.readDoc(dbf.newDocumentBuilder(), xmlStreamReader);
+
+                    NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+                    assertEquals(nodeList.getLength(), 1);
+
+                    assertEquals(kerberosTokenSecurityEvents.size(), 1);
+                    final KerberosTokenSecurityEvent kerberosTokenSecurityEvent = kerberosTokenSecurityEvents.get(0);
+                    assertNotNull(kerberosTokenSecurityEvent.getSecurityToken().getSubject());
+                    assertEquals(kerberosTokenSecurityEvent.getSecurityToken().getPrincipal().getName(), "alice@service.ws.apache.org");
+                }
+            }
+
+            assertEquals(1, serviceLogins.get());
+            assertEquals(1, loginCache.size());
+        }
+    }
+
     @Test
     public void testKerberosSignatureKIInbound() throws Exception {
         if (!runTests) {
@@ -344,6 +344,13 @@ public class ConfigurationConstants {
      */
     public static final String DEC_PROP_REF_ID = "decryptionPropRefId";
 
+    /**
+     * The tenant of an inbound message. If the signature verification or decryption Crypto is a
+     * TenantCrypto, its lookups are restricted to the Crypto of this tenant. The default is to
+     * resolve the tenant from the certificates of the message.
+     */
+    public static final String TENANT = "tenant";
+
     /**
      * The path of the crypto property file to use for Encryption. The classloader loads this
      * file. Therefore it must be accessible via the classpath. Refer to documentation of
@@ -902,6 +909,30 @@ public class ConfigurationConstants {
      */
     public static final String TIMESTAMP_CACHE_INSTANCE = "timestampCacheInstance";
 
+    /**
+     * This holds a reference to an EncryptedKeyCache instance used to cache the symmetric keys
+     * unwrapped from EncryptedKey elements. No instance is used by default, i.e. every
+     * EncryptedKey is unwrapped with the private key.
+     */
+    public static final String ENCRYPTED_KEY_CACHE_INSTANCE = "encryptedKeyCacheInstance";
+
+    /**
+     * This holds a reference to an X509TokenTemplateCache instance used to cache the encoded
+     * certificate data (BinarySecurityToken content, SKI, thumbprint, issuer name) which is written
+     * to outbound messages to include or reference a certificate. No instance is used by default,
+     * i.e. the data is computed for every message.
+     */
+    public static final String X509_TOKEN_TEMPLATE_CACHE_INSTANCE = "x509TokenTemplateCacheInstance";
+
+    /**
+     * This holds a reference to an EncryptedKeySessionCache instance used on the sending side to
+     * reuse the key of an EncryptedKey for subsequent messages to the same recipient. Such messages
+     * reference the key with an EncryptedKeySHA1 KeyIdentifier and derive the encryption key from it.
+     * This only applies to the "EncryptionDerived" action with a DerivedKeyTokenReference of
+     * "EncryptedKey". No instance is used by default.
+     */
+    public static final String ENCRYPTED_KEY_SESSION_CACHE_INSTANCE = "encryptedKeySessionCacheInstance";
+
     /**
      * This holds a reference to a ReplayCache instance used to cache SAML2 Token Identifier
      * Strings (if the token contains a OneTimeUse Condition). The default instance that is
@@ -22,6 +22,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
@@ -41,19 +42,20 @@ public abstract class SignatureEncryptionActionToken implements SecurityActionTo
     private byte[] key;
     private String user;
     private Element keyInfoElement;
-    private Crypto crypto;
+    private volatile Crypto crypto;
     private String keyIdentifier;
     private int keyIdentifierId;
     private String digestAlgorithm;
     private List<WSEncryptionPart> parts = new ArrayList<>();
     private String optionalParts;
-    private String cryptoProperties;
+    private volatile String cryptoProperties;
     private String tokenType;
     private String tokenId;
     private String sha1Value;
     private String derivedKeyTokenReference;
     private int derivedKeyLength;
     private int derivedKeyIdentifier;
+    private final ReentrantLock cryptoLock = new ReentrantLock();
     private boolean includeToken;
 
     public X509Certificate getCertificate() {
@@ -81,26 +83,32 @@ public abstract class SignatureEncryptionActionToken implements SecurityActionTo
         this.user = user;
     }
 
-    public synchronized Crypto getCrypto() throws WSSecurityException {
-        if (crypto != null) {
-            return crypto;
+    public Crypto getCrypto() throws WSSecurityException {
+        Crypto loadedCrypto = crypto;
+        if (loadedCrypto != null || cryptoProperties == null) {
+            return loadedCrypto;
         }
-        if (cryptoProperties != null) {
-            ClassLoader classLoader = null;
-            try {
-                classLoader = Loader.getTCL();
-            } catch (Exception ex) {
-                // Ignore
-                LOG.debug(ex.getMessage(), ex);
+        cryptoLock.lock();
+        try {
+            if (crypto == null && cryptoProperties != null) {
+                ClassLoader classLoader = null;
+                try {
+                    classLoader = Loader.getTCL();
+                } catch (Exception ex) {
+                    // Ignore
+                    LOG.debug(ex.getMessage(), ex);
+                }
+                Properties properties = CryptoFactory.getProperties(cryptoProperties, classLoader);
+                crypto =
+                    CryptoFactory.getInstance(properties, classLoader, null);
             }
-            Properties properties = CryptoFactory.getProperties(cryptoProperties, classLoader);
-            crypto =
-                CryptoFactory.getInstance(properties, classLoader, null);
+            return crypto;
+        } finally {
+            cryptoLock.unlock();
         }
-        return crypto;
     }
 
-    public synchronized void setCrypto(Crypto crypto) {
+    public void setCrypto(Crypto crypto) {
         this.crypto = crypto;
     }
     public String getKeyIdentifier() {
@@ -134,11 +142,11 @@ public abstract class SignatureEncryptionActionToken implements SecurityActionTo
         this.parts = parts;
     }
 
-    public synchronized void setCryptoProperties(String cryptoProperties) {
+    public void setCryptoProperties(String cryptoProperties) {
         this.cryptoProperties = cryptoProperties;
     }
 
-    public synchronized String getCryptoProperties() {
+    public String getCryptoProperties() {
         return cryptoProperties;
     }
 
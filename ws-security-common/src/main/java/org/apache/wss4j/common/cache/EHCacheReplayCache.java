@@ -22,8 +22,11 @@ package org.apache.wss4j.common.cache;
 import java.io.File;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.ReplayCacheEvent;
+import org.apache.wss4j.common.jfr.SecurityEvents;
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.CachePersistenceException;
@@ -49,6 +52,7 @@ public class EHCacheReplayCache implements ReplayCache {
     private final String key;
     private final Path diskstorePath;
     private final boolean persistent;
+    private final ReentrantLock closeLock = new ReentrantLock();
 
     public EHCacheReplayCache(String key) throws WSSecurityException {
         this(key, null);
@@ -124,7 +128,14 @@ public class EHCacheReplayCache implements ReplayCache {
             return;
         }
 
+        ReplayCacheEvent replayCacheEvent = SecurityEvents.replayCache();
+        replayCacheEvent.begin();
         cache.put(identifier, new EHCacheValue(identifier, expiry));
+        if (replayCacheEvent.shouldCommit()) {
+            replayCacheEvent.setOperation("add");
+            replayCacheEvent.setCache(key);
+            replayCacheEvent.commit();
+        }
     }
 
     /**
@@ -135,7 +146,15 @@ public class EHCacheReplayCache implements ReplayCache {
         if (cache == null) {
             return false;
         }
+        ReplayCacheEvent replayCacheEvent = SecurityEvents.replayCache();
+        replayCacheEvent.begin();
         EHCacheValue element = cache.get(identifier);
+        if (replayCacheEvent.shouldCommit()) {
+            replayCacheEvent.setOperation("contains");
+            replayCacheEvent.setCache(key);
+            replayCacheEvent.setHit(element != null);
+            replayCacheEvent.commit();
+        }
         return element != null;
     }
 
@@ -145,7 +164,16 @@ public class EHCacheReplayCache implements ReplayCache {
     }
 
     @Override
-    public synchronized void close() {
+    public void close() {
+        closeLock.lock();
+        try {
+            closeCacheManager();
+        } finally {
+            closeLock.unlock();
+        }
+    }
+
+    private void closeCacheManager() {
         if (cacheManager.getStatus() == Status.AVAILABLE) {
             cacheManager.removeCache(key);
 
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded in-memory cache of the symmetric keys unwrapped from inbound EncryptedKey elements, so that
+ * a client which reuses the same EncryptedKey for a burst of messages only costs a single private key
+ * operation. Entries are keyed by a digest of the wrapped key bytes, the key transport parameters and
+ * the identity of the recipient key (see createCacheKey), expire after a fixed TTL (5 minutes by
+ * default) and are evicted in least-recently-used order once the maximum number of entries is reached.
+ * The cached key bytes are zeroized when an entry expires or is evicted.
+ *
+ * The processors cache the outcome of every unwrap, including the random key which is generated when
+ * the unwrap fails. A repeated EncryptedKey is therefore handled the same way whether or not it was
+ * correctly padded, which keeps the protection against Bleichenbacher style attacks.
+ *
+ * Only keys wrapped with an asymmetric key are cached. The DOM EncryptedKeyProcessor caches EncryptedKeys
+ * carried as XOP attachments too, whereas the StAX WSSEncryptedKeyInputHandler only caches EncryptedKeys
+ * with an inline CipherValue.
+ */
+public class EncryptedKeyCache implements Closeable {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final long ttlMillis;
+    private final Map<String, CachedKey> cache;
+
+    public EncryptedKeyCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of keys to cache
+     * @param ttl the number of seconds a key is cached after it was unwrapped
+     */
+    public EncryptedKeyCache(final int maxEntries, long ttl) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.ttlMillis = ttl * 1000L;
+        this.cache = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                if (size() > maxEntries) {
+                    eldest.getValue().destroy();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create the key under which the symmetric key unwrapped from an EncryptedKey is cached
+     * @param recipientIdentity the encoded certificate or public key of the key pair used for the unwrap
+     * @param encryptedKey the wrapped key bytes of the CipherValue
+     * @param parameters the key transport algorithm followed by any parameters which influence the
+     * unwrap, e.g. the OAEP digest and MGF algorithms. Null parameters are allowed.
+     */
+    public static String createCacheKey(
+        byte[] recipientIdentity, byte[] encryptedKey, Object... parameters
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, recipientIdentity);
+            update(digest, encryptedKey);
+            for (Object parameter : parameters) {
+                if (parameter instanceof byte[]) {
+                    update(digest, (byte[])parameter);
+                } else if (parameter != null) {
+                    update(digest, parameter.toString().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    update(digest, null);
+                }
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        // length prefix the values so that adjacent values can't be shifted into each other
+        int length = bytes == null ? -1 : bytes.length;
+        digest.update((byte)(length >>> 24));
+        digest.update((byte)(length >>> 16));
+        digest.update((byte)(length >>> 8));
+        digest.update((byte)length);
+        if (bytes != null) {
+            digest.update(bytes);
+        }
+    }
+
+    /**
+     * Add an unwrapped key to the cache
+     * @param cacheKey the key created by createCacheKey
+     * @param secret the unwrapped key bytes, the cache keeps a copy
+     */
+    public synchronized void add(String cacheKey, byte[] secret) {
+        if (cacheKey == null || secret == null) {
+            return;
+        }
+        CachedKey cachedKey =
+            cache.put(cacheKey, new CachedKey(secret.clone(), System.currentTimeMillis() + ttlMillis));
+        if (cachedKey != null) {
+            cachedKey.destroy();
+        }
+    }
+
+    /**
+     * @param cacheKey the key created by createCacheKey
+     * @return a copy of the cached key bytes, or null if no unexpired key is cached
+     */
+    public synchronized byte[] get(String cacheKey) {
+        CachedKey cachedKey = getCachedKey(cacheKey);
+        return cachedKey != null ? cachedKey.secret.clone() : null;
+    }
+
+    public synchronized int size() {
+        processExpiry();
+        return cache.size();
+    }
+
+    private CachedKey getCachedKey(String cacheKey) {
+        if (cacheKey == null) {
+            return null;
+        }
+        CachedKey cachedKey = cache.get(cacheKey);
+        if (cachedKey != null && cachedKey.isExpired()) {
+            cache.remove(cacheKey);
+            cachedKey.destroy();
+            return null;
+        }
+        return cachedKey;
+    }
+
+    private void processExpiry() {
+        Iterator<CachedKey> it = cache.values().iterator();
+        while (it.hasNext()) {
+            CachedKey cachedKey = it.next();
+            if (cachedKey.isExpired()) {
+                cachedKey.destroy();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Zeroize and remove all cached keys
+     */
+    @Override
+    public synchronized void close() {
+        for (CachedKey cachedKey : cache.values()) {
+            cachedKey.destroy();
+        }
+        cache.clear();
+    }
+
+    private static final class CachedKey {
+        private final byte[] secret;
+        private final long expiry;
+
+        CachedKey(byte[] secret, long expiry) {
+            this.secret = secret;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiry;
+        }
+
+        void destroy() {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+}
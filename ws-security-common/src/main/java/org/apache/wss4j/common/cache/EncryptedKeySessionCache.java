@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.wss4j.common.crypto.Crypto;
+
+/**
+ * A client side cache of the symmetric keys which were transported to a recipient in an EncryptedKey.
+ * After the first message to a recipient, subsequent messages reference the same key with an
+ * EncryptedKeySHA1 KeyIdentifier and derive per-message keys from it, instead of encrypting a fresh
+ * key with the public key of the recipient. A session is used for a fixed lifetime (5 minutes by
+ * default) and a fixed number of messages (100 by default, including the message which transported
+ * the key), after which a new EncryptedKey is sent.
+ *
+ * Sessions are keyed by the recipient, the symmetric algorithm the key is used with, the key transport
+ * algorithm and the Crypto instance the recipient's certificate was loaded from (see SessionKey), so a
+ * key is never reused with an algorithm or a certificate it was not transported for. The secrets handed
+ * out by getSession are copies, which the caller should zeroize once it has created its key from them.
+ *
+ * The recipient must be able to resolve the EncryptedKeySHA1 reference, i.e. its CallbackHandler has
+ * to supply the key for a WSPasswordCallback.SECRET_KEY callback, and it must have processed the
+ * message containing the EncryptedKey before the messages that reference it.
+ */
+public class EncryptedKeySessionCache implements Closeable {
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_MESSAGES = 100;
+
+    private final long ttlMillis;
+    private final int maxMessages;
+    private final Map<SessionKey, SessionEntry> sessions = new HashMap<>();
+
+    public EncryptedKeySessionCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_MESSAGES);
+    }
+
+    /**
+     * @param ttl the number of seconds a transported key is reused for
+     * @param maxMessages the maximum number of messages which are secured with a transported key
+     */
+    public EncryptedKeySessionCache(long ttl, int maxMessages) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (maxMessages <= 0) {
+            throw new IllegalArgumentException("maxMessages must be positive");
+        }
+        this.ttlMillis = ttl * 1000L;
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Get the session for a recipient, counting the message which is about to use it
+     * @param sessionKey the recipient and the algorithms the key was transported for
+     * @return the session, or null if there is no session or the session has been used up
+     */
+    public synchronized EncryptedKeySession getSession(SessionKey sessionKey) {
+        if (sessionKey == null) {
+            return null;
+        }
+        SessionEntry entry = sessions.get(sessionKey);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired() || entry.messages >= maxMessages) {
+            sessions.remove(sessionKey);
+            entry.destroy();
+            return null;
+        }
+        entry.messages++;
+        return new EncryptedKeySession(entry.secret.clone(), entry.encryptedKeySHA1);
+    }
+
+    /**
+     * Start a session for a recipient, replacing any existing session
+     * @param sessionKey the recipient and the algorithms the key was transported for
+     * @param secret the symmetric key which was transported to the recipient, the cache keeps a copy
+     * @param encryptedKeySHA1 the Base64 encoded SHA-1 digest of the EncryptedKey CipherValue
+     */
+    public synchronized void addSession(SessionKey sessionKey, byte[] secret, String encryptedKeySHA1) {
+        if (sessionKey == null || secret == null || encryptedKeySHA1 == null) {
+            return;
+        }
+        processExpiry();
+        SessionEntry entry =
+            new SessionEntry(secret.clone(), encryptedKeySHA1, System.currentTimeMillis() + ttlMillis);
+        SessionEntry previousEntry = sessions.put(sessionKey, entry);
+        if (previousEntry != null) {
+            previousEntry.destroy();
+        }
+    }
+
+    public synchronized int size() {
+        processExpiry();
+        return sessions.size();
+    }
+
+    private void processExpiry() {
+        Iterator<SessionEntry> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            SessionEntry entry = it.next();
+            if (entry.isExpired()) {
+                entry.destroy();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Zeroize and remove all sessions
+     */
+    @Override
+    public synchronized void close() {
+        for (SessionEntry entry : sessions.values()) {
+            entry.destroy();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * The key of a session: the recipient, the symmetric algorithm the transported key is used with, the
+     * key transport algorithm and the Crypto which holds the certificate of the recipient. The Crypto is
+     * compared by identity.
+     */
+    public static final class SessionKey {
+        private final String user;
+        private final String symmetricAlgorithm;
+        private final String keyTransportAlgorithm;
+        private final Crypto crypto;
+
+        /**
+         * @param user the identifier of the recipient, e.g. the alias of its certificate
+         * @param symmetricAlgorithm the URI of the symmetric algorithm the transported key is used with
+         * @param keyTransportAlgorithm the URI of the algorithm the key is transported with
+         * @param crypto the Crypto the certificate of the recipient is loaded from
+         */
+        public SessionKey(String user, String symmetricAlgorithm, String keyTransportAlgorithm, Crypto crypto) {
+            this.user = Objects.requireNonNull(user, "user");
+            this.symmetricAlgorithm = symmetricAlgorithm;
+            this.keyTransportAlgorithm = keyTransportAlgorithm;
+            this.crypto = crypto;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey other = (SessionKey) object;
+            return user.equals(other.user)
+                && Objects.equals(symmetricAlgorithm, other.symmetricAlgorithm)
+                && Objects.equals(keyTransportAlgorithm, other.keyTransportAlgorithm)
+                && crypto == other.crypto;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(user, symmetricAlgorithm, keyTransportAlgorithm)
+                + 31 * System.identityHashCode(crypto);
+        }
+    }
+
+    /**
+     * A symmetric key which the recipient already knows, and the EncryptedKeySHA1 to reference it with
+     */
+    public static final class EncryptedKeySession {
+        private final byte[] secret;
+        private final String encryptedKeySHA1;
+
+        EncryptedKeySession(byte[] secret, String encryptedKeySHA1) {
+            this.secret = secret;
+            this.encryptedKeySHA1 = encryptedKeySHA1;
+        }
+
+        /**
+         * @return a copy of the transported key, which the caller should zeroize after use
+         */
+        public byte[] getSecret() {
+            return secret;
+        }
+
+        public String getEncryptedKeySHA1() {
+            return encryptedKeySHA1;
+        }
+    }
+
+    private static final class SessionEntry {
+        private final byte[] secret;
+        private final String encryptedKeySHA1;
+        private final long expiry;
+        private int messages = 1;
+
+        SessionEntry(byte[] secret, String encryptedKeySHA1, long expiry) {
+            this.secret = secret;
+            this.encryptedKeySHA1 = encryptedKeySHA1;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiry;
+        }
+
+        void destroy() {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+}
@@ -22,14 +22,17 @@ package org.apache.wss4j.common.cache;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.wss4j.common.jfr.ReplayCacheEvent;
+import org.apache.wss4j.common.jfr.SecurityEvents;
 
 /**
  * A simple in-memory HashSet based cache to prevent against replay attacks. The default TTL is 5 minutes
@@ -40,7 +43,8 @@ public class MemoryReplayCache implements ReplayCache {
     public static final long DEFAULT_TTL = 60L * 5L;
     public static final long MAX_TTL = DEFAULT_TTL * 12L;
     private final SortedMap<Instant, List<String>> cache = new TreeMap<>();
-    private final Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+    private final Set<String> ids = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock lock = new ReentrantLock();
 
     /**
      * Add the given identifier to the cache. It will be cached for a default amount of time.
@@ -60,21 +64,31 @@ public class MemoryReplayCache implements ReplayCache {
             return;
         }
 
+        ReplayCacheEvent replayCacheEvent = SecurityEvents.replayCache();
+        replayCacheEvent.begin();
         Instant now = Instant.now();
         Instant maxTTL = now.plusSeconds(MAX_TTL);
         if (expiry == null || expiry.isBefore(now) || expiry.isAfter(maxTTL)) {
             expiry = now.plusSeconds(DEFAULT_TTL);
         }
 
-        synchronized (cache) {
+        lock.lock();
+        try {
             List<String> list = cache.get(expiry);
             if (list == null) {
                 list = new ArrayList<>(1);
                 cache.put(expiry, list);
             }
             list.add(identifier);
+        } finally {
+            lock.unlock();
         }
         ids.add(identifier);
+        if (replayCacheEvent.shouldCommit()) {
+            replayCacheEvent.setOperation("add");
+            replayCacheEvent.setCache(getClass().getName());
+            replayCacheEvent.commit();
+        }
     }
 
     /**
@@ -82,17 +96,24 @@ public class MemoryReplayCache implements ReplayCache {
      * @param identifier The identifier to check
      */
     public boolean contains(String identifier) {
+        ReplayCacheEvent replayCacheEvent = SecurityEvents.replayCache();
+        replayCacheEvent.begin();
         processTokenExpiry();
 
-        if (identifier != null && identifier.length() != 0) {
-            return ids.contains(identifier);
+        boolean contained = identifier != null && identifier.length() != 0 && ids.contains(identifier);
+        if (replayCacheEvent.shouldCommit()) {
+            replayCacheEvent.setOperation("contains");
+            replayCacheEvent.setCache(getClass().getName());
+            replayCacheEvent.setHit(contained);
+            replayCacheEvent.commit();
         }
-        return false;
+        return contained;
     }
 
     protected void processTokenExpiry() {
         Instant current = Instant.now();
-        synchronized (cache) {
+        lock.lock();
+        try {
             Iterator<Entry<Instant, List<String>>> it = cache.entrySet().iterator();
             while (it.hasNext()) {
                 Entry<Instant, List<String>> entry = it.next();
@@ -105,12 +126,19 @@ public class MemoryReplayCache implements ReplayCache {
                     break;
                 }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        cache.clear();
-        ids.clear();
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            cache.clear();
+            ids.clear();
+        } finally {
+            lock.unlock();
+        }
     }
 }
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.token.X509TokenTemplate;
+
+/**
+ * A bounded in-memory cache of the X509TokenTemplates of the certificates (chains) which are included
+ * in or referenced from outbound messages, so that the encoded certificate, PKIPath, SKI, thumbprint
+ * and issuer name are only computed once per certificate instead of once per message. Templates are
+ * keyed by the certificate chain, and are evicted in least-recently-used order once the maximum number
+ * of entries is reached.
+ *
+ * The SKI and PKIPath values of a template are computed with the Crypto passed when it is created, so
+ * an instance should be shared only between senders whose Crypto implementations encode them the same
+ * way (which is the case for the Crypto implementations shipped with WSS4J).
+ */
+public class X509TokenTemplateCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private final Map<List<X509Certificate>, X509TokenTemplate> cache;
+
+    public X509TokenTemplateCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of templates to cache
+     */
+    public X509TokenTemplateCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.cache = new LinkedHashMap<List<X509Certificate>, X509TokenTemplate>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<X509Certificate>, X509TokenTemplate> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the template of the given certificate chain, creating it if it is not cached
+     * @param certs the certificate chain, the first certificate is the certificate of the token
+     * @param crypto the Crypto used to create the template if it is not cached
+     */
+    public X509TokenTemplate getTemplate(X509Certificate[] certs, Crypto crypto) throws WSSecurityException {
+        if (certs == null || certs.length == 0) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
+        }
+        List<X509Certificate> cacheKey = Arrays.asList(certs.clone());
+        synchronized (this) {
+            X509TokenTemplate template = cache.get(cacheKey);
+            if (template != null) {
+                return template;
+            }
+        }
+
+        // Create the template outside of the lock, concurrent creations of the same template are harmless
+        X509TokenTemplate template = new X509TokenTemplate(certs, crypto);
+        synchronized (this) {
+            cache.put(cacheKey, template);
+        }
+        return template;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all cached templates
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A Crypto which decorates another Crypto implementation, and caches the results of the lookups
+ * which are done for (nearly) every message:
+ *  - the certificates returned by getX509Certificates, per CryptoType
+ *  - the identifiers returned by getX509Identifier, per certificate
+ *  - the public keys which were successfully verified by verifyTrust(PublicKey)
+ *
+ * Lookups which don't find a certificate or identifier, and failed trust verifications, are not
+ * cached. Certificate chains are always verified by the decorated Crypto, as the outcome depends on
+ * the revocation status. Entries expire after a fixed TTL (5 minutes by default) and are evicted in
+ * least-recently-used order once the maximum number of entries is reached. Call clear() after the
+ * keystore or truststore of the decorated Crypto changes.
+ *
+ * CryptoFactory decorates the Crypto it creates with a CachingCrypto if the
+ * "org.apache.wss4j.crypto.cache.enabled" property is "true".
+ */
+public class CachingCrypto implements Crypto {
+
+    public static final String CACHE_ENABLED = "org.apache.wss4j.crypto.cache.enabled";
+    public static final String CACHE_MAX_ENTRIES = "org.apache.wss4j.crypto.cache.maxEntries";
+    public static final String CACHE_TTL = "org.apache.wss4j.crypto.cache.ttl";
+
+    public static final long DEFAULT_TTL = 60L * 5L;
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Crypto delegate;
+    private final ExpiringCache<String, X509Certificate[]> certificates;
+    private final ExpiringCache<X509Certificate, String> identifiers;
+    private final ExpiringCache<PublicKey, Boolean> trustedPublicKeys;
+
+    public CachingCrypto(Crypto delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param delegate the Crypto whose results are cached
+     * @param maxEntries the maximum number of entries of each of the caches
+     * @param ttl the number of seconds a result is cached
+     */
+    public CachingCrypto(Crypto delegate, int maxEntries, long ttl) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.delegate = delegate;
+        long ttlMillis = ttl * 1000L;
+        certificates = new ExpiringCache<>(maxEntries, ttlMillis);
+        identifiers = new ExpiringCache<>(maxEntries, ttlMillis);
+        trustedPublicKeys = new ExpiringCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * Return the Crypto whose results are cached
+     */
+    public Crypto getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Remove all cached results
+     */
+    public void clear() {
+        certificates.clear();
+        identifiers.clear();
+        trustedPublicKeys.clear();
+    }
+
+    /**
+     * Remove the cached certificates of the given CryptoType
+     */
+    public void invalidate(CryptoType cryptoType) {
+        String cacheKey = getCacheKey(cryptoType);
+        if (cacheKey != null) {
+            certificates.remove(cacheKey);
+        }
+    }
+
+    /**
+     * Remove the cached identifier and the cached trust of the public key of the given certificate
+     */
+    public void invalidate(X509Certificate cert) {
+        identifiers.remove(cert);
+        trustedPublicKeys.remove(cert.getPublicKey());
+    }
+
+    @Override
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        String cacheKey = getCacheKey(cryptoType);
+        if (cacheKey == null) {
+            return delegate.getX509Certificates(cryptoType);
+        }
+        X509Certificate[] certs = certificates.get(cacheKey);
+        if (certs == null) {
+            certs = delegate.getX509Certificates(cryptoType);
+            if (certs == null || certs.length == 0) {
+                return certs;
+            }
+            certificates.put(cacheKey, certs.clone());
+        }
+        return certs.clone();
+    }
+
+    @Override
+    public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+        if (cert == null) {
+            return delegate.getX509Identifier(cert);
+        }
+        String identifier = identifiers.get(cert);
+        if (identifier == null) {
+            identifier = delegate.getX509Identifier(cert);
+            if (identifier != null) {
+                identifiers.put(cert, identifier);
+            }
+        }
+        return identifier;
+    }
+
+    @Override
+    public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+        if (publicKey == null || trustedPublicKeys.get(publicKey) == null) {
+            delegate.verifyTrust(publicKey);
+            if (publicKey != null) {
+                trustedPublicKeys.put(publicKey, Boolean.TRUE);
+            }
+        }
+    }
+
+    @Override
+    public void verifyTrust(
+        X509Certificate[] certs, boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        delegate.verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+    }
+
+    @Override
+    public String getCryptoProvider() {
+        return delegate.getCryptoProvider();
+    }
+
+    @Override
+    public void setCryptoProvider(String provider) {
+        delegate.setCryptoProvider(provider);
+    }
+
+    @Override
+    public String getTrustProvider() {
+        return delegate.getTrustProvider();
+    }
+
+    @Override
+    public void setTrustProvider(String provider) {
+        delegate.setTrustProvider(provider);
+    }
+
+    @Override
+    public String getDefaultX509Identifier() throws WSSecurityException {
+        return delegate.getDefaultX509Identifier();
+    }
+
+    @Override
+    public void setDefaultX509Identifier(String identifier) {
+        delegate.setDefaultX509Identifier(identifier);
+    }
+
+    @Override
+    public void setCertificateFactory(CertificateFactory certFactory) {
+        delegate.setCertificateFactory(certFactory);
+    }
+
+    @Override
+    public CertificateFactory getCertificateFactory() throws WSSecurityException {
+        return delegate.getCertificateFactory();
+    }
+
+    @Override
+    public X509Certificate loadCertificate(InputStream in) throws WSSecurityException {
+        return delegate.loadCertificate(in);
+    }
+
+    @Override
+    public byte[] getSKIBytesFromCert(X509Certificate cert) throws WSSecurityException {
+        return delegate.getSKIBytesFromCert(cert);
+    }
+
+    @Override
+    public byte[] getBytesFromCertificates(X509Certificate[] certs) throws WSSecurityException {
+        return delegate.getBytesFromCertificates(certs);
+    }
+
+    @Override
+    public X509Certificate[] getCertificatesFromBytes(byte[] data) throws WSSecurityException {
+        return delegate.getCertificatesFromBytes(data);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        X509Certificate certificate, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        return delegate.getPrivateKey(certificate, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        PublicKey publicKey, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        return delegate.getPrivateKey(publicKey, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+        return delegate.getPrivateKey(identifier, password);
+    }
+
+    /**
+     * Return the key under which the certificates of the given CryptoType are cached, or null if
+     * they are not cached
+     */
+    private static String getCacheKey(CryptoType cryptoType) {
+        if (cryptoType == null || cryptoType.getType() == null) {
+            return null;
+        }
+        switch (cryptoType.getType()) {
+        case ISSUER_SERIAL:
+            if (cryptoType.getIssuer() == null || cryptoType.getSerial() == null) {
+                return null;
+            }
+            return "IS:" + cryptoType.getSerial() + ":" + cryptoType.getIssuer();
+        case THUMBPRINT_SHA1:
+        case SKI_BYTES:
+            if (cryptoType.getBytes() == null) {
+                return null;
+            }
+            return cryptoType.getType().name() + ":" + Base64.getEncoder().encodeToString(cryptoType.getBytes());
+        case SUBJECT_DN:
+            return cryptoType.getSubjectDN() == null ? null : "DN:" + cryptoType.getSubjectDN();
+        case ALIAS:
+            return cryptoType.getAlias() == null ? null : "ALIAS:" + cryptoType.getAlias();
+        case ENDPOINT:
+            return cryptoType.getEndpoint() == null ? null : "EP:" + cryptoType.getEndpoint();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * A bounded map whose entries expire after a fixed time
+     */
+    private static final class ExpiringCache<K, V> {
+        private final long ttlMillis;
+        private final Map<K, Entry<V>> cache;
+
+        ExpiringCache(final int maxEntries, long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+            this.cache = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized V get(K key) {
+            Entry<V> entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() > entry.expiry) {
+                cache.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized void put(K key, V value) {
+            cache.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+        }
+
+        synchronized void remove(K key) {
+            cache.remove(key);
+        }
+
+        synchronized void clear() {
+            cache.clear();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiry;
+
+        Entry(V value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+}
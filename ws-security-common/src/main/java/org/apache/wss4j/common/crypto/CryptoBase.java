@@ -59,7 +59,7 @@ public abstract class CryptoBase implements Crypto {
 
     private static final Constructor<?> BC_509CLASS_CONS;
 
-    protected CertificateFactory certificateFactory;
+    protected volatile CertificateFactory certificateFactory;
     private String defaultAlias;
     private String cryptoProvider;
     private String trustProvider;
@@ -155,16 +155,17 @@ public abstract class CryptoBase implements Crypto {
      * @throws WSSecurityException
      */
     public CertificateFactory getCertificateFactory() throws WSSecurityException {
-        if (certificateFactory != null) {
-            return certificateFactory;
+        CertificateFactory factory = certificateFactory;
+        if (factory != null) {
+            return factory;
         }
 
         try {
             String provider = getCryptoProvider();
             if (provider == null || provider.length() == 0) {
-                certificateFactory = CertificateFactory.getInstance("X.509");
+                factory = CertificateFactory.getInstance("X.509");
             } else {
-                certificateFactory = CertificateFactory.getInstance("X.509", provider);
+                factory = CertificateFactory.getInstance("X.509", provider);
             }
         } catch (CertificateException e) {
             throw new WSSecurityException(
@@ -176,7 +177,9 @@ public abstract class CryptoBase implements Crypto {
             );
         }
 
-        return certificateFactory;
+        // Concurrent callers may each create a factory, which is cheaper than making them wait on a lock
+        certificateFactory = factory;
+        return factory;
     }
 
     /**
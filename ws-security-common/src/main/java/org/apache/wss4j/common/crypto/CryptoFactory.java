@@ -116,7 +116,9 @@ public abstract class CryptoFactory {
             || cryptoClassName.equals("org.apache.wss4j.common.crypto.Merlin")
             || cryptoClassName.equals("org.apache.ws.security.components.crypto.Merlin")) {
             try {
-                return new Merlin(properties, classLoader, passwordEncryptor);
+                return decorate(new Merlin(properties, classLoader, passwordEncryptor), properties);
+            } catch (WSSecurityException e) {
+                throw e;
             } catch (Exception e) {
                 LOG.debug("Unable to instantiate Merlin", e);
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
@@ -132,7 +134,7 @@ public abstract class CryptoFactory {
                         "empty", new Object[] {cryptoClassName + " Not Found"});
             }
         }
-        return loadClass(cryptoClass, properties, classLoader);
+        return decorate(loadClass(cryptoClass, properties, classLoader), properties);
     }
 
     /**
@@ -156,7 +158,36 @@ public abstract class CryptoFactory {
         Class<? extends Crypto> cryptoClass,
         Map<Object, Object> map
     ) throws WSSecurityException {
-        return loadClass(cryptoClass, map, Loader.getClassLoader(CryptoFactory.class));
+        return decorate(loadClass(cryptoClass, map, Loader.getClassLoader(CryptoFactory.class)), map);
+    }
+
+    /**
+     * Decorate the Crypto with a CachingCrypto if the CachingCrypto.CACHE_ENABLED property is "true".
+     * The size and TTL of the caches are configured with the CachingCrypto.CACHE_MAX_ENTRIES and
+     * CachingCrypto.CACHE_TTL (in seconds) properties.
+     */
+    private static Crypto decorate(Crypto crypto, Map<Object, Object> properties) throws WSSecurityException {
+        if (properties == null || !"true".equalsIgnoreCase(getProperty(properties, CachingCrypto.CACHE_ENABLED))) {
+            return crypto;
+        }
+        try {
+            String maxEntries = getProperty(properties, CachingCrypto.CACHE_MAX_ENTRIES);
+            String ttl = getProperty(properties, CachingCrypto.CACHE_TTL);
+            LOG.debug("Caching the results of Crypto Engine [{}]", crypto.getClass());
+            return new CachingCrypto(
+                crypto,
+                maxEntries != null ? Integer.parseInt(maxEntries) : CachingCrypto.DEFAULT_MAX_ENTRIES,
+                ttl != null ? Long.parseLong(ttl) : CachingCrypto.DEFAULT_TTL
+            );
+        } catch (IllegalArgumentException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
+                    "empty", new Object[] {"Invalid Crypto cache configuration"});
+        }
+    }
+
+    private static String getProperty(Map<Object, Object> properties, String key) {
+        Object value = properties.get(key);
+        return value != null ? value.toString().trim() : null;
     }
 
     /**
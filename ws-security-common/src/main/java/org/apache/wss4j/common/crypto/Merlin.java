@@ -68,6 +68,9 @@ import javax.security.auth.x500.X500Principal;
 
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.SecurityEvents;
+import org.apache.wss4j.common.jfr.TrustVerificationEvent;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.Loader;
 
 /**
@@ -134,6 +137,7 @@ public class Merlin extends CryptoBase {
     private boolean certProviderHandlesNameConstraints = false;
     private boolean enablePrivateKeyCaching = true;
     private Map<String, PrivateKey> privateKeyCache = new ConcurrentHashMap<>();
+    private SecurityMetrics securityMetrics = SecurityMetrics.NONE;
 
     public Merlin() {
         // default constructor
@@ -454,8 +458,9 @@ public class Merlin extends CryptoBase {
      */
     @Override
     public CertificateFactory getCertificateFactory() throws WSSecurityException {
-        if (certificateFactory != null) {
-            return certificateFactory;
+        CertificateFactory factory = certificateFactory;
+        if (factory != null) {
+            return factory;
         }
 
         String provider = getCryptoProvider();
@@ -468,7 +473,7 @@ public class Merlin extends CryptoBase {
             if (provider == null || provider.length() == 0) {
                 if (keyStoreProvider != null && keyStoreProvider.length() != 0) {
                     try {
-                        certificateFactory =
+                        factory =
                             CertificateFactory.getInstance(
                                 "X.509", mapKeystoreProviderToCertProvider(keyStoreProvider)
                             );
@@ -479,11 +484,11 @@ public class Merlin extends CryptoBase {
                         //Hopefully that will work for them.
                     }
                 }
-                if (certificateFactory == null) {
-                    certificateFactory = CertificateFactory.getInstance("X.509");
+                if (factory == null) {
+                    factory = CertificateFactory.getInstance("X.509");
                 }
             } else {
-                certificateFactory = CertificateFactory.getInstance("X.509", provider);
+                factory = CertificateFactory.getInstance("X.509", provider);
             }
         } catch (CertificateException e) {
             throw new WSSecurityException(
@@ -495,7 +500,8 @@ public class Merlin extends CryptoBase {
             );
         }
 
-        return certificateFactory;
+        certificateFactory = factory;
+        return factory;
     }
 
     private String mapKeystoreProviderToCertProvider(String s) {
@@ -717,6 +723,9 @@ public class Merlin extends CryptoBase {
             }
             if (enablePrivateKeyCaching) {
                 Key privateKey = privateKeyCache.get(identifier);
+                if (securityMetrics.isEnabled()) {
+                    securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.PRIVATE_KEY, privateKey != null);
+                }
                 if (privateKey != null) {
                     return (PrivateKey) privateKey;
                 }
@@ -903,9 +912,25 @@ public class Merlin extends CryptoBase {
     public void verifyTrust(X509Certificate[] certs, boolean enableRevocation,
                             Collection<Pattern> subjectCertConstraints,
                             Collection<Pattern> issuerCertConstraints) throws WSSecurityException {
-        verifyTrust(certs, enableRevocation, subjectCertConstraints);
-        if (!matchesIssuerDnPattern(certs[0], issuerCertConstraints)) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        TrustVerificationEvent trustVerificationEvent = SecurityEvents.trustVerification();
+        trustVerificationEvent.begin();
+        boolean trusted = false;
+        try {
+            verifyTrust(certs, enableRevocation, subjectCertConstraints);
+            if (!matchesIssuerDnPattern(certs[0], issuerCertConstraints)) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+            }
+            trusted = true;
+        } finally {
+            if (trustVerificationEvent.shouldCommit()) {
+                if (certs != null && certs.length > 0) {
+                    trustVerificationEvent.setSubject(certs[0].getSubjectX500Principal().getName());
+                    trustVerificationEvent.setCertificates(certs.length);
+                }
+                trustVerificationEvent.setRevocation(enableRevocation);
+                trustVerificationEvent.setTrusted(trusted);
+                trustVerificationEvent.commit();
+            }
         }
     }
 
@@ -1555,4 +1580,16 @@ public class Merlin extends CryptoBase {
     public void setEnablePrivateKeyCaching(boolean enablePrivateKeyCaching) {
         this.enablePrivateKeyCaching = enablePrivateKeyCaching;
     }
+
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    /**
+     * Set the SecurityMetrics which receive the hits and misses of the private key cache
+     * @param securityMetrics the SecurityMetrics to use, null disables the reporting
+     */
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics != null ? securityMetrics : SecurityMetrics.NONE;
+    }
 }
@@ -0,0 +1,882 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A Crypto implementation which routes the lookups to the Crypto of a tenant, for deployments with a
+ * large number of (partner) keystores. The Crypto of a tenant is loaded on first use, and the loaded
+ * Crypto instances are evicted in least-recently-used order once more than a maximum number of them are
+ * loaded, or once their estimated size exceeds a maximum number of bytes.
+ *
+ * The tenant of a lookup is resolved as follows:
+ *  - Aliases (and identifiers) can be qualified with the tenant, e.g. "partner1:myAlias". The
+ *    identifiers returned by getX509Identifier are always qualified. An unqualified alias is resolved
+ *    via the index, if it belongs to a single tenant.
+ *  - Issuer-serial, thumbprint, SKI, subject DN and public key lookups are resolved via an index
+ *    of the certificates of the tenants, which is retained when a Crypto is evicted. A certificate
+ *    which belongs to several tenants is ambiguous, and isn't resolved to any of them. The private key
+ *    of such a certificate is still found, if a single tenant holds it in a key entry.
+ *
+ * The index is built lazily: a lookup which is not in the index loads and indexes the tenants which
+ * were not indexed yet, until the certificate is found. So an ambiguity is only detected among the tenants
+ * which were indexed so far. Call buildIndex() to index all tenants up front.
+ * The certificates of Merlin instances are indexed completely. Other Crypto implementations can't be
+ * enumerated, so only the certificates which are found with a direct lookup are indexed. A lookup which
+ * none of them could answer isn't repeated for a short time.
+ *
+ * The trust of a certificate is verified by the tenant which owns it. Verifying the trust of a certificate
+ * which no tenant owns with the tenant which owns its issuer must be enabled explicitly, as it lets a
+ * certificate issued by a CA of one tenant pass for any message. If the tenant of a message is known, use
+ * getTenantScopedCrypto (or RequestData.setTenant) to restrict all lookups to the Crypto of that tenant.
+ *
+ * TenantCrypto can be created with CryptoFactory, using the following properties:
+ *  - org.apache.wss4j.crypto.provider=org.apache.wss4j.common.crypto.TenantCrypto
+ *  - org.apache.wss4j.crypto.tenant.file.&lt;tenant&gt; - the Crypto properties file of the tenant
+ *  - org.apache.wss4j.crypto.tenant.maxLoaded - the maximum number of loaded tenants (default 100)
+ *  - org.apache.wss4j.crypto.tenant.maxLoadedBytes - the maximum estimated size of the loaded tenants
+ *  - org.apache.wss4j.crypto.tenant.default - the tenant of the default X.509 identifier
+ *  - org.apache.wss4j.crypto.tenant.trustIssuingTenant - whether the tenant which owns the issuer of a
+ *    certificate verifies its trust, if no tenant owns the certificate itself (default false)
+ */
+public class TenantCrypto extends CryptoBase {
+
+    public static final String TENANT_FILE_PREFIX = "org.apache.wss4j.crypto.tenant.file.";
+    public static final String MAX_LOADED = "org.apache.wss4j.crypto.tenant.maxLoaded";
+    public static final String MAX_LOADED_BYTES = "org.apache.wss4j.crypto.tenant.maxLoadedBytes";
+    public static final String DEFAULT_TENANT = "org.apache.wss4j.crypto.tenant.default";
+    public static final String TRUST_ISSUING_TENANT = "org.apache.wss4j.crypto.tenant.trustIssuingTenant";
+
+    public static final int DEFAULT_MAX_LOADED = 100;
+    public static final char TENANT_SEPARATOR = ':';
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(TenantCrypto.class);
+
+    // The estimated size of a Crypto which is not a Merlin, and of a key entry on top of its certificates
+    private static final long DEFAULT_CRYPTO_SIZE = 16 * 1024L;
+    private static final long KEY_ENTRY_SIZE = 2 * 1024L;
+
+    private static final String AMBIGUOUS = "";
+    // The prefix of the index keys of the certificates of key entries
+    private static final String KEY_ENTRY = "K";
+    // How long a lookup which was not found isn't repeated, and the maximum number of such lookups
+    private static final long MISS_TTL_MILLIS = 30 * 1000L;
+    private static final int MAX_MISSES = 10000;
+
+    /**
+     * Loads the Crypto of a tenant
+     */
+    public interface TenantLoader {
+        Crypto loadCrypto(String tenant) throws WSSecurityException;
+    }
+
+    private final TenantLoader loader;
+    private final int maxLoaded;
+    private final long maxLoadedBytes;
+    private final String defaultTenant;
+    private final Map<String, TenantStore> stores;
+    private final Map<String, String> index = new ConcurrentHashMap<>();
+    // The tenants of the ambiguous keys of the index
+    private final Map<String, Set<String>> ambiguousKeys = new HashMap<>();
+    // The expiry times of the keys which were not found
+    private final Map<String, Long> misses = new ConcurrentHashMap<>();
+    private final Map<String, TenantStore> loadedStores = new LinkedHashMap<>(16, 0.75f, true);
+    private long loadedBytes;
+    private boolean trustIssuingTenant;
+
+    /**
+     * Constructor used by the CryptoFactory
+     */
+    public TenantCrypto(Properties properties, ClassLoader classLoader, PasswordEncryptor passwordEncryptor)
+        throws WSSecurityException {
+        this(getTenantFiles(properties), classLoader, passwordEncryptor,
+             getIntProperty(properties, MAX_LOADED, DEFAULT_MAX_LOADED),
+             getLongProperty(properties, MAX_LOADED_BYTES, Long.MAX_VALUE),
+             properties.getProperty(DEFAULT_TENANT));
+        this.trustIssuingTenant = Boolean.parseBoolean(properties.getProperty(TRUST_ISSUING_TENANT, "false"));
+    }
+
+    private TenantCrypto(
+        final Map<String, String> tenantFiles, final ClassLoader classLoader,
+        final PasswordEncryptor passwordEncryptor, int maxLoaded, long maxLoadedBytes, String defaultTenant
+    ) throws WSSecurityException {
+        this(tenantFiles.keySet(), new TenantLoader() {
+            @Override
+            public Crypto loadCrypto(String tenant) throws WSSecurityException {
+                Properties tenantProperties = CryptoFactory.getProperties(tenantFiles.get(tenant), classLoader);
+                return CryptoFactory.getInstance(tenantProperties, classLoader, passwordEncryptor);
+            }
+        }, maxLoaded, maxLoadedBytes, defaultTenant);
+    }
+
+    /**
+     * @param tenants the tenants
+     * @param loader loads the Crypto of a tenant
+     * @param maxLoaded the maximum number of tenants whose Crypto is loaded at the same time
+     * @param maxLoadedBytes the maximum estimated size of the loaded Crypto instances
+     * @param defaultTenant the tenant of the default X.509 identifier, may be null
+     */
+    public TenantCrypto(
+        Collection<String> tenants, TenantLoader loader, int maxLoaded, long maxLoadedBytes, String defaultTenant
+    ) throws WSSecurityException {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader must not be null");
+        }
+        if (maxLoaded <= 0 || maxLoadedBytes <= 0) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                "empty", new Object[] {"The maximum number and size of the loaded tenants must be positive"});
+        }
+        this.loader = loader;
+        this.maxLoaded = maxLoaded;
+        this.maxLoadedBytes = maxLoadedBytes;
+
+        Map<String, TenantStore> tenantStores = new LinkedHashMap<>();
+        for (String tenant : tenants) {
+            if (tenant.indexOf(TENANT_SEPARATOR) != -1) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                    "empty", new Object[] {"Invalid tenant name " + tenant});
+            }
+            tenantStores.put(tenant, new TenantStore(tenant));
+        }
+        this.stores = Collections.unmodifiableMap(tenantStores);
+
+        if (defaultTenant != null && !stores.containsKey(defaultTenant)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                "empty", new Object[] {"Unknown default tenant " + defaultTenant});
+        }
+        this.defaultTenant = defaultTenant;
+    }
+
+    /**
+     * Return the (loaded) Crypto of the given tenant
+     */
+    public Crypto getTenantCrypto(String tenant) throws WSSecurityException {
+        return getStore(tenant).getCrypto();
+    }
+
+    /**
+     * Return a Crypto which restricts all lookups to the Crypto of the given tenant. The Crypto of the
+     * tenant is loaded on first use, so an unknown tenant fails on the first lookup. Aliases may still
+     * be qualified with the tenant.
+     */
+    public Crypto getTenantScopedCrypto(String tenant) {
+        return new TenantScopedCrypto(tenant);
+    }
+
+    /**
+     * Set whether the trust of a certificate which no tenant owns is verified by the tenant which owns
+     * its issuer. The default is false.
+     */
+    public void setTrustIssuingTenant(boolean trustIssuingTenant) {
+        this.trustIssuingTenant = trustIssuingTenant;
+    }
+
+    public boolean isTrustIssuingTenant() {
+        return trustIssuingTenant;
+    }
+
+    /**
+     * Return the tenant which owns the given certificate, or null if no single tenant owns it
+     */
+    public String getTenant(X509Certificate cert) throws WSSecurityException {
+        if (cert == null) {
+            return null;
+        }
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(), cert.getSerialNumber());
+        return resolveTenant(getIssuerSerialKey(cert.getIssuerX500Principal(), cert), cryptoType);
+    }
+
+    /**
+     * Load and index the tenants which are not indexed yet. The loaded Crypto instances are subject to
+     * eviction as usual.
+     */
+    public void buildIndex() throws WSSecurityException {
+        for (TenantStore store : stores.values()) {
+            if (!store.indexed) {
+                store.getCrypto();
+            }
+        }
+    }
+
+    /**
+     * Return the number of tenants whose Crypto is currently loaded
+     */
+    public int getLoadedTenantCount() {
+        synchronized (loadedStores) {
+            return loadedStores.size();
+        }
+    }
+
+    /**
+     * Evict the Crypto of the given tenant, and remove its certificates from the index, e.g. after the
+     * keystore of the tenant changed.
+     */
+    public void reload(String tenant) throws WSSecurityException {
+        TenantStore store = getStore(tenant);
+        store.lock.lock();
+        try {
+            evict(store);
+            store.indexed = false;
+            removeFromIndex(tenant);
+            misses.clear();
+        } finally {
+            store.lock.unlock();
+        }
+    }
+
+    @Override
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        if (cryptoType == null || cryptoType.getType() == null) {
+            return new X509Certificate[0];
+        }
+        switch (cryptoType.getType()) {
+        case ALIAS:
+            String[] qualifiedAlias = resolveAlias(cryptoType.getAlias());
+            if (qualifiedAlias == null) {
+                return new X509Certificate[0];
+            }
+            CryptoType aliasType = new CryptoType(CryptoType.TYPE.ALIAS);
+            aliasType.setAlias(qualifiedAlias[1]);
+            return getTenantCrypto(qualifiedAlias[0]).getX509Certificates(aliasType);
+        case ENDPOINT:
+            if (defaultTenant == null) {
+                return new X509Certificate[0];
+            }
+            return getTenantCrypto(defaultTenant).getX509Certificates(cryptoType);
+        default:
+            String tenant = resolveTenant(getIndexKey(cryptoType), cryptoType);
+            if (tenant == null) {
+                return new X509Certificate[0];
+            }
+            return getTenantCrypto(tenant).getX509Certificates(cryptoType);
+        }
+    }
+
+    @Override
+    public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+        String tenant = getTenant(cert);
+        if (tenant == null) {
+            return null;
+        }
+        String identifier = getTenantCrypto(tenant).getX509Identifier(cert);
+        return identifier == null ? null : tenant + TENANT_SEPARATOR + identifier;
+    }
+
+    @Override
+    public String getDefaultX509Identifier() throws WSSecurityException {
+        String identifier = super.getDefaultX509Identifier();
+        if (identifier == null && defaultTenant != null) {
+            identifier = getTenantCrypto(defaultTenant).getDefaultX509Identifier();
+            if (identifier != null) {
+                identifier = defaultTenant + TENANT_SEPARATOR + identifier;
+            }
+        }
+        return identifier;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        X509Certificate certificate, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        String tenant = null;
+        if (certificate != null) {
+            CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+            cryptoType.setIssuerSerial(
+                certificate.getIssuerX500Principal().getName(), certificate.getSerialNumber());
+            tenant = resolveKeyEntryTenant(
+                getIssuerSerialKey(certificate.getIssuerX500Principal(), certificate), cryptoType);
+        }
+        if (tenant == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noPrivateKey",
+                new Object[] {"No tenant owns the certificate"});
+        }
+        return getTenantCrypto(tenant).getPrivateKey(certificate, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(
+        PublicKey publicKey, CallbackHandler callbackHandler
+    ) throws WSSecurityException {
+        String tenant = publicKey == null ? null : resolveKeyEntryTenant(getPublicKeyKey(publicKey), null);
+        if (tenant == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noPrivateKey",
+                new Object[] {"No tenant owns the public key"});
+        }
+        return getTenantCrypto(tenant).getPrivateKey(publicKey, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+        String[] qualifiedAlias = resolveAlias(identifier);
+        if (qualifiedAlias == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noPrivateKey",
+                new Object[] {"No tenant owns the identifier " + identifier});
+        }
+        return getTenantCrypto(qualifiedAlias[0]).getPrivateKey(qualifiedAlias[1], password);
+    }
+
+    /**
+     * Evaluate whether the given certificate chain is trusted by the tenant which owns the certificate,
+     * or else, if enabled with setTrustIssuingTenant, by the tenant which owns the issuer of the certificate.
+     */
+    @Override
+    public void verifyTrust(
+        X509Certificate[] certs, boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        if (certs == null || certs.length == 0) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        }
+        String tenant = getTenant(certs[0]);
+        if (tenant == null && trustIssuingTenant) {
+            X500Principal issuer = certs[certs.length - 1].getIssuerX500Principal();
+            CryptoType issuerType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+            issuerType.setSubjectDN(issuer.getName());
+            tenant = resolveTenant(getSubjectKey(issuer), issuerType);
+        }
+        if (tenant == null) {
+            LOG.debug("No tenant trusts the certificate {}", certs[0].getSubjectX500Principal());
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        }
+        getTenantCrypto(tenant).verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+    }
+
+    @Override
+    public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+        String tenant = publicKey == null ? null : resolveTenant(getPublicKeyKey(publicKey), null);
+        if (tenant == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        }
+        getTenantCrypto(tenant).verifyTrust(publicKey);
+    }
+
+    private TenantStore getStore(String tenant) throws WSSecurityException {
+        TenantStore store = tenant == null ? null : stores.get(tenant);
+        if (store == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                "empty", new Object[] {"Unknown tenant " + tenant});
+        }
+        return store;
+    }
+
+    /**
+     * Split the given (qualified) alias into the tenant and the alias of the tenant
+     */
+    private String[] resolveAlias(String alias) throws WSSecurityException {
+        if (alias == null) {
+            return null;
+        }
+        int separator = alias.indexOf(TENANT_SEPARATOR);
+        if (separator != -1 && stores.containsKey(alias.substring(0, separator))) {
+            return new String[] {alias.substring(0, separator), alias.substring(separator + 1)};
+        }
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        String tenant = resolveTenant("A:" + alias, cryptoType);
+        return tenant == null ? null : new String[] {tenant, alias};
+    }
+
+    /**
+     * Return the tenant of the given index key. If the index doesn't contain the key, the tenants
+     * which are not indexed yet are loaded until the key is found.
+     */
+    private String resolveTenant(String indexKey, CryptoType cryptoType) throws WSSecurityException {
+        String tenant = indexKey == null ? null : index.get(indexKey);
+        if (tenant != null) {
+            return AMBIGUOUS.equals(tenant) ? null : tenant;
+        }
+        if (indexKey != null && isMiss(indexKey)) {
+            return null;
+        }
+        boolean searched = false;
+        for (TenantStore store : stores.values()) {
+            if (store.indexed && indexKey != null) {
+                continue;
+            }
+            searched = true;
+            Crypto crypto = store.getCrypto();
+            if ((!store.indexed || indexKey == null) && cryptoType != null) {
+                // the Crypto can't be enumerated, so look the certificate up directly
+                X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+                if (certs != null && certs.length > 0) {
+                    if (indexKey != null) {
+                        addToIndex(indexKey, store.tenant);
+                    }
+                    indexCertificate(certs[0], store.tenant, crypto, false);
+                    tenant = indexKey == null ? store.tenant : index.get(indexKey);
+                    return AMBIGUOUS.equals(tenant) ? null : tenant;
+                }
+            }
+            tenant = indexKey == null ? null : index.get(indexKey);
+            if (tenant != null) {
+                return AMBIGUOUS.equals(tenant) ? null : tenant;
+            }
+        }
+        if (indexKey != null && searched) {
+            addMiss(indexKey);
+        }
+        return null;
+    }
+
+    /**
+     * Return the tenant of the given index key for a private key lookup, i.e. the tenant which holds
+     * the certificate in a key entry, if the certificate belongs to several tenants.
+     */
+    private String resolveKeyEntryTenant(String indexKey, CryptoType cryptoType) throws WSSecurityException {
+        String tenant = resolveTenant(indexKey, cryptoType);
+        String keyEntryTenant = index.get(KEY_ENTRY + indexKey);
+        if (keyEntryTenant != null) {
+            return AMBIGUOUS.equals(keyEntryTenant) ? null : keyEntryTenant;
+        }
+        return tenant;
+    }
+
+    private boolean isMiss(String indexKey) {
+        Long expiry = misses.get(indexKey);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry > System.currentTimeMillis()) {
+            return true;
+        }
+        misses.remove(indexKey, expiry);
+        return false;
+    }
+
+    private void addMiss(String indexKey) {
+        if (misses.size() >= MAX_MISSES) {
+            misses.clear();
+        }
+        misses.put(indexKey, System.currentTimeMillis() + MISS_TTL_MILLIS);
+    }
+
+    /**
+     * Index the certificates of the given Crypto, if it can be enumerated, and return whether it was indexed
+     */
+    private boolean indexCrypto(String tenant, Crypto crypto) throws WSSecurityException {
+        Merlin merlin = getMerlin(crypto);
+        if (merlin == null) {
+            return false;
+        }
+        try {
+            for (KeyStore keyStore : new KeyStore[] {merlin.getKeyStore(), merlin.getTrustStore()}) {
+                if (keyStore == null) {
+                    continue;
+                }
+                for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements();) {
+                    String alias = aliases.nextElement();
+                    Certificate cert = keyStore.getCertificate(alias);
+                    if (cert instanceof X509Certificate) {
+                        addToIndex("A:" + alias, tenant);
+                        indexCertificate((X509Certificate) cert, tenant, crypto, keyStore.isKeyEntry(alias));
+                    }
+                }
+            }
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+        return true;
+    }
+
+    private void indexCertificate(
+        X509Certificate cert, String tenant, Crypto crypto, boolean keyEntry
+    ) throws WSSecurityException {
+        String issuerSerialKey = getIssuerSerialKey(cert.getIssuerX500Principal(), cert);
+        String publicKeyKey = getPublicKeyKey(cert.getPublicKey());
+        addToIndex(issuerSerialKey, tenant);
+        addToIndex(getSubjectKey(cert.getSubjectX500Principal()), tenant);
+        addToIndex(publicKeyKey, tenant);
+        if (keyEntry) {
+            addToIndex(KEY_ENTRY + issuerSerialKey, tenant);
+            addToIndex(KEY_ENTRY + publicKeyKey, tenant);
+        }
+        try {
+            addToIndex("T:" + Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-1").digest(cert.getEncoded())), tenant);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+        if (cert.getVersion() >= 3 && cert.getExtensionValue(SKI_OID) != null) {
+            addToIndex("S:" + Base64.getEncoder().encodeToString(crypto.getSKIBytesFromCert(cert)), tenant);
+        }
+    }
+
+    /**
+     * Add the given key to the index. A key of several tenants, be it an alias or a certificate, is
+     * ambiguous. An alias must be qualified then, and a certificate isn't resolved to any tenant.
+     */
+    private void addToIndex(String key, String tenant) {
+        if (key == null) {
+            return;
+        }
+        synchronized (ambiguousKeys) {
+            String existingTenant = index.putIfAbsent(key, tenant);
+            if (existingTenant == null || existingTenant.equals(tenant)) {
+                return;
+            }
+            Set<String> tenants = ambiguousKeys.get(key);
+            if (tenants == null) {
+                tenants = new HashSet<>();
+                tenants.add(existingTenant);
+                ambiguousKeys.put(key, tenants);
+                index.put(key, AMBIGUOUS);
+            }
+            tenants.add(tenant);
+        }
+    }
+
+    /**
+     * Remove the keys of the given tenant from the index. An ambiguous key is owned by the remaining
+     * tenant again, if there is just one left.
+     */
+    private void removeFromIndex(String tenant) {
+        synchronized (ambiguousKeys) {
+            index.values().removeIf(tenant::equals);
+            for (Iterator<Map.Entry<String, Set<String>>> iterator = ambiguousKeys.entrySet().iterator();
+                iterator.hasNext();) {
+                Map.Entry<String, Set<String>> entry = iterator.next();
+                Set<String> tenants = entry.getValue();
+                if (tenants.remove(tenant) && tenants.size() == 1) {
+                    index.put(entry.getKey(), tenants.iterator().next());
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static String getIndexKey(CryptoType cryptoType) {
+        switch (cryptoType.getType()) {
+        case ISSUER_SERIAL:
+            if (cryptoType.getIssuer() == null || cryptoType.getSerial() == null) {
+                return null;
+            }
+            return "I:" + cryptoType.getSerial().toString(16) + ":" + getCanonicalName(cryptoType.getIssuer());
+        case THUMBPRINT_SHA1:
+            return cryptoType.getBytes() == null ? null : "T:" + Base64.getEncoder().encodeToString(cryptoType.getBytes());
+        case SKI_BYTES:
+            return cryptoType.getBytes() == null ? null : "S:" + Base64.getEncoder().encodeToString(cryptoType.getBytes());
+        case SUBJECT_DN:
+            String subjectDN = getCanonicalName(cryptoType.getSubjectDN());
+            return subjectDN == null ? null : "D:" + subjectDN;
+        default:
+            return null;
+        }
+    }
+
+    private static String getIssuerSerialKey(X500Principal issuer, X509Certificate cert) {
+        return "I:" + cert.getSerialNumber().toString(16) + ":" + issuer.getName(X500Principal.CANONICAL);
+    }
+
+    private static String getSubjectKey(X500Principal subject) {
+        return "D:" + subject.getName(X500Principal.CANONICAL);
+    }
+
+    private static String getPublicKeyKey(PublicKey publicKey) throws WSSecurityException {
+        try {
+            return "P:" + Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-1").digest(publicKey.getEncoded()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
+
+    /**
+     * Return the canonical form of the given name, or null if it can't be parsed, in which case
+     * the lookup falls back to searching the tenants directly
+     */
+    private static String getCanonicalName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return new X500Principal(name).getName(X500Principal.CANONICAL);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Can't parse the name {}", name, e);
+            return null;
+        }
+    }
+
+    /**
+     * Return the Merlin behind the given Crypto and its CachingCrypto decorators, or null if there is none
+     */
+    private static Merlin getMerlin(Crypto crypto) {
+        while (crypto instanceof CachingCrypto) {
+            crypto = ((CachingCrypto) crypto).getDelegate();
+        }
+        return crypto instanceof Merlin ? (Merlin) crypto : null;
+    }
+
+    private static long estimateSize(Crypto crypto) throws WSSecurityException {
+        Merlin merlin = getMerlin(crypto);
+        if (merlin == null) {
+            return DEFAULT_CRYPTO_SIZE;
+        }
+        long size = 0;
+        try {
+            for (KeyStore keyStore : new KeyStore[] {merlin.getKeyStore(), merlin.getTrustStore()}) {
+                if (keyStore == null) {
+                    continue;
+                }
+                for (Enumeration<String> aliases = keyStore.aliases(); aliases.hasMoreElements();) {
+                    String alias = aliases.nextElement();
+                    Certificate[] chain = keyStore.getCertificateChain(alias);
+                    if (chain == null) {
+                        Certificate cert = keyStore.getCertificate(alias);
+                        chain = cert == null ? new Certificate[0] : new Certificate[] {cert};
+                    } else {
+                        size += KEY_ENTRY_SIZE;
+                    }
+                    for (Certificate cert : chain) {
+                        size += cert.getEncoded().length;
+                    }
+                }
+            }
+        } catch (KeyStoreException | CertificateEncodingException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+        return size;
+    }
+
+    /**
+     * Register the loaded Crypto of the given store, and evict the least recently used Crypto instances
+     * which exceed the budget. The Crypto which was just loaded is never evicted.
+     */
+    private void loaded(TenantStore store, long size) {
+        List<TenantStore> evictedStores = new ArrayList<>();
+        synchronized (loadedStores) {
+            if (loadedStores.put(store.tenant, store) == null) {
+                loadedBytes += size;
+            }
+            Iterator<TenantStore> iterator = loadedStores.values().iterator();
+            while ((loadedStores.size() > maxLoaded || loadedBytes > maxLoadedBytes) && iterator.hasNext()) {
+                TenantStore eldest = iterator.next();
+                if (eldest == store) {
+                    continue;
+                }
+                iterator.remove();
+                loadedBytes -= eldest.size;
+                evictedStores.add(eldest);
+            }
+        }
+        for (TenantStore evictedStore : evictedStores) {
+            LOG.debug("Evicting the Crypto of tenant {}", evictedStore.tenant);
+            evictedStore.crypto = null;
+        }
+    }
+
+    private void accessed(TenantStore store) {
+        synchronized (loadedStores) {
+            loadedStores.get(store.tenant);
+        }
+    }
+
+    private void evict(TenantStore store) {
+        synchronized (loadedStores) {
+            if (loadedStores.remove(store.tenant) != null) {
+                loadedBytes -= store.size;
+            }
+        }
+        store.crypto = null;
+    }
+
+    private static Map<String, String> getTenantFiles(Properties properties) {
+        Map<String, String> tenantFiles = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(TENANT_FILE_PREFIX)) {
+                tenantFiles.put(name.substring(TENANT_FILE_PREFIX.length()), properties.getProperty(name).trim());
+            }
+        }
+        return tenantFiles;
+    }
+
+    private static int getIntProperty(Properties properties, String key, int defaultValue)
+        throws WSSecurityException {
+        return (int) getLongProperty(properties, key, defaultValue);
+    }
+
+    private static long getLongProperty(Properties properties, String key, long defaultValue)
+        throws WSSecurityException {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
+                "empty", new Object[] {"Invalid value of " + key});
+        }
+    }
+
+    /**
+     * The lazily loaded Crypto of a tenant
+     */
+    /**
+     * A Crypto which delegates every lookup to the Crypto of a single tenant
+     */
+    private final class TenantScopedCrypto extends CryptoBase {
+        private final String tenant;
+
+        TenantScopedCrypto(String tenant) {
+            this.tenant = tenant;
+        }
+
+        private Crypto getCrypto() throws WSSecurityException {
+            return getTenantCrypto(tenant);
+        }
+
+        private String unqualify(String alias) {
+            if (alias != null && alias.startsWith(tenant) && alias.length() > tenant.length()
+                && alias.charAt(tenant.length()) == TENANT_SEPARATOR) {
+                return alias.substring(tenant.length() + 1);
+            }
+            return alias;
+        }
+
+        @Override
+        public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+            if (cryptoType != null && cryptoType.getType() == CryptoType.TYPE.ALIAS) {
+                CryptoType aliasType = new CryptoType(CryptoType.TYPE.ALIAS);
+                aliasType.setAlias(unqualify(cryptoType.getAlias()));
+                cryptoType = aliasType;
+            }
+            return getCrypto().getX509Certificates(cryptoType);
+        }
+
+        @Override
+        public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+            return getCrypto().getX509Identifier(cert);
+        }
+
+        @Override
+        public String getDefaultX509Identifier() throws WSSecurityException {
+            return getCrypto().getDefaultX509Identifier();
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(
+            X509Certificate certificate, CallbackHandler callbackHandler
+        ) throws WSSecurityException {
+            return getCrypto().getPrivateKey(certificate, callbackHandler);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(
+            PublicKey publicKey, CallbackHandler callbackHandler
+        ) throws WSSecurityException {
+            return getCrypto().getPrivateKey(publicKey, callbackHandler);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+            return getCrypto().getPrivateKey(unqualify(identifier), password);
+        }
+
+        @Override
+        public void verifyTrust(
+            X509Certificate[] certs, boolean enableRevocation,
+            Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+        ) throws WSSecurityException {
+            getCrypto().verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+        }
+
+        @Override
+        public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+            getCrypto().verifyTrust(publicKey);
+        }
+    }
+
+    private final class TenantStore {
+        private final String tenant;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Crypto crypto;
+        private volatile boolean indexed;
+        private long size;
+
+        TenantStore(String tenant) {
+            this.tenant = tenant;
+        }
+
+        Crypto getCrypto() throws WSSecurityException {
+            Crypto loadedCrypto = crypto;
+            if (loadedCrypto != null) {
+                accessed(this);
+                return loadedCrypto;
+            }
+            long loadedSize;
+            lock.lock();
+            try {
+                loadedCrypto = crypto;
+                if (loadedCrypto != null) {
+                    accessed(this);
+                    return loadedCrypto;
+                }
+                LOG.debug("Loading the Crypto of tenant {}", tenant);
+                loadedCrypto = loader.loadCrypto(tenant);
+                if (loadedCrypto == null) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                        "empty", new Object[] {"No Crypto for tenant " + tenant});
+                }
+                if (!indexed) {
+                    indexed = indexCrypto(tenant, loadedCrypto);
+                }
+                loadedSize = estimateSize(loadedCrypto);
+                size = loadedSize;
+                crypto = loadedCrypto;
+            } finally {
+                lock.unlock();
+            }
+            loaded(this, loadedSize);
+            return loadedCrypto;
+        }
+    }
+}
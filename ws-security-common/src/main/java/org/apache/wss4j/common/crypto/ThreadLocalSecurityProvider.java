@@ -27,23 +27,40 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * A Provider which delegates to the Provider set for the current thread. The delegating methods are not
+ * synchronized, as the delegates synchronize themselves: a shared monitor would serialize the provider
+ * lookups of all threads, and pin the carrier threads of virtual threads.
+ */
 public final class ThreadLocalSecurityProvider extends Provider {
 
     private static final long serialVersionUID = 3556396671069994931L;
     private static final String NAME = "TLSP";
     private static final ThreadLocal<Provider> PROVIDER = new ThreadLocal<>();
-    private static boolean installed = false;
-
-    public static synchronized void install() {
-        Security.insertProviderAt(new ThreadLocalSecurityProvider(),
-                Security.getProviders().length);
-        installed = true;
+    private static final ReentrantLock INSTALL_LOCK = new ReentrantLock();
+    private static volatile boolean installed = false;
+
+    public static void install() {
+        INSTALL_LOCK.lock();
+        try {
+            Security.insertProviderAt(new ThreadLocalSecurityProvider(),
+                    Security.getProviders().length);
+            installed = true;
+        } finally {
+            INSTALL_LOCK.unlock();
+        }
     }
 
-    public static synchronized void uninstall() {
-        Security.removeProvider(NAME);
-        installed = false;
+    public static void uninstall() {
+        INSTALL_LOCK.lock();
+        try {
+            Security.removeProvider(NAME);
+            installed = false;
+        } finally {
+            INSTALL_LOCK.unlock();
+        }
     }
 
     public static boolean isInstalled() {
@@ -67,7 +84,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized void clear() {
+    public void clear() {
         Provider p = getProvider();
         if (p != null) {
             p.clear();
@@ -75,7 +92,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized void load(InputStream inStream) throws IOException {
+    public void load(InputStream inStream) throws IOException {
         Provider p = getProvider();
         if (p != null) {
             p.load(inStream);
@@ -83,7 +100,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized void putAll(Map<?, ?> t) {
+    public void putAll(Map<?, ?> t) {
         Provider p = getProvider();
         if (p != null) {
             p.putAll(t);
@@ -91,7 +108,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Set<Map.Entry<Object, Object>> entrySet() {
+    public Set<Map.Entry<Object, Object>> entrySet() {
         Provider p = getProvider();
         if (p != null) {
             return p.entrySet();
@@ -121,7 +138,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Object put(Object key, Object value) {
+    public Object put(Object key, Object value) {
         Provider p = getProvider();
         if (p != null) {
             return p.put(key, value);
@@ -131,7 +148,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Object remove(Object key) {
+    public Object remove(Object key) {
         Provider p = getProvider();
         if (p != null) {
             return p.remove(key);
@@ -181,7 +198,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Service getService(String type, String algorithm) {
+    public Service getService(String type, String algorithm) {
         Provider p = getProvider();
         if (p != null) {
             return p.getService(type, algorithm);
@@ -191,7 +208,7 @@ public final class ThreadLocalSecurityProvider extends Provider {
     }
 
     @Override
-    public synchronized Set<Service> getServices() {
+    public Set<Service> getServices() {
         Provider p = getProvider();
         if (p != null) {
             return p.getServices();
@@ -25,6 +25,7 @@ import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.security.Provider;
 import java.security.Security;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.wss4j.common.util.Loader;
 import org.apache.xml.security.utils.I18n;
@@ -53,7 +54,9 @@ public final class WSProviderConfig {
      * initialized.  This flag prevents repeated and unnecessary calls
      * to static initialization code at construction time.
      */
-    private static boolean staticallyInitialized;
+    private static volatile boolean staticallyInitialized;
+
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
 
     private static boolean santuarioProviderAdded;
     private static boolean bcProviderAdded;
@@ -63,79 +66,100 @@ public final class WSProviderConfig {
         // complete
     }
 
-    public static synchronized void init() {
-        if (!staticallyInitialized) {
-            if (addJceProviders) {
-                initializeResourceBundles();
-                setXmlSecIgnoreLineBreak();
-                AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-                    public Boolean run() {
-                        addXMLDSigRIInternal();
-                        return true;
-                    }
-                });
+    public static void init() {
+        if (staticallyInitialized) {
+            return;
+        }
+        INIT_LOCK.lock();
+        try {
+            if (!staticallyInitialized) {
+                if (addJceProviders) {
+                    initializeResourceBundles();
+                    setXmlSecIgnoreLineBreak();
+                    AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                        public Boolean run() {
+                            addXMLDSigRIInternal();
+                            return true;
+                        }
+                    });
 
-                santuarioProviderAdded = true;
-                bcProviderAdded = false;
-                tlProviderAdded = false;
+                    santuarioProviderAdded = true;
+                    bcProviderAdded = false;
+                    tlProviderAdded = false;
+                }
+                staticallyInitialized = true;
             }
-            staticallyInitialized = true;
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
-    public static synchronized void init(boolean addXMLDSigRIInternalProv, boolean addBCProv, boolean addTLProv) {
-        if (!staticallyInitialized) {
-            initializeResourceBundles();
-            setXmlSecIgnoreLineBreak();
-            santuarioProviderAdded = addXMLDSigRIInternalProv;
-            if (addXMLDSigRIInternalProv) {
-                AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-                    public Boolean run() {
-                        addXMLDSigRIInternal();
-                        return true;
-                    }
-                });
-            }
+    public static void init(boolean addXMLDSigRIInternalProv, boolean addBCProv, boolean addTLProv) {
+        if (staticallyInitialized) {
+            return;
+        }
+        INIT_LOCK.lock();
+        try {
+            if (!staticallyInitialized) {
+                initializeResourceBundles();
+                setXmlSecIgnoreLineBreak();
+                santuarioProviderAdded = addXMLDSigRIInternalProv;
+                if (addXMLDSigRIInternalProv) {
+                    AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                        public Boolean run() {
+                            addXMLDSigRIInternal();
+                            return true;
+                        }
+                    });
+                }
 
-            bcProviderAdded = addBCProv;
-            if (addBCProv) {
-                AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-                    public Boolean run() {
-                        addJceProvider("BC", "org.bouncycastle.jce.provider.BouncyCastleProvider");
-                        return true;
-                    }
-                });
-            }
+                bcProviderAdded = addBCProv;
+                if (addBCProv) {
+                    AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                        public Boolean run() {
+                            addJceProvider("BC", "org.bouncycastle.jce.provider.BouncyCastleProvider");
+                            return true;
+                        }
+                    });
+                }
 
-            tlProviderAdded = addTLProv;
-            if (addTLProv) {
-                AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-                    public Boolean run() {
-                        ThreadLocalSecurityProvider.install();
-                        return true;
-                    }
-                });
+                tlProviderAdded = addTLProv;
+                if (addTLProv) {
+                    AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                        public Boolean run() {
+                            ThreadLocalSecurityProvider.install();
+                            return true;
+                        }
+                    });
+                }
+                staticallyInitialized = true;
             }
-            staticallyInitialized = true;
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
-    public static synchronized void cleanUp() {
-        if (staticallyInitialized) {
-            if (santuarioProviderAdded) {
-                Security.removeProvider("ApacheXMLDSig");
-                santuarioProviderAdded = false;
-            }
-            if (bcProviderAdded) {
-                Security.removeProvider("BC");
-                bcProviderAdded = false;
-            }
-            if (tlProviderAdded) {
-                Security.removeProvider("TLSP");
-                tlProviderAdded = false;
-            }
+    public static void cleanUp() {
+        INIT_LOCK.lock();
+        try {
+            if (staticallyInitialized) {
+                if (santuarioProviderAdded) {
+                    Security.removeProvider("ApacheXMLDSig");
+                    santuarioProviderAdded = false;
+                }
+                if (bcProviderAdded) {
+                    Security.removeProvider("BC");
+                    bcProviderAdded = false;
+                }
+                if (tlProviderAdded) {
+                    Security.removeProvider("TLSP");
+                    tlProviderAdded = false;
+                }
 
-            staticallyInitialized = false;
+                staticallyInitialized = false;
+            }
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
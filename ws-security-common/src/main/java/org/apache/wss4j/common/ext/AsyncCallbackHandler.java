@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.ext;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+/**
+ * A CallbackHandler which handles the Callbacks asynchronously, e.g. by looking up a password
+ * with a non-blocking call to a remote store. WSS4J calls the handle method, which waits for the
+ * Callbacks to be handled. When the security header is processed with
+ * WSSecurityEngine.processSecurityHeaderAsync, it waits on a thread of the supplied Executor, and
+ * not on the thread which received the message.
+ */
+public interface AsyncCallbackHandler extends CallbackHandler {
+
+    /**
+     * Handle the Callbacks asynchronously.
+     * @param callbacks the Callbacks to handle
+     * @return a CompletionStage which completes once the Callbacks are handled, or exceptionally with
+     * an IOException or UnsupportedCallbackException
+     */
+    CompletionStage<Void> handleAsync(Callback[] callbacks);
+
+    @Override
+    default void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        try {
+            handleAsync(callbacks).toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof UnsupportedCallbackException) {
+                throw (UnsupportedCallbackException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
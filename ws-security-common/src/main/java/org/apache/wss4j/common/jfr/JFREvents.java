@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Flight Recorder implementations of the WSS4J events. This is the only class that refers to
+ * the jdk.jfr module, and it is only loaded by {@link SecurityEvents} once that module is known
+ * to be available.
+ */
+final class JFREvents {
+
+    private JFREvents() {
+        // complete
+    }
+
+    static DecryptionEvent decryption() {
+        return new Decryption();
+    }
+
+    static ProcessorEvent processor() {
+        return new Processor();
+    }
+
+    static ReplayCacheEvent replayCache() {
+        return new ReplayCache();
+    }
+
+    static SecurityHeaderEvent securityHeader() {
+        return new SecurityHeader();
+    }
+
+    static TrustVerificationEvent trustVerification() {
+        return new TrustVerification();
+    }
+
+    @Name("org.apache.wss4j.Decryption")
+    @Label("Decryption")
+    @Category({"Apache WSS4J"})
+    @Description("Decryption of an EncryptedData element")
+    @StackTrace(false)
+    static class Decryption extends Event implements DecryptionEvent {
+
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Reference")
+        String reference;
+
+        @DataAmount
+        @Label("Cipher Text Size")
+        @Description("Estimated from the length of the base64 encoded CipherValue, 0 for attachments")
+        long bytes;
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public void setReference(String reference) {
+            this.reference = reference;
+        }
+
+        public void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    @Name("org.apache.wss4j.Processor")
+    @Label("Security Header Element")
+    @Category({"Apache WSS4J"})
+    @Description("Processing of a single element of an inbound security header")
+    @StackTrace(false)
+    static class Processor extends Event implements ProcessorEvent {
+
+        @Label("Token Type")
+        String tokenType;
+
+        @Label("Namespace")
+        String namespace;
+
+        @Label("Processor")
+        String processor;
+
+        public void setTokenType(String tokenType) {
+            this.tokenType = tokenType;
+        }
+
+        public void setNamespace(String namespace) {
+            this.namespace = namespace;
+        }
+
+        public void setProcessor(String processor) {
+            this.processor = processor;
+        }
+    }
+
+    @Name("org.apache.wss4j.ReplayCache")
+    @Label("Replay Cache")
+    @Category({"Apache WSS4J"})
+    @Description("An operation on a ReplayCache")
+    @StackTrace(false)
+    static class ReplayCache extends Event implements ReplayCacheEvent {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Cache")
+        String cache;
+
+        @Label("Cache Hit")
+        boolean hit;
+
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        public void setCache(String cache) {
+            this.cache = cache;
+        }
+
+        public void setHit(boolean hit) {
+            this.hit = hit;
+        }
+    }
+
+    @Name("org.apache.wss4j.SecurityHeader")
+    @Label("Security Header")
+    @Category({"Apache WSS4J"})
+    @Description("Processing of a complete inbound or creation of a complete outbound security header")
+    @StackTrace(false)
+    static class SecurityHeader extends Event implements SecurityHeaderEvent {
+
+        @Label("Direction")
+        String direction;
+
+        @Label("Streaming")
+        boolean streaming;
+
+        @Label("Actor")
+        String actor;
+
+        @Label("Security Header Elements")
+        int elements;
+
+        public void setDirection(String direction) {
+            this.direction = direction;
+        }
+
+        public void setStreaming(boolean streaming) {
+            this.streaming = streaming;
+        }
+
+        public void setActor(String actor) {
+            this.actor = actor;
+        }
+
+        public void setElements(int elements) {
+            this.elements = elements;
+        }
+    }
+
+    @Name("org.apache.wss4j.TrustVerification")
+    @Label("Trust Verification")
+    @Category({"Apache WSS4J"})
+    @Description("Verification of the trust in a certificate chain")
+    @StackTrace(false)
+    static class TrustVerification extends Event implements TrustVerificationEvent {
+
+        @Label("Subject")
+        String subject;
+
+        @Label("Certificates")
+        int certificates;
+
+        @Label("Revocation Enabled")
+        boolean revocation;
+
+        @Label("Trusted")
+        boolean trusted;
+
+        public void setSubject(String subject) {
+            this.subject = subject;
+        }
+
+        public void setCertificates(int certificates) {
+            this.certificates = certificates;
+        }
+
+        public void setRevocation(boolean revocation) {
+            this.revocation = revocation;
+        }
+
+        public void setTrusted(boolean trusted) {
+            this.trusted = trusted;
+        }
+    }
+}
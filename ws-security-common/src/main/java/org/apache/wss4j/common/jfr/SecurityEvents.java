@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.jfr;
+
+/**
+ * Creates the Flight Recorder events of WSS4J. The jdk.jfr module is an optional dependency: whether
+ * it can be used is checked once, and without it every factory method returns an event that is never
+ * enabled and records nothing.
+ */
+public final class SecurityEvents {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SecurityEvents.class);
+
+    private static final boolean JFR_AVAILABLE = isJFRAvailable();
+
+    private static final NoOpEvent NO_OP_EVENT = new NoOpEvent();
+
+    private SecurityEvents() {
+        // complete
+    }
+
+    /**
+     * @return whether the events are backed by the Flight Recorder
+     */
+    public static boolean isAvailable() {
+        return JFR_AVAILABLE;
+    }
+
+    public static DecryptionEvent decryption() {
+        return JFR_AVAILABLE ? JFREvents.decryption() : NO_OP_EVENT;
+    }
+
+    public static ProcessorEvent processor() {
+        return JFR_AVAILABLE ? JFREvents.processor() : NO_OP_EVENT;
+    }
+
+    public static ReplayCacheEvent replayCache() {
+        return JFR_AVAILABLE ? JFREvents.replayCache() : NO_OP_EVENT;
+    }
+
+    public static SecurityHeaderEvent securityHeader() {
+        return JFR_AVAILABLE ? JFREvents.securityHeader() : NO_OP_EVENT;
+    }
+
+    public static TrustVerificationEvent trustVerification() {
+        return JFR_AVAILABLE ? JFREvents.trustVerification() : NO_OP_EVENT;
+    }
+
+    private static boolean isJFRAvailable() {
+        if (!ModuleLayer.boot().findModule("jdk.jfr").isPresent()) {
+            LOG.debug("The jdk.jfr module is not available, no Flight Recorder events are recorded");
+            return false;
+        }
+        try {
+            // in an OSGi container the optional import of jdk.jfr may still be unresolved
+            Class.forName("jdk.jfr.Event", false, SecurityEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("The jdk.jfr module can not be loaded, no Flight Recorder events are recorded", e);
+            return false;
+        }
+    }
+
+    private static final class NoOpEvent implements DecryptionEvent, ProcessorEvent, ReplayCacheEvent,
+        SecurityHeaderEvent, TrustVerificationEvent {
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void begin() {
+            // no-op
+        }
+
+        @Override
+        public boolean shouldCommit() {
+            return false;
+        }
+
+        @Override
+        public void commit() {
+            // no-op
+        }
+
+        @Override
+        public void setAlgorithm(String algorithm) {
+            // no-op
+        }
+
+        @Override
+        public void setReference(String reference) {
+            // no-op
+        }
+
+        @Override
+        public void setBytes(long bytes) {
+            // no-op
+        }
+
+        @Override
+        public void setTokenType(String tokenType) {
+            // no-op
+        }
+
+        @Override
+        public void setNamespace(String namespace) {
+            // no-op
+        }
+
+        @Override
+        public void setProcessor(String processor) {
+            // no-op
+        }
+
+        @Override
+        public void setOperation(String operation) {
+            // no-op
+        }
+
+        @Override
+        public void setCache(String cache) {
+            // no-op
+        }
+
+        @Override
+        public void setHit(boolean hit) {
+            // no-op
+        }
+
+        @Override
+        public void setDirection(String direction) {
+            // no-op
+        }
+
+        @Override
+        public void setStreaming(boolean streaming) {
+            // no-op
+        }
+
+        @Override
+        public void setActor(String actor) {
+            // no-op
+        }
+
+        @Override
+        public void setElements(int elements) {
+            // no-op
+        }
+
+        @Override
+        public void setSubject(String subject) {
+            // no-op
+        }
+
+        @Override
+        public void setCertificates(int certificates) {
+            // no-op
+        }
+
+        @Override
+        public void setRevocation(boolean revocation) {
+            // no-op
+        }
+
+        @Override
+        public void setTrusted(boolean trusted) {
+            // no-op
+        }
+    }
+}
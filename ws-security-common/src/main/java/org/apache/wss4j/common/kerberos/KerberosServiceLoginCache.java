@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.kerberos;
+
+import java.io.Closeable;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * A cache of the JAAS logins of a Kerberos service, so that a service which validates inbound Kerberos
+ * tokens performs a single JAAS login (and keytab read) per JAAS context name and service principal,
+ * rather than one per token. The cache can be shared between threads and validators.
+ *
+ * A login is renewed when it reaches the configured maximum lifetime (one hour by default), which also
+ * bounds the time it takes to pick up a changed keytab, or when a Kerberos ticket obtained by the login
+ * is about to expire (within the renewal window, one minute by default) or has been destroyed. The
+ * Subject of a replaced login is not logged out, as other threads might still be validating a token
+ * with it.
+ */
+public class KerberosServiceLoginCache implements Closeable {
+
+    public static final long DEFAULT_MAX_LIFETIME = 60L * 60L;
+    public static final long DEFAULT_RENEWAL_WINDOW = 60L;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KerberosServiceLoginCache.class);
+
+    private final long maxLifetimeMillis;
+    private final long renewalWindowMillis;
+    private final Map<String, LoginHolder> logins = new ConcurrentHashMap<>();
+
+    public KerberosServiceLoginCache() {
+        this(DEFAULT_MAX_LIFETIME, DEFAULT_RENEWAL_WINDOW);
+    }
+
+    /**
+     * @param maxLifetime the maximum number of seconds a login is used for
+     * @param renewalWindow the number of seconds before the expiry of a Kerberos ticket at which the
+     * login is renewed
+     */
+    public KerberosServiceLoginCache(long maxLifetime, long renewalWindow) {
+        if (maxLifetime <= 0) {
+            throw new IllegalArgumentException("maxLifetime must be positive");
+        }
+        if (renewalWindow < 0) {
+            throw new IllegalArgumentException("renewalWindow must not be negative");
+        }
+        this.maxLifetimeMillis = maxLifetime * 1000L;
+        this.renewalWindowMillis = renewalWindow * 1000L;
+    }
+
+    /**
+     * Get the Subject of a login for the given JAAS context name and service name, logging in if there
+     * is no valid login cached.
+     * @param contextName the JAAS Login context name to use
+     * @param serviceName the service name the login is used for. It can be null.
+     * @param callbackHandler the CallbackHandler to use with the LoginContext. It can be null.
+     * @return the Subject of the login
+     * @throws LoginException if the login fails
+     */
+    public Subject getSubject(
+        String contextName, String serviceName, CallbackHandler callbackHandler
+    ) throws LoginException {
+        LoginHolder holder =
+            logins.computeIfAbsent(createCacheKey(contextName, serviceName), k -> new LoginHolder());
+
+        CachedLogin login = holder.login;
+        if (login != null && !login.isRenewalRequired()) {
+            return login.subject;
+        }
+
+        // Only one thread logs in, the others wait for its login
+        holder.lock.lock();
+        try {
+            login = holder.login;
+            if (login == null || login.isRenewalRequired()) {
+                LOG.debug("Logging in to JAAS context {} for service {}", contextName, serviceName);
+                login = login(contextName, callbackHandler);
+                holder.login = login;
+            }
+            return login.subject;
+        } finally {
+            holder.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the login for the given JAAS context name and service name, e.g. after a keytab was
+     * replaced, so that the next call to getSubject logs in again.
+     * @param contextName the JAAS Login context name
+     * @param serviceName the service name the login is used for. It can be null.
+     */
+    public void invalidate(String contextName, String serviceName) {
+        logins.remove(createCacheKey(contextName, serviceName));
+    }
+
+    public int size() {
+        int size = 0;
+        for (LoginHolder holder : logins.values()) {
+            if (holder.login != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private CachedLogin login(String contextName, CallbackHandler callbackHandler) throws LoginException {
+        LoginContext loginContext = null;
+        if (callbackHandler != null) {
+            loginContext = new LoginContext(contextName, callbackHandler);
+        } else {
+            loginContext = new LoginContext(contextName);
+        }
+        loginContext.login();
+
+        Subject subject = loginContext.getSubject();
+        long now = System.currentTimeMillis();
+        long renewalTime = now + maxLifetimeMillis;
+        for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+            Date endTime = ticket.getEndTime();
+            if (endTime != null) {
+                long ticketRenewalTime = endTime.getTime() - renewalWindowMillis;
+                if (ticketRenewalTime <= now) {
+                    // The ticket lifetime is shorter than the renewal window
+                    ticketRenewalTime = endTime.getTime();
+                }
+                renewalTime = Math.min(renewalTime, ticketRenewalTime);
+            }
+        }
+        return new CachedLogin(loginContext, subject, renewalTime);
+    }
+
+    private static String createCacheKey(String contextName, String serviceName) {
+        // The JAAS context name can't contain a line break
+        return contextName + "\n" + (serviceName == null ? "" : serviceName);
+    }
+
+    /**
+     * Log out and remove all cached logins
+     */
+    @Override
+    public void close() {
+        for (LoginHolder holder : logins.values()) {
+            CachedLogin login = holder.login;
+            if (login != null) {
+                try {
+                    login.loginContext.logout();
+                } catch (LoginException ex) {
+                    LOG.debug(ex.getMessage(), ex);
+                }
+            }
+        }
+        logins.clear();
+    }
+
+    private static final class LoginHolder {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile CachedLogin login;
+    }
+
+    private static final class CachedLogin {
+        private final LoginContext loginContext;
+        private final Subject subject;
+        private final long renewalTime;
+
+        CachedLogin(LoginContext loginContext, Subject subject, long renewalTime) {
+            this.loginContext = loginContext;
+            this.subject = subject;
+            this.renewalTime = renewalTime;
+        }
+
+        boolean isRenewalRequired() {
+            if (System.currentTimeMillis() >= renewalTime) {
+                return true;
+            }
+            for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+                if (ticket.isDestroyed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
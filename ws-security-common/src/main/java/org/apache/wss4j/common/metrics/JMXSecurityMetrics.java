@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A SecurityMetrics implementation which aggregates the measurements in memory and publishes
+ * them as an MXBean, by default under "org.apache.wss4j:type=SecurityMetrics,name=&lt;name&gt;".
+ */
+public class JMXSecurityMetrics implements SecurityMetrics, SecurityMetricsMXBean {
+
+    public static final String OBJECT_NAME_PREFIX = "org.apache.wss4j:type=SecurityMetrics,name=";
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final Map<TimingType, ConcurrentMap<String, Timing>> timings = new EnumMap<>(TimingType.class);
+    private final LongAdder[] cryptoOperationCounts = newLongAdders(CryptoOperation.values().length);
+    private final LongAdder[] cryptoOperationBytes = newLongAdders(CryptoOperation.values().length);
+    private final LongAdder[] cacheHits = newLongAdders(CacheType.values().length);
+    private final LongAdder[] cacheMisses = newLongAdders(CacheType.values().length);
+
+    private MBeanServer mBeanServer;
+    private ObjectName objectName;
+
+    public JMXSecurityMetrics() {
+        for (TimingType timingType : TimingType.values()) {
+            timings.put(timingType, new ConcurrentHashMap<String, Timing>());
+        }
+    }
+
+    /**
+     * Registers this instance in the platform MBeanServer
+     * @param name the value of the "name" key of the ObjectName
+     */
+    public synchronized void register(String name) throws WSSecurityException {
+        try {
+            register(ManagementFactory.getPlatformMBeanServer(), new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
+
+    public synchronized void register(MBeanServer mBeanServer, ObjectName objectName) throws WSSecurityException {
+        if (this.objectName != null) {
+            unregister();
+        }
+        try {
+            mBeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+        this.mBeanServer = mBeanServer;
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregister() throws WSSecurityException {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            mBeanServer = null;
+            objectName = null;
+        }
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordTiming(TimingType timingType, String name, long nanos) {
+        ConcurrentMap<String, Timing> timingsOfType = timings.get(timingType);
+        Timing timing = timingsOfType.get(name);
+        if (timing == null) {
+            timing = new Timing();
+            Timing existingTiming = timingsOfType.putIfAbsent(name, timing);
+            if (existingTiming != null) {
+                timing = existingTiming;
+            }
+        }
+        timing.count.increment();
+        timing.totalNanos.add(nanos);
+        timing.maxNanos.accumulate(nanos);
+    }
+
+    @Override
+    public void recordCryptoOperation(CryptoOperation cryptoOperation, long bytes) {
+        cryptoOperationCounts[cryptoOperation.ordinal()].increment();
+        if (bytes > 0) {
+            cryptoOperationBytes[cryptoOperation.ordinal()].add(bytes);
+        }
+    }
+
+    @Override
+    public void recordCacheAccess(CacheType cacheType, boolean hit) {
+        if (hit) {
+            cacheHits[cacheType.ordinal()].increment();
+        } else {
+            cacheMisses[cacheType.ordinal()].increment();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getTimingCounts() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<TimingType, ConcurrentMap<String, Timing>> entry : timings.entrySet()) {
+            for (Map.Entry<String, Timing> timingEntry : entry.getValue().entrySet()) {
+                values.put(entry.getKey().name() + "." + timingEntry.getKey(), timingEntry.getValue().count.sum());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getTimingAverageMillis() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<TimingType, ConcurrentMap<String, Timing>> entry : timings.entrySet()) {
+            for (Map.Entry<String, Timing> timingEntry : entry.getValue().entrySet()) {
+                long count = timingEntry.getValue().count.sum();
+                if (count > 0) {
+                    values.put(entry.getKey().name() + "." + timingEntry.getKey(),
+                               timingEntry.getValue().totalNanos.sum() / NANOS_PER_MILLI / count);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getTimingMaxMillis() {
+        Map<String, Double> values = new TreeMap<>();
+        for (Map.Entry<TimingType, ConcurrentMap<String, Timing>> entry : timings.entrySet()) {
+            for (Map.Entry<String, Timing> timingEntry : entry.getValue().entrySet()) {
+                values.put(entry.getKey().name() + "." + timingEntry.getKey(),
+                           timingEntry.getValue().maxNanos.get() / NANOS_PER_MILLI);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getCryptoOperationCounts() {
+        return toMap(CryptoOperation.values(), cryptoOperationCounts);
+    }
+
+    @Override
+    public Map<String, Long> getCryptoOperationBytes() {
+        return toMap(CryptoOperation.values(), cryptoOperationBytes);
+    }
+
+    @Override
+    public Map<String, Long> getCacheHits() {
+        return toMap(CacheType.values(), cacheHits);
+    }
+
+    @Override
+    public Map<String, Long> getCacheMisses() {
+        return toMap(CacheType.values(), cacheMisses);
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRatios() {
+        Map<String, Double> values = new TreeMap<>();
+        CacheType[] cacheTypes = CacheType.values();
+        for (int i = 0; i < cacheTypes.length; i++) {
+            long hits = cacheHits[i].sum();
+            long lookups = hits + cacheMisses[i].sum();
+            if (lookups > 0) {
+                values.put(cacheTypes[i].name(), (double) hits / lookups);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        for (ConcurrentMap<String, Timing> timingsOfType : timings.values()) {
+            timingsOfType.clear();
+        }
+        reset(cryptoOperationCounts);
+        reset(cryptoOperationBytes);
+        reset(cacheHits);
+        reset(cacheMisses);
+    }
+
+    private static LongAdder[] newLongAdders(int length) {
+        LongAdder[] longAdders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            longAdders[i] = new LongAdder();
+        }
+        return longAdders;
+    }
+
+    private static void reset(LongAdder[] longAdders) {
+        for (LongAdder longAdder : longAdders) {
+            longAdder.reset();
+        }
+    }
+
+    private static Map<String, Long> toMap(Enum<?>[] keys, LongAdder[] longAdders) {
+        Map<String, Long> values = new TreeMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            values.put(keys[i].name(), longAdders[i].sum());
+        }
+        return values;
+    }
+
+    private static final class Timing {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    }
+}
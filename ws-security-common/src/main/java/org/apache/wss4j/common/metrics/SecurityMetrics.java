@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.metrics;
+
+/**
+ * Receives timings, crypto operation counts and cache accesses from the DOM and StAX engines.
+ * Implementations must be thread-safe as one instance is typically shared by all requests.
+ *
+ * The engines only take timestamps and report measurements if isEnabled() returns true, so
+ * the default NONE instance costs a single (usually inlined) call per measuring point.
+ */
+public interface SecurityMetrics {
+
+    /**
+     * The instrumented units of work
+     */
+    enum TimingType {
+        /**
+         * A DOM Processor handling a security header element, named by the element local name
+         */
+        PROCESSOR,
+        /**
+         * A DOM Action creating a part of the security header, named by the Action class
+         */
+        ACTION,
+        /**
+         * A StAX security header handler processing a security header element, named by the element local name
+         */
+        INPUT_HANDLER
+    }
+
+    enum CryptoOperation {
+        SIGNATURE_CREATION,
+        SIGNATURE_VERIFICATION,
+        DIGEST,
+        KEY_WRAP,
+        KEY_UNWRAP,
+        ENCRYPTION,
+        DECRYPTION
+    }
+
+    enum CacheType {
+        /**
+         * A lookup in a ReplayCache, a hit is a replayed message
+         */
+        REPLAY,
+        PRIVATE_KEY,
+        CRYPTO,
+        /**
+         * A lookup in an EncryptedKeyCache, a hit saves the unwrap of an EncryptedKey
+         */
+        ENCRYPTED_KEY
+    }
+
+    /**
+     * Measures nothing
+     */
+    SecurityMetrics NONE = new SecurityMetrics() {
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordTiming(TimingType timingType, String name, long nanos) {
+            //nothing to do
+        }
+
+        @Override
+        public void recordCryptoOperation(CryptoOperation cryptoOperation, long bytes) {
+            //nothing to do
+        }
+
+        @Override
+        public void recordCacheAccess(CacheType cacheType, boolean hit) {
+            //nothing to do
+        }
+    };
+
+    /**
+     * @return true if measurements should be taken and reported
+     */
+    boolean isEnabled();
+
+    /**
+     * @param timingType the kind of the unit of work
+     * @param name the name of the unit of work
+     * @param nanos the time the unit of work took
+     */
+    void recordTiming(TimingType timingType, String name, long nanos);
+
+    /**
+     * @param cryptoOperation the operation which was executed once
+     * @param bytes the number of bytes processed by the operation or 0 if not applicable or unknown
+     */
+    void recordCryptoOperation(CryptoOperation cryptoOperation, long bytes);
+
+    /**
+     * @param cacheType the cache which was looked up
+     * @param hit true if the lookup found an entry
+     */
+    void recordCacheAccess(CacheType cacheType, boolean hit);
+}
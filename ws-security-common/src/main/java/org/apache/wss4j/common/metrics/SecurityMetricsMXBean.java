@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of JMXSecurityMetrics. Timings are keyed by "TimingType.name",
+ * e.g. "PROCESSOR.Signature", the other values by the name of the CryptoOperation resp. CacheType.
+ */
+public interface SecurityMetricsMXBean {
+
+    Map<String, Long> getTimingCounts();
+
+    Map<String, Double> getTimingAverageMillis();
+
+    Map<String, Double> getTimingMaxMillis();
+
+    Map<String, Long> getCryptoOperationCounts();
+
+    Map<String, Long> getCryptoOperationBytes();
+
+    Map<String, Long> getCacheHits();
+
+    Map<String, Long> getCacheMisses();
+
+    /**
+     * @return the ratio of hits to lookups of every cache which was looked up at least once
+     */
+    Map<String, Double> getCacheHitRatios();
+
+    /**
+     * Resets all values to zero
+     */
+    void reset();
+}
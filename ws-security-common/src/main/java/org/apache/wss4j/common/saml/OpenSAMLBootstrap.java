@@ -19,9 +19,21 @@
 
 package org.apache.wss4j.common.saml;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.xml.security.utils.JavaUtils;
 import org.opensaml.core.config.Configuration;
 import org.opensaml.core.xml.config.XMLConfigurationException;
 import org.opensaml.core.xml.config.XMLConfigurator;
@@ -67,6 +79,35 @@ public final class OpenSAMLBootstrap {
         "/saml2-xacml2-profile.xml",
     };
 
+    /**
+     * The configuration files of the providers WSS4J uses: SAML 1.1 and 2.0 assertions, XML Signature and
+     * XML Encryption, and XACML
+     */
+    private static final String[] WSS4J_XML_CONFIGS = {
+        "/default-config.xml",
+        "/schema-config.xml",
+        "/saml1-assertion-config.xml",
+        "/saml2-assertion-config.xml",
+        "/saml2-assertion-delegation-restriction-config.xml",
+        "/signature-config.xml",
+        "/wss4j-signature-config.xml",  // Override the default Base64 Binary Unmarshaller for X.509 Certificates
+        "/encryption-config.xml",
+        "/xacml20-context-config.xml",
+        "/xacml20-policy-config.xml",
+        "/xacml10-saml2-profile-config.xml",
+        "/xacml11-saml2-profile-config.xml",
+        "/xacml2-saml2-profile-config.xml",
+        "/xacml3-saml2-profile-config.xml",
+        "/saml2-xacml2-profile.xml",
+    };
+
+    private static final Pattern CLASS_NAME_PATTERN = Pattern.compile("className=\"([^\"]+)\"");
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(OpenSAMLBootstrap.class);
+
+    private static final ReentrantLock BOOTSTRAP_LOCK = new ReentrantLock();
+
     private OpenSAMLBootstrap() {
         // complete
     }
@@ -76,38 +117,122 @@ public final class OpenSAMLBootstrap {
      *
      * @throws XMLConfigurationException thrown if there is a problem initializing the OpenSAML library
      */
-    public static synchronized void bootstrap() throws XMLConfigurationException {
+    public static void bootstrap() throws XMLConfigurationException {
         bootstrap(true);
     }
 
-    public static synchronized void bootstrap(boolean includeXacml) throws XMLConfigurationException {
-        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    public static void bootstrap(boolean includeXacml) throws XMLConfigurationException {
+        bootstrap(includeXacml, false);
+    }
+
+    /**
+     * Initializes the OpenSAML library. The configuration files are read, and the provider classes they
+     * reference are loaded, in parallel. The providers are then registered in the order of the
+     * configuration files, as later files override earlier ones.
+     *
+     * @param includeXacml whether to register the XACML providers
+     * @param wss4jProvidersOnly whether to only register the providers WSS4J uses (SAML 1.1 and 2.0
+     * assertions, XML Signature and XML Encryption), rather than all OpenSAML providers, including
+     * those of SAML protocol messages and metadata
+     * @throws XMLConfigurationException thrown if there is a problem initializing the OpenSAML library
+     */
+    public static void bootstrap(boolean includeXacml, boolean wss4jProvidersOnly)
+        throws XMLConfigurationException {
+        BOOTSTRAP_LOCK.lock();
         try {
-            XMLConfigurator configurator = new XMLConfigurator();
+            bootstrapInternal(includeXacml, wss4jProvidersOnly);
+        } finally {
+            BOOTSTRAP_LOCK.unlock();
+        }
+    }
+
+    private static void bootstrapInternal(boolean includeXacml, boolean wss4jProvidersOnly)
+        throws XMLConfigurationException {
+        List<String> configs = new ArrayList<>();
+        for (String config : wss4jProvidersOnly ? WSS4J_XML_CONFIGS : XML_CONFIGS) {
+            if (includeXacml || !config.contains("xacml")) {
+                configs.add(config);
+            }
+        }
 
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        int threads = Math.min(configs.size() + 1, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "wss4j-opensaml-bootstrap");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
             Thread.currentThread().setContextClassLoader(XMLObjectProviderRegistrySupport.class.getClassLoader());
 
-            for (String config : XML_CONFIGS) {
-                if (includeXacml || !config.contains("xacml")) {
-                    //most are found in the Configuration.class classloader
-                    InputStream ins = Configuration.class.getResourceAsStream(config);  //NOPMD
-                    if (ins == null) {
-                        //some are from us
-                        ins = OpenSAMLBootstrap.class.getResourceAsStream(config);
-                    }
-                    if (ins != null) {
-                        configurator.load(ins);
-                        try {
-                            ins.close();
-                        } catch (IOException ex) { //NOPMD
-                            // Do nothing
-                        }
-                    }
+            Future<XMLConfigurator> configurator = executor.submit(() -> {
+                Thread.currentThread().setContextClassLoader(XMLObjectProviderRegistrySupport.class.getClassLoader());
+                return new XMLConfigurator();
+            });
+            List<Future<byte[]>> configData = new ArrayList<>(configs.size());
+            for (String config : configs) {
+                configData.add(executor.submit(() -> readConfig(config)));
+            }
+
+            for (Future<byte[]> data : configData) {
+                byte[] bytes = getResult(data);
+                if (bytes != null) {
+                    getResult(configurator).load(new ByteArrayInputStream(bytes));
                 }
             }
         } finally {
+            executor.shutdownNow();
             Thread.currentThread().setContextClassLoader(loader);
         }
     }
 
+    /**
+     * Read a configuration file, and load the provider classes it references
+     */
+    private static byte[] readConfig(String config) throws IOException {
+        //most are found in the Configuration.class classloader
+        InputStream ins = Configuration.class.getResourceAsStream(config);  //NOPMD
+        if (ins == null) {
+            //some are from us
+            ins = OpenSAMLBootstrap.class.getResourceAsStream(config);
+        }
+        if (ins == null) {
+            return null;
+        }
+
+        byte[] bytes = null;
+        try {
+            bytes = JavaUtils.getBytesFromStream(ins);
+        } finally {
+            ins.close();
+        }
+        ClassLoader loader = XMLObjectProviderRegistrySupport.class.getClassLoader();
+        Matcher matcher = CLASS_NAME_PATTERN.matcher(new String(bytes, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            try {
+                Class.forName(matcher.group(1), true, loader);
+            } catch (ClassNotFoundException | LinkageError ex) {
+                // The XMLConfigurator reports it
+                LOG.debug(ex.getMessage(), ex);
+            }
+        }
+        return bytes;
+    }
+
+    private static <T> T getResult(Future<T> future) throws XMLConfigurationException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new XMLConfigurationException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof XMLConfigurationException) {
+                throw (XMLConfigurationException)ex.getCause();
+            } else if (ex.getCause() instanceof Exception) {
+                throw new XMLConfigurationException((Exception)ex.getCause());
+            }
+            throw new XMLConfigurationException(ex);
+        }
+    }
+
 }
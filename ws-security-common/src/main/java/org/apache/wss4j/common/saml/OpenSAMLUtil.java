@@ -19,6 +19,8 @@
 
 package org.apache.wss4j.common.saml;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.xml.BasicParserPool;
@@ -63,25 +65,55 @@ public final class OpenSAMLUtil {
     private static XMLObjectBuilderFactory builderFactory;
     private static MarshallerFactory marshallerFactory;
     private static UnmarshallerFactory unmarshallerFactory;
-    private static boolean samlEngineInitialized = false;
+    private static Configuration configuration;
+    private static volatile boolean samlEngineInitialized = false;
+    private static volatile boolean defaultIncludeXacml = true;
+    private static volatile boolean defaultWss4jProvidersOnly = false;
+
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
 
     private OpenSAMLUtil() {
         // Complete
     }
 
+    /**
+     * Initialise the SAML library, if it is not initialised yet. This is called on the first use of the
+     * SAML library, see setBootstrapDefaults for how it is initialised.
+     */
+    public static void initSamlEngine() {
+        if (!samlEngineInitialized) {
+            initSamlEngine(defaultIncludeXacml, defaultWss4jProvidersOnly);
+        }
+    }
+
+    public static void initSamlEngine(boolean includeXacml) {
+        initSamlEngine(includeXacml, false);
+    }
+
     /**
      * Initialise the SAML library
+     *
+     * @param includeXacml whether to register the XACML providers
+     * @param wss4jProvidersOnly whether to only register the providers WSS4J uses, see OpenSAMLBootstrap
      */
-    public static synchronized void initSamlEngine() {
-        initSamlEngine(true);
+    public static void initSamlEngine(boolean includeXacml, boolean wss4jProvidersOnly) {
+        if (samlEngineInitialized) {
+            return;
+        }
+        INIT_LOCK.lock();
+        try {
+            initSamlEngineInternal(includeXacml, wss4jProvidersOnly);
+        } finally {
+            INIT_LOCK.unlock();
+        }
     }
 
-    public static synchronized void initSamlEngine(boolean includeXacml) {
+    private static void initSamlEngineInternal(boolean includeXacml, boolean wss4jProvidersOnly) {
         if (!samlEngineInitialized) {
             LOG.debug("Initializing the opensaml2 library...");
             WSProviderConfig.init();
 
-            Configuration configuration = new MapBasedConfiguration();
+            configuration = new MapBasedConfiguration();
             ConfigurationService.setConfiguration(configuration);
 
             providerRegistry = new XMLObjectProviderRegistry();
@@ -89,7 +121,7 @@ public final class OpenSAMLUtil {
                                    ConfigurationService.DEFAULT_PARTITION_NAME);
 
             try {
-                OpenSAMLBootstrap.bootstrap(includeXacml);
+                OpenSAMLBootstrap.bootstrap(includeXacml, wss4jProvidersOnly);
 
                 SAMLConfiguration samlConfiguration = new SAMLConfiguration();
 
@@ -119,6 +151,22 @@ public final class OpenSAMLUtil {
         }
     }
 
+    /**
+     * Set how the SAML library is initialised on its first use. This has no effect once it is initialised.
+     *
+     * @param includeXacml whether to register the XACML providers, true by default
+     * @param wss4jProvidersOnly whether to only register the providers WSS4J uses (SAML 1.1 and 2.0
+     * assertions, XML Signature and XML Encryption), rather than all OpenSAML providers, false by default
+     */
+    public static void setBootstrapDefaults(boolean includeXacml, boolean wss4jProvidersOnly) {
+        defaultIncludeXacml = includeXacml;
+        defaultWss4jProvidersOnly = wss4jProvidersOnly;
+    }
+
+    static Configuration getConfiguration() {
+        return configuration;
+    }
+
     private static void configureParserPool() throws Throwable {
         BasicParserPool pp = new BasicParserPool();
         pp.setMaxPoolSize(50);
@@ -132,6 +180,7 @@ public final class OpenSAMLUtil {
      * @return the configured ParserPool
      */
     public static ParserPool getParserPool() {
+        initSamlEngine();
         return providerRegistry.getParserPool();
     }
 
@@ -148,6 +197,7 @@ public final class OpenSAMLUtil {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
                                           new Object[] {"Error unmarshalling a SAML assertion"});
         }
+        initSamlEngine();
         Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(root);
         if (unmarshaller == null) {
             LOG.debug("Unable to find an unmarshaller for element: " + root.getLocalName());
@@ -191,6 +241,7 @@ public final class OpenSAMLUtil {
         Document doc,
         boolean signObject
     ) throws WSSecurityException {
+        initSamlEngine();
         Marshaller marshaller = marshallerFactory.getMarshaller(xmlObject);
         Element element = null;
         DocumentFragment frag = doc == null ? null : doc.createDocumentFragment();
@@ -277,6 +328,7 @@ public final class OpenSAMLUtil {
      */
     @SuppressWarnings("unchecked")
     public static Signature buildSignature() {
+        initSamlEngine();
         QName qName = Signature.DEFAULT_ELEMENT_NAME;
         XMLObjectBuilder<Signature> builder =
             (XMLObjectBuilder<Signature>)builderFactory.getBuilder(qName);
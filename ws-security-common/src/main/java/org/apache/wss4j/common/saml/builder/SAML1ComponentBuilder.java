@@ -37,7 +37,7 @@ import org.apache.wss4j.common.saml.bean.ConditionsBean;
 import org.apache.wss4j.common.saml.bean.KeyInfoBean;
 import org.apache.wss4j.common.saml.bean.SubjectBean;
 import org.apache.wss4j.common.saml.bean.SubjectLocalityBean;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -147,7 +147,7 @@ public final class SAML1ComponentBuilder {
         assertion.setVersion(SAMLVersion.VERSION_11);
         assertion.setIssuer(issuer);
         assertion.setIssueInstant(Instant.now()); // now
-        assertion.setID(IDGenerator.generateID("_"));
+        assertion.setID(SecureRandomPool.generateID("_"));
         return assertion;
     }
 
@@ -42,7 +42,7 @@ import org.apache.wss4j.common.saml.bean.ProxyRestrictionBean;
 import org.apache.wss4j.common.saml.bean.SubjectBean;
 import org.apache.wss4j.common.saml.bean.SubjectConfirmationDataBean;
 import org.apache.wss4j.common.saml.bean.SubjectLocalityBean;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -168,7 +168,7 @@ public final class SAML2ComponentBuilder {
         }
         Assertion assertion =
             assertionBuilder.buildObject(Assertion.DEFAULT_ELEMENT_NAME, Assertion.TYPE_NAME);
-        assertion.setID(IDGenerator.generateID("_"));
+        assertion.setID(SecureRandomPool.generateID("_"));
         assertion.setVersion(SAMLVersion.VERSION_20);
         assertion.setIssueInstant(Instant.now());
         return assertion;
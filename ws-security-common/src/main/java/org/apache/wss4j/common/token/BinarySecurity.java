@@ -21,7 +21,6 @@ package org.apache.wss4j.common.token;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.UUID;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
@@ -33,6 +32,8 @@ import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.common.util.DOMBase64Decoder;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -191,12 +192,7 @@ public class BinarySecurity {
         if (data != null) {
             return data;
         }
-        String text = XMLUtils.getElementText(element);
-        if (text == null) {
-            return new byte[0];
-        }
-
-        return org.apache.xml.security.utils.XMLUtils.decode(text);
+        return DOMBase64Decoder.decode(element);
     }
 
     /**
@@ -209,7 +205,7 @@ public class BinarySecurity {
             throw new IllegalArgumentException("data == null");
         }
         if (storeBytesInAttachment && attachmentCallbackHandler != null) {
-            final String attachmentId = "_" + UUID.randomUUID().toString();
+            final String attachmentId = SecureRandomPool.generateID("_");
             AttachmentUtils.storeBytesInAttachment(element, element.getOwnerDocument(), attachmentId,
                                                   data, attachmentCallbackHandler);
         } else {
@@ -219,6 +215,25 @@ public class BinarySecurity {
         }
     }
 
+    /**
+     * set the token information, where the Base-64 encoding of the data is already known.
+     *
+     * @param data
+     * @param encodedData the Base-64 encoded data
+     */
+    protected void setToken(byte[] data, String encodedData) throws WSSecurityException {
+        if (data == null) {
+            throw new IllegalArgumentException("data == null");
+        }
+        if (storeBytesInAttachment && attachmentCallbackHandler != null) {
+            setToken(data);
+        } else {
+            Text node = getFirstNode();
+            node.setData(encodedData);
+            setRawToken(data);
+        }
+    }
+
     /**
      * Set the raw token data, without Base-64 encoding it into the Element.
      */
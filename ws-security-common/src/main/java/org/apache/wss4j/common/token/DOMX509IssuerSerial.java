@@ -83,19 +83,36 @@ public final class DOMX509IssuerSerial {
             this.issuer = new X500Principal(issuer).getName();
         }
         this.serialNumber = serialNumber;
+        element = createElement(doc, this.issuer, serialNumber);
+    }
+
+    /**
+     * Constructor, using the issuer name and serial number of the given template.
+     */
+    public DOMX509IssuerSerial(Document doc, X509TokenTemplate template, boolean isCommaDelimited) {
+        if (isCommaDelimited) {
+            this.issuer = template.getCommaDelimitedIssuerName();
+        } else {
+            this.issuer = template.getIssuerName();
+        }
+        this.serialNumber = template.getSerialNumber();
+        element = createElement(doc, this.issuer, this.serialNumber);
+    }
 
-        element =
+    private static Element createElement(Document doc, String issuer, BigInteger serialNumber) {
+        Element issuerSerialElement =
             doc.createElementNS(WSS4JConstants.SIG_NS, "ds:X509IssuerSerial");
 
         Element issuerNameElement =
             doc.createElementNS(WSS4JConstants.SIG_NS, "ds:X509IssuerName");
-        issuerNameElement.appendChild(doc.createTextNode(this.issuer));
-        element.appendChild(issuerNameElement);
+        issuerNameElement.appendChild(doc.createTextNode(issuer));
+        issuerSerialElement.appendChild(issuerNameElement);
 
         Element serialNumberElement =
             doc.createElementNS(WSS4JConstants.SIG_NS, "ds:X509SerialNumber");
         serialNumberElement.appendChild(doc.createTextNode(serialNumber.toString()));
-        element.appendChild(serialNumberElement);
+        issuerSerialElement.appendChild(serialNumberElement);
+        return issuerSerialElement;
     }
 
 
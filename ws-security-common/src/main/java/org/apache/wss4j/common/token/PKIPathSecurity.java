@@ -94,6 +94,19 @@ public class PKIPathSecurity extends BinarySecurity {
         setToken(data);
     }
 
+    /**
+     * set the X509Certificate array of the given template, using its already encoded PKIPath.
+     *
+     * @param template
+     * @throws WSSecurityException
+     */
+    public void setX509Certificates(X509TokenTemplate template) throws WSSecurityException {
+        if (template == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
+        }
+        setToken(template.getPkiPathBytesInternal(), template.getEncodedPkiPath());
+    }
+
     public static String getType() {
         return PKI_TYPE;
     }
@@ -258,6 +258,50 @@ public class SecurityTokenReference {
         }
     }
 
+    /**
+     * Sets the KeyIdentifier Element as a X509 certificate, using the encoded certificate
+     * of the given template.
+     *
+     * @param template the template of the X509 certificate to be inserted as key identifier
+     */
+    public void setKeyIdentifier(X509TokenTemplate template) throws WSSecurityException {
+        Document doc = element.getOwnerDocument();
+        Text text = doc.createTextNode(template.getEncodedCertificate());
+        createKeyIdentifier(doc, X509_V3_TYPE, text, true);
+    }
+
+    /**
+     * Sets the KeyIdentifier Element as a X509 Subject-Key-Identifier (SKI), using the SKI
+     * of the given template.
+     *
+     * @param template the template of the X509 certificate to get the SKI
+     */
+    public void setKeyIdentifierSKI(X509TokenTemplate template) throws WSSecurityException {
+        //
+        // As per the 1.1 specification, SKI can only be used for a V3 certificate
+        //
+        if (template.getSKIValue() == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.UNSUPPORTED_SECURITY_TOKEN,
+                "invalidCertForSKI", new Object[] {template.getCertificate().getVersion()});
+        }
+
+        Document doc = element.getOwnerDocument();
+        Text text = doc.createTextNode(template.getSKIValue());
+        createKeyIdentifier(doc, SKI_URI, text, true);
+    }
+
+    /**
+     * Sets the KeyIdentifier Element as a Thumbprint, using the thumbprint of the given template.
+     *
+     * @param template the template of the X509 certificate to get the thumbprint
+     */
+    public void setKeyIdentifierThumb(X509TokenTemplate template) throws WSSecurityException {
+        Document doc = element.getOwnerDocument();
+        Text text = doc.createTextNode(template.getThumbprint());
+        createKeyIdentifier(doc, THUMB_URI, text, true);
+    }
+
     public void setKeyIdentifierEncKeySHA1(String value) throws WSSecurityException {
         Document doc = element.getOwnerDocument();
         Text text = doc.createTextNode(value);
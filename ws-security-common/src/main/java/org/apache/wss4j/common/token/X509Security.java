@@ -125,4 +125,18 @@ public class X509Security extends BinarySecurity {
             );
         }
     }
+
+    /**
+     * Sets the X509Certificate of the given template, using its already encoded data.
+     *
+     * @param template the template of the X509 certificate to store in the element
+     * @throws WSSecurityException
+     */
+    public void setX509Certificate(X509TokenTemplate template) throws WSSecurityException {
+        if (template == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
+        }
+        cachedCert = template.getCertificate();
+        setToken(template.getCertificateBytesInternal(), template.getEncodedCertificate());
+    }
 }
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.token;
+
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.CommaDelimiterRfc2253Name;
+import org.apache.wss4j.common.util.KeyUtils;
+
+/**
+ * The values which are written to a message to include or reference an X.509 certificate (chain),
+ * i.e. the (Base-64 encoded) certificate and PKIPath bytes of a BinarySecurityToken, and the SKI,
+ * thumbprint and issuer/serial number of a KeyIdentifier or X509IssuerSerial. They are computed once
+ * when the template is created, so that a sender which secures many messages with the same
+ * certificate can copy them into each message, see X509TokenTemplateCache.
+ *
+ * Instances are immutable.
+ */
+public final class X509TokenTemplate {
+
+    private final X509Certificate[] certificates;
+    private final byte[] certificateBytes;
+    private final String encodedCertificate;
+    private final byte[] pkiPathBytes;
+    private final String encodedPkiPath;
+    private final String skiValue;
+    private final String thumbprint;
+    private final String issuerName;
+    private final String commaDelimitedIssuerName;
+    private final BigInteger serialNumber;
+
+    /**
+     * Create a template for the given certificate chain.
+     * @param certs the certificate chain, the first certificate is the certificate of the token
+     * @param crypto the Crypto used to encode the PKIPath and to get the SKI bytes. If it is null,
+     * Merlin is used
+     */
+    public X509TokenTemplate(X509Certificate[] certs, Crypto crypto) throws WSSecurityException {
+        if (certs == null || certs.length == 0 || certs[0] == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noCert");
+        }
+        Crypto templateCrypto = crypto;
+        if (templateCrypto == null) {
+            templateCrypto = new Merlin();
+        }
+        certificates = certs.clone();
+        X509Certificate cert = certificates[0];
+
+        try {
+            certificateBytes = cert.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+        encodedCertificate = org.apache.xml.security.utils.XMLUtils.encodeToString(certificateBytes);
+
+        pkiPathBytes = templateCrypto.getBytesFromCertificates(certificates);
+        encodedPkiPath = org.apache.xml.security.utils.XMLUtils.encodeToString(pkiPathBytes);
+
+        // As per the 1.1 specification, SKI can only be used for a V3 certificate
+        if (cert.getVersion() == 3) {
+            skiValue = org.apache.xml.security.utils.XMLUtils.encodeToString(
+                templateCrypto.getSKIBytesFromCert(cert)
+            );
+        } else {
+            skiValue = null;
+        }
+
+        try {
+            thumbprint = org.apache.xml.security.utils.XMLUtils.encodeToString(
+                KeyUtils.generateDigest(certificateBytes)
+            );
+        } catch (WSSecurityException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        }
+
+        issuerName = new X500Principal(cert.getIssuerX500Principal().getName()).getName();
+        commaDelimitedIssuerName = new CommaDelimiterRfc2253Name().execute(issuerName);
+        serialNumber = cert.getSerialNumber();
+    }
+
+    /**
+     * Return the certificate of the token
+     */
+    public X509Certificate getCertificate() {
+        return certificates[0];
+    }
+
+    /**
+     * Return the certificate chain
+     */
+    public X509Certificate[] getCertificates() {
+        return certificates.clone();
+    }
+
+    /**
+     * Return the DER encoded certificate
+     */
+    public byte[] getCertificateBytes() {
+        return certificateBytes.clone();
+    }
+
+    /**
+     * Return the Base-64 encoded certificate, i.e. the text of an X509v3 BinarySecurityToken or
+     * KeyIdentifier
+     */
+    public String getEncodedCertificate() {
+        return encodedCertificate;
+    }
+
+    /**
+     * Return the PKIPath encoding of the certificate chain
+     */
+    public byte[] getPkiPathBytes() {
+        return pkiPathBytes.clone();
+    }
+
+    /**
+     * Return the Base-64 encoded PKIPath, i.e. the text of a X509PKIPathv1 BinarySecurityToken
+     */
+    public String getEncodedPkiPath() {
+        return encodedPkiPath;
+    }
+
+    /**
+     * Return the Base-64 encoded Subject Key Identifier, or null if the certificate is not a V3 certificate
+     */
+    public String getSKIValue() {
+        return skiValue;
+    }
+
+    /**
+     * Return the Base-64 encoded SHA-1 thumbprint of the certificate
+     */
+    public String getThumbprint() {
+        return thumbprint;
+    }
+
+    /**
+     * Return the RFC 2253 name of the issuer of the certificate
+     */
+    public String getIssuerName() {
+        return issuerName;
+    }
+
+    /**
+     * Return the RFC 2253 name of the issuer of the certificate, with a comma and space as the
+     * separator between the RDNs
+     */
+    public String getCommaDelimitedIssuerName() {
+        return commaDelimitedIssuerName;
+    }
+
+    /**
+     * Return the serial number of the certificate
+     */
+    public BigInteger getSerialNumber() {
+        return serialNumber;
+    }
+
+    byte[] getCertificateBytesInternal() {
+        return certificateBytes;
+    }
+
+    byte[] getPkiPathBytesInternal() {
+        return pkiPathBytes;
+    }
+}
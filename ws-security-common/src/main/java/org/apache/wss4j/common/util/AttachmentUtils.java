@@ -495,9 +495,13 @@ public final class AttachmentUtils {
                 int ivLen = JCEMapper.getIVLengthFromURI(encAlgo) / 8;
                 byte[] ivBytes = new byte[ivLen];
 
-                int read = super.in.read(ivBytes, 0, ivLen);
+                int read = 0;
                 while (read != ivLen) {
-                    read += super.in.read(ivBytes, read, ivLen - read);
+                    int count = super.in.read(ivBytes, read, ivLen - read);
+                    if (count < 0) {
+                        throw new EOFException("Encrypted data is shorter than the IV");
+                    }
+                    read += count;
                 }
 
                 AlgorithmParameterSpec paramSpec =
@@ -566,41 +570,10 @@ public final class AttachmentUtils {
         final InputStream attachmentInputStream;    //NOPMD
 
         if (complete) {
-            try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                OutputStreamWriter outputStreamWriter = new OutputStreamWriter(byteArrayOutputStream, StandardCharsets.US_ASCII)) {
-
-                Iterator<Map.Entry<String, String>> iterator = headers.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, String> next = iterator.next();
-                    String key = next.getKey();
-                    String value = next.getValue();
-                    //5.5.2 Encryption Processing Rules
-                    //When encryption includes MIME headers, only the headers listed in this specification
-                    //for the Attachment-Complete-Signature-Transform (Section 5.3.2) are to be included in
-                    //the encryption. If a header listed in the profile is present it MUST be included in
-                    //the encryption. If a header is not listed in this profile, then it MUST NOT be
-                    //included in the encryption.
-                    if (AttachmentUtils.MIME_HEADER_CONTENT_DESCRIPTION.equals(key)
-                        || AttachmentUtils.MIME_HEADER_CONTENT_DISPOSITION.equals(key)
-                        || AttachmentUtils.MIME_HEADER_CONTENT_ID.equals(key)
-                        || AttachmentUtils.MIME_HEADER_CONTENT_LOCATION.equals(key)
-                        || AttachmentUtils.MIME_HEADER_CONTENT_TYPE.equals(key)) {
-                        iterator.remove();
-                        outputStreamWriter.write(key);
-                        outputStreamWriter.write(':');
-                        outputStreamWriter.write(value);
-                        outputStreamWriter.write("\r\n");
-                    }
-                }
-                outputStreamWriter.write("\r\n");
-                outputStreamWriter.close();
-                attachmentInputStream = new MultiInputStream(
-                        new ByteArrayInputStream(byteArrayOutputStream.toByteArray()),
-                        attachment.getSourceStream()
-                );
-            } catch (IOException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, e);
-            }
+            attachmentInputStream = new MultiInputStream(
+                    new ByteArrayInputStream(getEncryptedMimeHeaders(headers)),
+                    attachment.getSourceStream()
+            );
         } else {
             attachmentInputStream = attachment.getSourceStream();
         }
@@ -611,6 +584,45 @@ public final class AttachmentUtils {
         return new MultiInputStream(ivInputStream, cipherInputStream);
     }
 
+    /**
+     * Remove the MIME headers which are encrypted with the attachment content from the headers argument,
+     * and return them in the form in which they are encrypted.
+     */
+    public static byte[] getEncryptedMimeHeaders(Map<String, String> headers) throws WSSecurityException {
+        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(byteArrayOutputStream, StandardCharsets.US_ASCII)) {
+
+            Iterator<Map.Entry<String, String>> iterator = headers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> next = iterator.next();
+                String key = next.getKey();
+                String value = next.getValue();
+                //5.5.2 Encryption Processing Rules
+                //When encryption includes MIME headers, only the headers listed in this specification
+                //for the Attachment-Complete-Signature-Transform (Section 5.3.2) are to be included in
+                //the encryption. If a header listed in the profile is present it MUST be included in
+                //the encryption. If a header is not listed in this profile, then it MUST NOT be
+                //included in the encryption.
+                if (AttachmentUtils.MIME_HEADER_CONTENT_DESCRIPTION.equals(key)
+                    || AttachmentUtils.MIME_HEADER_CONTENT_DISPOSITION.equals(key)
+                    || AttachmentUtils.MIME_HEADER_CONTENT_ID.equals(key)
+                    || AttachmentUtils.MIME_HEADER_CONTENT_LOCATION.equals(key)
+                    || AttachmentUtils.MIME_HEADER_CONTENT_TYPE.equals(key)) {
+                    iterator.remove();
+                    outputStreamWriter.write(key);
+                    outputStreamWriter.write(':');
+                    outputStreamWriter.write(value);
+                    outputStreamWriter.write("\r\n");
+                }
+            }
+            outputStreamWriter.write("\r\n");
+            outputStreamWriter.close();
+            return byteArrayOutputStream.toByteArray();
+        } catch (IOException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, e);
+        }
+    }
+
     public static byte[] getBytesFromAttachment(
         String xopUri, CallbackHandler attachmentCallbackHandler, boolean removeAttachments
     ) throws WSSecurityException {
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The pull counterpart of CRLFOutputStream: it converts every CR, LF and CRLF line ending of
+ * the underlying stream to CRLF as it is read.
+ */
+public class CRLFInputStream extends FilterInputStream {
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final byte[] buffer = new byte[8192];
+    private int bufferPos;
+    private int bufferLen;
+    private boolean lastByteCR = false;
+    private boolean pendingLF = false;
+
+    public CRLFInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read;
+        do {
+            read = read(b, 0, 1);
+        } while (read == 0);
+        return read == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (pendingLF) {
+            b[off + n++] = LF;
+            pendingLF = false;
+        }
+        while (n < len) {
+            if (bufferPos == bufferLen) {
+                if (n > 0) {
+                    break;
+                }
+                int read = in.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    return -1;
+                }
+                bufferPos = 0;
+                bufferLen = read;
+                continue;
+            }
+            byte c = buffer[bufferPos++];
+            if (c == CR || c == LF && !lastByteCR) {
+                b[off + n++] = CR;
+                if (n < len) {
+                    b[off + n++] = LF;
+                } else {
+                    pendingLF = true;
+                }
+                lastByteCR = c == CR;
+            } else if (c == LF) {
+                // the LF of a CRLF was already written with the CR
+                lastByteCR = false;
+            } else {
+                b[off + n++] = c;
+                lastByteCR = false;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] b = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(b, 0, (int) Math.min(n - skipped, b.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (pendingLF ? 1 : 0) + bufferLen - bufferPos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // mark is not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Decodes the Base64 encoded text content of an Element directly from its Text (and CDATA) child
+ * nodes, without concatenating them into a String first. The decoded bytes are written in chunks to
+ * an OutputStream or a ByteBuffer, so that e.g. a large CipherValue can be fed into a Cipher as it is
+ * decoded.
+ *
+ * The decoding follows the MIME decoder of java.util.Base64, which is what
+ * org.apache.xml.security.utils.XMLUtils.decode uses: characters outside of the Base64 alphabet are
+ * ignored, padding is optional, and an invalid ending throws an IllegalArgumentException.
+ */
+public final class DOMBase64Decoder {
+
+    private static final int CHUNK_SIZE = 3 * 1024;
+
+    private static final int INVALID = -1;
+    private static final int PADDING = -2;
+
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = i;
+        }
+        DECODE_TABLE['='] = PADDING;
+    }
+
+    private DOMBase64Decoder() {
+        // complete
+    }
+
+    /**
+     * Get the number of bytes the text content of the Element decodes to, without decoding it
+     * @param element the Element containing Base64 encoded text
+     * @return the number of decoded bytes
+     */
+    public static int getDecodedLength(Element element) {
+        long characters = 0;
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (isText(node)) {
+                String data = ((Text)node).getData();
+                for (int i = 0; i < data.length(); i++) {
+                    int value = decode(data.charAt(i));
+                    if (value == PADDING) {
+                        return (int)(characters * 3 / 4);
+                    } else if (value != INVALID) {
+                        characters++;
+                    }
+                }
+            }
+        }
+        return (int)(characters * 3 / 4);
+    }
+
+    /**
+     * Decode the text content of the Element
+     * @param element the Element containing Base64 encoded text
+     * @return the decoded bytes, an empty array if the Element has no text content
+     * @throws IllegalArgumentException if the text is not valid Base64
+     */
+    public static byte[] decode(Element element) {
+        byte[] bytes = new byte[getDecodedLength(element)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        decode(element, buffer);
+        if (buffer.position() != bytes.length) {
+            return Arrays.copyOf(bytes, buffer.position());
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode the text content of the Element into a ByteBuffer
+     * @param element the Element containing Base64 encoded text
+     * @param buffer the ByteBuffer to write to, see getDecodedLength for the required capacity
+     * @return the number of decoded bytes
+     * @throws IllegalArgumentException if the text is not valid Base64
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public static int decode(Element element, final ByteBuffer buffer) {
+        try {
+            return decode(element, new OutputStream() {
+                @Override
+                public void write(int b) {
+                    buffer.put((byte)b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    buffer.put(b, off, len);
+                }
+            });
+        } catch (IOException e) {
+            // the OutputStream does not throw IOExceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode the text content of the Element into an OutputStream. The decoded bytes are written
+     * in chunks, the OutputStream is neither flushed nor closed.
+     * @param element the Element containing Base64 encoded text
+     * @param outputStream the OutputStream to write to
+     * @return the number of decoded bytes
+     * @throws IllegalArgumentException if the text is not valid Base64
+     * @throws IOException if writing to the OutputStream fails
+     */
+    public static int decode(Element element, OutputStream outputStream) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int position = 0;
+        int total = 0;
+        int bits = 0;
+        int pending = 0;
+        // 0: decoding, 1: a second padding character is expected, 2: the end was reached
+        int state = 0;
+
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!isText(node)) {
+                continue;
+            }
+            String data = ((Text)node).getData();
+            for (int i = 0; i < data.length(); i++) {
+                char c = data.charAt(i);
+                int value = decode(c);
+                if (state == 2) {
+                    if (value >= 0) {
+                        throw new IllegalArgumentException("Input byte array has incorrect ending byte");
+                    }
+                    continue;
+                } else if (state == 1) {
+                    if (c != '=') {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    state = 2;
+                    continue;
+                }
+
+                if (value == INVALID) {
+                    continue;
+                } else if (value == PADDING) {
+                    if (pending == 0) {
+                        throw new IllegalArgumentException("Input byte array has wrong 4-byte ending unit");
+                    }
+                    state = pending == 2 ? 1 : 2;
+                    continue;
+                }
+
+                bits = bits << 6 | value;
+                pending++;
+                if (pending == 4) {
+                    if (position + 3 > chunk.length) {
+                        outputStream.write(chunk, 0, position);
+                        total += position;
+                        position = 0;
+                    }
+                    chunk[position++] = (byte)(bits >> 16);
+                    chunk[position++] = (byte)(bits >> 8);
+                    chunk[position++] = (byte)bits;
+                    bits = 0;
+                    pending = 0;
+                }
+            }
+        }
+
+        if (state == 1 || pending == 1) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        if (position + 2 > chunk.length) {
+            outputStream.write(chunk, 0, position);
+            total += position;
+            position = 0;
+        }
+        if (pending == 2) {
+            chunk[position++] = (byte)(bits >> 4);
+        } else if (pending == 3) {
+            chunk[position++] = (byte)(bits >> 10);
+            chunk[position++] = (byte)(bits >> 2);
+        }
+        if (position > 0) {
+            outputStream.write(chunk, 0, position);
+            total += position;
+        }
+        return total;
+    }
+
+    private static boolean isText(Node node) {
+        return Node.TEXT_NODE == node.getNodeType() || Node.CDATA_SECTION_NODE == node.getNodeType();
+    }
+
+    private static int decode(char c) {
+        return c < 128 ? DECODE_TABLE[c] : INVALID;
+    }
+}
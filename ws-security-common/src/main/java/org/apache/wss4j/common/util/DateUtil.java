@@ -20,7 +20,10 @@
 package org.apache.wss4j.common.util;
 
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 public final class DateUtil {
 
@@ -31,6 +34,12 @@ public final class DateUtil {
 
     private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final long DAYS_0000_TO_1970 = 719528L;
+
+    // The "yyyy-MM-ddTHH:mm:ss" characters of the last second which was formatted
+    private static volatile FormattedSecond lastFormattedSecond;
+
     private DateUtil() {
         // complete
     }
@@ -47,12 +56,30 @@ public final class DateUtil {
         Instant created,
         int timeToLive,
         int futureTimeToLive
+    ) {
+        return verifyCreated(created, timeToLive, futureTimeToLive, Instant.now());
+    }
+
+    /**
+     * Return true if the "Created" value is before the given current time minus the timeToLive
+     * argument, and if the Created value is not "in the future".
+     *
+     * @param timeToLive the value in seconds for the validity of the Created time
+     * @param futureTimeToLive the value in seconds for the future validity of the Created time
+     * @param now the current time
+     * @return true if the Date is before (now-timeToLive), false otherwise
+     */
+    public static boolean verifyCreated(
+        Instant created,
+        int timeToLive,
+        int futureTimeToLive,
+        Instant now
     ) {
         if (created == null) {
             return true;
         }
 
-        Instant validCreation = Instant.now();
+        Instant validCreation = now;
         if (futureTimeToLive > 0) {
             validCreation = validCreation.plusSeconds(futureTimeToLive);
         }
@@ -63,7 +90,7 @@ public final class DateUtil {
         }
 
         // Calculate the time that is allowed for the message to travel
-        validCreation = Instant.now().minusSeconds(timeToLive);
+        validCreation = now.minusSeconds(timeToLive);
 
         // Validate the time it took the message to travel
         if (created.isBefore(validCreation)) {
@@ -81,4 +108,209 @@ public final class DateUtil {
         }
         return SECOND_FORMATTER;
     }
+
+    /**
+     * Parse an xsd:dateTime value. The UTC forms "yyyy-MM-dd'T'HH:mm:ss'Z'" and
+     * "yyyy-MM-dd'T'HH:mm:ss.S'Z'" (with up to nine fractional digits) used by WS-Security are parsed
+     * directly, any other value is parsed with ZonedDateTime.
+     *
+     * @param value the xsd:dateTime value
+     * @return the parsed Instant
+     * @throws DateTimeParseException if the value can't be parsed
+     */
+    public static Instant parseDateTime(String value) throws DateTimeParseException {
+        Instant instant = parseUTCDateTime(value);
+        if (instant != null) {
+            return instant;
+        }
+        return ZonedDateTime.parse(value).toInstant();
+    }
+
+    /**
+     * Parse an xsd:dateTime value in the UTC forms "yyyy-MM-dd'T'HH:mm:ss'Z'" and
+     * "yyyy-MM-dd'T'HH:mm:ss.S'Z'" (with up to nine fractional digits), without allocating anything
+     * but the result.
+     *
+     * @param value the xsd:dateTime value
+     * @return the parsed Instant, or null if the value is not a valid date/time in one of these forms
+     */
+    public static Instant parseUTCDateTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        int length = value.length();
+        if (length < 20 || length == 21 || length > 30 || value.charAt(length - 1) != 'Z'
+            || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+            || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return null;
+        }
+
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 2);
+        int day = parseDigits(value, 8, 2);
+        int hour = parseDigits(value, 11, 2);
+        int minute = parseDigits(value, 14, 2);
+        int second = parseDigits(value, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+            || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+
+        int nanos = 0;
+        if (length > 20) {
+            if (value.charAt(19) != '.') {
+                return null;
+            }
+            int digits = length - 21;
+            nanos = parseDigits(value, 20, digits);
+            if (nanos < 0) {
+                return null;
+            }
+            for (int i = digits; i < 9; i++) {
+                nanos *= 10;
+            }
+        }
+
+        long epochSecond = toEpochDay(year, month, day) * SECONDS_PER_DAY
+            + hour * 3600L + minute * 60L + second;
+        return Instant.ofEpochSecond(epochSecond, nanos);
+    }
+
+    /**
+     * Format an Instant as an xsd:dateTime in UTC, i.e. "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" or
+     * "yyyy-MM-dd'T'HH:mm:ss'Z'". The result is the same as formatting with getDateTimeFormatter.
+     *
+     * @param instant the Instant to format
+     * @param milliseconds whether to include the milliseconds
+     * @return the formatted date/time
+     */
+    public static String formatDateTime(Instant instant, boolean milliseconds) {
+        long epochSecond = instant.getEpochSecond();
+        FormattedSecond formattedSecond = lastFormattedSecond;
+        if (formattedSecond == null || formattedSecond.epochSecond != epochSecond) {
+            formattedSecond = formatSecond(epochSecond);
+            if (formattedSecond == null) {
+                // The year does not have four digits
+                return instant.atZone(ZoneOffset.UTC).format(getDateTimeFormatter(milliseconds));
+            }
+            lastFormattedSecond = formattedSecond;
+        }
+
+        char[] chars = new char[milliseconds ? 24 : 20];
+        System.arraycopy(formattedSecond.chars, 0, chars, 0, 19);
+        if (milliseconds) {
+            int millis = instant.getNano() / 1000000;
+            chars[19] = '.';
+            chars[20] = (char)('0' + millis / 100);
+            chars[21] = (char)('0' + millis / 10 % 10);
+            chars[22] = (char)('0' + millis % 10);
+        }
+        chars[chars.length - 1] = 'Z';
+        return new String(chars);
+    }
+
+    private static FormattedSecond formatSecond(long epochSecond) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // See LocalDate.ofEpochDay
+        long zeroDay = epochDay + DAYS_0000_TO_1970 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / 146097 - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * 146097;
+        }
+        long yearEst = (400 * zeroDay + 591) / 146097;
+        long doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        if (doyEst < 0) {
+            yearEst--;
+            doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        }
+        yearEst += adjust;
+        int marchDoy0 = (int) doyEst;
+        int marchMonth0 = (marchDoy0 * 5 + 2) / 153;
+        int month = (marchMonth0 + 2) % 12 + 1;
+        int day = marchDoy0 - (marchMonth0 * 306 + 5) / 10 + 1;
+        long year = yearEst + marchMonth0 / 10;
+        if (year < 1 || year > 9999) {
+            return null;
+        }
+
+        char[] chars = new char[19];
+        writeDigits(chars, 0, (int)year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, secondOfDay % 60, 2);
+        return new FormattedSecond(epochSecond, chars);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int parseDigits(String value, int offset, int digits) {
+        int result = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // See LocalDate.toEpochDay, for years from 0 to 9999
+    private static long toEpochDay(int year, int month, int day) {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static final class FormattedSecond {
+        private final long epochSecond;
+        private final char[] chars;
+
+        FormattedSecond(long epochSecond, char[] chars) {
+            this.epochSecond = epochSecond;
+            this.chars = chars;
+        }
+    }
 }
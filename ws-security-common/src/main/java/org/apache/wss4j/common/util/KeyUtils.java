@@ -44,11 +44,6 @@ public final class KeyUtils {
 
     public static final String RSA_ECB_OAEPWITH_SHA1_AND_MGF1_PADDING = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
 
-    /**
-     * A cached MessageDigest object
-     */
-    private static MessageDigest digest;
-
     static {
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_NOT_RECOMMENDED_MD5, 128);
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_RIPEMD160, 160);
@@ -127,13 +122,15 @@ public final class KeyUtils {
             KeyGenerator keyGen = KeyGenerator.getInstance(keyAlgorithm);
             if (algorithm.equalsIgnoreCase(XMLCipher.AES_128)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_128_GCM)) {
-                keyGen.init(128);
+                keyGen.init(128, SecureRandomPool.getSecureRandom());
             } else if (algorithm.equalsIgnoreCase(XMLCipher.AES_192)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_192_GCM)) {
-                keyGen.init(192);
+                keyGen.init(192, SecureRandomPool.getSecureRandom());
             } else if (algorithm.equalsIgnoreCase(XMLCipher.AES_256)
                 || algorithm.equalsIgnoreCase(XMLCipher.AES_256_GCM)) {
-                keyGen.init(256);
+                keyGen.init(256, SecureRandomPool.getSecureRandom());
+            } else {
+                keyGen.init(SecureRandomPool.getSecureRandom());
             }
             return keyGen;
         } catch (NoSuchAlgorithmException e) {
@@ -227,18 +224,15 @@ public final class KeyUtils {
     }
 
     /**
-     * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.
+     * Generate a (SHA1) digest of the input bytes. A MessageDigest instance is cheap to obtain, so
+     * every call uses its own rather than serializing all callers on a shared one.
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
         try {
-            if (digest == null) {
-                digest = MessageDigest.getInstance("SHA-1");
-            }
-            return digest.digest(inputBytes);
+            return MessageDigest.getInstance("SHA-1").digest(inputBytes);
         } catch (Exception e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
                                           new Object[] {"Error in generating digest"}
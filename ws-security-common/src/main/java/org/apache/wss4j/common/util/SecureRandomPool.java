@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of SecureRandom instances, which is used for the nonces, salts, IVs, session keys and
+ * identifiers. A single shared SecureRandom becomes a contended lock with many concurrent senders, so
+ * the random bytes are drawn from one of a number of independently seeded instances, selected by the
+ * current thread. The instances are DRBGs (NIST SP 800-90A) with a security strength of 256 bits, which
+ * are self-seeded from the default entropy source of the JVM and personalized per instance, or the default
+ * SecureRandom if such a DRBG is not available.
+ */
+public final class SecureRandomPool {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SecureRandomPool.class);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final SecureRandom[] SECURE_RANDOMS;
+    private static final int STRIPE_MASK;
+
+    // The base and the counter of the unique, but not unpredictable, identifiers
+    private static final String SEQUENTIAL_ID_BASE;
+    private static final AtomicLong SEQUENTIAL_ID_COUNTER = new AtomicLong();
+
+    static {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        SECURE_RANDOMS = new SecureRandom[stripes];
+        for (int i = 0; i < stripes; i++) {
+            SECURE_RANDOMS[i] = createSecureRandom(i);
+        }
+        STRIPE_MASK = stripes - 1;
+
+        byte[] base = new byte[8];
+        SECURE_RANDOMS[0].nextBytes(base);
+        SEQUENTIAL_ID_BASE = toHex(base, new StringBuilder(17)).append('-').toString();
+    }
+
+    private SecureRandomPool() {
+        // complete
+    }
+
+    /**
+     * Return a SecureRandom of the pool, e.g. to initialize a KeyGenerator. The returned instance is
+     * thread-safe, but should not be cached, so that the load stays distributed over the pool.
+     */
+    public static SecureRandom getSecureRandom() {
+        return SECURE_RANDOMS[mix(Thread.currentThread().getId()) & STRIPE_MASK];
+    }
+
+    /**
+     * Fill the given array with random bytes
+     */
+    public static void nextBytes(byte[] bytes) {
+        getSecureRandom().nextBytes(bytes);
+    }
+
+    /**
+     * Generate the given number of random bytes
+     */
+    public static byte[] generateBytes(int length) {
+        byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Generate an unpredictable identifier, which consists of the prefix (or "G" if the prefix is null)
+     * and a random (version 4) UUID. This is a drop-in replacement for the IDGenerator of Apache Santuario,
+     * which draws from the single SecureRandom of java.util.UUID.
+     */
+    public static String generateID(String prefix) {
+        byte[] bytes = generateBytes(16);
+        bytes[6] = (byte) (bytes[6] & 0x0f | 0x40);
+        bytes[8] = (byte) (bytes[8] & 0x3f | 0x80);
+
+        StringBuilder id = new StringBuilder(37 + (prefix != null ? prefix.length() : 1));
+        id.append(prefix != null ? prefix : "G");
+        for (int i = 0; i < bytes.length; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                id.append('-');
+            }
+            id.append(HEX_DIGITS[(bytes[i] >> 4) & 0x0f]).append(HEX_DIGITS[bytes[i] & 0x0f]);
+        }
+        return id.toString();
+    }
+
+    /**
+     * Generate an identifier which is unique, but not unpredictable: the prefix (or "G" if the prefix
+     * is null), a random value chosen once per JVM and a counter. Only use it for identifiers which do
+     * not need to be secret, e.g. the wsu:Id of message parts.
+     */
+    public static String generateSequentialID(String prefix) {
+        long count = SEQUENTIAL_ID_COUNTER.incrementAndGet();
+        return (prefix != null ? prefix : "G") + SEQUENTIAL_ID_BASE + Long.toHexString(count);
+    }
+
+    private static SecureRandom createSecureRandom(int index) {
+        // the personalization string keeps the instances apart, should the entropy source repeat itself
+        byte[] personalization = ("WSS4J SecureRandomPool " + index + " " + System.nanoTime())
+            .getBytes(StandardCharsets.UTF_8);
+        try {
+            return SecureRandom.getInstance("DRBG",
+                DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            LOG.debug("A DRBG SecureRandom with a strength of 256 bits is not available, using the default", e);
+            return new SecureRandom();
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static StringBuilder toHex(byte[] bytes, StringBuilder sb) {
+        for (byte b : bytes) {
+            sb.append(HEX_DIGITS[(b >> 4) & 0x0f]).append(HEX_DIGITS[b & 0x0f]);
+        }
+        return sb;
+    }
+}
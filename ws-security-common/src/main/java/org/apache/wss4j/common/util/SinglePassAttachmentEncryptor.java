@@ -0,0 +1,451 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SecretKey;
+
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.encryption.XMLCipherUtil;
+
+/**
+ * Encrypts SwA attachments in the same pass in which they are digested for a signature. When the
+ * same attachments are signed and then encrypted, the attachment signature transform reads each
+ * attachment through the stream returned by {@link #encrypt(Attachment)}, which encrypts the bytes as
+ * they are read. The attachment source stream is therefore read once, and it does not have to be
+ * buffered so that it can be read a second time for the encryption. The encryption then only adds
+ * the EncryptedData structures for the attachments which were encrypted here.
+ *
+ * The signature in the security header has to be complete before an attachment can be written, so the
+ * cipher text is written to a {@link CipherTextStore} until the encrypted attachment is read. By default
+ * it is kept in memory up to a threshold and written to a temporary file beyond it.
+ *
+ * The same instance, and so the same key, algorithm and modifier, must be configured for the
+ * signature and the encryption, and the encryption must cover every attachment which is signed.
+ */
+public class SinglePassAttachmentEncryptor {
+
+    private final String encryptionAlgorithm;
+    private final SecretKey secretKey;
+    private final boolean complete;
+    private final CipherTextStore cipherTextStore;
+    private final Map<String, String> encryptedMimeTypes = new ConcurrentHashMap<>();
+
+    /**
+     * @param encryptionAlgorithm the symmetric encryption algorithm URI
+     * @param secretKey the symmetric key the attachments are encrypted with
+     * @param complete whether the MIME headers are encrypted with the content ("Element" modifier),
+     * or only the content ("Content" modifier)
+     */
+    public SinglePassAttachmentEncryptor(String encryptionAlgorithm, SecretKey secretKey, boolean complete) {
+        this(encryptionAlgorithm, secretKey, complete, new TemporaryFileCipherTextStore());
+    }
+
+    /**
+     * @param encryptionAlgorithm the symmetric encryption algorithm URI
+     * @param secretKey the symmetric key the attachments are encrypted with
+     * @param complete whether the MIME headers are encrypted with the content ("Element" modifier),
+     * or only the content ("Content" modifier)
+     * @param cipherTextStore where the cipher text of the attachments is kept until it is written
+     */
+    public SinglePassAttachmentEncryptor(String encryptionAlgorithm, SecretKey secretKey, boolean complete,
+                                         CipherTextStore cipherTextStore) {
+        this.encryptionAlgorithm = encryptionAlgorithm;
+        this.secretKey = secretKey;
+        this.complete = complete;
+        this.cipherTextStore = cipherTextStore;
+    }
+
+    /**
+     * Return a stream which reads the source stream of the attachment argument and encrypts the
+     * bytes which are read. Once the attachment has been digested, call
+     * {@link EncryptingInputStream#finish()} to get the encrypted attachment.
+     */
+    public EncryptingInputStream encrypt(Attachment attachment) throws WSSecurityException {
+        String jceAlgorithm = JCEMapper.translateURItoJCEID(encryptionAlgorithm);
+        if (jceAlgorithm == null) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, "unsupportedKeyTransp",
+                new Object[] {"No such algorithm: \"" + encryptionAlgorithm + "\""});
+        }
+
+        Map<String, String> headers = new HashMap<>(attachment.getHeaders());
+        byte[] encryptedMimeHeaders = complete ? AttachmentUtils.getEncryptedMimeHeaders(headers) : null;
+        OutputStream encryptedBytes = null;
+        try {
+            Cipher cipher = Cipher.getInstance(jceAlgorithm);
+            int ivLen = JCEMapper.getIVLengthFromURI(encryptionAlgorithm) / 8;
+            byte[] iv = SecureRandomPool.generateBytes(ivLen);
+            AlgorithmParameterSpec paramSpec =
+                XMLCipherUtil.constructBlockCipherParameters(encryptionAlgorithm, iv);
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey, paramSpec);
+
+            encryptedBytes = cipherTextStore.newOutputStream(attachment.getId());
+            encryptedBytes.write(cipher.getIV());
+            CipherOutputStream cipherOutputStream = new CipherOutputStream(encryptedBytes, cipher);  //NOPMD
+            if (encryptedMimeHeaders != null) {
+                cipherOutputStream.write(encryptedMimeHeaders);
+            }
+            return new EncryptingInputStream(attachment, headers, cipherOutputStream);
+        } catch (Exception e) {
+            if (encryptedBytes != null) {
+                try {
+                    encryptedBytes.close();
+                } catch (IOException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, e);
+        }
+    }
+
+    /**
+     * Return the Ids of the attachments which were encrypted by this instance
+     */
+    public Set<String> getEncryptedAttachmentIds() {
+        return Collections.unmodifiableSet(encryptedMimeTypes.keySet());
+    }
+
+    /**
+     * Return whether the attachment with the given Id was encrypted by this instance
+     */
+    public boolean isEncrypted(String attachmentId) {
+        return encryptedMimeTypes.containsKey(attachmentId);
+    }
+
+    /**
+     * Return the MIME type of the attachment with the given Id before it was encrypted by this
+     * instance, or null if it was not encrypted by this instance or had no MIME type
+     */
+    public String getOriginalMimeType(String attachmentId) {
+        String mimeType = encryptedMimeTypes.get(attachmentId);
+        return mimeType == null || mimeType.isEmpty() ? null : mimeType;
+    }
+
+    /**
+     * Check that the encryption uses the algorithm, key and modifier the attachments were encrypted with
+     */
+    public void checkEncryptionParameters(
+        String encryptionAlgorithm, Key key, boolean complete
+    ) throws WSSecurityException {
+        if (!this.encryptionAlgorithm.equals(encryptionAlgorithm) || this.complete != complete
+            || !MessageDigest.isEqual(secretKey.getEncoded(), key.getEncoded())) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILED_ENCRYPTION, "empty",
+                new Object[] {"The attachments were encrypted with different encryption parameters"}
+            );
+        }
+    }
+
+    public String getEncryptionAlgorithm() {
+        return encryptionAlgorithm;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * A stream which encrypts the attachment bytes as they are read. Closing it does not close the
+     * attachment source stream, as the signature transforms close the streams they read.
+     */
+    public final class EncryptingInputStream extends FilterInputStream {
+
+        private final Attachment attachment;
+        private final Map<String, String> headers;
+        private final CipherOutputStream cipherOutputStream;
+
+        private EncryptingInputStream(Attachment attachment, Map<String, String> headers,
+                                      CipherOutputStream cipherOutputStream) {
+            super(attachment.getSourceStream());
+            this.attachment = attachment;
+            this.headers = headers;
+            this.cipherOutputStream = cipherOutputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                cipherOutputStream.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int numBytes = super.read(b, off, len);
+            if (numBytes > 0) {
+                cipherOutputStream.write(b, off, numBytes);
+            }
+            return numBytes;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be encrypted too
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int numBytes = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (numBytes == -1) {
+                    break;
+                }
+                skipped += numBytes;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            // mark is not supported
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            //the source stream belongs to the attachment
+        }
+
+        /**
+         * Encrypt the rest of the attachment which was not read by the signature transform, and
+         * return the encrypted attachment.
+         */
+        public Attachment finish() throws IOException {
+            byte[] buf = new byte[8192];
+            while (read(buf, 0, buf.length) != -1) { //NOPMD
+                // encrypt trailing bytes the digest did not need, e.g. after the XML document element
+            }
+            cipherOutputStream.close();
+
+            Attachment resultAttachment = new Attachment();
+            resultAttachment.setId(attachment.getId());
+            resultAttachment.setMimeType("application/octet-stream");
+            resultAttachment.addHeaders(headers);
+            resultAttachment.setSourceStream(cipherTextStore.newInputStream(attachment.getId()));
+
+            String mimeType = attachment.getMimeType();
+            encryptedMimeTypes.put(attachment.getId(), mimeType != null ? mimeType : "");
+            return resultAttachment;
+        }
+    }
+
+    /**
+     * Keeps the cipher text of the encrypted attachments until the encrypted attachments are written.
+     */
+    public interface CipherTextStore {
+
+        /**
+         * Return the stream the cipher text of the attachment with the given Id is written to. It is
+         * closed once the cipher text is complete.
+         */
+        OutputStream newOutputStream(String attachmentId) throws IOException;
+
+        /**
+         * Return a stream of the cipher text which was written for the attachment with the given Id.
+         * The cipher text is read once, and can be released when the stream is closed.
+         */
+        InputStream newInputStream(String attachmentId) throws IOException;
+    }
+
+    /**
+     * A CipherTextStore which keeps the cipher text in memory up to a threshold, and writes larger
+     * cipher texts to temporary files. A temporary file is deleted when its stream was read to the end
+     * or is closed.
+     */
+    public static class TemporaryFileCipherTextStore implements CipherTextStore {
+
+        public static final int DEFAULT_MEMORY_THRESHOLD = 128 * 1024;
+
+        private final int memoryThreshold;
+        private final Path directory;
+        private final Map<String, CipherText> cipherTexts = new ConcurrentHashMap<>();
+
+        public TemporaryFileCipherTextStore() {
+            this(DEFAULT_MEMORY_THRESHOLD, null);
+        }
+
+        /**
+         * @param memoryThreshold the number of bytes kept in memory before the cipher text is written to a file
+         * @param directory the directory of the temporary files, or null for the default temporary directory
+         */
+        public TemporaryFileCipherTextStore(int memoryThreshold, Path directory) {
+            this.memoryThreshold = memoryThreshold;
+            this.directory = directory;
+        }
+
+        @Override
+        public OutputStream newOutputStream(String attachmentId) throws IOException {
+            CipherText cipherText = new CipherText();
+            cipherTexts.put(attachmentId, cipherText);
+            return cipherText;
+        }
+
+        @Override
+        public InputStream newInputStream(String attachmentId) throws IOException {
+            CipherText cipherText = cipherTexts.remove(attachmentId);
+            if (cipherText == null) {
+                throw new IOException("No cipher text for attachment " + attachmentId);
+            }
+            return cipherText.newInputStream();
+        }
+
+        private final class CipherText extends OutputStream {
+
+            private byte[] buf = new byte[1024];
+            private int count;
+            private Path file;
+            private OutputStream fileStream;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (fileStream == null && count + len > memoryThreshold) {
+                    file = directory != null
+                        ? Files.createTempFile(directory, "wss4j-attachment", ".enc")
+                        : Files.createTempFile("wss4j-attachment", ".enc");
+                    fileStream = new BufferedOutputStream(Files.newOutputStream(file));
+                    fileStream.write(buf, 0, count);
+                    buf = null;
+                }
+                if (fileStream != null) {
+                    fileStream.write(b, off, len);
+                    return;
+                }
+                if (count + len > buf.length) {
+                    buf = Arrays.copyOf(buf, Math.min(Math.max(buf.length * 2, count + len), memoryThreshold));
+                }
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (fileStream != null) {
+                    fileStream.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (fileStream != null) {
+                    fileStream.close();
+                }
+            }
+
+            InputStream newInputStream() throws IOException {
+                if (file == null) {
+                    return new ByteArrayInputStream(buf, 0, count);
+                }
+                return new CipherTextFileInputStream(file);
+            }
+        }
+
+        /**
+         * Deletes the temporary file once it was read to the end or the stream is closed
+         */
+        private static final class CipherTextFileInputStream extends FilterInputStream {
+
+            private final Path file;
+            private boolean closed;
+
+            CipherTextFileInputStream(Path file) throws IOException {
+                super(Files.newInputStream(file));
+                this.file = file;
+            }
+
+            @Override
+            public int read() throws IOException {
+                if (closed) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b == -1) {
+                    close();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (closed) {
+                    return -1;
+                }
+                int numBytes = super.read(b, off, len);
+                if (numBytes == -1) {
+                    close();
+                }
+                return numBytes;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return closed ? 0 : super.available();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.common.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Makes a stream which does not support mark/reset resettable to its start, without holding its
+ * content in memory. The bytes which are read are spooled to a
+ * {@link SinglePassAttachmentEncryptor.CipherTextStore}, by default in memory up to a threshold and to a
+ * temporary file beyond it. After {@link #reset()} they are read again from the store, followed by the
+ * bytes of the source stream which were not read yet.
+ *
+ * The stream can be reset once, and only to its start: {@link #mark(int)} does not move the mark.
+ */
+public class SpoolingInputStream extends FilterInputStream {
+
+    private static final String SPOOL_ID = "spool";
+
+    private final SinglePassAttachmentEncryptor.CipherTextStore store;
+    private OutputStream spool;
+
+    public SpoolingInputStream(InputStream source) throws IOException {
+        this(source, new SinglePassAttachmentEncryptor.TemporaryFileCipherTextStore());
+    }
+
+    public SpoolingInputStream(InputStream source, SinglePassAttachmentEncryptor.CipherTextStore store)
+        throws IOException {
+        super(source);
+        this.store = store;
+        this.spool = store.newOutputStream(SPOOL_ID);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1 && spool != null) {
+            spool.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int numBytes = super.read(b, off, len);
+        if (numBytes > 0 && spool != null) {
+            spool.write(b, off, numBytes);
+        }
+        return numBytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes must be spooled too
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int numBytes = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+            if (numBytes == -1) {
+                break;
+            }
+            skipped += numBytes;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return spool != null;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // the mark is always the start of the stream
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        if (spool == null) {
+            throw new IOException("The stream was already reset");
+        }
+        spool.close();
+        spool = null;
+        in = new SequenceInputStream(store.newInputStream(SPOOL_ID), in);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (spool != null) {
+                // release the spooled bytes, which can't be read any more
+                spool.close();
+                spool = null;
+                store.newInputStream(SPOOL_ID).close();
+            }
+        } finally {
+            super.close();
+        }
+    }
+}
@@ -30,7 +30,6 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
-import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 
 public final class UsernameTokenUtil {
     public static final int DEFAULT_ITERATION = 1000;
@@ -131,20 +130,19 @@ public final class UsernameTokenUtil {
     }
 
     /**
-     * Generate a nonce of the given length using a secure random algorithm. The SecureRandom
-     * instance that backs this method is cached for efficiency.
+     * Generate a nonce of the given length using a secure random algorithm. The nonce is drawn
+     * from the SecureRandomPool.
      *
      * @return a nonce of the given length
      * @throws WSSecurityException
      */
     public static byte[] generateNonce(int length) throws WSSecurityException {
-        try {
-            return XMLSecurityConstants.generateBytes(length);
-        } catch (Exception ex) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
+        if (length < 0) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                     "empty", new Object[] {"Error in generating nonce of length " + length}
             );
         }
+        return SecureRandomPool.generateBytes(length);
     }
 
     public static String doPasswordDigest(byte[] nonce, String created, String password) throws WSSecurityException {
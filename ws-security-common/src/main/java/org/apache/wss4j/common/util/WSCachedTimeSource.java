@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.time.Instant;
+
+/**
+ * A coarse-grained time source, which returns the same Instant for all calls within a configurable
+ * granularity (10 milliseconds by default) instead of creating a new Instant for every call. The
+ * returned time lags behind the current time by at most the granularity, and has millisecond precision.
+ * It is not used by default, but can be set via WSSConfig#setCurrentTime or WSSSecurityProperties#setTimeSource.
+ */
+public class WSCachedTimeSource implements WSTimeSource {
+
+    public static final long DEFAULT_GRANULARITY = 10L;
+
+    private final long granularity;
+    private volatile CachedTime cachedTime;
+
+    public WSCachedTimeSource() {
+        this(DEFAULT_GRANULARITY);
+    }
+
+    /**
+     * @param granularity the number of milliseconds for which the same Instant is returned
+     */
+    public WSCachedTimeSource(long granularity) {
+        if (granularity <= 0) {
+            throw new IllegalArgumentException("granularity must be positive");
+        }
+        this.granularity = granularity;
+    }
+
+    /**
+     * Get the current date time
+     * @return the current date/time as a Instant object
+     */
+    public Instant now() {
+        long currentTimeMillis = System.currentTimeMillis();
+        CachedTime time = cachedTime;
+        if (time == null || currentTimeMillis - time.millis >= granularity || currentTimeMillis < time.millis) {
+            time = new CachedTime(currentTimeMillis);
+            cachedTime = time;
+        }
+        return time.instant;
+    }
+
+    private static final class CachedTime {
+        private final long millis;
+        private final Instant instant;
+
+        CachedTime(long millis) {
+            this.millis = millis;
+            this.instant = Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some unit tests for the EncryptedKeyCache
+ */
+public class EncryptedKeyCacheTest {
+
+    private static final byte[] RECIPIENT = "recipient".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENCRYPTED_KEY = "encrypted-key".getBytes(StandardCharsets.UTF_8);
+    private static final String RSA_OAEP = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+
+    @Test
+    public void testCacheKey() throws Exception {
+        String cacheKey = EncryptedKeyCache.createCacheKey(RECIPIENT, ENCRYPTED_KEY, RSA_OAEP, null, null, new byte[0]);
+        assertEquals(cacheKey,
+                     EncryptedKeyCache.createCacheKey(RECIPIENT, ENCRYPTED_KEY, RSA_OAEP, null, null, new byte[0]));
+        assertNotEquals(cacheKey,
+                        EncryptedKeyCache.createCacheKey(ENCRYPTED_KEY, RECIPIENT, RSA_OAEP, null, null, new byte[0]));
+        assertNotEquals(cacheKey,
+                        EncryptedKeyCache.createCacheKey(RECIPIENT, ENCRYPTED_KEY, RSA_OAEP, "", null, new byte[0]));
+        assertNotEquals(cacheKey,
+                        EncryptedKeyCache.createCacheKey(RECIPIENT, ENCRYPTED_KEY, RSA_OAEP, null, null, new byte[1]));
+    }
+
+    @Test
+    public void testAddAndGet() throws Exception {
+        try (EncryptedKeyCache cache = new EncryptedKeyCache()) {
+            String cacheKey = EncryptedKeyCache.createCacheKey(RECIPIENT, ENCRYPTED_KEY, RSA_OAEP);
+            assertNull(cache.get(cacheKey));
+
+            byte[] secret = new byte[] {1, 2, 3, 4};
+            cache.add(cacheKey, secret);
+            secret[0] = 0;
+
+            byte[] cachedSecret = cache.get(cacheKey);
+            assertArrayEquals(new byte[] {1, 2, 3, 4}, cachedSecret);
+            assertNotSame(cachedSecret, cache.get(cacheKey));
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void testMaxEntries() throws Exception {
+        try (EncryptedKeyCache cache = new EncryptedKeyCache(2, EncryptedKeyCache.DEFAULT_TTL)) {
+            cache.add("key1", new byte[] {1});
+            cache.add("key2", new byte[] {2});
+            // key1 is now the most recently used entry
+            assertArrayEquals(new byte[] {1}, cache.get("key1"));
+            cache.add("key3", new byte[] {3});
+
+            assertEquals(2, cache.size());
+            assertNull(cache.get("key2"));
+            assertArrayEquals(new byte[] {1}, cache.get("key1"));
+            assertArrayEquals(new byte[] {3}, cache.get("key3"));
+        }
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        try (EncryptedKeyCache cache = new EncryptedKeyCache(10, 1L)) {
+            cache.add("key", new byte[] {1});
+            assertArrayEquals(new byte[] {1}, cache.get("key"));
+
+            Thread.sleep(1100L);
+            assertNull(cache.get("key"));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        EncryptedKeyCache cache = new EncryptedKeyCache();
+        cache.add("key", new byte[] {1});
+        cache.close();
+        assertNull(cache.get("key"));
+    }
+}
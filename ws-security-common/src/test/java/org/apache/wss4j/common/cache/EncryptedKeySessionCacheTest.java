@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.util.Arrays;
+
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.EncryptedKeySession;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some unit tests for the EncryptedKeySessionCache
+ */
+public class EncryptedKeySessionCacheTest {
+
+    private static final String AES_128 = "http://www.w3.org/2001/04/xmlenc#aes128-cbc";
+    private static final String AES_256 = "http://www.w3.org/2001/04/xmlenc#aes256-cbc";
+    private static final String RSA_OAEP = "http://www.w3.org/2001/04/xmlenc#rsa-oaep-mgf1p";
+    private static final String RSA_15 = "http://www.w3.org/2001/04/xmlenc#rsa-1_5";
+
+    private final Crypto crypto = new Merlin();
+    private final SessionKey recipient = new SessionKey("recipient", AES_128, RSA_OAEP, crypto);
+
+    @Test
+    public void testMaxMessages() throws Exception {
+        try (EncryptedKeySessionCache cache = new EncryptedKeySessionCache(60L, 3)) {
+            assertNull(cache.getSession(recipient));
+
+            byte[] secret = new byte[] {1, 2, 3, 4};
+            cache.addSession(recipient, secret, "sha1");
+            secret[0] = 0;
+
+            // The message which transported the key counts as the first one
+            for (int i = 0; i < 2; i++) {
+                EncryptedKeySession session = cache.getSession(recipient);
+                assertNotNull(session);
+                assertArrayEquals(new byte[] {1, 2, 3, 4}, session.getSecret());
+                assertEquals("sha1", session.getEncryptedKeySHA1());
+            }
+            assertNull(cache.getSession(recipient));
+            assertNull(cache.getSession(new SessionKey("other-recipient", AES_128, RSA_OAEP, crypto)));
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        try (EncryptedKeySessionCache cache = new EncryptedKeySessionCache(1L, 10)) {
+            cache.addSession(recipient, new byte[] {1}, "sha1");
+            assertNotNull(cache.getSession(recipient));
+
+            Thread.sleep(1100L);
+            assertNull(cache.getSession(recipient));
+        }
+    }
+
+    @Test
+    public void testReplaceAndClose() throws Exception {
+        EncryptedKeySessionCache cache = new EncryptedKeySessionCache();
+        cache.addSession(recipient, new byte[] {1}, "sha1");
+        cache.addSession(recipient, new byte[] {2}, "sha1-2");
+        assertEquals(1, cache.size());
+        assertEquals("sha1-2", cache.getSession(recipient).getEncryptedKeySHA1());
+
+        cache.close();
+        assertNull(cache.getSession(recipient));
+    }
+
+    @Test
+    public void testSessionKey() throws Exception {
+        try (EncryptedKeySessionCache cache = new EncryptedKeySessionCache()) {
+            cache.addSession(recipient, new byte[] {1}, "sha1");
+
+            assertNotNull(cache.getSession(new SessionKey("recipient", AES_128, RSA_OAEP, crypto)));
+            assertNull(cache.getSession(new SessionKey("recipient", AES_256, RSA_OAEP, crypto)));
+            assertNull(cache.getSession(new SessionKey("recipient", AES_128, RSA_15, crypto)));
+            assertNull(cache.getSession(new SessionKey("recipient", AES_128, RSA_OAEP, new Merlin())));
+        }
+    }
+
+    @Test
+    public void testSecretIsACopy() throws Exception {
+        try (EncryptedKeySessionCache cache = new EncryptedKeySessionCache()) {
+            cache.addSession(recipient, new byte[] {1, 2}, "sha1");
+
+            byte[] secret = cache.getSession(recipient).getSecret();
+            Arrays.fill(secret, (byte) 0);
+            assertArrayEquals(new byte[] {1, 2}, cache.getSession(recipient).getSecret());
+        }
+    }
+}
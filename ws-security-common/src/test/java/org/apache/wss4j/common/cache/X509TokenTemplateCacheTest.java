@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.cert.X509Certificate;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.token.DOMX509IssuerSerial;
+import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.token.X509Security;
+import org.apache.wss4j.common.token.X509TokenTemplate;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some unit tests for the X509TokenTemplateCache
+ */
+public class X509TokenTemplateCacheTest {
+
+    @Test
+    public void testTemplateValues() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate[] certs = getCertificates(crypto, "wss40");
+        X509TokenTemplate template = new X509TokenTemplateCache().getTemplate(certs, crypto);
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+        X509Security x509Security = new X509Security(doc);
+        x509Security.setX509Certificate(certs[0]);
+        X509Security templateX509Security = new X509Security(doc);
+        templateX509Security.setX509Certificate(template);
+        assertEquals(XMLUtils.getElementText(x509Security.getElement()),
+                     XMLUtils.getElementText(templateX509Security.getElement()));
+        assertArrayEquals(x509Security.getToken(), templateX509Security.getToken());
+        assertSame(certs[0], templateX509Security.getX509Certificate(crypto));
+
+        assertArrayEquals(crypto.getBytesFromCertificates(certs), template.getPkiPathBytes());
+
+        SecurityTokenReference secRef = new SecurityTokenReference(doc);
+        SecurityTokenReference templateSecRef = new SecurityTokenReference(doc);
+        secRef.setKeyIdentifierSKI(certs[0], crypto);
+        templateSecRef.setKeyIdentifierSKI(template);
+        assertEquals(secRef.getKeyIdentifierValue(), templateSecRef.getKeyIdentifierValue());
+
+        secRef.setKeyIdentifierThumb(certs[0]);
+        templateSecRef.setKeyIdentifierThumb(template);
+        assertEquals(secRef.getKeyIdentifierValue(), templateSecRef.getKeyIdentifierValue());
+
+        secRef.setKeyIdentifier(certs[0]);
+        templateSecRef.setKeyIdentifier(template);
+        assertEquals(secRef.getKeyIdentifierValue(), templateSecRef.getKeyIdentifierValue());
+
+        String issuer = certs[0].getIssuerX500Principal().getName();
+        for (boolean commaDelimited : new boolean[] {false, true}) {
+            DOMX509IssuerSerial issuerSerial =
+                new DOMX509IssuerSerial(doc, issuer, certs[0].getSerialNumber(), commaDelimited);
+            DOMX509IssuerSerial templateIssuerSerial = new DOMX509IssuerSerial(doc, template, commaDelimited);
+            assertEquals(issuerSerial.getIssuer(), templateIssuerSerial.getIssuer());
+            assertEquals(issuerSerial.getSerialNumber(), templateIssuerSerial.getSerialNumber());
+        }
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate[] certs = getCertificates(crypto, "wss40");
+
+        X509TokenTemplateCache cache = new X509TokenTemplateCache();
+        X509TokenTemplate template = cache.getTemplate(certs, crypto);
+        assertSame(template, cache.getTemplate(getCertificates(crypto, "wss40"), crypto));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNotSame(template, cache.getTemplate(certs, crypto));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40CA.properties");
+        X509Certificate[] caCerts = getCertificates(crypto, "wss40ca");
+        X509Certificate[] certs = getCertificates(CryptoFactory.getInstance("wss40.properties"), "wss40");
+
+        X509TokenTemplateCache cache = new X509TokenTemplateCache(1);
+        X509TokenTemplate template = cache.getTemplate(certs, crypto);
+        cache.getTemplate(caCerts, crypto);
+        assertEquals(1, cache.size());
+        assertNotSame(template, cache.getTemplate(certs, crypto));
+    }
+
+    private static X509Certificate[] getCertificates(Crypto crypto, String alias) throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        return crypto.getX509Certificates(cryptoType);
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Properties;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some unit tests for the CachingCrypto
+ */
+public class CachingCryptoTest {
+
+    @Test
+    public void testCertificateLookups() throws Exception {
+        CountingCrypto countingCrypto = new CountingCrypto();
+        CachingCrypto crypto = new CachingCrypto(countingCrypto);
+
+        X509Certificate[] certs = crypto.getX509Certificates(getAliasType("wss40"));
+        assertEquals(1, countingCrypto.certificateLookups);
+
+        X509Certificate[] cachedCerts = crypto.getX509Certificates(getAliasType("wss40"));
+        assertEquals(1, countingCrypto.certificateLookups);
+        assertEquals(certs[0], cachedCerts[0]);
+        assertNotSame(certs, cachedCerts);
+
+        // the other lookup types are cached separately
+        CryptoType issuerSerialType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        issuerSerialType.setIssuerSerial(certs[0].getIssuerX500Principal().getName(), certs[0].getSerialNumber());
+        assertEquals(certs[0], crypto.getX509Certificates(issuerSerialType)[0]);
+        assertEquals(certs[0], crypto.getX509Certificates(issuerSerialType)[0]);
+        assertEquals(2, countingCrypto.certificateLookups);
+
+        CryptoType skiType = new CryptoType(CryptoType.TYPE.SKI_BYTES);
+        skiType.setBytes(crypto.getSKIBytesFromCert(certs[0]));
+        assertEquals(certs[0], crypto.getX509Certificates(skiType)[0]);
+        assertEquals(certs[0], crypto.getX509Certificates(skiType)[0]);
+        assertEquals(3, countingCrypto.certificateLookups);
+
+        // unknown certificates are not cached
+        assertEquals(0, crypto.getX509Certificates(getAliasType("unknown")).length);
+        assertEquals(0, crypto.getX509Certificates(getAliasType("unknown")).length);
+        assertEquals(5, countingCrypto.certificateLookups);
+
+        crypto.invalidate(getAliasType("wss40"));
+        crypto.getX509Certificates(getAliasType("wss40"));
+        assertEquals(6, countingCrypto.certificateLookups);
+
+        crypto.clear();
+        crypto.getX509Certificates(issuerSerialType);
+        assertEquals(7, countingCrypto.certificateLookups);
+    }
+
+    @Test
+    public void testIdentifierAndTrust() throws Exception {
+        CountingCrypto countingCrypto = new CountingCrypto();
+        CachingCrypto crypto = new CachingCrypto(countingCrypto);
+        X509Certificate cert = crypto.getX509Certificates(getAliasType("wss40"))[0];
+
+        assertEquals("wss40", crypto.getX509Identifier(cert));
+        assertEquals("wss40", crypto.getX509Identifier(cert));
+        assertEquals(1, countingCrypto.identifierLookups);
+
+        crypto.verifyTrust(cert.getPublicKey());
+        crypto.verifyTrust(cert.getPublicKey());
+        assertEquals(1, countingCrypto.trustVerifications);
+
+        crypto.invalidate(cert);
+        crypto.verifyTrust(cert.getPublicKey());
+        crypto.getX509Identifier(cert);
+        assertEquals(2, countingCrypto.trustVerifications);
+        assertEquals(2, countingCrypto.identifierLookups);
+
+        // failed verifications are not cached
+        X509Certificate untrustedCert =
+            CryptoFactory.getInstance("wss86.properties").getX509Certificates(getAliasType("wss86"))[0];
+        for (int i = 0; i < 2; i++) {
+            try {
+                crypto.verifyTrust(untrustedCert.getPublicKey());
+                fail("Failure expected on an untrusted public key");
+            } catch (WSSecurityException ex) {
+                assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex.getErrorCode());
+            }
+        }
+        assertEquals(4, countingCrypto.trustVerifications);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        CountingCrypto countingCrypto = new CountingCrypto();
+        CachingCrypto crypto = new CachingCrypto(countingCrypto, 10, 1L);
+
+        crypto.getX509Certificates(getAliasType("wss40"));
+        crypto.getX509Certificates(getAliasType("wss40"));
+        assertEquals(1, countingCrypto.certificateLookups);
+
+        Thread.sleep(1100L);
+        crypto.getX509Certificates(getAliasType("wss40"));
+        assertEquals(2, countingCrypto.certificateLookups);
+    }
+
+    @Test
+    public void testCryptoFactory() throws Exception {
+        Properties properties = CryptoFactory.getProperties("wss40.properties", getClass().getClassLoader());
+        assertFalse(CryptoFactory.getInstance(properties) instanceof CachingCrypto);
+
+        properties.put(CachingCrypto.CACHE_ENABLED, "true");
+        properties.put(CachingCrypto.CACHE_MAX_ENTRIES, "50");
+        properties.put(CachingCrypto.CACHE_TTL, "60");
+        Crypto crypto = CryptoFactory.getInstance(properties);
+        assertTrue(crypto instanceof CachingCrypto);
+        assertTrue(((CachingCrypto)crypto).getDelegate() instanceof Merlin);
+        assertNotNull(crypto.getX509Certificates(getAliasType("wss40")));
+
+        properties.put(CachingCrypto.CACHE_TTL, "-1");
+        try {
+            CryptoFactory.getInstance(properties);
+            fail("Failure expected on an invalid TTL");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+    private static CryptoType getAliasType(String alias) {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        return cryptoType;
+    }
+
+    /**
+     * A Merlin which counts the lookups that CachingCrypto caches
+     */
+    private static final class CountingCrypto extends Merlin {
+        private int certificateLookups;
+        private int identifierLookups;
+        private int trustVerifications;
+
+        CountingCrypto() throws WSSecurityException, IOException {
+            super(CryptoFactory.getProperties("wss40.properties", CachingCryptoTest.class.getClassLoader()),
+                  CachingCryptoTest.class.getClassLoader(), null);
+        }
+
+        @Override
+        public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+            certificateLookups++;
+            return super.getX509Certificates(cryptoType);
+        }
+
+        @Override
+        public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+            identifierLookups++;
+            return super.getX509Identifier(cert);
+        }
+
+        @Override
+        public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+            trustVerifications++;
+            super.verifyTrust(publicKey);
+        }
+    }
+}
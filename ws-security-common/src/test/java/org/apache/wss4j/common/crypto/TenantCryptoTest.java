@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some unit tests for the TenantCrypto
+ */
+public class TenantCryptoTest {
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testLazyLoadingAndEviction() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TenantCrypto crypto =
+            new TenantCrypto(Arrays.asList("alice", "wss40", "wss40CA"), loader, 1, Long.MAX_VALUE, null);
+        assertEquals(0, loader.loads.size());
+
+        // qualified aliases only load the given tenant
+        X509Certificate aliceCert = crypto.getX509Certificates(getAliasType("alice:alice"))[0];
+        assertEquals(1, loader.loads.size());
+        assertEquals("alice:alice", crypto.getX509Identifier(aliceCert));
+        assertNotNull(crypto.getPrivateKey("alice:alice", "password"));
+        assertEquals(1, loader.loads.size());
+
+        X509Certificate wss40Cert = crypto.getX509Certificates(getAliasType("wss40:wss40"))[0];
+        assertEquals(2, loader.loads.size());
+        assertEquals(1, crypto.getLoadedTenantCount());
+
+        // the index is retained after the eviction, so only the owning tenant is loaded again
+        CryptoType issuerSerialType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        issuerSerialType.setIssuerSerial(aliceCert.getIssuerX500Principal().getName(), aliceCert.getSerialNumber());
+        assertEquals(aliceCert, crypto.getX509Certificates(issuerSerialType)[0]);
+        assertEquals(3, loader.loads.get("alice").intValue() + loader.loads.get("wss40").intValue());
+        assertEquals(1, crypto.getLoadedTenantCount());
+
+        CryptoType skiType = new CryptoType(CryptoType.TYPE.SKI_BYTES);
+        skiType.setBytes(crypto.getSKIBytesFromCert(wss40Cert));
+        assertEquals(wss40Cert, crypto.getX509Certificates(skiType)[0]);
+        assertEquals("wss40:wss40", crypto.getX509Identifier(wss40Cert));
+        CallbackHandler callbackHandler = callbacks -> ((WSPasswordCallback) callbacks[0]).setPassword("security");
+        assertNotNull(crypto.getPrivateKey(wss40Cert.getPublicKey(), callbackHandler));
+
+        // the CA tenant was never needed
+        assertEquals(null, loader.loads.get("wss40CA"));
+
+        // unqualified aliases are resolved via the index
+        assertEquals(aliceCert, crypto.getX509Certificates(getAliasType("alice"))[0]);
+    }
+
+    @Test
+    public void testUnknownCertificates() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TenantCrypto crypto = new TenantCrypto(Arrays.asList("alice", "wss40"), loader, 10, Long.MAX_VALUE, null);
+
+        X509Certificate untrustedCert =
+            CryptoFactory.getInstance("wss86.properties").getX509Certificates(getAliasType("wss86"))[0];
+        assertEquals(0, crypto.getX509Certificates(getAliasType("wss86")).length);
+        assertEquals(null, crypto.getX509Identifier(untrustedCert));
+
+        // all tenants are indexed now, so another miss doesn't load anything
+        assertEquals(0, crypto.getX509Certificates(getAliasType("unknown")).length);
+        assertEquals(1, loader.loads.get("alice").intValue());
+        assertEquals(1, loader.loads.get("wss40").intValue());
+
+        try {
+            crypto.verifyTrust(new X509Certificate[] {untrustedCert}, false, null, null);
+            fail("Failure expected on an untrusted certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testTrustOfTheIssuingTenant() throws Exception {
+        TenantCrypto crypto =
+            new TenantCrypto(Arrays.asList("alice", "wss40CA"), new CountingLoader(), 10, Long.MAX_VALUE, null);
+
+        // the wss40 certificate isn't owned by any tenant, but it is issued by the CA of the wss40CA tenant
+        X509Certificate wss40Cert =
+            CryptoFactory.getInstance("wss40.properties").getX509Certificates(getAliasType("wss40"))[0];
+        try {
+            crypto.verifyTrust(new X509Certificate[] {wss40Cert}, false, null, null);
+            fail("Failure expected as the issuing tenant isn't trusted by default");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex.getErrorCode());
+        }
+
+        crypto.setTrustIssuingTenant(true);
+        crypto.verifyTrust(new X509Certificate[] {wss40Cert}, false, null, null);
+    }
+
+    @Test
+    public void testTenantScopedCrypto() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TenantCrypto crypto =
+            new TenantCrypto(Arrays.asList("alice", "wss40CA"), loader, 10, Long.MAX_VALUE, null);
+        X509Certificate wss40Cert =
+            CryptoFactory.getInstance("wss40.properties").getX509Certificates(getAliasType("wss40"))[0];
+
+        // the message of the alice tenant doesn't pass on the truststore of the wss40CA tenant
+        Crypto aliceCrypto = crypto.getTenantScopedCrypto("alice");
+        try {
+            aliceCrypto.verifyTrust(new X509Certificate[] {wss40Cert}, false, null, null);
+            fail("Failure expected on a certificate which the tenant doesn't trust");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        crypto.getTenantScopedCrypto("wss40CA").verifyTrust(new X509Certificate[] {wss40Cert}, false, null, null);
+
+        // qualified and unqualified aliases of the tenant
+        X509Certificate aliceCert = aliceCrypto.getX509Certificates(getAliasType("alice:alice"))[0];
+        assertEquals(aliceCert, aliceCrypto.getX509Certificates(getAliasType("alice"))[0]);
+        assertEquals("alice", aliceCrypto.getX509Identifier(aliceCert));
+        assertNotNull(aliceCrypto.getPrivateKey("alice:alice", "password"));
+        assertEquals(0, crypto.getTenantScopedCrypto("wss40CA").getX509Certificates(getAliasType("alice")).length);
+
+        try {
+            crypto.getTenantScopedCrypto("unknown").getX509Certificates(getAliasType("alice"));
+            fail("Failure expected on an unknown tenant");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testCachingCryptoTenants() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        TenantCrypto crypto = new TenantCrypto(Arrays.asList("alice", "wss40"), tenant ->
+            new CachingCrypto(CryptoFactory.getInstance(tenant + ".properties")) {
+                @Override
+                public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+                    lookups.incrementAndGet();
+                    return super.getX509Certificates(cryptoType);
+                }
+            }, 10, Long.MAX_VALUE, null);
+        crypto.buildIndex();
+
+        // the keystores behind the CachingCrypto decorators are indexed completely, so an unknown
+        // certificate is not looked up in the tenants
+        assertEquals(0, crypto.getX509Certificates(getAliasType("unknown")).length);
+        assertEquals(0, lookups.get());
+
+        X509Certificate aliceCert = crypto.getX509Certificates(getAliasType("alice"))[0];
+        assertEquals("alice", crypto.getTenant(aliceCert));
+        assertEquals("alice:alice", crypto.getX509Identifier(aliceCert));
+    }
+
+    @Test
+    public void testAmbiguousCertificates() throws Exception {
+        Crypto wss40Crypto = CryptoFactory.getInstance("wss40.properties");
+        X509Certificate wss40Cert = wss40Crypto.getX509Certificates(getAliasType("wss40"))[0];
+        X509Certificate caCert = wss40Crypto.getX509Certificates(getAliasType("wss40ca"))[0];
+
+        // the partner tenant trusts the wss40 certificate, whose key entry belongs to the wss40 tenant
+        KeyStore partnerTrustStore = KeyStore.getInstance("JKS");
+        partnerTrustStore.load(null, null);
+        partnerTrustStore.setCertificateEntry("wss40", wss40Cert);
+        CountingLoader loader = new CountingLoader();
+        TenantCrypto crypto = new TenantCrypto(Arrays.asList("wss40", "wss40CA", "partner"), tenant -> {
+            if ("partner".equals(tenant)) {
+                Merlin merlin = new Merlin();
+                merlin.setTrustStore(partnerTrustStore);
+                return merlin;
+            }
+            return loader.loadCrypto(tenant);
+        }, 10, Long.MAX_VALUE, null);
+        crypto.buildIndex();
+
+        // the CA certificate belongs to the wss40 and the wss40CA tenant
+        CryptoType issuerSerialType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        issuerSerialType.setIssuerSerial(caCert.getIssuerX500Principal().getName(), caCert.getSerialNumber());
+        assertEquals(0, crypto.getX509Certificates(issuerSerialType).length);
+        assertEquals(null, crypto.getTenant(caCert));
+        try {
+            crypto.verifyTrust(new X509Certificate[] {caCert}, false, null, null);
+            fail("Failure expected on an ambiguous certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex.getErrorCode());
+        }
+
+        // the private key is taken from the tenant with the key entry
+        assertEquals(null, crypto.getTenant(wss40Cert));
+        CallbackHandler callbackHandler = callbacks -> ((WSPasswordCallback) callbacks[0]).setPassword("security");
+        assertNotNull(crypto.getPrivateKey(wss40Cert, callbackHandler));
+        assertNotNull(crypto.getPrivateKey(wss40Cert.getPublicKey(), callbackHandler));
+
+        // the CA certificate is owned by the wss40 tenant alone once the other tenant is gone
+        crypto.reload("wss40CA");
+        assertEquals("wss40", crypto.getTenant(caCert));
+    }
+
+    @Test
+    public void testMissesOfCryptoWhichCantBeEnumerated() throws Exception {
+        X509Certificate wss40Cert =
+            CryptoFactory.getInstance("wss40.properties").getX509Certificates(getAliasType("wss40"))[0];
+        AtomicInteger lookups = new AtomicInteger();
+        TenantCrypto crypto = new TenantCrypto(Arrays.asList("store"), tenant ->
+            new CertificateStore(new X509Certificate[] {wss40Cert}) {
+                @Override
+                public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+                    lookups.incrementAndGet();
+                    return super.getX509Certificates(cryptoType);
+                }
+            }, 10, Long.MAX_VALUE, null);
+
+        CryptoType issuerSerialType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        issuerSerialType.setIssuerSerial(wss40Cert.getSubjectX500Principal().getName(), wss40Cert.getSerialNumber());
+        assertEquals(0, crypto.getX509Certificates(issuerSerialType).length);
+        assertEquals(0, crypto.getX509Certificates(issuerSerialType).length);
+        assertEquals(1, lookups.get());
+
+        issuerSerialType.setIssuerSerial(wss40Cert.getIssuerX500Principal().getName(), wss40Cert.getSerialNumber());
+        assertEquals(wss40Cert, crypto.getX509Certificates(issuerSerialType)[0]);
+        assertEquals(wss40Cert, crypto.getX509Certificates(issuerSerialType)[0]);
+        // the certificate is in the index, so it is only looked up again to return it
+        assertEquals(4, lookups.get());
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        TenantCrypto crypto = new TenantCrypto(Arrays.asList("alice", "wss40"), loader, 10, 1L, null);
+
+        crypto.getTenantCrypto("alice");
+        crypto.getTenantCrypto("wss40");
+        assertEquals(1, crypto.getLoadedTenantCount());
+        crypto.getTenantCrypto("alice");
+        assertEquals(2, loader.loads.get("alice").intValue());
+    }
+
+    @Test
+    public void testCryptoFactory() throws Exception {
+        Properties properties = new Properties();
+        properties.put("org.apache.wss4j.crypto.provider", TenantCrypto.class.getName());
+        properties.put(TenantCrypto.TENANT_FILE_PREFIX + "alice", "alice.properties");
+        properties.put(TenantCrypto.TENANT_FILE_PREFIX + "wss40", "wss40.properties");
+        properties.put(TenantCrypto.MAX_LOADED, "1");
+        properties.put(TenantCrypto.DEFAULT_TENANT, "wss40");
+
+        Crypto crypto = CryptoFactory.getInstance(properties);
+        assertTrue(crypto instanceof TenantCrypto);
+        assertEquals("wss40:wss40", crypto.getDefaultX509Identifier());
+        assertNotNull(crypto.getX509Certificates(getAliasType("alice:alice"))[0]);
+
+        properties.put(TenantCrypto.DEFAULT_TENANT, "unknown");
+        try {
+            CryptoFactory.getInstance(properties);
+            fail("Failure expected on an unknown default tenant");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+    private static CryptoType getAliasType(String alias) {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        return cryptoType;
+    }
+
+    /**
+     * Loads the Crypto of a tenant from the "&lt;tenant&gt;.properties" file, and counts the loads
+     */
+    private static final class CountingLoader implements TenantCrypto.TenantLoader {
+        private final Map<String, Integer> loads = new HashMap<>();
+
+        @Override
+        public Crypto loadCrypto(String tenant) throws WSSecurityException {
+            loads.merge(tenant, 1, Integer::sum);
+            return CryptoFactory.getInstance(tenant + ".properties");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.jfr;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.wss4j.common.cache.MemoryReplayCache;
+import org.apache.wss4j.common.cache.ReplayCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the Flight Recorder events
+ */
+public class JFREventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReplayCacheEvents() throws Exception {
+        Path recordingFile = tempDir.resolve("wss4j.jfr");
+        try (ReplayCache replayCache = new MemoryReplayCache();
+            Recording recording = new Recording(loadConfiguration())) {
+            recording.start();
+            replayCache.add("id1");
+            assertTrue(replayCache.contains("id1"));
+            assertFalse(replayCache.contains("id2"));
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            if ("org.apache.wss4j.ReplayCache".equals(event.getEventType().getName())) {
+                events.add(event);
+            }
+        }
+        assertEquals(3, events.size());
+        assertEquals("add", events.get(0).getString("operation"));
+        assertEquals("contains", events.get(1).getString("operation"));
+        assertTrue(events.get(1).getBoolean("hit"));
+        assertFalse(events.get(2).getBoolean("hit"));
+    }
+
+    @Test
+    public void testJFRAvailable() {
+        assertTrue(SecurityEvents.isAvailable());
+        assertTrue(SecurityEvents.replayCache() instanceof jdk.jfr.Event);
+    }
+
+    @Test
+    public void testEventsDisabled() {
+        assertFalse(SecurityEvents.replayCache().isEnabled());
+        assertFalse(SecurityEvents.decryption().shouldCommit());
+    }
+
+    private static Configuration loadConfiguration() throws Exception {
+        // record every event regardless of the thresholds of the bundled settings
+        try (InputStream inputStream = JFREventsTest.class.getResourceAsStream("/jfr/wss4j.jfc")) {
+            assertNotNull(inputStream);
+            String settings = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            return Configuration.create(new StringReader(settings.replaceAll("\\d+ ms", "0 ms")));
+        }
+    }
+}
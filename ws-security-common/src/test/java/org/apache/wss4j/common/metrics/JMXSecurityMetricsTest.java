@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the JMXSecurityMetrics
+ */
+public class JMXSecurityMetricsTest {
+
+    @Test
+    public void testRecording() {
+        JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+        assertTrue(securityMetrics.isEnabled());
+
+        securityMetrics.recordTiming(SecurityMetrics.TimingType.PROCESSOR, "Signature", 2_000_000L);
+        securityMetrics.recordTiming(SecurityMetrics.TimingType.PROCESSOR, "Signature", 4_000_000L);
+        securityMetrics.recordTiming(SecurityMetrics.TimingType.ACTION, "SignatureAction", 1_000_000L);
+        securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.ENCRYPTION, 100L);
+        securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.ENCRYPTION, 0L);
+        securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, false);
+        securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, false);
+        securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, false);
+        securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, true);
+
+        assertEquals(Long.valueOf(2L), securityMetrics.getTimingCounts().get("PROCESSOR.Signature"));
+        assertEquals(Long.valueOf(1L), securityMetrics.getTimingCounts().get("ACTION.SignatureAction"));
+        assertEquals(3.0d, securityMetrics.getTimingAverageMillis().get("PROCESSOR.Signature"), 0.0001d);
+        assertEquals(4.0d, securityMetrics.getTimingMaxMillis().get("PROCESSOR.Signature"), 0.0001d);
+        assertEquals(Long.valueOf(2L), securityMetrics.getCryptoOperationCounts().get("ENCRYPTION"));
+        assertEquals(Long.valueOf(100L), securityMetrics.getCryptoOperationBytes().get("ENCRYPTION"));
+        assertEquals(Long.valueOf(0L), securityMetrics.getCryptoOperationCounts().get("DECRYPTION"));
+        assertEquals(Long.valueOf(1L), securityMetrics.getCacheHits().get("REPLAY"));
+        assertEquals(Long.valueOf(3L), securityMetrics.getCacheMisses().get("REPLAY"));
+        assertEquals(0.25d, securityMetrics.getCacheHitRatios().get("REPLAY"), 0.0001d);
+        assertFalse(securityMetrics.getCacheHitRatios().containsKey("PRIVATE_KEY"));
+
+        securityMetrics.reset();
+        assertTrue(securityMetrics.getTimingCounts().isEmpty());
+        assertEquals(Long.valueOf(0L), securityMetrics.getCryptoOperationCounts().get("ENCRYPTION"));
+        assertTrue(securityMetrics.getCacheHitRatios().isEmpty());
+    }
+
+    @Test
+    public void testNone() {
+        assertFalse(SecurityMetrics.NONE.isEnabled());
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+        securityMetrics.register("JMXSecurityMetricsTest");
+        ObjectName objectName = securityMetrics.getObjectName();
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(mBeanServer.isRegistered(objectName));
+
+            securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.PRIVATE_KEY, true);
+
+            TabularData cacheHits = (TabularData) mBeanServer.getAttribute(objectName, "CacheHits");
+            CompositeData privateKeyHits = cacheHits.get(new Object[] {"PRIVATE_KEY"});
+            assertEquals(1L, privateKeyHits.get("value"));
+
+            mBeanServer.invoke(objectName, "reset", null, null);
+            Map<String, Long> hits = securityMetrics.getCacheHits();
+            assertEquals(Long.valueOf(0L), hits.get("PRIVATE_KEY"));
+        } finally {
+            securityMetrics.unregister();
+        }
+        assertNull(securityMetrics.getObjectName());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import org.opensaml.core.config.Configuration;
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.config.provider.MapBasedConfiguration;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.xmlsec.signature.Signature;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some tests for the OpenSAML bootstrap, including a startup time benchmark of the bootstrap modes
+ */
+public class OpenSAMLBootstrapTest {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(OpenSAMLBootstrapTest.class);
+
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void testBootstrapModes() throws Exception {
+        OpenSAMLUtil.initSamlEngine();
+        Configuration configuration = OpenSAMLUtil.getConfiguration();
+        try {
+            XMLObjectProviderRegistry registry = bootstrap(true, true);
+            assertNotNull(registry.getBuilderFactory().getBuilder(
+                org.opensaml.saml.saml2.core.Assertion.DEFAULT_ELEMENT_NAME));
+            assertNotNull(registry.getBuilderFactory().getBuilder(
+                org.opensaml.saml.saml1.core.Assertion.DEFAULT_ELEMENT_NAME));
+            assertNotNull(registry.getBuilderFactory().getBuilder(Signature.DEFAULT_ELEMENT_NAME));
+            assertNull(registry.getBuilderFactory().getBuilder(EntityDescriptor.DEFAULT_ELEMENT_NAME));
+
+            registry = bootstrap(true, false);
+            assertNotNull(registry.getBuilderFactory().getBuilder(EntityDescriptor.DEFAULT_ELEMENT_NAME));
+        } finally {
+            ConfigurationService.setConfiguration(configuration);
+        }
+    }
+
+    /**
+     * Log the time it takes to bootstrap OpenSAML in each mode. As the first bootstrap in the JVM also
+     * pays for the class loading, the modes are bootstrapped several times and the fastest time is logged.
+     */
+    @Test
+    public void testBootstrapTime() throws Exception {
+        OpenSAMLUtil.initSamlEngine();
+        Configuration configuration = OpenSAMLUtil.getConfiguration();
+        try {
+            long[] fastest = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            for (int i = 0; i < ITERATIONS; i++) {
+                fastest[0] = Math.min(fastest[0], time(true, false));
+                fastest[1] = Math.min(fastest[1], time(false, false));
+                fastest[2] = Math.min(fastest[2], time(true, true));
+                fastest[3] = Math.min(fastest[3], time(false, true));
+            }
+            LOG.info("OpenSAML bootstrap time in ms - all providers: {}, all providers without XACML: {}, "
+                + "WSS4J providers: {}, WSS4J providers without XACML: {}",
+                fastest[0] / 1000000L, fastest[1] / 1000000L, fastest[2] / 1000000L, fastest[3] / 1000000L);
+        } finally {
+            ConfigurationService.setConfiguration(configuration);
+        }
+    }
+
+    private static long time(boolean includeXacml, boolean wss4jProvidersOnly) throws Exception {
+        long start = System.nanoTime();
+        bootstrap(includeXacml, wss4jProvidersOnly);
+        return System.nanoTime() - start;
+    }
+
+    private static XMLObjectProviderRegistry bootstrap(
+        boolean includeXacml, boolean wss4jProvidersOnly
+    ) throws Exception {
+        Configuration configuration = new MapBasedConfiguration();
+        ConfigurationService.setConfiguration(configuration);
+        XMLObjectProviderRegistry registry = new XMLObjectProviderRegistry();
+        configuration.register(XMLObjectProviderRegistry.class, registry,
+                               ConfigurationService.DEFAULT_PARTITION_NAME);
+
+        OpenSAMLBootstrap.bootstrap(includeXacml, wss4jProvidersOnly);
+        assertNotNull(XMLObjectProviderRegistrySupport.getBuilderFactory());
+        return registry;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.Random;
+
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some unit tests for the DOMBase64Decoder
+ */
+public class DOMBase64DecoderTest {
+
+    @Test
+    public void testDecodeSplitText() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Random random = new Random(42L);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[random.nextInt(10000)];
+            random.nextBytes(data);
+            String encoded =
+                random.nextBoolean() ? Base64.getMimeEncoder().encodeToString(data)
+                    : Base64.getEncoder().encodeToString(data);
+            if (random.nextBoolean()) {
+                encoded = encoded.replace("=", "");
+            }
+
+            Element element = doc.createElementNS(null, "CipherValue");
+            int offset = 0;
+            while (offset < encoded.length()) {
+                int end = Math.min(encoded.length(), offset + 1 + random.nextInt(100));
+                if (random.nextBoolean()) {
+                    element.appendChild(doc.createTextNode(encoded.substring(offset, end)));
+                } else {
+                    element.appendChild(doc.createCDATASection(encoded.substring(offset, end)));
+                }
+                if (random.nextInt(10) == 0) {
+                    element.appendChild(doc.createComment("comment"));
+                }
+                offset = end;
+            }
+
+            assertEquals(data.length, DOMBase64Decoder.getDecodedLength(element));
+            assertArrayEquals(data, DOMBase64Decoder.decode(element));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            assertEquals(data.length, DOMBase64Decoder.decode(element, outputStream));
+            assertArrayEquals(data, outputStream.toByteArray());
+        }
+    }
+
+    @Test
+    public void testSameResultAsXMLUtils() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        String[] values = {"", "  \n", "QQ==", "QQ", "QUI=", "QUJD", " Q U J D\r\n", "QQ==\n", "QUJD=", "QQ=\n=",
+                           "QUI=  \t", "QQ==AB", "Q", "QQ=A", "QUJD=B", "=", "QUJDRA", "QUJD\u00e9RA==", "QU=I"};
+        for (String value : values) {
+            Element element = doc.createElementNS(null, "BinarySecurityToken");
+            element.appendChild(doc.createTextNode(value));
+
+            byte[] expected = null;
+            try {
+                expected = XMLUtils.decode(value);
+            } catch (IllegalArgumentException ex) {
+                assertThrows(IllegalArgumentException.class, () -> DOMBase64Decoder.decode(element), value);
+                continue;
+            }
+            assertArrayEquals(expected, DOMBase64Decoder.decode(element), value);
+        }
+    }
+
+    @Test
+    public void testNoText() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element element = doc.createElementNS(null, "CipherValue");
+        assertEquals(0, DOMBase64Decoder.getDecodedLength(element));
+        assertEquals(0, DOMBase64Decoder.decode(element).length);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the xsd:dateTime handling in DateUtil
+ */
+public class DateUtilTest {
+
+    @Test
+    public void testFormatAndParse() throws Exception {
+        Random random = new Random(42L);
+        // years 1 to 9999
+        long min = -62135596800L;
+        long max = 253402300799L;
+        for (int i = 0; i < 10000; i++) {
+            long epochSecond = min + (long)(random.nextDouble() * (max - min));
+            Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1000000000));
+            for (boolean milliseconds : new boolean[] {true, false}) {
+                String expected = instant.atZone(ZoneOffset.UTC).format(DateUtil.getDateTimeFormatter(milliseconds));
+                String formatted = DateUtil.formatDateTime(instant, milliseconds);
+                assertEquals(expected, formatted);
+                // Format twice to use the cached second
+                assertEquals(expected, DateUtil.formatDateTime(instant, milliseconds));
+
+                assertEquals(ZonedDateTime.parse(formatted).toInstant(), DateUtil.parseUTCDateTime(formatted));
+            }
+        }
+
+        Instant instant = Instant.parse("2021-02-03T04:05:06.789Z");
+        assertEquals("2021-02-03T04:05:06.789Z", DateUtil.formatDateTime(instant, true));
+        assertEquals("2021-02-03T04:05:06Z", DateUtil.formatDateTime(instant, false));
+        assertEquals("2021-02-03T04:05:06.000Z", DateUtil.formatDateTime(Instant.parse("2021-02-03T04:05:06Z"), true));
+    }
+
+    @Test
+    public void testParseFractions() throws Exception {
+        String[] values = {
+            "2024-02-29T23:59:59Z", "2024-02-29T23:59:59.1Z", "2000-01-01T00:00:00.12Z",
+            "1999-12-31T12:30:45.123456789Z", "0001-01-01T00:00:00Z", "9999-12-31T23:59:59.999Z",
+            "1970-01-01T00:00:00Z", "1969-12-31T23:59:59.5Z",
+        };
+        for (String value : values) {
+            assertEquals(ZonedDateTime.parse(value).toInstant(), DateUtil.parseUTCDateTime(value), value);
+            assertEquals(ZonedDateTime.parse(value).toInstant(), DateUtil.parseDateTime(value), value);
+        }
+    }
+
+    @Test
+    public void testParseOtherForms() throws Exception {
+        // Valid values which are not in the UTC form are parsed by ZonedDateTime
+        String[] values = {
+            "2021-02-03T04:05:06+01:00", "2021-02-03T04:05:06.789-05:30", "2021-02-03T04:05:06+00:00",
+            "2021-02-03T04:05:06.Z",
+        };
+        for (String value : values) {
+            assertNull(DateUtil.parseUTCDateTime(value), value);
+            assertEquals(ZonedDateTime.parse(value).toInstant(), DateUtil.parseDateTime(value), value);
+        }
+
+        String[] invalidValues = {
+            "", "2021-02-03T04:05:06", "2021-02-03 04:05:06Z", "2021-13-03T04:05:06Z", "2021-02-29T04:05:06Z",
+            "2021-04-31T04:05:06Z", "2021-02-03T24:00:00Z", "2021-02-03T04:60:06Z", "2021-02-03T04:05:60Z",
+            "2021-02-03T04:05:06.1234567890Z", "2021-02-03T04:05:06,1Z",
+            "2021-0a-03T04:05:06Z", "+2021-02-03T04:05:06Z", "2021-02-03T04:05:06.12aZ",
+        };
+        for (String value : invalidValues) {
+            assertNull(DateUtil.parseUTCDateTime(value), value);
+            assertThrows(DateTimeParseException.class, () -> DateUtil.parseDateTime(value), value);
+        }
+    }
+
+    @Test
+    public void testVerifyCreated() throws Exception {
+        Instant now = Instant.parse("2021-02-03T04:05:06Z");
+        assertTrue(DateUtil.verifyCreated(now.minusSeconds(100), 300, 60, now));
+        assertFalse(DateUtil.verifyCreated(now.minusSeconds(400), 300, 60, now));
+        assertTrue(DateUtil.verifyCreated(now.plusSeconds(30), 300, 60, now));
+        assertFalse(DateUtil.verifyCreated(now.plusSeconds(90), 300, 60, now));
+    }
+
+    @Test
+    public void testCachedTimeSource() throws Exception {
+        WSCachedTimeSource timeSource = new WSCachedTimeSource(60000L);
+        Instant now = timeSource.now();
+        assertSame(now, timeSource.now());
+        assertFalse(now.isAfter(Instant.now()));
+
+        timeSource = new WSCachedTimeSource(1L);
+        now = timeSource.now();
+        Thread.sleep(5L);
+        assertTrue(timeSource.now().isAfter(now));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.security.DrbgParameters;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SecureRandomPoolTest {
+
+    @Test
+    public void testGenerateBytes() throws Exception {
+        byte[] bytes = SecureRandomPool.generateBytes(32);
+        assertEquals(32, bytes.length);
+        assertFalse(Arrays.equals(bytes, SecureRandomPool.generateBytes(32)));
+        assertEquals(0, SecureRandomPool.generateBytes(0).length);
+    }
+
+    @Test
+    public void testDrbgInstances() throws Exception {
+        SecureRandom secureRandom = SecureRandomPool.getSecureRandom();
+        assertEquals("DRBG", secureRandom.getAlgorithm());
+        DrbgParameters.Instantiation parameters = (DrbgParameters.Instantiation) secureRandom.getParameters();
+        assertTrue(parameters.getStrength() >= 256);
+        assertEquals(DrbgParameters.Capability.RESEED_ONLY, parameters.getCapability());
+        assertNotNull(parameters.getPersonalizationString());
+    }
+
+    @Test
+    public void testGenerateID() throws Exception {
+        String id = SecureRandomPool.generateID("TS-");
+        assertTrue(id.startsWith("TS-"));
+        UUID uuid = UUID.fromString(id.substring(3));
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+
+        assertTrue(SecureRandomPool.generateID(null).startsWith("G"));
+        assertNotEquals(SecureRandomPool.generateID("_"), SecureRandomPool.generateID("_"));
+    }
+
+    @Test
+    public void testUniqueIDsFromConcurrentThreads() throws Exception {
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executorService.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        ids.add(SecureRandomPool.generateID("id-"));
+                        ids.add(SecureRandomPool.generateSequentialID("id-"));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(16000, ids.size());
+    }
+}
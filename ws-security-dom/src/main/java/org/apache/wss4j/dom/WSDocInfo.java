@@ -33,7 +33,6 @@ package org.apache.wss4j.dom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -57,8 +56,8 @@ public class WSDocInfo {
     // creation or validation
     private final Map<String, TokenValue> tokens = new HashMap<>();
 
-    private final List<WSSecurityEngineResult> results = new LinkedList<>();
-    private final Map<Integer, List<WSSecurityEngineResult>> actionResults = new HashMap<>();
+    private final List<WSSecurityEngineResult> results = new ArrayList<>();
+    private Map<Integer, List<WSSecurityEngineResult>> actionResults = new HashMap<>();
     private CallbackLookup callbackLookup;
     private Element securityHeader;
 
@@ -212,14 +211,14 @@ public class WSDocInfo {
      */
     public void addResult(WSSecurityEngineResult result) {
         results.add(result);
-        Integer resultTag = (Integer)result.get(WSSecurityEngineResult.TAG_ACTION);
+        Integer resultTag = result.getAction();
         if (resultTag != null) {
             List<WSSecurityEngineResult> storedResults = actionResults.get(resultTag);
             if (storedResults == null) {
-                storedResults = new ArrayList<>();
+                storedResults = new ArrayList<>(2);
+                actionResults.put(resultTag, storedResults);
             }
             storedResults.add(result);
-            actionResults.put(resultTag, storedResults);
         }
     }
 
@@ -245,6 +244,20 @@ public class WSDocInfo {
         return new HashMap<>(actionResults);
     }
 
+    /**
+     * Hand over the map between security actions + results without copying it. This WSDocInfo
+     * does not hold any action results afterwards, so this is intended to be called once the
+     * security header has been processed.
+     */
+    public Map<Integer, List<WSSecurityEngineResult>> detachActionResults() {
+        if (actionResults.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, List<WSSecurityEngineResult>> detachedActionResults = actionResults;
+        actionResults = new HashMap<>();
+        return detachedActionResults;
+    }
+
     /**
      * Get a WSSecurityEngineResult for the given Id.
      * @param uri is the (relative) uri of the id
@@ -254,7 +267,7 @@ public class WSDocInfo {
         String id = XMLUtils.getIDFromReference(uri);
         if (id != null && !results.isEmpty()) {
             for (WSSecurityEngineResult result : results) {
-                String cId = (String)result.get(WSSecurityEngineResult.TAG_ID);
+                String cId = result.getId();
                 if (id.equals(cId)) {
                     return result;
                 }
@@ -285,7 +298,7 @@ public class WSDocInfo {
 
         if (!actionResults.isEmpty() && actionResults.containsKey(tag)) {
             for (WSSecurityEngineResult result : actionResults.get(tag)) {
-                String cId = (String)result.get(WSSecurityEngineResult.TAG_ID);
+                String cId = result.getId();
                 if (id.equals(cId)) {
                     return true;
                 }
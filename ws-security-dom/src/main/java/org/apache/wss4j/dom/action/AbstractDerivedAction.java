@@ -23,19 +23,26 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import java.util.Arrays;
+
 import javax.crypto.SecretKey;
 
 import org.apache.wss4j.common.SignatureEncryptionActionToken;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.EncryptedKeySession;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerConstants;
 import org.apache.wss4j.dom.message.WSSecDerivedKeyBase;
 import org.apache.wss4j.dom.message.WSSecEncryptedKey;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.token.SecurityContextToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 public abstract class AbstractDerivedAction {
 
@@ -95,7 +102,7 @@ public abstract class AbstractDerivedAction {
             derivedKeyBase.setCustomValueType(WSConstants.WSC_SCT);
         }
 
-        String tokenIdentifier = IDGenerator.generateID("uuid:");
+        String tokenIdentifier = SecureRandomPool.generateID("uuid:");
         derivedKeyBase.setTokenIdentifier(tokenIdentifier);
 
         actionToken.setKey(passwordCallback.getKey());
@@ -119,12 +126,94 @@ public abstract class AbstractDerivedAction {
         derivedKeyBase.setTokenIdentifier(tokenIdentifier);
     }
 
+    // Use a previous derived action which has already set up an EncryptedKey, or which references the
+    // EncryptedKey of an earlier message
+    protected void setupEKReference(WSSecDerivedKeyBase derivedKeyBase,
+                                    Document doc,
+                                    SignatureEncryptionActionToken previousActionToken) throws WSSecurityException {
+        setupEKReference(derivedKeyBase, previousActionToken);
+
+        String tokenIdentifier = previousActionToken.getKeyIdentifier();
+        if (tokenIdentifier != null && tokenIdentifier.equals(previousActionToken.getSha1Value())) {
+            derivedKeyBase.setStrElem(createEncryptedKeySHA1Reference(doc, tokenIdentifier));
+        }
+    }
+
+    /**
+     * Get the key of the EncryptedKey session for the recipient of the action, or null if no
+     * EncryptedKeySessionCache is configured or the recipient is not known in advance
+     */
+    protected SessionKey getEncryptedKeySessionKey(
+        RequestData reqData, SignatureEncryptionActionToken actionToken,
+        String symmetricAlgorithm, String keyTransportAlgorithm
+    ) throws WSSecurityException {
+        if (reqData.getEncryptedKeySessionCache() == null || actionToken.getUser() == null
+            || WSHandlerConstants.USE_REQ_SIG_CERT.equals(actionToken.getUser())) {
+            return null;
+        }
+        if (keyTransportAlgorithm == null) {
+            keyTransportAlgorithm = WSConstants.KEYTRANSPORT_RSAOAEP;
+        }
+        return new SessionKey(actionToken.getUser(), symmetricAlgorithm, keyTransportAlgorithm,
+                              actionToken.getCrypto());
+    }
+
+    /**
+     * Get the session of a recipient whose key was sent in an EncryptedKey of a previous message,
+     * or null if a new EncryptedKey must be created
+     */
+    protected EncryptedKeySession getEncryptedKeySession(RequestData reqData, SessionKey sessionKey) {
+        EncryptedKeySessionCache encryptedKeySessionCache = reqData.getEncryptedKeySessionCache();
+        if (encryptedKeySessionCache == null || sessionKey == null) {
+            return null;
+        }
+        return encryptedKeySessionCache.getSession(sessionKey);
+    }
+
+    // Use the key of an EncryptedKey which was sent to the recipient in a previous message
+    protected void setupEKReference(WSSecDerivedKeyBase derivedKeyBase,
+                                    Document doc,
+                                    SignatureEncryptionActionToken actionToken,
+                                    EncryptedKeySession encryptedKeySession,
+                                    SecretKey symmetricKey) throws WSSecurityException {
+        derivedKeyBase.setCustomValueType(WSConstants.WSS_ENC_KEY_VALUE_TYPE);
+
+        String encryptedKeySHA1 = encryptedKeySession.getEncryptedKeySHA1();
+        derivedKeyBase.setTokenIdentifier(encryptedKeySHA1);
+        derivedKeyBase.setStrElem(createEncryptedKeySHA1Reference(doc, encryptedKeySHA1));
+
+        actionToken.setKey(symmetricKey.getEncoded());
+        actionToken.setKeyIdentifier(encryptedKeySHA1);
+        actionToken.setSha1Value(encryptedKeySHA1);
+    }
+
+    private static Element createEncryptedKeySHA1Reference(
+        Document doc, String encryptedKeySHA1
+    ) throws WSSecurityException {
+        SecurityTokenReference secRef = new SecurityTokenReference(doc);
+        secRef.setKeyIdentifierEncKeySHA1(encryptedKeySHA1);
+        secRef.addTokenType(WSConstants.WSS_ENC_KEY_VALUE_TYPE);
+        return secRef.getElement();
+    }
+
     protected Element setupEKReference(WSSecDerivedKeyBase derivedKeyBase,
                                        WSSecHeader securityHeader,
                                         SignatureEncryptionActionToken actionToken,
                                         String keyTransportAlgorithm,
                                         String mgfAlgorithm,
                                         SecretKey symmetricKey) throws WSSecurityException {
+        return setupEKReference(derivedKeyBase, securityHeader, actionToken, keyTransportAlgorithm,
+                                mgfAlgorithm, symmetricKey, null, null);
+    }
+
+    protected Element setupEKReference(WSSecDerivedKeyBase derivedKeyBase,
+                                       WSSecHeader securityHeader,
+                                       SignatureEncryptionActionToken actionToken,
+                                       String keyTransportAlgorithm,
+                                       String mgfAlgorithm,
+                                       SecretKey symmetricKey,
+                                       EncryptedKeySessionCache encryptedKeySessionCache,
+                                       SessionKey sessionKey) throws WSSecurityException {
         derivedKeyBase.setCustomValueType(WSConstants.WSS_ENC_KEY_VALUE_TYPE);
 
         WSSecEncryptedKey encrKeyBuilder = new WSSecEncryptedKey(securityHeader);
@@ -152,6 +241,12 @@ public abstract class AbstractDerivedAction {
         actionToken.setKeyIdentifier(tokenIdentifier);
         derivedKeyBase.setTokenIdentifier(tokenIdentifier);
 
+        if (encryptedKeySessionCache != null && sessionKey != null) {
+            byte[] secret = symmetricKey.getEncoded();
+            encryptedKeySessionCache.addSession(sessionKey, secret, encrKeyBuilder.getEncryptedKeySHA1());
+            Arrays.fill(secret, (byte) 0);
+        }
+
         return encrKeyBuilder.getEncryptedKeyElement();
     }
 }
@@ -43,6 +43,8 @@ public class EncryptionAction implements Action {
             throws WSSecurityException {
         WSSecEncrypt wsEncrypt = new WSSecEncrypt(reqData.getSecHeader());
         wsEncrypt.setIdAllocator(reqData.getWssConfig().getIdAllocator());
+        wsEncrypt.setSecurityMetrics(reqData.getSecurityMetrics());
+        wsEncrypt.setX509TokenTemplateCache(reqData.getX509TokenTemplateCache());
         wsEncrypt.setWsDocInfo(reqData.getWsDocInfo());
         wsEncrypt.setExpandXopInclude(reqData.isExpandXopInclude());
 
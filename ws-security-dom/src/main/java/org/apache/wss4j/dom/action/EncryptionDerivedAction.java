@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.dom.action;
 
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
@@ -29,6 +30,8 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SecurityActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.EncryptedKeySession;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -63,6 +66,7 @@ public class EncryptionDerivedAction extends AbstractDerivedAction implements Ac
             handler.getPasswordCB(encryptionToken.getUser(), WSConstants.DKT_ENCR, callbackHandler, reqData);
         WSSecDKEncrypt wsEncrypt = new WSSecDKEncrypt(reqData.getSecHeader());
         wsEncrypt.setIdAllocator(reqData.getWssConfig().getIdAllocator());
+        wsEncrypt.setSecurityMetrics(reqData.getSecurityMetrics());
         wsEncrypt.setWsDocInfo(reqData.getWsDocInfo());
         wsEncrypt.setExpandXopInclude(reqData.isExpandXopInclude());
 
@@ -90,17 +94,28 @@ public class EncryptionDerivedAction extends AbstractDerivedAction implements Ac
         Element tokenElement = null;
         SecretKey symmetricKey = null;
         if ("EncryptedKey".equals(derivedKeyTokenReference)) {
+            EncryptedKeySession encryptedKeySession = null;
+            SessionKey sessionKey = null;
             if (reqData.getSignatureToken() == null || reqData.getSignatureToken().getKey() == null
                 || reqData.getSignatureToken().getKeyIdentifier() == null) {
                 String symmetricKeyAlgorithm = encryptionToken.getSymmetricAlgorithm();
                 if (symmetricKeyAlgorithm == null) {
                     symmetricKeyAlgorithm = WSConstants.AES_128;
                 }
-                KeyGenerator keyGen = KeyUtils.getKeyGenerator(symmetricKeyAlgorithm);
-                symmetricKey = keyGen.generateKey();
+                sessionKey = getEncryptedKeySessionKey(reqData, encryptionToken, symmetricKeyAlgorithm, null);
+                encryptedKeySession = getEncryptedKeySession(reqData, sessionKey);
+                if (encryptedKeySession != null) {
+                    byte[] secret = encryptedKeySession.getSecret();
+                    symmetricKey = KeyUtils.prepareSecretKey(symmetricKeyAlgorithm, secret);
+                    Arrays.fill(secret, (byte) 0);
+                } else {
+                    KeyGenerator keyGen = KeyUtils.getKeyGenerator(symmetricKeyAlgorithm);
+                    symmetricKey = keyGen.generateKey();
+                }
             }
 
-            tokenElement = setupEncryptedKeyTokenReference(reqData, encryptionToken, wsEncrypt, symmetricKey);
+            tokenElement = setupEncryptedKeyTokenReference(
+                reqData, encryptionToken, wsEncrypt, symmetricKey, encryptedKeySession, sessionKey);
         } else if ("SecurityContextToken".equals(derivedKeyTokenReference)) {
             tokenElement = setupSCTTokenReference(reqData, encryptionToken, wsEncrypt, passwordCallback, doc);
         }
@@ -167,13 +182,19 @@ public class EncryptionDerivedAction extends AbstractDerivedAction implements Ac
 
     private Element setupEncryptedKeyTokenReference(
         RequestData reqData, EncryptionActionToken encryptionToken,
-        WSSecDKEncrypt wsEncrypt, SecretKey symmetricKey
+        WSSecDKEncrypt wsEncrypt, SecretKey symmetricKey, EncryptedKeySession encryptedKeySession,
+        SessionKey sessionKey
     ) throws WSSecurityException {
+        Document doc = reqData.getSecHeader().getSecurityHeaderElement().getOwnerDocument();
         if (symmetricKey == null) {
-            setupEKReference(wsEncrypt, reqData.getSignatureToken());
+            setupEKReference(wsEncrypt, doc, reqData.getSignatureToken());
+            return null;
+        } else if (encryptedKeySession != null) {
+            setupEKReference(wsEncrypt, doc, encryptionToken, encryptedKeySession, symmetricKey);
             return null;
         } else {
-            return setupEKReference(wsEncrypt, reqData.getSecHeader(), encryptionToken, null, null, symmetricKey);
+            return setupEKReference(wsEncrypt, reqData.getSecHeader(), encryptionToken, null, null, symmetricKey,
+                                    reqData.getEncryptedKeySessionCache(), sessionKey);
         }
     }
 
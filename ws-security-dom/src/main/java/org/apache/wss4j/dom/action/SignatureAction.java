@@ -59,6 +59,8 @@ public class SignatureAction implements Action {
             handler.getPasswordCB(signatureToken.getUser(), WSConstants.SIGN, callbackHandler, reqData);
         WSSecSignature wsSign = new WSSecSignature(reqData.getSecHeader());
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
+        wsSign.setSecurityMetrics(reqData.getSecurityMetrics());
+        wsSign.setX509TokenTemplateCache(reqData.getX509TokenTemplateCache());
         wsSign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
         wsSign.setExpandXopInclude(reqData.isExpandXopInclude());
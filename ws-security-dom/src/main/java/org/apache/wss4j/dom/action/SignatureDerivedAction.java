@@ -64,6 +64,7 @@ public class SignatureDerivedAction extends AbstractDerivedAction implements Act
             handler.getPasswordCB(signatureToken.getUser(), WSConstants.DKT_SIGN, callbackHandler, reqData);
         WSSecDKSign wsSign = new WSSecDKSign(reqData.getSecHeader());
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
+        wsSign.setSecurityMetrics(reqData.getSecurityMetrics());
         wsSign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
         wsSign.setExpandXopInclude(reqData.isExpandXopInclude());
@@ -174,7 +175,8 @@ public class SignatureDerivedAction extends AbstractDerivedAction implements Act
     ) throws WSSecurityException {
 
         if (symmetricKey == null) {
-            setupEKReference(wsSign, reqData.getEncryptionToken());
+            Document doc = reqData.getSecHeader().getSecurityHeaderElement().getOwnerDocument();
+            setupEKReference(wsSign, doc, reqData.getEncryptionToken());
             return null;
         } else {
             return setupEKReference(wsSign, reqData.getSecHeader(), signatureToken, null, null, symmetricKey);
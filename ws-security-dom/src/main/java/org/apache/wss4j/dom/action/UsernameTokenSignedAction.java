@@ -103,6 +103,7 @@ public class UsernameTokenSignedAction implements Action {
 
         WSSecSignature sign = new WSSecSignature(reqData.getSecHeader());
         sign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
+        sign.setSecurityMetrics(reqData.getSecurityMetrics());
         sign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
 
         sign.setCustomTokenValueType(WSConstants.USERNAMETOKEN_NS + "#UsernameToken");
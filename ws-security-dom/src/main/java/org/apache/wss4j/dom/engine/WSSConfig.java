@@ -24,16 +24,19 @@ import java.security.PrivilegedAction;
 import java.security.Security;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.namespace.QName;
 
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WsuIdAllocator;
 import org.apache.wss4j.dom.action.Action;
 import org.apache.wss4j.common.crypto.WSProviderConfig;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.WSCurrentTimeSource;
 import org.apache.wss4j.common.util.WSTimeSource;
 import org.apache.wss4j.dom.processor.Processor;
@@ -42,7 +45,6 @@ import org.apache.wss4j.dom.transform.AttachmentCiphertextTransform;
 import org.apache.wss4j.dom.transform.AttachmentCompleteSignatureTransformProvider;
 import org.apache.wss4j.dom.transform.AttachmentContentSignatureTransformProvider;
 import org.apache.wss4j.dom.validate.Validator;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.transforms.Transform;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
 
@@ -251,25 +253,52 @@ public final class WSSConfig {
      * initialized.  This flag prevents repeated and unnecessary calls
      * to static initialization code at construction time.
      */
-    private static boolean staticallyInitialized = false;
+    private static volatile boolean staticallyInitialized = false;
+
+    private static final ReentrantLock INIT_LOCK = new ReentrantLock();
 
     /**
      * This allows the user to specify a different time than that of the current System time.
      */
     private WSTimeSource currentTime;
 
+    /**
+     * The SecurityMetrics which receive the measurements of all requests using this WSSConfig
+     */
+    private SecurityMetrics securityMetrics = SecurityMetrics.NONE;
+
     public static final WsuIdAllocator DEFAULT_ID_ALLOCATOR = new WsuIdAllocator() {
 
         public String createId(String prefix, Object o) {
             if (prefix == null) {
-                return IDGenerator.generateID("_");
+                return SecureRandomPool.generateID("_");
             }
 
-            return IDGenerator.generateID(prefix);
+            return SecureRandomPool.generateID(prefix);
         }
 
         public String createSecureId(String prefix, Object o) {
-            return IDGenerator.generateID(prefix);
+            return SecureRandomPool.generateID(prefix);
+        }
+    };
+
+    /**
+     * A WsuIdAllocator which creates unique, but predictable, identifiers from a counter for
+     * createId, which avoids the generation of random bytes for every wsu:Id. The identifiers
+     * created by createSecureId are still random.
+     */
+    public static final WsuIdAllocator SEQUENTIAL_ID_ALLOCATOR = new WsuIdAllocator() {
+
+        public String createId(String prefix, Object o) {
+            if (prefix == null) {
+                return SecureRandomPool.generateSequentialID("_");
+            }
+
+            return SecureRandomPool.generateSequentialID(prefix);
+        }
+
+        public String createSecureId(String prefix, Object o) {
+            return SecureRandomPool.generateID(prefix);
         }
     };
     protected WsuIdAllocator idAllocator = DEFAULT_ID_ALLOCATOR;
@@ -313,48 +342,61 @@ public final class WSSConfig {
         // complete
     }
 
-    public static synchronized void init() {
-        if (!staticallyInitialized) {
-            if (addJceProviders) {
-                AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
-                    public Boolean run() {
-                        Security.removeProvider("STRTransform");
-                        WSProviderConfig.appendJceProvider(
-                            "STRTransform",
-                            new org.apache.wss4j.dom.transform.STRTransformProvider()
-                        );
-
-                        Security.removeProvider("AttachmentContentSignatureTransform");
-                        WSProviderConfig.appendJceProvider(
-                                "AttachmentContentSignatureTransform",
-                                new AttachmentContentSignatureTransformProvider()
-                        );
-
-                        Security.removeProvider("AttachmentCompleteSignatureTransform");
-                        WSProviderConfig.appendJceProvider(
-                                "AttachmentCompleteSignatureTransform",
-                                new AttachmentCompleteSignatureTransformProvider()
-                        );
-
-                        return true;
-                    }
-                });
+    public static void init() {
+        if (staticallyInitialized) {
+            return;
+        }
+        INIT_LOCK.lock();
+        try {
+            if (!staticallyInitialized) {
+                if (addJceProviders) {
+                    AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
+                        public Boolean run() {
+                            Security.removeProvider("STRTransform");
+                            WSProviderConfig.appendJceProvider(
+                                "STRTransform",
+                                new org.apache.wss4j.dom.transform.STRTransformProvider()
+                            );
+
+                            Security.removeProvider("AttachmentContentSignatureTransform");
+                            WSProviderConfig.appendJceProvider(
+                                    "AttachmentContentSignatureTransform",
+                                    new AttachmentContentSignatureTransformProvider()
+                            );
+
+                            Security.removeProvider("AttachmentCompleteSignatureTransform");
+                            WSProviderConfig.appendJceProvider(
+                                    "AttachmentCompleteSignatureTransform",
+                                    new AttachmentCompleteSignatureTransformProvider()
+                            );
+
+                            return true;
+                        }
+                    });
+                }
+                WSProviderConfig.init();
+                staticallyInitialized = true;
             }
-            WSProviderConfig.init();
-            staticallyInitialized = true;
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
-    public static synchronized void cleanUp() {
-        if (staticallyInitialized) {
-            if (addJceProviders) {
-                Security.removeProvider("STRTransform");
-                Security.removeProvider("AttachmentContentSignatureTransform");
-                Security.removeProvider("AttachmentCompleteSignatureTransform");
+    public static void cleanUp() {
+        INIT_LOCK.lock();
+        try {
+            if (staticallyInitialized) {
+                if (addJceProviders) {
+                    Security.removeProvider("STRTransform");
+                    Security.removeProvider("AttachmentContentSignatureTransform");
+                    Security.removeProvider("AttachmentCompleteSignatureTransform");
+                }
+                WSProviderConfig.cleanUp();
+
+                staticallyInitialized = false;
             }
-            WSProviderConfig.cleanUp();
-
-            staticallyInitialized = false;
+        } finally {
+            INIT_LOCK.unlock();
         }
     }
 
@@ -561,6 +603,18 @@ public final class WSSConfig {
         this.currentTime = currentTime;
     }
 
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    /**
+     * Set the SecurityMetrics to report processor and action timings, crypto operations and
+     * cache accesses to. Setting null restores the default which measures nothing.
+     */
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics != null ? securityMetrics : SecurityMetrics.NONE;
+    }
+
 
     public static boolean isAddJceProviders() {
         return addJceProviders;
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.engine;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.w3c.dom.Document;
+
+/**
+ * Initializes WSS4J before the first message is processed, so that the first requests after a
+ * deployment do not pay for it. The following steps run in parallel:
+ * <ul>
+ * <li>WSSConfig.init(), i.e. the JCE provider registration and the Santuario initialization</li>
+ * <li>the OpenSAML initialization (optional)</li>
+ * <li>the streaming (StAX) initialization including the JAXB context, if ws-security-stax is
+ * available (optional)</li>
+ * <li>loading the configured crypto properties files, and the keystores they reference</li>
+ * <li>a number of synthetic sign/encrypt/decrypt/verify round trips with a generated symmetric key,
+ * to load and JIT compile the DOM code paths (optional)</li>
+ * </ul>
+ */
+public class WSSWarmUp {
+
+    public static final int DEFAULT_ROUND_TRIPS = 100;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WSSWarmUp.class);
+
+    private static final String SOAP_MESSAGE =
+        "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<s:Header/><s:Body><ns:warmUp xmlns:ns=\"urn:wss4j:warmup\">"
+        + "<ns:value>WSS4J</ns:value></ns:warmUp></s:Body></s:Envelope>";
+
+    private final List<String> cryptoPropertiesFiles = new ArrayList<>();
+    private final Map<String, Crypto> cryptos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private ClassLoader classLoader;
+    private boolean initSaml = true;
+    private boolean initStax = true;
+    private int roundTrips = DEFAULT_ROUND_TRIPS;
+    private int threads;
+
+    /**
+     * Run the warm-up, and wait for it to finish
+     * @throws WSSecurityException if one of the steps failed. All steps are run regardless.
+     */
+    public void run() throws WSSecurityException {
+        long start = System.currentTimeMillis();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            WSSConfig.init();
+            return null;
+        });
+        if (initSaml) {
+            tasks.add(() -> {
+                OpenSAMLUtil.initSamlEngine();
+                return null;
+            });
+        }
+        if (initStax) {
+            tasks.add(() -> {
+                initStax();
+                return null;
+            });
+        }
+        for (String cryptoPropertiesFile : cryptoPropertiesFiles) {
+            tasks.add(() -> {
+                ClassLoader loader = classLoader != null ? classLoader : Loader.getClassLoader(CryptoFactory.class);
+                cryptos.put(cryptoPropertiesFile, CryptoFactory.getInstance(cryptoPropertiesFile, loader));
+                return null;
+            });
+        }
+        if (roundTrips > 0) {
+            tasks.add(() -> {
+                WSSConfig.init();
+                runRoundTrips();
+                return null;
+            });
+        }
+
+        int threadCount = threads > 0 ? Math.min(threads, tasks.size()) : tasks.size();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new WarmUpThreadFactory());
+        Exception failure = null;
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    LOG.debug(ex.getCause().getMessage(), ex.getCause());
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof Exception ? (Exception)ex.getCause() : ex;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure = ex;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure instanceof WSSecurityException) {
+            throw (WSSecurityException)failure;
+        } else if (failure != null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, failure);
+        }
+        LOG.debug("WSS4J warm-up finished in {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void initStax() throws Exception {
+        Class<?> wssec = null;
+        try {
+            wssec = Loader.loadClass("org.apache.wss4j.stax.setup.WSSec");
+        } catch (ClassNotFoundException | NoClassDefFoundError ex) {
+            LOG.debug("ws-security-stax is not available, skipping its initialization");
+            return;
+        }
+        wssec.getMethod("init").invoke(null);
+    }
+
+    private void runRoundTrips() throws Exception {
+        SecretKey key = KeyUtils.getKeyGenerator(WSConstants.AES_128).generateKey();
+        byte[] keyData = key.getEncoded();
+        CallbackHandler callbackHandler = new SecretKeyCallbackHandler(keyData);
+        WSSecurityEngine engine = new WSSecurityEngine();
+
+        for (int i = 0; i < roundTrips; i++) {
+            Document doc =
+                org.apache.xml.security.utils.XMLUtils.read(
+                    new ByteArrayInputStream(SOAP_MESSAGE.getBytes(StandardCharsets.UTF_8)), true);
+
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setKeyIdentifierType(WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER);
+            sign.setSecretKey(keyData);
+            sign.setSignatureAlgorithm(WSConstants.HMAC_SHA256);
+            sign.setDigestAlgo(WSConstants.SHA256);
+            sign.build(null);
+
+            WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+            encrypt.setKeyIdentifierType(WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER);
+            encrypt.setEncryptSymmKey(false);
+            encrypt.setSymmetricEncAlgorithm(WSConstants.AES_128_GCM);
+            encrypt.build(null, key);
+
+            engine.processSecurityHeader(doc, null, callbackHandler, null);
+        }
+    }
+
+    public List<String> getCryptoPropertiesFiles() {
+        return cryptoPropertiesFiles;
+    }
+
+    /**
+     * Add a crypto properties file to load, see CryptoFactory.getInstance(String, ClassLoader)
+     */
+    public void addCryptoPropertiesFile(String cryptoPropertiesFile) {
+        cryptoPropertiesFiles.add(cryptoPropertiesFile);
+    }
+
+    /**
+     * @return the Crypto instances loaded by the last run, keyed by the properties file
+     */
+    public Map<String, Crypto> getCryptos() {
+        return cryptos;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Set the ClassLoader with which the crypto properties files (and Crypto implementations) are loaded
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public boolean isInitSaml() {
+        return initSaml;
+    }
+
+    public void setInitSaml(boolean initSaml) {
+        this.initSaml = initSaml;
+    }
+
+    public boolean isInitStax() {
+        return initStax;
+    }
+
+    public void setInitStax(boolean initStax) {
+        this.initStax = initStax;
+    }
+
+    public int getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Set the number of synthetic round trips to run, 0 to disable them. The default is 100.
+     */
+    public void setRoundTrips(int roundTrips) {
+        this.roundTrips = roundTrips;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the maximum number of threads to run the steps with. The default (0) runs all steps in parallel.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    private static final class SecretKeyCallbackHandler implements CallbackHandler {
+        private final byte[] keyData;
+        private final byte[] keyDigest;
+
+        SecretKeyCallbackHandler(byte[] keyData) throws WSSecurityException {
+            this.keyData = keyData;
+            this.keyDigest = KeyUtils.generateDigest(keyData);
+        }
+
+        @Override
+        public void handle(Callback[] callbacks) throws UnsupportedCallbackException {
+            for (Callback callback : callbacks) {
+                if (!(callback instanceof WSPasswordCallback)) {
+                    throw new UnsupportedCallbackException(callback, "Unrecognized Callback");
+                }
+                WSPasswordCallback pc = (WSPasswordCallback)callback;
+                String identifier = pc.getIdentifier();
+                if (identifier != null && MessageDigest.isEqual(keyDigest,
+                        org.apache.xml.security.utils.XMLUtils.decode(identifier))) {
+                    pc.setKey(keyData);
+                }
+            }
+        }
+    }
+
+    private static final class WarmUpThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "wss4j-warm-up-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
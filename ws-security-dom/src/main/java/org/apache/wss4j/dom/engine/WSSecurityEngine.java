@@ -19,10 +19,12 @@
 
 package org.apache.wss4j.dom.engine;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
@@ -30,6 +32,10 @@ import javax.xml.namespace.QName;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.ProcessorEvent;
+import org.apache.wss4j.common.jfr.SecurityEvents;
+import org.apache.wss4j.common.jfr.SecurityHeaderEvent;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
@@ -170,6 +176,42 @@ public class WSSecurityEngine {
         return wsResult;
     }
 
+    /**
+     * Process the security header given the soap envelope as W3C document asynchronously, on a
+     * thread of the given Executor. The calling thread, e.g. an event loop thread of a non-blocking
+     * server, is not used for the processing, including the signature verification, the decryption,
+     * and the calls to the Validators and CallbackHandlers. See also AsyncValidator and
+     * AsyncCallbackHandler.
+     *
+     * @param doc       the SOAP envelope as {@link Document}
+     * @param requestData    the RequestData associated with the request
+     * @param executor  the Executor to process the security header with
+     * @return a CompletableFuture which completes with the WSHandlerResult (null if there is no
+     * security header for the actor), or exceptionally with the WSSecurityException
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Document doc, RequestData requestData, Executor executor
+    ) {
+        return WSSecurityUtil.supplyAsync(() -> processSecurityHeader(doc, requestData), executor);
+    }
+
+    /**
+     * Process the security header given the <code>wsse:Security</code> DOM Element asynchronously,
+     * on a thread of the given Executor.
+     *
+     * @param securityHeader the <code>wsse:Security</code> header element
+     * @param requestData    the RequestData associated with the request
+     * @param executor  the Executor to process the security header with
+     * @return a CompletableFuture which completes with the WSHandlerResult, or exceptionally with
+     * the WSSecurityException
+     * @see #processSecurityHeaderAsync(Document, RequestData, Executor)
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Element securityHeader, RequestData requestData, Executor executor
+    ) {
+        return WSSecurityUtil.supplyAsync(() -> processSecurityHeader(securityHeader, requestData), executor);
+    }
+
     /**
      * Process the security header given the <code>wsse:Security</code> DOM
      * Element.
@@ -315,9 +357,15 @@ public class WSSecurityEngine {
         requestData.setWsDocInfo(wsDocInfo);
 
         final WSSConfig cfg = getWssConfig();
+        final SecurityMetrics securityMetrics = requestData.getSecurityMetrics();
+        final SecurityHeaderEvent securityHeaderEvent = SecurityEvents.securityHeader();
+        securityHeaderEvent.begin();
+        int processedElements = 0;
         Node node = securityHeader.getFirstChild();
 
-        List<WSSecurityEngineResult> returnResults = new LinkedList<>();
+        // the results of each processor are added in reverse order and the whole list is
+        // reversed at the end, so that the results of the last processed element come first
+        List<WSSecurityEngineResult> returnResults = new ArrayList<>();
         boolean foundTimestamp = false;
         while (node != null) {
             Node nextSibling = node.getNextSibling();
@@ -337,9 +385,24 @@ public class WSSecurityEngine {
                 //
                 Processor p = cfg.getProcessor(el);
                 if (p != null) {
+                    final ProcessorEvent processorEvent = SecurityEvents.processor();
+                    processorEvent.begin();
+                    long start = securityMetrics.isEnabled() ? System.nanoTime() : 0L;
                     List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
-                    if (!results.isEmpty()) {
-                        returnResults.addAll(0, results);
+                    if (securityMetrics.isEnabled()) {
+                        securityMetrics.recordTiming(
+                            SecurityMetrics.TimingType.PROCESSOR, el.getLocalPart(), System.nanoTime() - start
+                        );
+                    }
+                    if (processorEvent.shouldCommit()) {
+                        processorEvent.setTokenType(el.getLocalPart());
+                        processorEvent.setNamespace(el.getNamespaceURI());
+                        processorEvent.setProcessor(p.getClass().getName());
+                        processorEvent.commit();
+                    }
+                    processedElements++;
+                    for (int i = results.size() - 1; i >= 0; i--) {
+                        returnResults.add(results.get(i));
                     }
                 } else {
                     if (doDebug) {
@@ -363,8 +426,9 @@ public class WSSecurityEngine {
             }
         }
 
+        Collections.reverse(returnResults);
         WSHandlerResult handlerResult =
-            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
+            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.detachActionResults());
 
         // Validate SAML Subject Confirmation requirements
         if (requestData.isValidateSamlSubjectConfirmation()) {
@@ -374,6 +438,14 @@ public class WSSecurityEngine {
 
         wsDocInfo.clear();
 
+        if (securityHeaderEvent.shouldCommit()) {
+            securityHeaderEvent.setDirection("inbound");
+            securityHeaderEvent.setStreaming(false);
+            securityHeaderEvent.setActor(requestData.getActor());
+            securityHeaderEvent.setElements(processedElements);
+            securityHeaderEvent.commit();
+        }
+
         return handlerResult;
     }
 }
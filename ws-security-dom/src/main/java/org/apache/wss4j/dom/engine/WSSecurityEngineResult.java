@@ -27,11 +27,17 @@ import org.apache.wss4j.dom.message.token.SignatureConfirmation;
 import org.apache.wss4j.dom.message.token.Timestamp;
 import org.apache.wss4j.dom.message.token.UsernameToken;
 
+import org.w3c.dom.Element;
+
 import java.security.Principal;
+import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
-
+/**
+ * The result of processing a single security header element. The values of the well-known TAG_*
+ * keys are also available through typed accessors.
+ */
 public class WSSecurityEngineResult extends java.util.HashMap<String, Object> {
 
     //
@@ -359,4 +365,96 @@ public class WSSecurityEngineResult extends java.util.HashMap<String, Object> {
     }
 
 
+    //
+    // Typed accessors
+    //
+
+    public Integer getAction() {
+        return (Integer) get(TAG_ACTION);
+    }
+
+    public String getId() {
+        return (String) get(TAG_ID);
+    }
+
+    public boolean isValidatedToken() {
+        return Boolean.TRUE.equals(get(TAG_VALIDATED_TOKEN));
+    }
+
+    public Element getTokenElement() {
+        return (Element) get(TAG_TOKEN_ELEMENT);
+    }
+
+    public Principal getPrincipal() {
+        return (Principal) get(TAG_PRINCIPAL);
+    }
+
+    public X509Certificate getX509Certificate() {
+        return (X509Certificate) get(TAG_X509_CERTIFICATE);
+    }
+
+    public X509Certificate[] getX509Certificates() {
+        return (X509Certificate[]) get(TAG_X509_CERTIFICATES);
+    }
+
+    public PublicKey getPublicKey() {
+        return (PublicKey) get(TAG_PUBLIC_KEY);
+    }
+
+    public byte[] getSignatureValue() {
+        return (byte[]) get(TAG_SIGNATURE_VALUE);
+    }
+
+    public String getSignatureMethod() {
+        return (String) get(TAG_SIGNATURE_METHOD);
+    }
+
+    public String getCanonicalizationMethod() {
+        return (String) get(TAG_CANONICALIZATION_METHOD);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<WSDataRef> getDataRefs() {
+        return (List<WSDataRef>) get(TAG_DATA_REF_URIS);
+    }
+
+    public byte[] getSecret() {
+        return (byte[]) get(TAG_SECRET);
+    }
+
+    public byte[] getEncryptedEphemeralKey() {
+        return (byte[]) get(TAG_ENCRYPTED_EPHEMERAL_KEY);
+    }
+
+    public String getEncryptedKeyTransportMethod() {
+        return (String) get(TAG_ENCRYPTED_KEY_TRANSPORT_METHOD);
+    }
+
+    public SamlAssertionWrapper getSamlAssertion() {
+        return (SamlAssertionWrapper) get(TAG_SAML_ASSERTION);
+    }
+
+    public Timestamp getTimestamp() {
+        return (Timestamp) get(TAG_TIMESTAMP);
+    }
+
+    public SecurityContextToken getSecurityContextToken() {
+        return (SecurityContextToken) get(TAG_SECURITY_CONTEXT_TOKEN);
+    }
+
+    public UsernameToken getUsernameToken() {
+        return (UsernameToken) get(TAG_USERNAME_TOKEN);
+    }
+
+    public SignatureConfirmation getSignatureConfirmation() {
+        return (SignatureConfirmation) get(TAG_SIGNATURE_CONFIRMATION);
+    }
+
+    public BinarySecurity getBinarySecurityToken() {
+        return (BinarySecurity) get(TAG_BINARY_SECURITY_TOKEN);
+    }
+
+    public SamlAssertionWrapper getTransformedToken() {
+        return (SamlAssertionWrapper) get(TAG_TRANSFORMED_TOKEN);
+    }
 }
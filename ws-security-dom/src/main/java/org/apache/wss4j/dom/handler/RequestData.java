@@ -36,11 +36,16 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.X509TokenTemplateCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
+import org.apache.wss4j.common.crypto.TenantCrypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -61,6 +66,7 @@ public class RequestData {
     private String pwType = WSConstants.PASSWORD_DIGEST; // Make this the default when no password type is given.
     private Crypto sigVerCrypto;
     private Crypto decCrypto;
+    private String tenant;
     private SignatureActionToken signatureToken;
     private EncryptionActionToken encryptionToken;
     private WSSConfig wssConfig;
@@ -96,6 +102,10 @@ public class RequestData {
     private Serializer encryptionSerializer;
     private WSDocInfo wsDocInfo;
     private Provider signatureProvider;
+    private SecurityMetrics securityMetrics;
+    private EncryptedKeyCache encryptedKeyCache;
+    private X509TokenTemplateCache x509TokenTemplateCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
 
     /**
      * Whether to add an InclusiveNamespaces PrefixList as a CanonicalizationMethod
@@ -238,7 +248,7 @@ public class RequestData {
     }
 
     public Crypto getSigVerCrypto() {
-        return sigVerCrypto;
+        return getTenantScopedCrypto(sigVerCrypto);
     }
 
     public void setSigVerCrypto(Crypto sigVerCrypto) {
@@ -246,13 +256,32 @@ public class RequestData {
     }
 
     public Crypto getDecCrypto() {
-        return decCrypto;
+        return getTenantScopedCrypto(decCrypto);
     }
 
     public void setDecCrypto(Crypto decCrypto) {
         this.decCrypto = decCrypto;
     }
 
+    /**
+     * Set the tenant of the message. If the signature verification or decryption Crypto is a
+     * TenantCrypto, its lookups are then restricted to the Crypto of this tenant.
+     */
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    private Crypto getTenantScopedCrypto(Crypto crypto) {
+        if (tenant != null && crypto instanceof TenantCrypto) {
+            return ((TenantCrypto) crypto).getTenantScopedCrypto(tenant);
+        }
+        return crypto;
+    }
+
     /**
      * @return Returns the wssConfig.
      */
@@ -446,6 +475,71 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache for the symmetric keys unwrapped from EncryptedKey elements
+     */
+    public void setEncryptedKeyCache(EncryptedKeyCache encryptedKeyCache) {
+        this.encryptedKeyCache = encryptedKeyCache;
+    }
+
+    /**
+     * Get the cache for the symmetric keys unwrapped from EncryptedKey elements, null if the keys are not cached
+     */
+    public EncryptedKeyCache getEncryptedKeyCache() {
+        return encryptedKeyCache;
+    }
+
+    /**
+     * Set the cache of the keys which were sent to a recipient in an EncryptedKey, and which are reused
+     * for subsequent messages to the same recipient
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    /**
+     * Get the cache of the keys which were sent to a recipient in an EncryptedKey, null if every message
+     * transports a new key
+     */
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the cache for the encoded certificate data which is written to outbound messages
+     */
+    public void setX509TokenTemplateCache(X509TokenTemplateCache x509TokenTemplateCache) {
+        this.x509TokenTemplateCache = x509TokenTemplateCache;
+    }
+
+    /**
+     * Get the cache for the encoded certificate data which is written to outbound messages, null if
+     * the data is not cached
+     */
+    public X509TokenTemplateCache getX509TokenTemplateCache() {
+        return x509TokenTemplateCache;
+    }
+
+    /**
+     * Set the SecurityMetrics for this request, overriding the ones of the WSSConfig
+     */
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics;
+    }
+
+    /**
+     * Get the SecurityMetrics of this request or else of the WSSConfig. Never returns null.
+     */
+    public SecurityMetrics getSecurityMetrics() {
+        if (securityMetrics != null) {
+            return securityMetrics;
+        }
+        if (wssConfig != null) {
+            return wssConfig.getSecurityMetrics();
+        }
+        return SecurityMetrics.NONE;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
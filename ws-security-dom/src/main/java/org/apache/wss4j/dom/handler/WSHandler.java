@@ -21,7 +21,9 @@ package org.apache.wss4j.dom.handler;
 
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -30,12 +32,17 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.action.Action;
 import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.SignatureEncryptionActionToken;
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.X509TokenTemplateCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
@@ -43,6 +50,7 @@ import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.Loader;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.token.SignatureConfirmation;
@@ -122,6 +130,8 @@ public abstract class WSHandler {
             reqData.setStoreBytesInAttachment(storeBytesInAttachment);
         }
 
+        decodeX509TokenTemplateCache(reqData);
+
         // Perform configuration
         boolean encryptionFound = false;
         for (HandlerAction actionToDo : actions) {
@@ -233,12 +243,19 @@ public abstract class WSHandler {
          * Here we have all necessary information to perform the requested
          * action(s).
          */
+        SecurityMetrics securityMetrics = reqData.getSecurityMetrics();
         for (HandlerAction actionToDo : actionsToPerform) {
             LOG.debug("Performing Action: {}", actionToDo.getAction());
 
             if (WSConstants.NO_SECURITY != actionToDo.getAction()) {
-                wssConfig.getAction(actionToDo.getAction()).execute(
-                    this, actionToDo.getActionToken(), reqData);
+                Action action = wssConfig.getAction(actionToDo.getAction());
+                long start = securityMetrics.isEnabled() ? System.nanoTime() : 0L;
+                action.execute(this, actionToDo.getActionToken(), reqData);
+                if (securityMetrics.isEnabled()) {
+                    securityMetrics.recordTiming(
+                        SecurityMetrics.TimingType.ACTION, action.getClass().getSimpleName(), System.nanoTime() - start
+                    );
+                }
             }
         }
 
@@ -294,6 +311,31 @@ public abstract class WSHandler {
         return null;
     }
 
+    /**
+     * Performs all defined security actions to set-up the SOAP request asynchronously, on a thread
+     * of the given Executor.
+     *
+     * @param doc   the request as DOM document
+     * @param reqData a data storage to pass values around between methods
+     * @param actions a list holding the actions to do in the order defined
+     *                in the deployment file or property
+     * @param executor the Executor to perform the actions with
+     * @return a CompletableFuture which completes with the secured document, or exceptionally with
+     * the WSSecurityException
+     */
+    protected CompletableFuture<Document> doSenderActionAsync(
+            Document doc,
+            RequestData reqData,
+            List<HandlerAction> actions,
+            boolean isRequest,
+            Executor executor
+    ) {
+        return WSSecurityUtil.supplyAsync(() -> {
+            doSenderAction(doc, reqData, actions, isRequest);
+            return doc;
+        }, executor);
+    }
+
     protected void doReceiverAction(List<Integer> actions, RequestData reqData)
         throws WSSecurityException {
 
@@ -334,6 +376,9 @@ public abstract class WSHandler {
         reqData.setValidateSamlSubjectConfirmation(
             decodeBooleanConfigValue(mc, WSHandlerConstants.VALIDATE_SAML_SUBJECT_CONFIRMATION, true)
         );
+        if (reqData.getTenant() == null) {
+            reqData.setTenant(getString(WSHandlerConstants.TENANT, mc));
+        }
 
         boolean bspCompliant =
             decodeBooleanConfigValue(mc, WSHandlerConstants.IS_BSP_COMPLIANT, true);
@@ -365,6 +410,29 @@ public abstract class WSHandler {
         );
     }
 
+    /**
+     * Set up the RequestData for the given receiver actions, and process the security header of the
+     * document, asynchronously on a thread of the given Executor. The results still need to be
+     * checked against the actions, e.g. with checkReceiverResults.
+     *
+     * @param doc the received message as DOM document
+     * @param actions the actions the received message is expected to contain
+     * @param reqData a data storage to pass values around between methods
+     * @param executor the Executor to process the security header with
+     * @return a CompletableFuture which completes with the WSHandlerResult (null if there is no
+     * security header for the actor), or exceptionally with the WSSecurityException
+     */
+    protected CompletableFuture<WSHandlerResult> doReceiverActionAsync(
+        Document doc, List<Integer> actions, RequestData reqData, Executor executor
+    ) {
+        return WSSecurityUtil.supplyAsync(() -> {
+            doReceiverAction(actions, reqData);
+            WSSecurityEngine secEngine = new WSSecurityEngine();
+            secEngine.setWssConfig(reqData.getWssConfig());
+            return secEngine.processSecurityHeader(doc, reqData);
+        }, executor);
+    }
+
     protected boolean checkReceiverResults(
         List<WSSecurityEngineResult> wsResult, List<Integer> actions
     ) {
@@ -634,6 +702,18 @@ public abstract class WSHandler {
         }
     }
 
+    protected void decodeX509TokenTemplateCache(RequestData reqData) {
+        if (reqData.getX509TokenTemplateCache() == null) {
+            Object o = getOption(WSHandlerConstants.X509_TOKEN_TEMPLATE_CACHE_INSTANCE);
+            if (o == null) {
+                o = getProperty(reqData.getMsgContext(), WSHandlerConstants.X509_TOKEN_TEMPLATE_CACHE_INSTANCE);
+            }
+            if (o instanceof X509TokenTemplateCache) {
+                reqData.setX509TokenTemplateCache((X509TokenTemplateCache) o);
+            }
+        }
+    }
+
     protected void decodeAlgorithmSuite(RequestData reqData) throws WSSecurityException {
         Object mc = reqData.getMsgContext();
         if (mc == null || reqData.getAlgorithmSuite() != null) {
@@ -776,6 +856,16 @@ public abstract class WSHandler {
         boolean includeToken =
             decodeBooleanConfigValue(mc, WSHandlerConstants.INCLUDE_ENCRYPTION_TOKEN, false);
         actionToken.setIncludeToken(includeToken);
+
+        if (reqData.getEncryptedKeySessionCache() == null) {
+            Object o = getOption(WSHandlerConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+            if (o == null) {
+                o = getProperty(mc, WSHandlerConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+            }
+            if (o instanceof EncryptedKeySessionCache) {
+                reqData.setEncryptedKeySessionCache((EncryptedKeySessionCache) o);
+            }
+        }
     }
 
     /**
@@ -949,6 +1039,7 @@ public abstract class WSHandler {
         String refId = getString(cryptoPropertyRefId, mc);
         if (refId != null) {
             crypto = cryptos.get(refId);
+            recordCryptoCacheAccess(requestData, crypto != null);
             if (crypto == null) {
                 Object obj = getProperty(mc, refId);
                 if (obj instanceof Properties) {
@@ -975,6 +1066,7 @@ public abstract class WSHandler {
             String propFile = getString(cryptoPropertyFile, mc);
             if (propFile != null) {
                 crypto = cryptos.get(propFile);
+                recordCryptoCacheAccess(requestData, crypto != null);
                 if (crypto == null) {
                     crypto = loadCryptoFromPropertiesFile(propFile, requestData);
                     cryptos.put(propFile, crypto);
@@ -991,6 +1083,13 @@ public abstract class WSHandler {
         return crypto;
     }
 
+    private static void recordCryptoCacheAccess(RequestData requestData, boolean hit) {
+        SecurityMetrics securityMetrics = requestData.getSecurityMetrics();
+        if (securityMetrics.isEnabled()) {
+            securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.CRYPTO, hit);
+        }
+    }
+
     /**
      * A hook to allow subclass to load Crypto instances from property files in a different
      * way.
@@ -1404,6 +1503,16 @@ public abstract class WSHandler {
                 false
             );
         reqData.setAllowRSA15KeyTransportAlgorithm(allowRsa15);
+
+        if (reqData.getEncryptedKeyCache() == null) {
+            Object o = getOption(WSHandlerConstants.ENCRYPTED_KEY_CACHE_INSTANCE);
+            if (o == null) {
+                o = getProperty(reqData.getMsgContext(), WSHandlerConstants.ENCRYPTED_KEY_CACHE_INSTANCE);
+            }
+            if (o instanceof EncryptedKeyCache) {
+                reqData.setEncryptedKeyCache((EncryptedKeyCache) o);
+            }
+        }
     }
 
     /**
@@ -23,8 +23,10 @@ import java.io.IOException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -39,7 +41,10 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -56,7 +61,6 @@ import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.keys.KeyInfo;
-import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.utils.EncryptionConstants;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -73,9 +77,11 @@ public class Encryptor {
     private Document doc;
     private WSSecHeader securityHeader;
     private WsuIdAllocator idAllocator;
+    private SecurityMetrics securityMetrics = SecurityMetrics.NONE;
     private CallbackLookup callbackLookup;
     private CallbackHandler attachmentCallbackHandler;
     private boolean storeBytesInAttachment;
+    private SinglePassAttachmentEncryptor singlePassAttachmentEncryptor;
     private Serializer encryptionSerializer;
     private boolean expandXopInclude;
     private WSDocInfo wsDocInfo;
@@ -203,9 +209,23 @@ public class Encryptor {
             }
         }
 
+        Set<String> encryptedAttachmentIds = new HashSet<>();
         if (attachmentEncryptionPart != null) {
             encryptAttachment(keyInfo, secretKey, encryptionAlgorithm, attachmentEncryptionPart, encDataRef,
-                              attachmentEncryptedDataElements);
+                              attachmentEncryptedDataElements, encryptedAttachmentIds);
+        }
+
+        if (singlePassAttachmentEncryptor != null) {
+            //an attachment which was encrypted for the signature can't be decrypted without an EncryptedData
+            for (String attachmentId : singlePassAttachmentEncryptor.getEncryptedAttachmentIds()) {
+                if (!encryptedAttachmentIds.contains(attachmentId)) {
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILED_ENCRYPTION, "empty",
+                        new Object[] {"The attachment " + attachmentId
+                            + " was encrypted with the signature but is not covered by the encryption parts"}
+                    );
+                }
+            }
         }
 
         return encDataRef;
@@ -294,6 +314,11 @@ public class Encryptor {
         byte[] encryptedBytes = null;
         try {
             encryptedBytes = cipher.doFinal(serializedOctets);
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(
+                    SecurityMetrics.CryptoOperation.ENCRYPTION, serializedOctets.length
+                );
+            }
         } catch (IllegalBlockSizeException ibse) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ibse);
         } catch (BadPaddingException bpe) {
@@ -330,7 +355,8 @@ public class Encryptor {
         String encryptionAlgorithm,
         WSEncryptionPart attachmentEncryptionPart,
         List<String> encDataRef,
-        List<Element> attachmentEncryptedDataElements
+        List<Element> attachmentEncryptedDataElements,
+        Set<String> encryptedAttachmentIds
     ) throws WSSecurityException {
         if (attachmentCallbackHandler == null) {
             throw new WSSecurityException(
@@ -360,10 +386,21 @@ public class Encryptor {
             String encEncryptedDataId = idAllocator.createId("ED-", attachmentId);
             encDataRef.add("#" + encEncryptedDataId);
 
+            //the attachment was already encrypted when it was digested for the signature
+            boolean encryptedWithSignature = singlePassAttachmentEncryptor != null
+                && singlePassAttachmentEncryptor.isEncrypted(attachmentId);
+            String mimeType = attachment.getMimeType();
+            if (encryptedWithSignature) {
+                singlePassAttachmentEncryptor.checkEncryptionParameters(
+                    encryptionAlgorithm, secretKey, "Element".equals(attachmentEncryptionPart.getEncModifier())
+                );
+                mimeType = singlePassAttachmentEncryptor.getOriginalMimeType(attachmentId);
+            }
+
             Element encryptedData =
                 doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":EncryptedData");
             encryptedData.setAttributeNS(null, "Id", encEncryptedDataId);
-            encryptedData.setAttributeNS(null, "MimeType", attachment.getMimeType());
+            encryptedData.setAttributeNS(null, "MimeType", mimeType);
             encryptedData.setAttributeNS(null, "Type", attachmentEncryptedDataType);
 
             Element encryptionMethod =
@@ -389,6 +426,11 @@ public class Encryptor {
             encryptedData.appendChild(cipherData);
 
             attachmentEncryptedDataElements.add(encryptedData);
+            encryptedAttachmentIds.add(attachmentId);
+
+            if (encryptedWithSignature) {
+                continue;
+            }
 
             Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachmentId);
@@ -423,7 +465,7 @@ public class Encryptor {
             Cipher cipher = Cipher.getInstance(jceAlgorithm);
 
             int ivLen = JCEMapper.getIVLengthFromURI(encryptionAlgorithm) / 8;
-            byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+            byte[] iv = SecureRandomPool.generateBytes(ivLen);
             AlgorithmParameterSpec paramSpec =
                 XMLCipherUtil.constructBlockCipherParameters(encryptionAlgorithm, iv);
             cipher.init(Cipher.ENCRYPT_MODE, secretKey, paramSpec);
@@ -464,6 +506,9 @@ public class Encryptor {
             encData.setId(xencEncryptedDataId);
             encData.setKeyInfo(keyInfo);
             xmlCipher.doFinal(doc, elementToEncrypt, content);
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.ENCRYPTION, 0L);
+            }
             return xencEncryptedDataId;
         } catch (Exception ex) {
             throw new WSSecurityException(
@@ -543,6 +588,14 @@ public class Encryptor {
         this.idAllocator = idAllocator;
     }
 
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics != null ? securityMetrics : SecurityMetrics.NONE;
+    }
+
     public CallbackLookup getCallbackLookup() {
         return callbackLookup;
     }
@@ -559,6 +612,14 @@ public class Encryptor {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public SinglePassAttachmentEncryptor getSinglePassAttachmentEncryptor() {
+        return singlePassAttachmentEncryptor;
+    }
+
+    public void setSinglePassAttachmentEncryptor(SinglePassAttachmentEncryptor singlePassAttachmentEncryptor) {
+        this.singlePassAttachmentEncryptor = singlePassAttachmentEncryptor;
+    }
+
     public boolean isStoreBytesInAttachment() {
         return storeBytesInAttachment;
     }
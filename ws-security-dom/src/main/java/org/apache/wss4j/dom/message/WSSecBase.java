@@ -20,6 +20,11 @@
 package org.apache.wss4j.dom.message;
 
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.X509TokenTemplateCache;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
+import org.apache.wss4j.common.token.X509TokenTemplate;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -32,6 +37,7 @@ import org.w3c.dom.Element;
 
 import javax.security.auth.callback.CallbackHandler;
 
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,6 +57,8 @@ public class WSSecBase {
     protected boolean addWSUNamespace;
 
     private WsuIdAllocator idAllocator;
+    private SecurityMetrics securityMetrics = SecurityMetrics.NONE;
+    private X509TokenTemplateCache x509TokenTemplateCache;
     private final List<WSEncryptionPart> parts = new ArrayList<>();
     private final WSSecHeader securityHeader;
     private final Document doc;
@@ -226,6 +234,43 @@ public class WSSecBase {
         this.idAllocator = idAllocator;
     }
 
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    /**
+     * Set the SecurityMetrics which receive the crypto operations of this builder
+     * @param securityMetrics the SecurityMetrics to use, null disables the reporting
+     */
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics != null ? securityMetrics : SecurityMetrics.NONE;
+    }
+
+    public X509TokenTemplateCache getX509TokenTemplateCache() {
+        return x509TokenTemplateCache;
+    }
+
+    /**
+     * Set the cache of the encoded certificate data which is written to the message to include or
+     * reference a certificate. If it is null (the default), the data is computed for each message.
+     */
+    public void setX509TokenTemplateCache(X509TokenTemplateCache x509TokenTemplateCache) {
+        this.x509TokenTemplateCache = x509TokenTemplateCache;
+    }
+
+    /**
+     * Return the template of the given certificate chain from the X509TokenTemplateCache, or null
+     * if no cache is set or there is no certificate.
+     */
+    protected X509TokenTemplate getX509TokenTemplate(
+        X509Certificate[] certs, Crypto crypto
+    ) throws WSSecurityException {
+        if (x509TokenTemplateCache == null || certs == null || certs.length == 0) {
+            return null;
+        }
+        return x509TokenTemplateCache.getTemplate(certs, crypto);
+    }
+
     public boolean isExpandXopInclude() {
         return expandXopInclude;
     }
@@ -135,6 +135,7 @@ public class WSSecDKEncrypt extends WSSecDerivedKeyBase {
         encryptor.setDoc(getDocument());
         encryptor.setSecurityHeader(getSecurityHeader());
         encryptor.setIdAllocator(getIdAllocator());
+        encryptor.setSecurityMetrics(getSecurityMetrics());
         encryptor.setCallbackLookup(callbackLookup);
         encryptor.setAttachmentCallbackHandler(attachmentCallbackHandler);
         encryptor.setStoreBytesInAttachment(storeBytesInAttachment);
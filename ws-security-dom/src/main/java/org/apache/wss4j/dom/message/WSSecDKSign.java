@@ -43,6 +43,7 @@ import org.w3c.dom.Element;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.token.Reference;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.KeyUtils;
@@ -286,6 +287,13 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
             wsDocInfo.setTokensOnContext((DOMSignContext)signContext);
 
             sig.sign(signContext);
+            SecurityMetrics securityMetrics = getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.SIGNATURE_CREATION, 0L);
+                for (int i = 0; i < sig.getSignedInfo().getReferences().size(); i++) {
+                    securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DIGEST, 0L);
+                }
+            }
 
             signatureValue = sig.getSignatureValue().getValue();
         } catch (Exception ex) {
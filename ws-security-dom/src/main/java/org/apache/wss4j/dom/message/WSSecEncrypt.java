@@ -31,6 +31,7 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.Reference;
 import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
@@ -76,6 +77,8 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
 
     private Serializer encryptionSerializer;
 
+    private SinglePassAttachmentEncryptor singlePassAttachmentEncryptor;
+
     /**
      * Algorithm to be used with the ephemeral key
      */
@@ -201,9 +204,11 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         encryptor.setDoc(getDocument());
         encryptor.setSecurityHeader(getSecurityHeader());
         encryptor.setIdAllocator(getIdAllocator());
+        encryptor.setSecurityMetrics(getSecurityMetrics());
         encryptor.setCallbackLookup(callbackLookup);
         encryptor.setAttachmentCallbackHandler(attachmentCallbackHandler);
         encryptor.setStoreBytesInAttachment(storeBytesInAttachment);
+        encryptor.setSinglePassAttachmentEncryptor(singlePassAttachmentEncryptor);
         encryptor.setEncryptionSerializer(getEncryptionSerializer());
         encryptor.setExpandXopInclude(isExpandXopInclude());
         encryptor.setWsDocInfo(getWsDocInfo());
@@ -454,6 +459,20 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         this.encryptionSerializer = encryptionSerializer;
     }
 
+    public SinglePassAttachmentEncryptor getSinglePassAttachmentEncryptor() {
+        return singlePassAttachmentEncryptor;
+    }
+
+    /**
+     * Set the SinglePassAttachmentEncryptor which encrypted the attachments while they were digested
+     * for a preceding signature (see WSSecSignatureBase#setSinglePassAttachmentEncryptor). The
+     * attachments it encrypted are referenced by an EncryptedData element, but not encrypted again.
+     * It must use the symmetric key and algorithm of this WSSecEncrypt.
+     */
+    public void setSinglePassAttachmentEncryptor(SinglePassAttachmentEncryptor singlePassAttachmentEncryptor) {
+        this.singlePassAttachmentEncryptor = singlePassAttachmentEncryptor;
+    }
+
     /**
      * Set the name of the symmetric encryption algorithm to use.
      *
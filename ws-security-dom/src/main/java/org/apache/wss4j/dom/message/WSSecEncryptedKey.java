@@ -43,18 +43,20 @@ import javax.xml.crypto.dsig.keyinfo.KeyValue;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.token.DOMX509Data;
 import org.apache.wss4j.common.token.DOMX509IssuerSerial;
 import org.apache.wss4j.common.token.Reference;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.token.X509Security;
+import org.apache.wss4j.common.token.X509TokenTemplate;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.xml.security.algorithms.JCEMapper;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
@@ -243,7 +245,7 @@ public class WSSecEncryptedKey extends WSSecBase {
     protected void createEncryptedKeyElement(X509Certificate remoteCert, Crypto crypto) throws WSSecurityException {
         encryptedKeyElement = createEncryptedKey(getDocument(), keyEncAlgo);
         if (encKeyId == null || encKeyId.length() == 0) {
-            encKeyId = IDGenerator.generateID("EK-");
+            encKeyId = SecureRandomPool.generateID("EK-");
         }
         encryptedKeyElement.setAttributeNS(null, "Id", encKeyId);
 
@@ -255,16 +257,26 @@ public class WSSecEncryptedKey extends WSSecBase {
                 secToken.addWSUNamespace();
             }
 
+            X509TokenTemplate template = getX509TokenTemplate(new X509Certificate[] {remoteCert}, crypto);
+
             switch (keyIdentifierType) {
             case WSConstants.X509_KEY_IDENTIFIER:
-                secToken.setKeyIdentifier(remoteCert);
+                if (template != null) {
+                    secToken.setKeyIdentifier(template);
+                } else {
+                    secToken.setKeyIdentifier(remoteCert);
+                }
                 break;
 
             case WSConstants.SKI_KEY_IDENTIFIER:
-                secToken.setKeyIdentifierSKI(remoteCert, crypto);
+                if (template != null) {
+                    secToken.setKeyIdentifierSKI(template);
+                } else {
+                    secToken.setKeyIdentifierSKI(remoteCert, crypto);
+                }
 
                 if (includeEncryptionToken) {
-                    addBST(remoteCert);
+                    addBST(remoteCert, template);
                 }
                 break;
 
@@ -274,27 +286,35 @@ public class WSSecEncryptedKey extends WSSecBase {
                 // This identifier is not applicable for this case, so fall back to
                 // ThumbprintRSA.
                 //
-                secToken.setKeyIdentifierThumb(remoteCert);
+                if (template != null) {
+                    secToken.setKeyIdentifierThumb(template);
+                } else {
+                    secToken.setKeyIdentifierThumb(remoteCert);
+                }
 
                 if (includeEncryptionToken) {
-                    addBST(remoteCert);
+                    addBST(remoteCert, template);
                 }
                 break;
 
             case WSConstants.ISSUER_SERIAL:
-                addIssuerSerial(remoteCert, secToken, false);
+                addIssuerSerial(remoteCert, template, secToken, false);
                 break;
 
             case WSConstants.ISSUER_SERIAL_QUOTE_FORMAT:
-                addIssuerSerial(remoteCert, secToken,true);
+                addIssuerSerial(remoteCert, template, secToken, true);
                 break;
 
             case WSConstants.BST_DIRECT_REFERENCE:
                 Reference ref = new Reference(getDocument());
-                String certUri = IDGenerator.generateID(null);
+                String certUri = SecureRandomPool.generateID(null);
                 ref.setURI("#" + certUri);
                 bstToken = new X509Security(getDocument());
-                ((X509Security) bstToken).setX509Certificate(remoteCert);
+                if (template != null) {
+                    ((X509Security) bstToken).setX509Certificate(template);
+                } else {
+                    ((X509Security) bstToken).setX509Certificate(remoteCert);
+                }
                 bstToken.setID(certUri);
                 ref.setValueType(bstToken.getValueType());
                 secToken.setReference(ref);
@@ -364,17 +384,22 @@ public class WSSecEncryptedKey extends WSSecBase {
 
     }
 
-    private void addIssuerSerial(X509Certificate remoteCert, SecurityTokenReference secToken, boolean isCommaDelimited)
+    private void addIssuerSerial(X509Certificate remoteCert, X509TokenTemplate template,
+                                 SecurityTokenReference secToken, boolean isCommaDelimited)
             throws WSSecurityException {
-        String issuer = remoteCert.getIssuerX500Principal().getName();
-        java.math.BigInteger serialNumber = remoteCert.getSerialNumber();
-        DOMX509IssuerSerial domIssuerSerial =
-                new DOMX509IssuerSerial(getDocument(), issuer, serialNumber, isCommaDelimited);
+        DOMX509IssuerSerial domIssuerSerial = null;
+        if (template != null) {
+            domIssuerSerial = new DOMX509IssuerSerial(getDocument(), template, isCommaDelimited);
+        } else {
+            String issuer = remoteCert.getIssuerX500Principal().getName();
+            java.math.BigInteger serialNumber = remoteCert.getSerialNumber();
+            domIssuerSerial = new DOMX509IssuerSerial(getDocument(), issuer, serialNumber, isCommaDelimited);
+        }
         DOMX509Data domX509Data = new DOMX509Data(getDocument(), domIssuerSerial);
         secToken.setUnknownElement(domX509Data.getElement());
 
         if (includeEncryptionToken) {
-            addBST(remoteCert);
+            addBST(remoteCert, template);
         }
     }
 
@@ -388,7 +413,7 @@ public class WSSecEncryptedKey extends WSSecBase {
     protected void createEncryptedKeyElement(Key key) throws WSSecurityException {
         encryptedKeyElement = createEncryptedKey(getDocument(), keyEncAlgo);
         if (encKeyId == null || encKeyId.length() == 0) {
-            encKeyId = IDGenerator.generateID("EK-");
+            encKeyId = SecureRandomPool.generateID("EK-");
         }
         encryptedKeyElement.setAttributeNS(null, "Id", encKeyId);
 
@@ -549,7 +574,12 @@ public class WSSecEncryptedKey extends WSSecBase {
         LOG.debug("cipher blksize: {}", blockSize);
 
         try {
-            return cipher.wrap(keyToBeEncrypted);
+            byte[] encryptedKey = cipher.wrap(keyToBeEncrypted);
+            SecurityMetrics securityMetrics = getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.KEY_WRAP, encryptedKey.length);
+            }
+            return encryptedKey;
         } catch (IllegalStateException | IllegalBlockSizeException | InvalidKeyException ex) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ex
@@ -558,14 +588,18 @@ public class WSSecEncryptedKey extends WSSecBase {
     }
 
     /**
-     * Add a BinarySecurityToken
+     * Add a BinarySecurityToken, using the encoded certificate of the template if it is not null
      */
-    private void addBST(X509Certificate cert) throws WSSecurityException {
+    private void addBST(X509Certificate cert, X509TokenTemplate template) throws WSSecurityException {
         bstToken = new X509Security(getDocument());
-        ((X509Security) bstToken).setX509Certificate(cert);
+        if (template != null) {
+            ((X509Security) bstToken).setX509Certificate(template);
+        } else {
+            ((X509Security) bstToken).setX509Certificate(cert);
+        }
 
         bstAddedToSecurityHeader = false;
-        bstToken.setID(IDGenerator.generateID(null));
+        bstToken.setID(SecureRandomPool.generateID(null));
         if (addWSUNamespace) {
             bstToken.addWSUNamespace();
         }
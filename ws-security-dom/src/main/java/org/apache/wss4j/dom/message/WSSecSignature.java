@@ -47,6 +47,7 @@ import org.apache.wss4j.common.WSS4JConstants;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.token.DOMX509Data;
 import org.apache.wss4j.common.token.DOMX509IssuerSerial;
@@ -54,6 +55,7 @@ import org.apache.wss4j.common.token.PKIPathSecurity;
 import org.apache.wss4j.common.token.Reference;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.token.X509Security;
+import org.apache.wss4j.common.token.X509TokenTemplate;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
@@ -195,6 +197,8 @@ public class WSSecSignature extends WSSecSignatureBase {
             secRef.addWSUNamespace();
             secRef.setID(strUri);
 
+            X509TokenTemplate template = getX509TokenTemplate(certs, crypto);
+
             //
             // Get an initialized XMLSignature element.
             //
@@ -207,7 +211,7 @@ public class WSSecSignature extends WSSecSignatureBase {
                 Reference ref = new Reference(getDocument());
                 ref.setURI("#" + certUri);
 
-                addBST(certs);
+                addBST(certs, template);
                 if (!useSingleCert) {
                     secRef.addTokenType(PKIPathSecurity.PKI_TYPE);
                     ref.setValueType(PKIPathSecurity.PKI_TYPE);
@@ -218,30 +222,42 @@ public class WSSecSignature extends WSSecSignatureBase {
                 break;
 
                 case WSConstants.ISSUER_SERIAL:
-                    addIssuerSerial(certs,false);
+                    addIssuerSerial(certs, template, false);
                     break;
 
                 case WSConstants.ISSUER_SERIAL_QUOTE_FORMAT:
-                    addIssuerSerial(certs,true);
+                    addIssuerSerial(certs, template, true);
                     break;
 
                 case WSConstants.X509_KEY_IDENTIFIER:
-                secRef.setKeyIdentifier(certs[0]);
+                if (template != null) {
+                    secRef.setKeyIdentifier(template);
+                } else {
+                    secRef.setKeyIdentifier(certs[0]);
+                }
                 break;
 
             case WSConstants.SKI_KEY_IDENTIFIER:
-                secRef.setKeyIdentifierSKI(certs[0], crypto);
+                if (template != null) {
+                    secRef.setKeyIdentifierSKI(template);
+                } else {
+                    secRef.setKeyIdentifierSKI(certs[0], crypto);
+                }
 
                 if (includeSignatureToken) {
-                    addBST(certs);
+                    addBST(certs, template);
                 }
                 break;
 
             case WSConstants.THUMBPRINT_IDENTIFIER:
-                secRef.setKeyIdentifierThumb(certs[0]);
+                if (template != null) {
+                    secRef.setKeyIdentifierThumb(template);
+                } else {
+                    secRef.setKeyIdentifierThumb(certs[0]);
+                }
 
                 if (includeSignatureToken) {
-                    addBST(certs);
+                    addBST(certs, template);
                 }
                 break;
 
@@ -339,17 +355,21 @@ public class WSSecSignature extends WSSecSignatureBase {
         }
     }
 
-    private void addIssuerSerial(X509Certificate[] certs,boolean isCommaDelimited) throws WSSecurityException {
-        String issuer = certs[0].getIssuerX500Principal().getName();
-        java.math.BigInteger serialNumber = certs[0].getSerialNumber();
-
-        DOMX509IssuerSerial domIssuerSerial
-                = new DOMX509IssuerSerial(getDocument(), issuer, serialNumber, isCommaDelimited);
+    private void addIssuerSerial(X509Certificate[] certs, X509TokenTemplate template,
+                                 boolean isCommaDelimited) throws WSSecurityException {
+        DOMX509IssuerSerial domIssuerSerial = null;
+        if (template != null) {
+            domIssuerSerial = new DOMX509IssuerSerial(getDocument(), template, isCommaDelimited);
+        } else {
+            String issuer = certs[0].getIssuerX500Principal().getName();
+            java.math.BigInteger serialNumber = certs[0].getSerialNumber();
+            domIssuerSerial = new DOMX509IssuerSerial(getDocument(), issuer, serialNumber, isCommaDelimited);
+        }
         DOMX509Data domX509Data = new DOMX509Data(getDocument(), domIssuerSerial);
         secRef.setUnknownElement(domX509Data.getElement());
 
         if (includeSignatureToken) {
-            addBST(certs);
+            addBST(certs, template);
         }
     }
 
@@ -453,9 +473,9 @@ public class WSSecSignature extends WSSecSignatureBase {
     }
 
     /**
-     * Add a BinarySecurityToken
+     * Add a BinarySecurityToken, using the encoded certificate data of the template if it is not null
      */
-    private void addBST(X509Certificate[] certs) throws WSSecurityException {
+    private void addBST(X509Certificate[] certs, X509TokenTemplate template) throws WSSecurityException {
         if (storeBytesInAttachment) {
             bstToken =
                 getDocument().createElementNS(WSS4JConstants.WSSE_NS, "wsse:BinarySecurityToken");
@@ -468,7 +488,14 @@ public class WSSecSignature extends WSSecSignatureBase {
             byte[] certBytes = null;
             if (!useSingleCert) {
                 bstToken.setAttributeNS(null, "ValueType", PKIPathSecurity.PKI_TYPE);
-                certBytes = crypto.getBytesFromCertificates(certs);
+                if (template != null) {
+                    certBytes = template.getPkiPathBytes();
+                } else {
+                    certBytes = crypto.getBytesFromCertificates(certs);
+                }
+            } else if (template != null) {
+                bstToken.setAttributeNS(null, "ValueType", X509Security.X509_V3_TYPE);
+                certBytes = template.getCertificateBytes();
             } else {
                 bstToken.setAttributeNS(null, "ValueType", X509Security.X509_V3_TYPE);
                 try {
@@ -488,10 +515,18 @@ public class WSSecSignature extends WSSecSignatureBase {
             BinarySecurity binarySecurity = null;
             if (!useSingleCert) {
                 binarySecurity = new PKIPathSecurity(getDocument());
-                ((PKIPathSecurity) binarySecurity).setX509Certificates(certs, crypto);
+                if (template != null) {
+                    ((PKIPathSecurity) binarySecurity).setX509Certificates(template);
+                } else {
+                    ((PKIPathSecurity) binarySecurity).setX509Certificates(certs, crypto);
+                }
             } else {
                 binarySecurity = new X509Security(getDocument());
-                ((X509Security) binarySecurity).setX509Certificate(certs[0]);
+                if (template != null) {
+                    ((X509Security) binarySecurity).setX509Certificate(template);
+                } else {
+                    ((X509Security) binarySecurity).setX509Certificate(certs[0]);
+                }
             }
             binarySecurity.setID(certUri);
             if (addWSUNamespace) {
@@ -622,6 +657,13 @@ public class WSSecSignature extends WSSecSignatureBase {
             // Add the elements to sign to the Signature Context
             getWsDocInfo().setTokensOnContext((DOMSignContext)signContext);
             sig.sign(signContext);
+            SecurityMetrics securityMetrics = getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.SIGNATURE_CREATION, 0L);
+                for (int i = 0; i < sig.getSignedInfo().getReferences().size(); i++) {
+                    securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DIGEST, 0L);
+                }
+            }
 
             signatureValue = sig.getSignatureValue().getValue();
 
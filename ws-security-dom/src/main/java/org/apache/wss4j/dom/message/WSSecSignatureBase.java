@@ -40,6 +40,7 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -61,6 +62,7 @@ public class WSSecSignatureBase extends WSSecBase {
         org.slf4j.LoggerFactory.getLogger(WSSecSignatureBase.class);
 
     private List<Element> clonedElements = new ArrayList<>();
+    private SinglePassAttachmentEncryptor singlePassAttachmentEncryptor;
 
     public WSSecSignatureBase(WSSecHeader securityHeader) {
         super(securityHeader);
@@ -280,7 +282,7 @@ public class WSSecSignatureBase extends WSSecBase {
 
                     AttachmentTransformParameterSpec attachmentTransformParameterSpec =
                         new AttachmentTransformParameterSpec(
-                            attachmentCallbackHandler, attachment
+                            attachmentCallbackHandler, attachment, singlePassAttachmentEncryptor
                         );
 
                     String attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
@@ -344,6 +346,19 @@ public class WSSecSignatureBase extends WSSecBase {
         return transformParam;
     }
 
+    public SinglePassAttachmentEncryptor getSinglePassAttachmentEncryptor() {
+        return singlePassAttachmentEncryptor;
+    }
+
+    /**
+     * Set a SinglePassAttachmentEncryptor to encrypt the signed attachments while they are digested.
+     * The same SinglePassAttachmentEncryptor must then be set on the WSSecEncrypt which encrypts
+     * the attachments after the signature.
+     */
+    public void setSinglePassAttachmentEncryptor(SinglePassAttachmentEncryptor singlePassAttachmentEncryptor) {
+        this.singlePassAttachmentEncryptor = singlePassAttachmentEncryptor;
+    }
+
     protected void cleanup() {
         if (!clonedElements.isEmpty()) {
             for (Element clonedElement : clonedElements) {
@@ -22,7 +22,6 @@ package org.apache.wss4j.dom.message.token;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
 
@@ -114,16 +113,7 @@ public class Timestamp {
 
         // Parse the dates
         if (createdString != null) {
-            try {
-                ZonedDateTime createdDateTime = ZonedDateTime.parse(createdString);
-                if (!ZoneOffset.UTC.equals(createdDateTime.getZone())) {
-                    bspEnforcer.handleBSPRule(BSPRule.R3217);
-                }
-
-                created = createdDateTime.toInstant();
-            } catch (DateTimeParseException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
+            created = parseDateTime(createdString, bspEnforcer, BSPRule.R3217);
 
             if (created.getNano() > 0) {
                 int milliseconds = created.get(ChronoField.MILLI_OF_SECOND);
@@ -134,16 +124,7 @@ public class Timestamp {
         }
 
         if (strExpires != null) {
-            try {
-                ZonedDateTime expiresDateTime = ZonedDateTime.parse(strExpires);
-                if (!ZoneOffset.UTC.equals(expiresDateTime.getZone())) {
-                    bspEnforcer.handleBSPRule(BSPRule.R3223);
-                }
-
-                expires = expiresDateTime.toInstant();
-            } catch (DateTimeParseException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
+            expires = parseDateTime(strExpires, bspEnforcer, BSPRule.R3223);
 
             if (expires.getNano() > 0) {
                 int milliseconds = expires.get(ChronoField.MILLI_OF_SECOND);
@@ -154,6 +135,24 @@ public class Timestamp {
         }
     }
 
+    private static Instant parseDateTime(
+        String dateTime, BSPEnforcer bspEnforcer, BSPRule utcRule
+    ) throws WSSecurityException {
+        Instant instant = DateUtil.parseUTCDateTime(dateTime);
+        if (instant != null) {
+            return instant;
+        }
+        try {
+            ZonedDateTime zonedDateTime = ZonedDateTime.parse(dateTime);
+            if (!ZoneOffset.UTC.equals(zonedDateTime.getZone())) {
+                bspEnforcer.handleBSPRule(utcRule);
+            }
+            return zonedDateTime.toInstant();
+        } catch (DateTimeParseException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+    }
+
 
     /**
      * Constructs a <code>Timestamp</code> object according
@@ -186,8 +185,7 @@ public class Timestamp {
             );
         created = timeSource.now();
 
-        DateTimeFormatter formatter = DateUtil.getDateTimeFormatter(milliseconds);
-        elementCreated.appendChild(doc.createTextNode(created.atZone(ZoneOffset.UTC).format(formatter)));
+        elementCreated.appendChild(doc.createTextNode(DateUtil.formatDateTime(created, milliseconds)));
 
         element.appendChild(elementCreated);
         if (ttl != 0) {
@@ -197,7 +195,7 @@ public class Timestamp {
                 doc.createElementNS(
                     WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.EXPIRES_LN
                 );
-            elementExpires.appendChild(doc.createTextNode(expires.atZone(ZoneOffset.UTC).format(formatter)));
+            elementExpires.appendChild(doc.createTextNode(DateUtil.formatDateTime(expires, milliseconds)));
             element.appendChild(elementExpires);
         }
     }
@@ -275,9 +273,18 @@ public class Timestamp {
      * is before the current time. It returns false if there is no Expires value.
      */
     public boolean isExpired() {
+        return isExpired(Instant.now());
+    }
+
+    /**
+     * Return true if the current Timestamp is expired, meaning if the "Expires" value
+     * is before the given current time. It returns false if there is no Expires value.
+     *
+     * @param now the current time
+     */
+    public boolean isExpired(Instant now) {
         if (expires != null) {
-            Instant rightNow = Instant.now();
-            return expires.isBefore(rightNow);
+            return expires.isBefore(now);
         }
         return false;
     }
@@ -298,6 +305,23 @@ public class Timestamp {
         return DateUtil.verifyCreated(created, timeToLive, futureTimeToLive);
     }
 
+    /**
+     * Return true if the "Created" value is before the given current time minus the timeToLive
+     * argument, and if the Created value is not "in the future".
+     *
+     * @param timeToLive the value in seconds for the validity of the Created time
+     * @param futureTimeToLive the value in seconds for the future validity of the Created time
+     * @param now the current time
+     * @return true if the timestamp is before (now-timeToLive), false otherwise
+     */
+    public boolean verifyCreated(
+        int timeToLive,
+        int futureTimeToLive,
+        Instant now
+    ) {
+        return DateUtil.verifyCreated(created, timeToLive, futureTimeToLive, now);
+    }
+
 
     @Override
     public int hashCode() {
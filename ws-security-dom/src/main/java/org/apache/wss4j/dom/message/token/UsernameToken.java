@@ -21,9 +21,6 @@ package org.apache.wss4j.dom.message.token;
 
 import java.security.Principal;
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Arrays;
 import java.util.List;
@@ -204,7 +201,7 @@ public class UsernameToken {
             String createdString = getCreated();
             if (createdString != null && createdString.length() != 0) {
                 try {
-                    created = ZonedDateTime.parse(createdString).toInstant();
+                    created = DateUtil.parseDateTime(createdString);
                 } catch (DateTimeParseException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
@@ -319,8 +316,7 @@ public class UsernameToken {
             );
         Instant currentTime = timeSource.now();
 
-        DateTimeFormatter formatter = DateUtil.getDateTimeFormatter(milliseconds);
-        elementCreated.appendChild(doc.createTextNode(currentTime.atZone(ZoneOffset.UTC).format(formatter)));
+        elementCreated.appendChild(doc.createTextNode(DateUtil.formatDateTime(currentTime, milliseconds)));
         element.appendChild(elementCreated);
     }
 
@@ -655,6 +651,23 @@ public class UsernameToken {
         return DateUtil.verifyCreated(created, timeToLive, futureTimeToLive);
     }
 
+    /**
+     * Return true if the "Created" value is before the given current time minus the timeToLive
+     * argument, and if the Created value is not "in the future".
+     *
+     * @param timeToLive the value in seconds for the validity of the Created time
+     * @param futureTimeToLive the value in seconds for the future validity of the Created time
+     * @param now the current time
+     * @return true if the UsernameToken is before (now-timeToLive), false otherwise
+     */
+    public boolean verifyCreated(
+        int timeToLive,
+        int futureTimeToLive,
+        Instant now
+    ) {
+        return DateUtil.verifyCreated(created, timeToLive, futureTimeToLive, now);
+    }
+
     @Override
     public int hashCode() {
         int result = 17;
@@ -33,6 +33,7 @@ import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
@@ -167,6 +168,10 @@ public class EncryptedDataProcessor implements Processor {
         WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
                 elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo,
                 data.getAttachmentCallbackHandler(), data.getEncryptionSerializer());
+        SecurityMetrics securityMetrics = data.getSecurityMetrics();
+        if (securityMetrics.isEnabled()) {
+            securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DECRYPTION, 0L);
+        }
 
         WSSecurityEngineResult result =
                 new WSSecurityEngineResult(WSConstants.ENCR, Collections.singletonList(dataRef));
@@ -45,13 +45,16 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.token.DOMX509IssuerSerial;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
@@ -223,9 +226,41 @@ public class EncryptedKeyProcessor implements Processor {
             decryptedBytes = getSymmetricDecryptedBytes(data, data.getWsDocInfo(), keyInfoChildElement, refList);
         } else {
             PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
-            decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
-                                                         encryptedEphemeralKey, refList,
-                                                         elem, privateKey);
+            SecurityMetrics securityMetrics = data.getSecurityMetrics();
+
+            // A client may reuse the same EncryptedKey for several messages, so look for a cached key
+            EncryptedKeyCache encryptedKeyCache = data.getEncryptedKeyCache();
+            String cacheKey = null;
+            if (encryptedKeyCache != null) {
+                cacheKey =
+                    EncryptedKeyCache.createCacheKey(publicKey.getEncoded(), encryptedEphemeralKey,
+                                                     encryptedKeyTransportMethod,
+                                                     EncryptionUtils.getDigestAlgorithm(elem),
+                                                     EncryptionUtils.getMGFAlgorithm(elem),
+                                                     EncryptionUtils.getPSource(elem));
+                decryptedBytes = encryptedKeyCache.get(cacheKey);
+                if (securityMetrics.isEnabled()) {
+                    securityMetrics.recordCacheAccess(
+                        SecurityMetrics.CacheType.ENCRYPTED_KEY, decryptedBytes != null
+                    );
+                }
+            }
+
+            if (decryptedBytes == null) {
+                decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
+                                                             encryptedEphemeralKey, refList,
+                                                             elem, privateKey);
+                if (securityMetrics.isEnabled()) {
+                    securityMetrics.recordCryptoOperation(
+                        SecurityMetrics.CryptoOperation.KEY_UNWRAP, encryptedEphemeralKey.length
+                    );
+                }
+                // Also cache the random key of a failed unwrap, so that a replayed EncryptedKey
+                // doesn't reveal whether it could be unwrapped
+                if (cacheKey != null) {
+                    encryptedKeyCache.add(cacheKey, decryptedBytes);
+                }
+            }
         }
 
         List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
@@ -386,14 +421,14 @@ public class EncryptedKeyProcessor implements Processor {
                 size = KeyUtils.getKeyLength(algorithmURI);
             }
             KeyGenerator kgen = KeyGenerator.getInstance(alg);
-            kgen.init(size * 8);
+            kgen.init(size * 8, SecureRandomPool.getSecureRandom());
             SecretKey k = kgen.generateKey();
             return k.getEncoded();
         } catch (Throwable ex) {
             // Fallback to just using AES to avoid attacks on EncryptedData algorithms
             try {
                 KeyGenerator kgen = KeyGenerator.getInstance("AES");
-                kgen.init(128);
+                kgen.init(128, SecureRandomPool.getSecureRandom());
                 SecretKey k = kgen.generateKey();
                 return k.getEncoded();
             } catch (NoSuchAlgorithmException e) {
@@ -594,10 +629,15 @@ public class EncryptedKeyProcessor implements Processor {
             algorithmSuiteValidator.checkSymmetricEncryptionAlgorithm(symEncAlgo);
         }
 
-        return EncryptionUtils.decryptEncryptedData(
+        WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
             doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
             data.getEncryptionSerializer()
         );
+        SecurityMetrics securityMetrics = data.getSecurityMetrics();
+        if (securityMetrics.isEnabled()) {
+            securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DECRYPTION, 0L);
+        }
+        return dataRef;
     }
 
     /**
@@ -35,6 +35,7 @@ import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.KeyUtils;
@@ -189,11 +190,16 @@ public class ReferenceListProcessor implements Processor {
             algorithmSuiteValidator.checkSymmetricEncryptionAlgorithm(symEncAlgo);
         }
 
-        return
+        WSDataRef dataRef =
             EncryptionUtils.decryptEncryptedData(
                 doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
                 data.getEncryptionSerializer()
             );
+        SecurityMetrics securityMetrics = data.getSecurityMetrics();
+        if (securityMetrics.isEnabled()) {
+            securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DECRYPTION, 0L);
+        }
+        return dataRef;
     }
 
     /**
@@ -29,7 +29,6 @@ import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import javax.xml.crypto.Data;
 import javax.xml.crypto.NodeSetData;
@@ -40,6 +39,7 @@ import javax.xml.crypto.dsig.SignedInfo;
 import javax.xml.crypto.dsig.Transform;
 import javax.xml.crypto.dsig.XMLObject;
 import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
 import javax.xml.crypto.dsig.XMLSignatureFactory;
 import javax.xml.crypto.dsig.XMLValidateContext;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
@@ -54,10 +54,10 @@ import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.principal.PublicKeyPrincipalImpl;
 import org.apache.wss4j.common.principal.UsernameTokenPrincipal;
 import org.apache.wss4j.common.principal.WSDerivedKeyTokenPrincipal;
-import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.token.SecurityTokenReference;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
@@ -378,7 +378,15 @@ public class SignatureProcessor implements Processor {
 
             setElementsOnContext(xmlSignature, (DOMValidateContext)context, data, wsDocInfo);
 
+            validateAttachmentReferences(xmlSignature, context);
             boolean signatureOk = xmlSignature.validate(context);
+            SecurityMetrics securityMetrics = data.getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.SIGNATURE_VERIFICATION, 0L);
+                for (int i = 0; i < xmlSignature.getSignedInfo().getReferences().size(); i++) {
+                    securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DIGEST, 0L);
+                }
+            }
             if (signatureOk) {
                 return xmlSignature;
             }
@@ -463,16 +471,10 @@ public class SignatureProcessor implements Processor {
     }
 
     private void handleXopInclude(Element element, WSDocInfo wsDocInfo) {
-        Map<Integer, List<WSSecurityEngineResult>> actionResults = wsDocInfo.getActionResults();
-        if (actionResults != null && actionResults.containsKey(WSConstants.BST)) {
-            for (WSSecurityEngineResult result : actionResults.get(WSConstants.BST)) {
-                Element token = (Element)result.get(WSSecurityEngineResult.TAG_TOKEN_ELEMENT);
-                if (element.equals(token)) {
-                    BinarySecurity binarySecurity =
-                        (BinarySecurity)result.get(WSSecurityEngineResult.TAG_BINARY_SECURITY_TOKEN);
-                    binarySecurity.encodeRawToken();
-                    return;
-                }
+        for (WSSecurityEngineResult result : wsDocInfo.getResultsByTag(WSConstants.BST)) {
+            if (element.equals(result.getTokenElement())) {
+                result.getBinarySecurityToken().encodeRawToken();
+                return;
             }
         }
     }
@@ -531,7 +533,12 @@ public class SignatureProcessor implements Processor {
                 Element se = dereferenceSTR(doc, siRef, requestData, wsDocInfo);
                 // If an STR Transform is not used then just find the cached element
                 boolean attachment = false;
-                if (se == null) {
+                if (se == null && isAttachmentReference(siRef)) {
+                    // the digest input of attachments is not cached, see validateAttachmentReferences
+                    se = doc.createElementNS("http://docs.oasis-open.org/wss/oasis-wss-SwAProfile-1.1",
+                                             "attachment");
+                    attachment = true;
+                } else if (se == null) {
                     Data dereferencedData = siRef.getDereferencedData();
                     if (dereferencedData instanceof NodeSetData) {
                         NodeSetData data = (NodeSetData)dereferencedData;
@@ -578,6 +585,39 @@ public class SignatureProcessor implements Processor {
         return protectedRefs;
     }
 
+    /**
+     * Validate the references to attachments without caching the digest input, which would hold the
+     * complete attachments in memory. The references cache their validation status, so the validation
+     * of the signature doesn't digest them again. They are only validated once the signature value was
+     * verified, as the signature validation does.
+     */
+    private void validateAttachmentReferences(
+        XMLSignature xmlSignature, XMLValidateContext context
+    ) throws XMLSignatureException {
+        List<?> references = xmlSignature.getSignedInfo().getReferences();
+        boolean attachmentReferences = false;
+        for (Object reference : references) {
+            attachmentReferences |= isAttachmentReference((Reference)reference);
+        }
+        if (!attachmentReferences || !xmlSignature.getSignatureValue().validate(context)) {
+            return;
+        }
+        context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.FALSE);
+        try {
+            for (Object reference : references) {
+                if (isAttachmentReference((Reference)reference) && !((Reference)reference).validate(context)) {
+                    return;
+                }
+            }
+        } finally {
+            context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        }
+    }
+
+    private static boolean isAttachmentReference(Reference reference) {
+        return reference.getURI() != null && reference.getURI().startsWith("cid:");
+    }
+
     /**
      * Check to see if a SecurityTokenReference transform was used, if so then return the
      * dereferenced element.
@@ -672,7 +712,12 @@ public class SignatureProcessor implements Processor {
         String identifier = timeStamp.getCreatedString() + "" + Arrays.hashCode(signatureValue)
             + "" + Arrays.hashCode(key.getEncoded());
 
-        if (replayCache.contains(identifier)) {
+        boolean replayed = replayCache.contains(identifier);
+        SecurityMetrics securityMetrics = requestData.getSecurityMetrics();
+        if (securityMetrics.isEnabled()) {
+            securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, replayed);
+        }
+        if (replayed) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.INVALID_SECURITY,
                 "invalidTimestamp",
@@ -28,6 +28,7 @@ import org.apache.wss4j.common.util.UsernameTokenUtil;
 import org.w3c.dom.Element;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
@@ -140,14 +141,20 @@ public class UsernameTokenProcessor implements Processor {
             new UsernameToken(token, allowNamespaceQualifiedPasswordTypes, data.getBSPEnforcer());
 
         // Validate whether the security semantics have expired
-        if (!ut.verifyCreated(utTTL, futureTimeToLive)) {
+        Instant now = data.getWssConfig() != null ? data.getWssConfig().getCurrentTime().now() : Instant.now();
+        if (!ut.verifyCreated(utTTL, futureTimeToLive, now)) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
         }
 
         // Test for replay attacks
         ReplayCache replayCache = data.getNonceReplayCache();   //NOPMD
         if (replayCache != null && ut.getNonce() != null) {
-            if (replayCache.contains(ut.getNonce())) {
+            boolean replayed = replayCache.contains(ut.getNonce());
+            SecurityMetrics securityMetrics = data.getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, replayed);
+            }
+            if (replayed) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badUsernameToken",
@@ -162,7 +169,7 @@ public class UsernameTokenProcessor implements Processor {
             if (created == null || utTTL <= 0) {
                 replayCache.add(ut.getNonce());
             } else {
-                replayCache.add(ut.getNonce(), Instant.now().plusSeconds(utTTL));
+                replayCache.add(ut.getNonce(), now.plusSeconds(utTTL));
             }
         }
 
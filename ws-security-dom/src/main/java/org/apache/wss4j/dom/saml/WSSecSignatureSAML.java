@@ -35,6 +35,7 @@ import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -536,6 +537,13 @@ public class WSSecSignatureSAML extends WSSecSignature {
             getWsDocInfo().setTokensOnContext((DOMSignContext)signContext);
 
             sig.sign(signContext);
+            SecurityMetrics securityMetrics = getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.SIGNATURE_CREATION, 0L);
+                for (int i = 0; i < sig.getSignedInfo().getReferences().size(); i++) {
+                    securityMetrics.recordCryptoOperation(SecurityMetrics.CryptoOperation.DIGEST, 0L);
+                }
+            }
 
             signatureValue = sig.getSignatureValue().getValue();
 
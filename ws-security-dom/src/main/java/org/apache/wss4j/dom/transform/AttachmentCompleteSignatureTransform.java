@@ -22,6 +22,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 
 import org.apache.jcp.xml.dsig.internal.dom.ApacheNodeSetData;
 import org.apache.jcp.xml.dsig.internal.dom.ApacheOctetStreamData;
@@ -70,21 +71,22 @@ public class AttachmentCompleteSignatureTransform extends AttachmentContentSigna
         }
 
         try {
-            OutputStream outputStream = os;
-            if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream(); //NOPMD
-            }
-            AttachmentUtils.canonizeMimeHeaders(os, attachment.getHeaders());
-            processAttachment(context, os, attachmentUri, attachment);
-
             if (os == null) {
-                String mimeType = attachment.getMimeType();
+                //prepend the canonicalized MIME headers to the transformed content, which is evaluated
+                //as it is read
+                ByteArrayOutputStream headerOutputStream = new ByteArrayOutputStream(); //NOPMD
+                AttachmentUtils.canonizeMimeHeaders(headerOutputStream, attachment.getHeaders());
+                OctetStreamData content =
+                    (OctetStreamData) processAttachment(context, null, attachmentUri, attachment);
                 return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
+                        new SequenceInputStream(
+                                new ByteArrayInputStream(headerOutputStream.toByteArray()),
+                                content.getOctetStream()
                         ),
-                        attachmentUri, mimeType);
+                        attachmentUri, attachment.getMimeType());
             }
+            AttachmentUtils.canonizeMimeHeaders(os, attachment.getHeaders());
+            processAttachment(context, os, attachmentUri, attachment);
             return new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
         } catch (IOException e) {
             throw new TransformException(e);
@@ -25,7 +25,10 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CRLFInputStream;
 import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
+import org.apache.wss4j.common.util.SpoolingInputStream;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -44,7 +47,6 @@ import javax.xml.crypto.dsig.TransformException;
 import javax.xml.crypto.dsig.TransformService;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
@@ -164,30 +166,57 @@ public class AttachmentContentSignatureTransform extends TransformService {
     protected Data processAttachment(XMLCryptoContext context, OutputStream os, String attachmentUri,
                                      Attachment attachment) throws TransformException {
         try {
-            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
-            InputStream inputStream = attachment.getSourceStream(); //NOPMD
-            if (!inputStream.markSupported()) {
-                inputStream = new BufferedInputStream(inputStream);
+            SinglePassAttachmentEncryptor singlePassAttachmentEncryptor = null;
+            if (attachmentTransformParameterSpec != null) {
+                singlePassAttachmentEncryptor = attachmentTransformParameterSpec.getSinglePassAttachmentEncryptor();
             }
-            inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-            inputStream = new FilterInputStream(inputStream) {
-                @Override
-                public void close() throws IOException {
-                    //I hate stuff which are closing _my_ streams!
+
+            InputStream inputStream; //NOPMD
+            SinglePassAttachmentEncryptor.EncryptingInputStream encryptingInputStream = null;
+            if (singlePassAttachmentEncryptor != null) {
+                //encrypt the attachment while it is digested, instead of reading it again for the encryption
+                encryptingInputStream = singlePassAttachmentEncryptor.encrypt(attachment);
+                inputStream = encryptingInputStream;
+            } else {
+                //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
+                inputStream = attachment.getSourceStream();
+                if (!inputStream.markSupported()) {
+                    //spool the content instead of buffering it, it may be larger than the heap
+                    inputStream = new SpoolingInputStream(inputStream);
                 }
-            };
+                inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+                inputStream = new FilterInputStream(inputStream) {
+                    @Override
+                    public void close() throws IOException {
+                        //I hate stuff which are closing _my_ streams!
+                    }
+                };
+            }
+
+            String mimeType = attachment.getMimeType();
+            boolean xml = mimeType != null
+                && (mimeType.matches("(?i)(text/xml).*")
+                    || mimeType.matches("(?i)(application/xml).*")
+                    || mimeType.matches("(?i)(application|image)/.*\\+xml.*"));
+            boolean text = !xml && mimeType != null && mimeType.matches("(?i)(text/).*");
+
+            if (os == null && !xml) {
+                //return the transformed content as a stream which is evaluated as it is read, instead of
+                //copying the whole attachment into memory. XML content has to be parsed to be canonicalized.
+                InputStream transformedStream = text ? new CRLFInputStream(inputStream) : inputStream; //NOPMD
+                return new OctetStreamData(
+                    new AttachmentResultInputStream(
+                        transformedStream, context, attachment, inputStream, encryptingInputStream
+                    ),
+                    attachmentUri, mimeType);
+            }
 
             OutputStream outputStream = os;
             if (outputStream == null) {
                 outputStream = new ByteArrayOutputStream(); //NOPMD
             }
 
-            String mimeType = attachment.getMimeType();
-
-            if (mimeType != null
-                && (mimeType.matches("(?i)(text/xml).*")
-                    || mimeType.matches("(?i)(application/xml).*")
-                    || mimeType.matches("(?i)(application|image)/.*\\+xml.*"))) {
+            if (xml) {
                 /* 5.4.2:
                  * Content of an XML Content-Type MUST be XML canonicalized using
                  * Exclusive XML Canonicalization without comments, as specified by
@@ -203,7 +232,7 @@ public class AttachmentContentSignatureTransform extends TransformService {
                 XMLSignatureInput xmlSignatureInput = new XMLSignatureInput(inputStream);
                 canon.canonicalizeXPathNodeSet(xmlSignatureInput.getNodeSet(), outputStream);
 
-            } else if (mimeType != null && mimeType.matches("(?i)(text/).*")) {
+            } else if (text) {
                 CRLFOutputStream crlfOutputStream = new CRLFOutputStream(outputStream); //NOPMD
                 int numBytes;
                 byte[] buf = new byte[8192];
@@ -219,16 +248,7 @@ public class AttachmentContentSignatureTransform extends TransformService {
                 }
             }
 
-            //reset the inputStream to be able to reuse it
-            inputStream.reset();
-
-            //create a new attachment and do the result callback
-            final Attachment resultAttachment = new Attachment();
-            resultAttachment.setId(attachment.getId());
-            resultAttachment.setMimeType(mimeType);
-            resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(inputStream);
-            attachmentResultCallback(context, resultAttachment);
+            finishAttachment(context, attachment, inputStream, encryptingInputStream);
 
             if (os == null) {
                 return new OctetStreamData(
@@ -239,11 +259,110 @@ public class AttachmentContentSignatureTransform extends TransformService {
             }
             return new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
         } catch (IOException | InvalidCanonicalizerException | CanonicalizationException
-            | XMLParserException e) {
+            | XMLParserException | WSSecurityException e) {
             throw new TransformException(e);
         }
     }
 
+    /**
+     * Do the result callback for the attachment, once its content has been read
+     */
+    private void finishAttachment(XMLCryptoContext context, Attachment attachment, InputStream inputStream,
+                                  SinglePassAttachmentEncryptor.EncryptingInputStream encryptingInputStream)
+        throws IOException, TransformException {
+        if (encryptingInputStream != null) {
+            //the result is the encrypted attachment
+            attachmentResultCallback(context, encryptingInputStream.finish());
+        } else {
+            //reset the inputStream to be able to reuse it
+            inputStream.reset();
+
+            //create a new attachment and do the result callback
+            final Attachment resultAttachment = new Attachment();
+            resultAttachment.setId(attachment.getId());
+            resultAttachment.setMimeType(attachment.getMimeType());
+            resultAttachment.addHeaders(attachment.getHeaders());
+            resultAttachment.setSourceStream(inputStream);
+            attachmentResultCallback(context, resultAttachment);
+        }
+    }
+
+    /**
+     * The transformed attachment content, which does the result callback for the attachment once it
+     * has been read to the end or closed
+     */
+    private final class AttachmentResultInputStream extends FilterInputStream {
+
+        private final XMLCryptoContext context;
+        private final Attachment attachment;
+        private final InputStream inputStream;
+        private final SinglePassAttachmentEncryptor.EncryptingInputStream encryptingInputStream;
+        private boolean finished;
+
+        AttachmentResultInputStream(InputStream transformedStream, XMLCryptoContext context,
+                                    Attachment attachment, InputStream inputStream,
+                                    SinglePassAttachmentEncryptor.EncryptingInputStream encryptingInputStream) {
+            super(transformedStream);
+            this.context = context;
+            this.attachment = attachment;
+            this.inputStream = inputStream;
+            this.encryptingInputStream = encryptingInputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finish();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int numBytes = super.read(b, off, len);
+            if (numBytes == -1) {
+                finish();
+            }
+            return numBytes;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buf = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int numBytes = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (numBytes == -1) {
+                    break;
+                }
+                skipped += numBytes;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        private void finish() throws IOException {
+            if (!finished) {
+                finished = true;
+                try {
+                    finishAttachment(context, attachment, inputStream, encryptingInputStream);
+                } catch (TransformException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+
     @Override
     public boolean isFeatureSupported(String feature) {
         if (feature == null) {
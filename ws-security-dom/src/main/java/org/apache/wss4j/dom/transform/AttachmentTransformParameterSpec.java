@@ -19,6 +19,7 @@
 package org.apache.wss4j.dom.transform;
 
 import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
@@ -27,6 +28,7 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
 
     private CallbackHandler attachmentCallbackHandler;
     private Attachment attachment;
+    private SinglePassAttachmentEncryptor singlePassAttachmentEncryptor;
 
     public AttachmentTransformParameterSpec(
             CallbackHandler attachmentCallbackHandler,
@@ -35,6 +37,14 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
         this.attachment = attachment;
     }
 
+    public AttachmentTransformParameterSpec(
+            CallbackHandler attachmentCallbackHandler,
+            Attachment attachment,
+            SinglePassAttachmentEncryptor singlePassAttachmentEncryptor) {
+        this(attachmentCallbackHandler, attachment);
+        this.singlePassAttachmentEncryptor = singlePassAttachmentEncryptor;
+    }
+
     public CallbackHandler getAttachmentCallbackHandler() {
         return attachmentCallbackHandler;
     }
@@ -42,4 +52,12 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
     public Attachment getAttachment() {
         return attachment;
     }
+
+    /**
+     * Get the SinglePassAttachmentEncryptor which encrypts the attachment while it is digested,
+     * or null if the attachment is not encrypted in the same pass
+     */
+    public SinglePassAttachmentEncryptor getSinglePassAttachmentEncryptor() {
+        return singlePassAttachmentEncryptor;
+    }
 }
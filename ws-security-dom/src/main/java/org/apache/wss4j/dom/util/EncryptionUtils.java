@@ -23,7 +23,11 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.DecryptionEvent;
+import org.apache.wss4j.common.jfr.SecurityEvents;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.DOMBase64Decoder;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
@@ -31,7 +35,9 @@ import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.Serializer;
+import org.apache.xml.security.encryption.TransformSerializer;
 import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.parser.XMLParserException;
 import org.apache.xml.security.utils.JavaUtils;
@@ -43,6 +49,7 @@ import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.security.auth.callback.Callback;
@@ -52,7 +59,11 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 import java.util.List;
 
 public final class EncryptionUtils {
@@ -159,6 +170,19 @@ public final class EncryptionUtils {
             return decryptAttachment(dataRefURI, uri, encData, symmetricKey, symEncAlgo, attachmentCallbackHandler);
         }
 
+        // An inline CipherValue is decoded and decrypted directly from its Text nodes
+        Element cipherValue = null;
+        if (xopURI == null && JCEMapper.getIVLengthFromURI(symEncAlgo) > 0) {
+            cipherValue = getCipherValueFromEncryptedData(encData);
+        }
+
+        DecryptionEvent decryptionEvent = SecurityEvents.decryption();
+        long cipherTextLength = 0L;
+        if (decryptionEvent.isEnabled() && cipherValue != null) {
+            cipherTextLength = DOMBase64Decoder.getDecodedLength(cipherValue);
+        }
+        decryptionEvent.begin();
+
         WSDataRef dataRef = new WSDataRef();
         dataRef.setEncryptedElement(encData);
         dataRef.setWsuId(dataRefURI);
@@ -176,18 +200,23 @@ public final class EncryptionUtils {
         }
 
         XMLCipher xmlCipher = null;
-        try {
-            if (encryptionSerializer != null) {
-                xmlCipher = XMLCipher.getInstance(encryptionSerializer, symEncAlgo);
-            } else {
-                xmlCipher = XMLCipher.getInstance(symEncAlgo);
+        Cipher cipher = null;
+        if (cipherValue != null) {
+            cipher = KeyUtils.getCipherInstance(symEncAlgo, null);
+        } else {
+            try {
+                if (encryptionSerializer != null) {
+                    xmlCipher = XMLCipher.getInstance(encryptionSerializer, symEncAlgo);
+                } else {
+                    xmlCipher = XMLCipher.getInstance(symEncAlgo);
+                }
+                xmlCipher.setSecureValidation(true);
+                xmlCipher.init(XMLCipher.DECRYPT_MODE, symmetricKey);
+            } catch (XMLEncryptionException ex) {
+                throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, ex
+                );
             }
-            xmlCipher.setSecureValidation(true);
-            xmlCipher.init(XMLCipher.DECRYPT_MODE, symmetricKey);
-        } catch (XMLEncryptionException ex) {
-            throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.UNSUPPORTED_ALGORITHM, ex
-            );
         }
 
         Node decryptedNode = null;
@@ -204,6 +233,12 @@ public final class EncryptionUtils {
                 }
                 decryptedNode = decryptXopAttachment(symmetricKey, symEncAlgo, attachmentCallbackHandler,
                                                      xopURI, tempEncData);
+            } else if (cipher != null) {
+                Serializer serializer = encryptionSerializer;
+                if (serializer == null) {
+                    serializer = new TransformSerializer(true);
+                }
+                decryptCipherValue(cipher, symmetricKey, symEncAlgo, cipherValue, encDataOrig, serializer);
             } else {
                 //in this case, the XMLCipher knows how to handle encData when it's the parent node
                 // (i.e., when content == true)
@@ -241,6 +276,13 @@ public final class EncryptionUtils {
             dataRef.setXpath(getXPath(decryptedNode));
         }
 
+        if (decryptionEvent.shouldCommit()) {
+            decryptionEvent.setAlgorithm(symEncAlgo);
+            decryptionEvent.setReference(dataRefURI);
+            decryptionEvent.setBytes(cipherTextLength);
+            decryptionEvent.commit();
+        }
+
         return dataRef;
     }
 
@@ -354,6 +396,36 @@ public final class EncryptionUtils {
     }
 
 
+    /**
+     * Decrypt an inline CipherValue, decoding it directly from its Text nodes into the Cipher, and
+     * replace the EncryptedData element with the decrypted nodes.
+     */
+    private static void decryptCipherValue(
+        Cipher cipher, SecretKey symmetricKey, String symEncAlgo, Element cipherValue,
+        Element encData, Serializer serializer
+    ) throws WSSecurityException, IOException, GeneralSecurityException, XMLEncryptionException {
+        int ivLength = JCEMapper.getIVLengthFromURI(symEncAlgo) / 8;
+        int cipherTextLength = DOMBase64Decoder.getDecodedLength(cipherValue);
+        if (cipherTextLength < ivLength) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
+        }
+
+        CipherValueDecryptor decryptor =
+            new CipherValueDecryptor(cipher, symmetricKey, symEncAlgo, ivLength, cipherTextLength);
+        DOMBase64Decoder.decode(cipherValue, decryptor);
+        byte[] plainText = decryptor.doFinal();
+
+        Node parent = encData.getParentNode();
+        Node decryptedNode = serializer.deserialize(plainText, parent);
+        if (Node.DOCUMENT_NODE == parent.getNodeType()) {
+            Document document = (Document)parent;
+            document.removeChild(document.getDocumentElement());
+            document.appendChild(decryptedNode);
+        } else {
+            parent.replaceChild(decryptedNode, encData);
+        }
+    }
+
     private static Node decryptXopAttachment(
        SecretKey symmetricKey, String symEncAlgo, CallbackHandler attachmentCallbackHandler,
        String xopURI, Element encData
@@ -547,10 +619,72 @@ public final class EncryptionUtils {
      * @throws WSSecurityException
      */
     public static byte[] getDecodedBase64EncodedData(Element element) throws WSSecurityException {
-        String text = XMLUtils.getElementText(element);
-        if (text == null) {
-            return new byte[0];
+        return DOMBase64Decoder.decode(element);
+    }
+
+    /**
+     * An OutputStream which decrypts the decoded bytes of a CipherValue as they are written to it.
+     * The first bytes are the IV, with which the Cipher is initialized.
+     */
+    private static final class CipherValueDecryptor extends OutputStream {
+        private final Cipher cipher;
+        private final SecretKey symmetricKey;
+        private final String symEncAlgo;
+        private final int cipherTextLength;
+        private final byte[] iv;
+        private int ivPosition;
+        private byte[] plainText;
+        private int plainTextLength;
+
+        CipherValueDecryptor(
+            Cipher cipher, SecretKey symmetricKey, String symEncAlgo, int ivLength, int cipherTextLength
+        ) {
+            this.cipher = cipher;
+            this.symmetricKey = symmetricKey;
+            this.symEncAlgo = symEncAlgo;
+            this.cipherTextLength = cipherTextLength;
+            this.iv = new byte[ivLength];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                if (ivPosition < iv.length) {
+                    int ivBytes = Math.min(len, iv.length - ivPosition);
+                    System.arraycopy(b, off, iv, ivPosition, ivBytes);
+                    ivPosition += ivBytes;
+                    off += ivBytes;
+                    len -= ivBytes;
+                    if (ivPosition < iv.length) {
+                        return;
+                    }
+                    AlgorithmParameterSpec paramSpec =
+                        XMLCipherUtil.constructBlockCipherParameters(symEncAlgo, iv);
+                    cipher.init(Cipher.DECRYPT_MODE, symmetricKey, paramSpec);
+                    plainText = new byte[cipher.getOutputSize(cipherTextLength - iv.length)];
+                }
+                if (len > 0) {
+                    plainTextLength += cipher.update(b, off, len, plainText, plainTextLength);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        byte[] doFinal() throws GeneralSecurityException {
+            if (plainText == null) {
+                throw new IllegalBlockSizeException("The CipherValue does not contain an IV");
+            }
+            plainTextLength += cipher.doFinal(plainText, plainTextLength);
+            if (plainTextLength != plainText.length) {
+                return Arrays.copyOf(plainText, plainTextLength);
+            }
+            return plainText;
         }
-        return org.apache.xml.security.utils.XMLUtils.decode(text);
     }
 }
@@ -50,6 +50,10 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.security.auth.callback.CallbackHandler;
 
@@ -703,4 +707,28 @@ public final class WSSecurityUtil {
         return AttachmentUtils.getAttachmentId(xopUri);
     }
 
+    /**
+     * Run the task on a thread of the given Executor. The returned CompletableFuture completes with
+     * the result of the task, or exceptionally with whatever the task throws, including an Error. If
+     * the Executor refuses the task, it completes exceptionally with the RejectedExecutionException.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) { //NOPMD
+                    result.completeExceptionally(t);
+                    if (t instanceof Error) {
+                        throw (Error) t;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.validate;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.RequestData;
+
+/**
+ * A Validator which validates credentials asynchronously, e.g. with a non-blocking call to a
+ * remote trust service. The processors are synchronous, so the validate method waits for the
+ * validation to complete. When the security header is processed with
+ * WSSecurityEngine.processSecurityHeaderAsync, it waits on a thread of the supplied Executor, and
+ * not on the thread which received the message.
+ */
+public interface AsyncValidator extends Validator {
+
+    /**
+     * Validate the credential argument asynchronously.
+     * @param credential the Credential to be validated
+     * @param data the RequestData associated with the request
+     * @return a CompletionStage which completes with the validated Credential, or exceptionally with
+     * a WSSecurityException on a failed validation
+     */
+    CompletionStage<Credential> validateAsync(Credential credential, RequestData data);
+
+    @Override
+    default Credential validate(Credential credential, RequestData data) throws WSSecurityException {
+        try {
+            return validateAsync(credential, data).toCompletableFuture().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof WSSecurityException) {
+                throw (WSSecurityException)ex.getCause();
+            }
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+        }
+    }
+}
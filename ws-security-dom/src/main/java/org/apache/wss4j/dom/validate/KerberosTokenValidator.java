@@ -33,6 +33,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.ext.WSSecurityException.ErrorCode;
 import org.apache.wss4j.common.kerberos.KerberosServiceContext;
 import org.apache.wss4j.common.kerberos.KerberosServiceExceptionAction;
+import org.apache.wss4j.common.kerberos.KerberosServiceLoginCache;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoder;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoderException;
 import org.apache.wss4j.common.token.BinarySecurity;
@@ -52,6 +53,7 @@ public class KerberosTokenValidator implements Validator {
     private KerberosTokenDecoder kerberosTokenDecoder;
     private boolean isUsernameServiceNameForm;
     private boolean spnego;
+    private KerberosServiceLoginCache kerberosServiceLoginCache;
 
     /**
      * Get the JAAS Login context name to use.
@@ -121,6 +123,23 @@ public class KerberosTokenValidator implements Validator {
         this.kerberosTokenDecoder = kerberosTokenDecoder;
     }
 
+    /**
+     * Get the KerberosServiceLoginCache instance used to reuse the JAAS login between tokens.
+     * @return the KerberosServiceLoginCache instance, or null if every token causes a new login
+     */
+    public KerberosServiceLoginCache getKerberosServiceLoginCache() {
+        return kerberosServiceLoginCache;
+    }
+
+    /**
+     * Set the KerberosServiceLoginCache instance used to reuse the JAAS login between tokens. It can
+     * be null (the default), in which case every token causes a new login.
+     * @param kerberosServiceLoginCache the KerberosServiceLoginCache instance
+     */
+    public void setKerberosServiceLoginCache(KerberosServiceLoginCache kerberosServiceLoginCache) {
+        this.kerberosServiceLoginCache = kerberosServiceLoginCache;
+    }
+
     /**
      * Validate the credential argument. It must contain a non-null BinarySecurityToken.
      *
@@ -150,16 +169,23 @@ public class KerberosTokenValidator implements Validator {
         }
 
         // Get a TGT from the KDC using JAAS
-        LoginContext loginContext = null;
+        CallbackHandler loginCallbackHandler =
+            callbackHandler != null ? callbackHandler : data.getCallbackHandler();
+        Subject subject = null;
         try {
-            if (callbackHandler != null) {
-                loginContext = new LoginContext(getContextName(), callbackHandler);
-            } else if (data.getCallbackHandler() != null) {
-                loginContext = new LoginContext(getContextName(), data.getCallbackHandler());
+            if (kerberosServiceLoginCache != null) {
+                subject =
+                    kerberosServiceLoginCache.getSubject(getContextName(), serviceName, loginCallbackHandler);
             } else {
-                loginContext = new LoginContext(getContextName());
+                LoginContext loginContext = null;
+                if (loginCallbackHandler != null) {
+                    loginContext = new LoginContext(getContextName(), loginCallbackHandler);
+                } else {
+                    loginContext = new LoginContext(getContextName());
+                }
+                loginContext.login();
+                subject = loginContext.getSubject();
             }
-            loginContext.login();
         } catch (LoginException ex) {
             LOG.debug(ex.getMessage(), ex);
             throw new WSSecurityException(
@@ -173,7 +199,6 @@ public class KerberosTokenValidator implements Validator {
         byte[] token = binarySecurity.getToken();
 
         // Get the service name to use - fall back on the principal
-        Subject subject = loginContext.getSubject();
         String service = serviceName;
         if (service == null) {
             Set<Principal> principals = subject.getPrincipals();
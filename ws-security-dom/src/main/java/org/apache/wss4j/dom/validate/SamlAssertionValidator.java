@@ -24,6 +24,7 @@ import java.util.List;
 
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
@@ -253,7 +254,12 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
             String identifier = samlAssertion.getId();
 
             ReplayCache replayCache = data.getSamlOneTimeUseReplayCache();  //NOPMD
-            if (replayCache.contains(identifier)) {
+            boolean replayed = replayCache.contains(identifier);
+            SecurityMetrics securityMetrics = data.getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, replayed);
+            }
+            if (replayed) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badSamlToken",
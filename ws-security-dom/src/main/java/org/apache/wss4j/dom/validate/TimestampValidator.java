@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.dom.validate;
 
+import java.time.Instant;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.handler.RequestData;
@@ -50,9 +51,10 @@ public class TimestampValidator implements Validator {
         int futureTimeToLive = data.getTimeStampFutureTTL();
 
         Timestamp timeStamp = credential.getTimestamp();
+        Instant now = data.getWssConfig().getCurrentTime().now();
 
         // See if the Timestamp has expired
-        if (timeStampStrict && timeStamp.isExpired()) {
+        if (timeStampStrict && timeStamp.isExpired(now)) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.MESSAGE_EXPIRED,
                 "invalidTimestamp",
@@ -60,7 +62,7 @@ public class TimestampValidator implements Validator {
         }
 
         // Validate the Created date
-        if (!timeStamp.verifyCreated(timeStampTTL, futureTimeToLive)) {
+        if (!timeStamp.verifyCreated(timeStampTTL, futureTimeToLive, now)) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.MESSAGE_EXPIRED,
                 "invalidTimestamp",
@@ -30,6 +30,8 @@ import org.w3c.dom.Document;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -103,6 +105,25 @@ public class CustomHandler extends WSHandler {
         );
     }
 
+    public CompletableFuture<Document> sendAsync(
+        Document doc,
+        RequestData reqData,
+        List<HandlerAction> actions,
+        boolean request,
+        Executor executor
+    ) {
+        return doSenderActionAsync(doc, reqData, actions, request, executor);
+    }
+
+    public CompletableFuture<WSHandlerResult> receiveAsync(
+        Document doc,
+        List<Integer> actions,
+        RequestData reqData,
+        Executor executor
+    ) {
+        return doReceiverActionAsync(doc, actions, reqData, executor);
+    }
+
     public void signatureConfirmation(
         RequestData requestData,
         WSHandlerResult handlerResults
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.Callback;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.AsyncCallbackHandler;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecUsernameToken;
+import org.apache.wss4j.dom.validate.AsyncValidator;
+import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.UsernameTokenValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some tests for the asynchronous processing of the security header
+ */
+public class AsyncProcessingTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final ExecutorService remoteService = Executors.newCachedThreadPool();
+    private final Crypto crypto;
+
+    public AsyncProcessingTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        remoteService.shutdownNow();
+    }
+
+    @Test
+    public void testSignatureAsync() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        builder.build(crypto);
+
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        CompletableFuture<WSHandlerResult> future =
+            new WSSecurityEngine().processSecurityHeaderAsync(doc, requestData, executor);
+
+        WSHandlerResult results = future.get();
+        assertNotNull(results.getActionResults().get(WSConstants.SIGN));
+    }
+
+    @Test
+    public void testUsernameTokenAsyncCallbackHandlerAndValidator() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build();
+
+        Thread callingThread = Thread.currentThread();
+        Thread[] validatingThread = new Thread[1];
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setValidator(WSConstants.USERNAME_TOKEN, new AsyncValidator() {
+            @Override
+            public CompletionStage<Credential> validateAsync(Credential credential, RequestData data) {
+                validatingThread[0] = Thread.currentThread();
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return new UsernameTokenValidator().validate(credential, data);
+                    } catch (WSSecurityException ex) {
+                        throw new java.util.concurrent.CompletionException(ex);
+                    }
+                }, remoteService);
+            }
+        });
+
+        RequestData requestData = new RequestData();
+        requestData.setWssConfig(config);
+        requestData.setCallbackHandler(new PasswordStore("verySecret"));
+        WSSecurityEngine engine = new WSSecurityEngine();
+        engine.setWssConfig(config);
+
+        WSHandlerResult results = engine.processSecurityHeaderAsync(doc, requestData, executor).get();
+        assertNotNull(results.getActionResults().get(WSConstants.UT));
+        assertNotNull(validatingThread[0]);
+        assertTrue(validatingThread[0] != callingThread);
+    }
+
+    @Test
+    public void testUsernameTokenAsyncFailure() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build();
+
+        RequestData requestData = new RequestData();
+        requestData.setCallbackHandler(new PasswordStore("wrongPassword"));
+
+        try {
+            new WSSecurityEngine().processSecurityHeaderAsync(doc, requestData, executor).get();
+            fail("Failure expected on a bad password");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof WSSecurityException);
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION,
+                         ((WSSecurityException)ex.getCause()).getErrorCode());
+        }
+    }
+
+    @Test
+    public void testUsernameTokenAsyncError() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build();
+
+        RequestData requestData = new RequestData();
+        requestData.setCallbackHandler(callbacks -> {
+            throw new NoClassDefFoundError("org/example/Missing");
+        });
+
+        try {
+            new WSSecurityEngine().processSecurityHeaderAsync(doc, requestData, executor).get(30, TimeUnit.SECONDS);
+            fail("Failure expected on an Error");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof NoClassDefFoundError);
+        }
+    }
+
+    @Test
+    public void testWSHandlerAsync() throws Exception {
+        CustomHandler handler = new CustomHandler();
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+        RequestData reqData = new RequestData();
+        Map<String, Object> config = new TreeMap<>();
+        config.put("password", "verySecret");
+        config.put(WSHandlerConstants.PASSWORD_TYPE, WSConstants.PW_TEXT);
+        reqData.setUsername("wernerd");
+        reqData.setMsgContext(config);
+
+        HandlerAction action = new HandlerAction(WSConstants.UT);
+        Document securedDoc =
+            handler.sendAsync(doc, reqData, Collections.singletonList(action), true, executor).get();
+
+        RequestData receiveData = new RequestData();
+        receiveData.setMsgContext(new TreeMap<>());
+        receiveData.setCallbackHandler(new PasswordStore("verySecret"));
+        WSHandlerResult results =
+            handler.receiveAsync(securedDoc, Collections.singletonList(WSConstants.UT), receiveData, executor).get();
+        assertTrue(handler.checkResults(results.getResults(), Collections.singletonList(WSConstants.UT)));
+    }
+
+    /**
+     * An AsyncCallbackHandler which looks up the password on another thread
+     */
+    private final class PasswordStore implements AsyncCallbackHandler {
+        private final String password;
+
+        PasswordStore(String password) {
+            this.password = password;
+        }
+
+        @Override
+        public CompletionStage<Void> handleAsync(Callback[] callbacks) {
+            return CompletableFuture.runAsync(() -> {
+                for (Callback callback : callbacks) {
+                    if (callback instanceof WSPasswordCallback) {
+                        ((WSPasswordCallback)callback).setPassword(password);
+                    }
+                }
+            }, remoteService);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the Map view of the WSSecurityEngineResult
+ */
+public class WSSecurityEngineResultTest {
+
+    @Test
+    public void testMapView() throws Exception {
+        WSSecurityEngineResult result = new WSSecurityEngineResult(WSConstants.UT);
+        result.put(WSSecurityEngineResult.TAG_ID, "UT-1");
+        result.put("custom-key", "custom-value");
+
+        assertEquals(WSConstants.UT, result.get(WSSecurityEngineResult.TAG_ACTION));
+        assertEquals(WSConstants.UT, result.getAction());
+        assertEquals("UT-1", result.getId());
+        assertEquals("custom-value", result.get("custom-key"));
+        assertFalse(result.containsKey(WSSecurityEngineResult.TAG_SECRET));
+        assertNull(result.getSecret());
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(WSSecurityEngineResult.TAG_ACTION, WSConstants.UT);
+        expected.put(WSSecurityEngineResult.TAG_ID, "UT-1");
+        expected.put("custom-key", "custom-value");
+        assertEquals(expected, result);
+        assertEquals(expected.hashCode(), result.hashCode());
+
+        WSSecurityEngineResult clone = (WSSecurityEngineResult) result.clone();
+        assertNotSame(result, clone);
+        clone.remove(WSSecurityEngineResult.TAG_ID);
+        assertEquals("UT-1", result.getId());
+        assertNull(clone.getId());
+
+        Iterator<Map.Entry<String, Object>> iterator = result.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!WSSecurityEngineResult.TAG_ACTION.equals(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey(WSSecurityEngineResult.TAG_ACTION));
+        assertNull(result.getId());
+    }
+
+    @Test
+    public void testTypedAccessorsFollowTheMap() throws Exception {
+        WSSecurityEngineResult result = new WSSecurityEngineResult(WSConstants.UT);
+        result.putAll(Collections.singletonMap(WSSecurityEngineResult.TAG_ID, "UT-1"));
+        assertEquals("UT-1", result.getId());
+        result.computeIfPresent(WSSecurityEngineResult.TAG_ID, (key, value) -> "UT-2");
+        assertEquals("UT-2", result.getId());
+
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            if (WSSecurityEngineResult.TAG_ID.equals(entry.getKey())) {
+                entry.setValue("UT-3");
+            }
+        }
+        assertEquals("UT-3", result.getId());
+        assertEquals("UT-3", result.get(WSSecurityEngineResult.TAG_ID));
+
+        result.keySet().remove(WSSecurityEngineResult.TAG_ID);
+        assertNull(result.getId());
+        result.values().remove(WSConstants.UT);
+        assertNull(result.getAction());
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        WSSecurityEngineResult result = new WSSecurityEngineResult(WSConstants.UT);
+        result.put(WSSecurityEngineResult.TAG_ID, "UT-1");
+        assertTrue(result instanceof HashMap);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            WSSecurityEngineResult deserializedResult = (WSSecurityEngineResult) in.readObject();
+            assertEquals(result, deserializedResult);
+            assertEquals(WSConstants.UT, deserializedResult.getAction());
+            assertEquals("UT-1", deserializedResult.getId());
+        }
+    }
+}
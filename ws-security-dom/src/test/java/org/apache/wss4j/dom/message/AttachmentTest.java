@@ -20,10 +20,13 @@ package org.apache.wss4j.dom.message;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -48,6 +52,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
@@ -56,6 +61,7 @@ import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -1016,6 +1022,183 @@ public class AttachmentTest {
         }
     }
 
+    @Test
+    public void testXMLAttachmentCmplSignCmplEncSinglePass() throws Exception {
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor =
+            new SinglePassAttachmentEncryptor(WSConstants.AES_128, symmetricKey, true);
+
+        signAndEncryptSinglePass(singlePassAttachmentEncryptor, symmetricKey);
+    }
+
+    @Test
+    public void testXMLAttachmentCmplSignCmplEncSinglePassTemporaryFile(@TempDir Path tempDir) throws Exception {
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        final List<Path> cipherTextFiles = new ArrayList<>();
+        SinglePassAttachmentEncryptor.CipherTextStore cipherTextStore =
+            new SinglePassAttachmentEncryptor.TemporaryFileCipherTextStore(16, tempDir) {
+                @Override
+                public InputStream newInputStream(String attachmentId) throws IOException {
+                    try (Stream<Path> files = Files.list(tempDir)) {
+                        files.forEach(cipherTextFiles::add);
+                    }
+                    return super.newInputStream(attachmentId);
+                }
+            };
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor =
+            new SinglePassAttachmentEncryptor(WSConstants.AES_128, symmetricKey, true, cipherTextStore);
+
+        signAndEncryptSinglePass(singlePassAttachmentEncryptor, symmetricKey);
+
+        // the cipher text was written to a file, which is deleted once it was read
+        assertEquals(1, cipherTextFiles.size());
+        assertFalse(Files.exists(cipherTextFiles.get(0)));
+    }
+
+    @Test
+    public void testSinglePassEncryptionWithoutAttachmentPart() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor =
+            new SinglePassAttachmentEncryptor(WSConstants.AES_128, symmetricKey, true);
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        signature.setSinglePassAttachmentEncryptor(singlePassAttachmentEncryptor);
+        signature.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        signature.getParts().add(new WSEncryptionPart("cid:Attachments", "Element"));
+
+        String attachmentId = UUID.randomUUID().toString();
+        final Attachment attachment = new Attachment();
+        attachment.setMimeType("text/xml");
+        attachment.addHeaders(getHeaders(attachmentId));
+        attachment.setId(attachmentId);
+        attachment.setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+        signature.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        signature.build(crypto);
+
+        // the attachment was encrypted with the signature, but the encryption only covers the Body
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        encrypt.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        encrypt.setSinglePassAttachmentEncryptor(singlePassAttachmentEncryptor);
+
+        try {
+            encrypt.build(crypto, symmetricKey);
+            fail("Failure expected on an attachment without EncryptedData");
+        } catch (WSSecurityException e) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, e.getErrorCode());
+        }
+    }
+
+    private void signAndEncryptSinglePass(
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor, SecretKey symmetricKey
+    ) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        signature.setSinglePassAttachmentEncryptor(singlePassAttachmentEncryptor);
+
+        signature.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        signature.getParts().add(new WSEncryptionPart("cid:Attachments", "Element"));
+
+        // The attachment stream can only be read once
+        final byte[] attachmentContent = SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8);
+        final int[] bytesRead = new int[1];
+        String attachmentId = UUID.randomUUID().toString();
+        final Attachment attachment = new Attachment();
+        attachment.setMimeType("text/xml");
+        attachment.addHeaders(getHeaders(attachmentId));
+        attachment.setId(attachmentId);
+        attachment.setSourceStream(new FilterInputStream(new ByteArrayInputStream(attachmentContent)) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read != -1) {
+                    bytesRead[0]++;
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bytesRead[0] += read;
+                }
+                return read;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        });
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+        signature.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        List<Attachment> encryptedAttachments = attachmentCallbackHandler.getResponseAttachments();
+
+        doc = signature.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.getParts().addAll(signature.getParts());
+        encrypt.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        encrypt.setSinglePassAttachmentEncryptor(singlePassAttachmentEncryptor);
+
+        Document encryptedDoc = encrypt.build(crypto, symmetricKey);
+
+        if (LOG.isDebugEnabled()) {
+            String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+            LOG.debug(outputString);
+        }
+
+        assertEquals(attachmentContent.length, bytesRead[0]);
+        assertEquals(1, encryptedAttachments.size());
+        assertEquals("application/octet-stream", encryptedAttachments.get(0).getMimeType());
+
+        NodeList securityHeaderElement = doc.getElementsByTagNameNS(WSConstants.WSSE_NS, "Security");
+        assertEquals(1, securityHeaderElement.getLength());
+        NodeList childs = securityHeaderElement.item(0).getChildNodes();
+        assertEquals(3, childs.getLength());
+        assertEquals(childs.item(0).getLocalName(), "EncryptedKey");
+        assertEquals(childs.item(1).getLocalName(), "EncryptedData");
+        assertEquals(((Element)childs.item(1)).getAttributeNS(null, "MimeType"), "text/xml");
+        assertEquals(childs.item(2).getLocalName(), "Signature");
+
+        attachmentCallbackHandler = new AttachmentCallbackHandler(encryptedAttachments);
+        verify(encryptedDoc, attachmentCallbackHandler);
+
+        assertFalse(attachmentCallbackHandler.getResponseAttachments().isEmpty());
+        Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(1);
+
+        byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+        assertTrue(Arrays.equals(attachmentBytes, attachmentContent));
+        assertEquals("text/xml", responseAttachment.getMimeType());
+
+        Map<String, String> attHeaders = responseAttachment.getHeaders();
+        assertEquals(6, attHeaders.size());
+    }
+
     @Test
     public void testXMLAttachmentCmplEncCmplSign() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
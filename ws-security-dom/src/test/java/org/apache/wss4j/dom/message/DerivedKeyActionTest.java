@@ -27,6 +27,9 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.security.auth.callback.CallbackHandler;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.token.SecurityTokenReference;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.SOAPUtil;
 import org.w3c.dom.Document;
 import org.apache.wss4j.common.crypto.Crypto;
@@ -40,6 +43,7 @@ import org.apache.wss4j.dom.common.SecretKeyCallbackHandler;
 
 import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.HandlerAction;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
@@ -47,6 +51,7 @@ import org.apache.wss4j.dom.handler.WSHandlerResult;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -591,6 +596,77 @@ public class DerivedKeyActionTest {
         verify(doc, secretKeyCallbackHandler);
     }
 
+    @Test
+    public void testEncryptionEncryptedKeySession() throws Exception {
+        EncryptedKeySessionCache encryptedKeySessionCache = new EncryptedKeySessionCache(60L, 2);
+        // The handler caches the encryption Crypto, which is part of the session key
+        CustomHandler handler = new CustomHandler();
+
+        // The first message transports the key in an EncryptedKey
+        Document doc = sendEncryptedKeySessionMessage(handler, encryptedKeySessionCache);
+        String outputString = XMLUtils.prettyDocumentToString(doc);
+        assertTrue(outputString.contains(":EncryptedKey "));
+        assertFalse(outputString.contains(SecurityTokenReference.ENC_KEY_SHA1_URI));
+        assertEquals(1, encryptedKeySessionCache.size());
+
+        WSHandlerResult results = verify(doc);
+        WSSecurityEngineResult encryptedKeyResult =
+            results.getActionResults().get(WSConstants.ENCR).get(0);
+        String encryptedKeySHA1 =
+            org.apache.xml.security.utils.XMLUtils.encodeToString(
+                KeyUtils.generateDigest(encryptedKeyResult.getEncryptedEphemeralKey()));
+
+        // The second message references the key with an EncryptedKeySHA1
+        SecretKeyCallbackHandler secretKeyCallbackHandler = new SecretKeyCallbackHandler();
+        secretKeyCallbackHandler.addSecretKey(encryptedKeySHA1, encryptedKeyResult.getSecret());
+
+        doc = sendEncryptedKeySessionMessage(handler, encryptedKeySessionCache);
+        outputString = XMLUtils.prettyDocumentToString(doc);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(outputString);
+        }
+        assertFalse(outputString.contains(":EncryptedKey "));
+        assertTrue(outputString.contains(SecurityTokenReference.ENC_KEY_SHA1_URI));
+        assertTrue(outputString.contains(encryptedKeySHA1));
+
+        verify(doc, secretKeyCallbackHandler);
+
+        // The session is used up after two messages, so a new EncryptedKey is sent
+        doc = sendEncryptedKeySessionMessage(handler, encryptedKeySessionCache);
+        outputString = XMLUtils.prettyDocumentToString(doc);
+        assertTrue(outputString.contains(":EncryptedKey "));
+        assertFalse(outputString.contains(encryptedKeySHA1));
+
+        verify(doc);
+    }
+
+    private Document sendEncryptedKeySessionMessage(
+        CustomHandler handler, EncryptedKeySessionCache encryptedKeySessionCache
+    ) throws Exception {
+        final WSSConfig cfg = WSSConfig.getNewInstance();
+        final RequestData reqData = new RequestData();
+        reqData.setWssConfig(cfg);
+        reqData.setUsername("wss40");
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<>();
+        config.put(WSHandlerConstants.ENC_PROP_FILE, "wss40.properties");
+        config.put(WSHandlerConstants.PW_CALLBACK_REF, callbackHandler);
+        config.put(WSHandlerConstants.DERIVED_TOKEN_REFERENCE, "EncryptedKey");
+        config.put(WSHandlerConstants.DERIVED_TOKEN_KEY_ID, "Thumbprint");
+        config.put(WSHandlerConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE, encryptedKeySessionCache);
+        reqData.setMsgContext(config);
+
+        final Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        HandlerAction action = new HandlerAction(WSConstants.DKT_ENCR);
+        handler.send(
+            doc,
+            reqData,
+            Collections.singletonList(action),
+            true
+        );
+        return doc;
+    }
+
     private WSHandlerResult verify(Document doc) throws Exception {
         return verify(doc, callbackHandler);
     }
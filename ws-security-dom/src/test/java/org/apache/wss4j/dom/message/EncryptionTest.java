@@ -29,10 +29,13 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.X509TokenTemplateCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.JMXSecurityMetrics;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.SOAPUtil;
@@ -59,6 +62,7 @@ import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -356,6 +360,40 @@ public class EncryptionTest {
         assertTrue(referenceType == REFERENCE_TYPE.THUMBPRINT_SHA1);
     }
 
+    /**
+     * Encrypt messages with the certificate data taken from an X509TokenTemplateCache, for the
+     * different key identifier types.
+     */
+    @Test
+    public void testX509TokenTemplateCache() throws Exception {
+        X509TokenTemplateCache cache = new X509TokenTemplateCache();
+        int[] keyIdentifierTypes = new int[] {
+            WSConstants.BST_DIRECT_REFERENCE, WSConstants.ISSUER_SERIAL, WSConstants.X509_KEY_IDENTIFIER,
+            WSConstants.SKI_KEY_IDENTIFIER, WSConstants.THUMBPRINT_IDENTIFIER,
+        };
+        for (int keyIdentifierType : keyIdentifierTypes) {
+            for (int i = 0; i < 2; i++) {
+                Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+                WSSecHeader secHeader = new WSSecHeader(doc);
+                secHeader.insertSecurityHeader();
+
+                WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+                builder.setUserInfo("wss40");
+                builder.setKeyIdentifierType(keyIdentifierType);
+                builder.setX509TokenTemplateCache(cache);
+                KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+                SecretKey symmetricKey = keyGen.generateKey();
+                Document encryptedDoc = builder.build(crypto, symmetricKey);
+
+                WSHandlerResult results = verify(encryptedDoc, crypto, keystoreCallbackHandler);
+                WSSecurityEngineResult actionResult =
+                    results.getActionResults().get(WSConstants.ENCR).get(0);
+                assertNotNull(actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE));
+            }
+        }
+        assertEquals(1, cache.size());
+    }
+
     /**
      * Test that encrypts and decrypts a WS-Security envelope.
      * The test uses the EncryptedKeySHA1 key identifier type.
@@ -731,6 +769,93 @@ public class EncryptionTest {
         newEngine.processSecurityHeader(encryptedDoc, null, keystoreCallbackHandler, regexpCrypto);
     }
 
+    /**
+     * Test that a repeated EncryptedKey is unwrapped only once if an EncryptedKeyCache is configured
+     */
+    @Test
+    public void testEncryptedKeyCache() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        String encryptedMessage = XMLUtils.prettyDocumentToString(builder.build(crypto, symmetricKey));
+
+        EncryptedKeyCache encryptedKeyCache = new EncryptedKeyCache();
+        JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+        for (int i = 0; i < 2; i++) {
+            Document encryptedDoc = SOAPUtil.toSOAPPart(encryptedMessage);
+            RequestData requestData = new RequestData();
+            requestData.setDecCrypto(crypto);
+            requestData.setCallbackHandler(keystoreCallbackHandler);
+            requestData.setEncryptedKeyCache(encryptedKeyCache);
+            requestData.setSecurityMetrics(securityMetrics);
+
+            WSHandlerResult results = secEngine.processSecurityHeader(encryptedDoc, requestData);
+            assertTrue(XMLUtils.prettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+            WSSecurityEngineResult actionResult = results.getActionResults().get(WSConstants.ENCR).get(0);
+            assertArrayEquals(symmetricKey.getEncoded(), actionResult.getSecret());
+        }
+
+        assertEquals(1, encryptedKeyCache.size());
+        assertEquals(Long.valueOf(1L), securityMetrics.getCacheHits().get("ENCRYPTED_KEY"));
+        assertEquals(Long.valueOf(1L), securityMetrics.getCacheMisses().get("ENCRYPTED_KEY"));
+        assertEquals(Long.valueOf(1L), securityMetrics.getCryptoOperationCounts().get("KEY_UNWRAP"));
+    }
+
+    /**
+     * Test that the random key of an EncryptedKey which can't be unwrapped is cached as well, so
+     * that a repeated EncryptedKey is processed in the same way whether or not it could be unwrapped
+     */
+    @Test
+    public void testEncryptedKeyCacheFailedUnwrap() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = builder.build(crypto, symmetricKey);
+
+        // Corrupt the wrapped key
+        Element cipherValue =
+            XMLUtils.findElement(secHeader.getSecurityHeaderElement(), "CipherValue", WSConstants.ENC_NS);
+        String wrappedKey = cipherValue.getTextContent();
+        cipherValue.setTextContent((wrappedKey.charAt(0) == 'A' ? "B" : "A") + wrappedKey.substring(1));
+        String encryptedMessage = XMLUtils.prettyDocumentToString(encryptedDoc);
+
+        EncryptedKeyCache encryptedKeyCache = new EncryptedKeyCache();
+        JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+        for (int i = 0; i < 2; i++) {
+            RequestData requestData = new RequestData();
+            requestData.setDecCrypto(crypto);
+            requestData.setCallbackHandler(keystoreCallbackHandler);
+            requestData.setEncryptedKeyCache(encryptedKeyCache);
+            requestData.setSecurityMetrics(securityMetrics);
+            try {
+                secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(encryptedMessage), requestData);
+                fail("Failure expected on a corrupted EncryptedKey");
+            } catch (WSSecurityException ex) {
+                assertEquals(WSSecurityException.ErrorCode.FAILED_CHECK, ex.getErrorCode());
+            }
+        }
+
+        assertEquals(1, encryptedKeyCache.size());
+        assertEquals(Long.valueOf(1L), securityMetrics.getCacheHits().get("ENCRYPTED_KEY"));
+        assertEquals(Long.valueOf(1L), securityMetrics.getCryptoOperationCounts().get("KEY_UNWRAP"));
+    }
+
     /**
      * Verifies the soap envelope <p/>
      *
@@ -29,6 +29,7 @@ import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.crypto.TenantCrypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.handler.HandlerAction;
@@ -40,6 +41,7 @@ import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Properties;
 
@@ -222,6 +224,42 @@ public class SignatureCertTest {
         }
     }
 
+    /**
+     * Test verifying a signature with a TenantCrypto, restricted to the tenant of the message.
+     */
+    @Test
+    public void testSignatureTenantCrypto() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        sign.setUserInfo("wss40", "security");
+        sign.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+
+        Document signedDoc = sign.build(crypto);
+
+        // the wss40 certificate is only trusted by the CA of the wss40CA tenant
+        TenantCrypto tenantCrypto = new TenantCrypto(
+            Arrays.asList("alice", "wss40CA"), tenant -> CryptoFactory.getInstance(tenant + ".properties"),
+            10, Long.MAX_VALUE, null);
+        RequestData data = new RequestData();
+        data.setSigVerCrypto(tenantCrypto);
+        data.setTenant("alice");
+        try {
+            secEngine.processSecurityHeader(signedDoc, data);
+            fail("Failure expected on a certificate which the tenant doesn't trust");
+        } catch (WSSecurityException ex) {
+            assertTrue(ex.getErrorCode() == WSSecurityException.ErrorCode.FAILURE);
+        }
+
+        data.setTenant("wss40CA");
+        WSHandlerResult results = secEngine.processSecurityHeader(signedDoc, data);
+        WSSecurityEngineResult result =
+            results.getActionResults().get(WSConstants.SIGN).get(0);
+        assertNotNull(result.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE));
+    }
+
     /**
      * A test for "SignatureAction does not set DigestAlgorithm on WSSecSignature instance"
      */
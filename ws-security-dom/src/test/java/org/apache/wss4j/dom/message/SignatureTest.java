@@ -37,6 +37,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.X509TokenTemplateCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -64,6 +65,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -1072,6 +1074,59 @@ public class SignatureTest {
         assertNotNull(signedDoc);
     }
 
+    /**
+     * Sign messages with the certificate data taken from an X509TokenTemplateCache, for the
+     * different key identifier types.
+     */
+    @Test
+    public void testX509TokenTemplateCache() throws Exception {
+        Crypto pkiCrypto = CryptoFactory.getInstance("wss40.properties");
+        X509TokenTemplateCache cache = new X509TokenTemplateCache();
+        int[] keyIdentifierTypes = new int[] {
+            WSConstants.BST_DIRECT_REFERENCE, WSConstants.ISSUER_SERIAL, WSConstants.ISSUER_SERIAL_QUOTE_FORMAT,
+            WSConstants.X509_KEY_IDENTIFIER, WSConstants.SKI_KEY_IDENTIFIER, WSConstants.THUMBPRINT_IDENTIFIER,
+        };
+        for (int keyIdentifierType : keyIdentifierTypes) {
+            for (int i = 0; i < 2; i++) {
+                Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+                WSSecHeader secHeader = new WSSecHeader(doc);
+                secHeader.insertSecurityHeader();
+
+                WSSecSignature builder = new WSSecSignature(secHeader);
+                builder.setUserInfo("wss40", "security");
+                builder.setKeyIdentifierType(keyIdentifierType);
+                builder.setIncludeSignatureToken(true);
+                builder.setX509TokenTemplateCache(cache);
+                Document signedDoc = builder.build(pkiCrypto);
+
+                WSHandlerResult results =
+                    secEngine.processSecurityHeader(signedDoc, null, callbackHandler, pkiCrypto);
+                WSSecurityEngineResult actionResult =
+                    results.getActionResults().get(WSConstants.SIGN).get(0);
+                assertNotNull(actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE));
+            }
+        }
+
+        // PKIPath BinarySecurityToken
+        for (int i = 0; i < 2; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature builder = new WSSecSignature(secHeader);
+            builder.setUserInfo("wss40", "security");
+            builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            builder.setUseSingleCertificate(false);
+            builder.setX509TokenTemplateCache(cache);
+            Document signedDoc = builder.build(pkiCrypto);
+
+            secEngine.processSecurityHeader(signedDoc, null, callbackHandler, pkiCrypto);
+        }
+
+        // all the messages use the template of the same certificate chain
+        assertEquals(1, cache.size());
+    }
+
     /**
      * Verifies the soap envelope.
      * This method verifies all the signature generated.
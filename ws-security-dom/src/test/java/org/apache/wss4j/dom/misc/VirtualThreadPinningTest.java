@@ -0,0 +1,286 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.wss4j.common.cache.EHCacheReplayCache;
+import org.apache.wss4j.common.cache.MemoryReplayCache;
+import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.ThreadLocalSecurityProvider;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+import org.apache.wss4j.dom.common.UsernamePasswordCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSAMLToken;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.apache.wss4j.dom.message.WSSecUsernameToken;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Stress tests which process many messages concurrently on virtual threads, and check that WSS4J
+ * doesn't pin the carrier threads. They are skipped on JDKs without virtual threads.
+ */
+public class VirtualThreadPinningTest {
+
+    private static final int MESSAGES = 10000;
+
+    private static final int SECURED_MESSAGES = 1000;
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testNoPinningOnVirtualThreads() throws Exception {
+        WSSConfig.init();
+        ReplayCache nonceCache = new MemoryReplayCache();
+        ReplayCache timestampCache = new MemoryReplayCache();
+        try {
+            assertNoPinning(MESSAGES, 2, () -> processMessage(createMessage(), nonceCache, timestampCache));
+        } finally {
+            timestampCache.close();
+            nonceCache.close();
+        }
+    }
+
+    /**
+     * Signed and encrypted messages use Merlin, and are processed with an EHCache replay cache and the
+     * ThreadLocalSecurityProvider installed.
+     */
+    @Test
+    public void testNoPinningOnSignedEncryptedMessages() throws Exception {
+        WSSConfig.init();
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        BouncyCastleProvider bouncyCastleProvider = new BouncyCastleProvider();
+        ThreadLocalSecurityProvider.install();
+        ReplayCache timestampCache = new EHCacheReplayCache("pinning-timestamps", tempDir);
+        try {
+            assertNoPinning(SECURED_MESSAGES, 3, () -> {
+                ThreadLocalSecurityProvider.setProvider(bouncyCastleProvider);
+                try {
+                    return processSecuredMessage(createSignedEncryptedMessage(crypto), crypto, timestampCache);
+                } finally {
+                    ThreadLocalSecurityProvider.unsetProvider();
+                }
+            });
+        } finally {
+            timestampCache.close();
+            ThreadLocalSecurityProvider.uninstall();
+        }
+    }
+
+    /**
+     * SAML assertions are created and parsed with OpenSAML, which OpenSAMLUtil initializes
+     */
+    @Test
+    public void testNoPinningOnSamlMessages() throws Exception {
+        WSSConfig.init();
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setIssuer("www.example.com");
+        assertNoPinning(SECURED_MESSAGES, 1, () -> processSamlMessage(createSamlMessage(callbackHandler)));
+    }
+
+    /**
+     * Run the task once, so that the classes are loaded and initialized outside the recording, and then
+     * the given number of times concurrently on virtual threads. Every run must return the expected
+     * number of results, and no virtual thread may be pinned in a WSS4J frame.
+     */
+    private void assertNoPinning(int messages, int expectedResults, Callable<Integer> task) throws Exception {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        assumeTrue(executor != null, "Virtual threads are not available");
+        assertEquals(expectedResults, task.call().intValue());
+
+        Path recordingFile = tempDir.resolve("pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            try {
+                List<Future<Integer>> results = new ArrayList<>(messages);
+                for (int i = 0; i < messages; i++) {
+                    results.add(executor.submit(task));
+                }
+                for (Future<Integer> result : results) {
+                    assertEquals(expectedResults, result.get(5, TimeUnit.MINUTES).intValue());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<String> pinnedStackTraces = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            if (PINNED_EVENT.equals(event.getEventType().getName()) && isPinnedByWss4j(event)) {
+                pinnedStackTraces.add(event.getStackTrace().toString());
+            }
+        }
+        assertTrue(pinnedStackTraces.isEmpty(), "Virtual threads were pinned: " + pinnedStackTraces);
+    }
+
+    private static Document createMessage() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.setTimeToLive(300);
+        timestamp.build();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        return builder.build();
+    }
+
+    private static Document createSignedEncryptedMessage(Crypto crypto) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.setTimeToLive(300);
+        timestamp.build();
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo("wss40", "security");
+        signature.build(crypto);
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("wss40");
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        return encrypt.build(crypto, symmetricKey);
+    }
+
+    private static Document createSamlMessage(SAML2CallbackHandler callbackHandler) throws Exception {
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken builder = new WSSecSAMLToken(secHeader);
+        return builder.build(samlAssertion);
+    }
+
+    private static int processMessage(
+        Document doc, ReplayCache nonceCache, ReplayCache timestampCache
+    ) throws Exception {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(new UsernamePasswordCallbackHandler());
+        data.setNonceReplayCache(nonceCache);
+        data.setTimestampReplayCache(timestampCache);
+
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        WSHandlerResult results = secEngine.processSecurityHeader(WSSecurityUtil.getSecurityHeader(doc, null), data);
+        return results.getResults().size();
+    }
+
+    private static int processSecuredMessage(
+        Document doc, Crypto crypto, ReplayCache timestampCache
+    ) throws Exception {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setCallbackHandler(new KeystoreCallbackHandler());
+        data.setSigVerCrypto(crypto);
+        data.setDecCrypto(crypto);
+        data.setTimestampReplayCache(timestampCache);
+
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        WSHandlerResult results = secEngine.processSecurityHeader(WSSecurityUtil.getSecurityHeader(doc, null), data);
+        return results.getResults().size();
+    }
+
+    private static int processSamlMessage(Document doc) throws Exception {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setValidateSamlSubjectConfirmation(false);
+
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        WSHandlerResult results = secEngine.processSecurityHeader(WSSecurityUtil.getSecurityHeader(doc, null), data);
+        return results.getResults().size();
+    }
+
+    private static boolean isPinnedByWss4j(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().startsWith("org.apache.wss4j.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is only available from Java 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.WSSWarmUp;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Some tests for the WSS4J warm-up
+ */
+public class WarmUpTest {
+
+    @Test
+    public void testWarmUp() throws Exception {
+        WSSWarmUp warmUp = new WSSWarmUp();
+        warmUp.setInitSaml(false);
+        warmUp.setRoundTrips(5);
+        warmUp.addCryptoPropertiesFile("wss40.properties");
+        warmUp.addCryptoPropertiesFile("crypto.properties");
+        warmUp.run();
+
+        assertEquals(2, warmUp.getCryptos().size());
+        assertNotNull(warmUp.getCryptos().get("wss40.properties"));
+        assertNotNull(warmUp.getCryptos().get("crypto.properties"));
+    }
+
+    @Test
+    public void testMissingCryptoProperties() throws Exception {
+        WSSWarmUp warmUp = new WSSWarmUp();
+        warmUp.setInitSaml(false);
+        warmUp.setThreads(1);
+        warmUp.addCryptoPropertiesFile("no-such-crypto.properties");
+        assertThrows(WSSecurityException.class, warmUp::run);
+    }
+}
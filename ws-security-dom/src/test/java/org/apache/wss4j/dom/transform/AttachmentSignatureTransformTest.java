@@ -0,0 +1,357 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.transform;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.crypto.Data;
+import javax.xml.crypto.OctetStreamData;
+import javax.xml.crypto.XMLCryptoContext;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+
+import org.apache.jcp.xml.dsig.internal.DigesterOutputStream;
+import org.apache.jcp.xml.dsig.internal.dom.ApacheOctetStreamData;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.AttachmentCallbackHandler;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Some tests for the SwA attachment signature transforms, which must not buffer the attachment content.
+ */
+public class AttachmentSignatureTransformTest {
+
+    private static final int ATTACHMENT_SIZE = 1024 * 1024;
+    private static final int LARGE_ATTACHMENT_SIZE = 64 * 1024 * 1024;
+    private static final long MAX_ALLOCATED_BYTES = 16L * 1024 * 1024;
+
+    public AttachmentSignatureTransformTest() throws Exception {
+        WSSConfig.init();
+    }
+
+    @Test
+    public void testContentTransformStreams() throws Exception {
+        Attachment attachment = createAttachment("application/octet-stream", LARGE_ATTACHMENT_SIZE);
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+
+        AttachmentContentSignatureTransform transform = new AttachmentContentSignatureTransform();
+        transform.init(new AttachmentTransformParameterSpec(attachmentCallbackHandler, attachment));
+
+        long allocatedBytes = getAllocatedBytes();
+        Data data = transform.transform(createData(attachment), createContext());
+        byte[] digest = digest(((OctetStreamData) data).getOctetStream());
+        allocatedBytes = getAllocatedBytes() - allocatedBytes;
+
+        assertArrayEquals(digest(new GeneratedInputStream(LARGE_ATTACHMENT_SIZE)), digest);
+        assertTrue(allocatedBytes < MAX_ALLOCATED_BYTES, "Allocated " + allocatedBytes + " bytes");
+
+        // The result callback returns the attachment stream for reuse, reset to the start
+        List<Attachment> responseAttachments = attachmentCallbackHandler.getResponseAttachments();
+        assertEquals(1, responseAttachments.size());
+        assertArrayEquals(
+            digest(new GeneratedInputStream(LARGE_ATTACHMENT_SIZE)),
+            digest(responseAttachments.get(0).getSourceStream())
+        );
+    }
+
+    @Test
+    public void testContentTransformTextLineEndings() throws Exception {
+        String content = "line1\nline2\r\nline3\rline4\n\n\r\r\nline5";
+        Attachment attachment = new Attachment();
+        attachment.setId("text-attachment");
+        attachment.setMimeType("text/plain");
+        attachment.setSourceStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        AttachmentContentSignatureTransform transform = new AttachmentContentSignatureTransform();
+        transform.init(new AttachmentTransformParameterSpec(
+            new AttachmentCallbackHandler(Collections.singletonList(attachment)), attachment));
+
+        Data data = transform.transform(createData(attachment), createContext());
+        byte[] transformed = readInputStream(((OctetStreamData) data).getOctetStream());
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (CRLFOutputStream crlfOutputStream = new CRLFOutputStream(expected)) {
+            crlfOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("line1\r\nline2\r\nline3\r\nline4\r\n\r\n\r\n\r\nline5",
+                     new String(transformed, StandardCharsets.UTF_8));
+        assertArrayEquals(expected.toByteArray(), transformed);
+    }
+
+    @Test
+    public void testCompleteTransformStreams() throws Exception {
+        Attachment attachment = createAttachment("application/octet-stream", LARGE_ATTACHMENT_SIZE);
+        attachment.addHeaders(getHeaders(attachment.getId()));
+
+        AttachmentCompleteSignatureTransform transform = new AttachmentCompleteSignatureTransform();
+        transform.init(new AttachmentTransformParameterSpec(
+            new AttachmentCallbackHandler(Collections.singletonList(attachment)), attachment));
+
+        long allocatedBytes = getAllocatedBytes();
+        Data data = transform.transform(createData(attachment), createContext());
+        byte[] digest = digest(((OctetStreamData) data).getOctetStream());
+        allocatedBytes = getAllocatedBytes() - allocatedBytes;
+
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        AttachmentUtils.canonizeMimeHeaders(headers, attachment.getHeaders());
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update(headers.toByteArray());
+        digestInput(new GeneratedInputStream(LARGE_ATTACHMENT_SIZE), messageDigest);
+        assertArrayEquals(messageDigest.digest(), digest);
+        assertTrue(allocatedBytes < MAX_ALLOCATED_BYTES, "Allocated " + allocatedBytes + " bytes");
+    }
+
+    @Test
+    public void testVerifyStreamedAttachment() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance();
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        signature.getParts().add(new WSEncryptionPart("cid:Attachments", "Content"));
+        signature.setAttachmentCallbackHandler(new AttachmentCallbackHandler(
+            Collections.singletonList(createAttachment("application/octet-stream", ATTACHMENT_SIZE))));
+        Document signedDoc = signature.build(crypto);
+
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setAttachmentCallbackHandler(new AttachmentCallbackHandler(
+            Collections.singletonList(createAttachment("application/octet-stream", ATTACHMENT_SIZE))));
+
+        WSHandlerResult results = new WSSecurityEngine().processSecurityHeader(signedDoc, requestData);
+        assertNotNull(results.getActionResults().get(WSConstants.SIGN));
+    }
+
+    @Test
+    public void testVerifyNonMarkableAttachment() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance();
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature signature = new WSSecSignature(secHeader);
+        signature.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        signature.getParts().add(new WSEncryptionPart("cid:Attachments", "Content"));
+        signature.setAttachmentCallbackHandler(new AttachmentCallbackHandler(
+            Collections.singletonList(createAttachment("application/octet-stream", LARGE_ATTACHMENT_SIZE))));
+        Document signedDoc = signature.build(crypto);
+
+        // the source stream can't be reset, so it must be spooled rather than buffered for the result callback
+        Attachment attachment = createAttachment("application/octet-stream", LARGE_ATTACHMENT_SIZE);
+        attachment.setSourceStream(new NonMarkableInputStream(attachment.getSourceStream()));
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+        // The JSR-105 provider logs the pre-digested input at debug level, so only measure without it
+        Logger digesterLogger = Logger.getLogger(DigesterOutputStream.class);
+        Level digesterLogLevel = digesterLogger.getLevel();
+        digesterLogger.setLevel(Level.INFO);
+        long allocatedBytes;
+        WSHandlerResult results;
+        try {
+            allocatedBytes = getAllocatedBytes();
+            results = new WSSecurityEngine().processSecurityHeader(signedDoc, requestData);
+            allocatedBytes = getAllocatedBytes() - allocatedBytes;
+        } finally {
+            digesterLogger.setLevel(digesterLogLevel);
+        }
+
+        assertNotNull(results.getActionResults().get(WSConstants.SIGN));
+        assertTrue(allocatedBytes < MAX_ALLOCATED_BYTES, "Allocated " + allocatedBytes + " bytes");
+
+        List<Attachment> responseAttachments = attachmentCallbackHandler.getResponseAttachments();
+        assertEquals(1, responseAttachments.size());
+        assertArrayEquals(
+            digest(new GeneratedInputStream(LARGE_ATTACHMENT_SIZE)),
+            digest(responseAttachments.get(0).getSourceStream())
+        );
+    }
+
+    private static Attachment createAttachment(String mimeType, int size) {
+        Attachment attachment = new Attachment();
+        attachment.setId("attachment-" + size);
+        attachment.setMimeType(mimeType);
+        attachment.setSourceStream(new GeneratedInputStream(size));
+        return attachment;
+    }
+
+    private static Map<String, String> getHeaders(String attachmentId) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(AttachmentUtils.MIME_HEADER_CONTENT_DESCRIPTION, "Attachment");
+        headers.put(AttachmentUtils.MIME_HEADER_CONTENT_ID, "<attachment=" + attachmentId + ">");
+        headers.put(AttachmentUtils.MIME_HEADER_CONTENT_TYPE, "application/octet-stream");
+        return headers;
+    }
+
+    private static Data createData(Attachment attachment) throws IOException {
+        XMLSignatureInput xmlSignatureInput = new XMLSignatureInput(new byte[0]);
+        xmlSignatureInput.setSourceURI("cid:" + attachment.getId());
+        return new ApacheOctetStreamData(xmlSignatureInput);
+    }
+
+    private static XMLCryptoContext createContext() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        return new DOMValidateContext(new SecretKeySpec(new byte[16], "AES"), doc.getDocumentElement());
+    }
+
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported()
+                   && allocationMXBean.isThreadAllocatedMemoryEnabled());
+        return allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static byte[] digest(InputStream inputStream) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        digestInput(inputStream, messageDigest);
+        return messageDigest.digest();
+    }
+
+    private static void digestInput(InputStream inputStream, MessageDigest messageDigest) throws IOException {
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buf)) != -1) {
+            messageDigest.update(buf, 0, read);
+        }
+        inputStream.close();
+    }
+
+    private static byte[] readInputStream(InputStream inputStream) throws IOException {
+        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buf)) != -1) {
+                byteArrayOutputStream.write(buf, 0, read);
+            }
+            return byteArrayOutputStream.toByteArray();
+        }
+    }
+
+    /**
+     * Hides the mark/reset support of a stream
+     */
+    private static final class NonMarkableInputStream extends FilterInputStream {
+
+        NonMarkableInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * A stream of generated bytes, which supports mark/reset without buffering
+     */
+    private static final class GeneratedInputStream extends InputStream {
+
+        private final int size;
+        private int pos;
+        private int mark;
+
+        GeneratedInputStream(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (pos >= size) {
+                return -1;
+            }
+            return generate(pos++);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos >= size) {
+                return -1;
+            }
+            int numBytes = Math.min(len, size - pos);
+            for (int i = 0; i < numBytes; i++) {
+                b[off + i] = (byte) generate(pos++);
+            }
+            return numBytes;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            pos = mark;
+        }
+
+        private static int generate(int i) {
+            return (i * 31 + (i >>> 8)) & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.Policy;
+import org.apache.neethi.PolicyComponent;
+import org.apache.neethi.PolicyContainingAssertion;
+import org.apache.neethi.PolicyOperator;
+import org.apache.neethi.builders.PrimitiveAssertion;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.stax.Assertable;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+
+/**
+ * The precompiled form of an operation policy. The normalized policy is walked only once and
+ * flattened into the security assertions of every alternative. The dispatch table which maps a
+ * SecurityEvent type to the assertion states of an alternative is built by the first
+ * PolicyEnforcer and shared by all later ones. Only the assertion states itself are created
+ * per message.
+ */
+final class PolicyAutomaton {
+
+    private final Policy policy;
+    private final AbstractSecurityAssertion[][] alternatives;
+    //the dispatch tables for the recipient [0] and the initiator [1] side
+    private final AtomicReferenceArray<DispatchTable> dispatchTables = new AtomicReferenceArray<>(2);
+
+    private PolicyAutomaton(Policy policy, AbstractSecurityAssertion[][] alternatives) {
+        this.policy = policy;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Precondition: Policy _must_ be normalized!
+     */
+    static PolicyAutomaton compile(Policy policy) throws WSSPolicyException {
+        List<List<AbstractSecurityAssertion>> alternativeList = new ArrayList<>();
+        collectAlternatives(policy, alternativeList);
+
+        AbstractSecurityAssertion[][] alternatives = new AbstractSecurityAssertion[alternativeList.size()][];
+        for (int i = 0; i < alternatives.length; i++) {
+            List<AbstractSecurityAssertion> assertions = alternativeList.get(i);
+            alternatives[i] = assertions.toArray(new AbstractSecurityAssertion[0]);
+        }
+        return new PolicyAutomaton(policy, alternatives);
+    }
+
+    private static void collectAlternatives(
+            PolicyComponent policyComponent, List<List<AbstractSecurityAssertion>> alternatives
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
+            int alternative = 0;
+            for (int i = 0; i < policyComponents.size(); i++) {
+                PolicyComponent curPolicyComponent = policyComponents.get(i);
+                if (policyOperator instanceof ExactlyOne) {
+                    alternatives.add(new ArrayList<AbstractSecurityAssertion>());
+                    collectAssertions(curPolicyComponent, alternatives.get(alternative++));
+                } else {
+                    collectAlternatives(curPolicyComponent, alternatives);
+                }
+            }
+        } else {
+            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
+                                         + " " + policyComponent.getType());
+        }
+    }
+
+    private static void collectAssertions(
+            PolicyComponent policyComponent, List<AbstractSecurityAssertion> assertions
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            List<PolicyComponent> policyComponents = ((PolicyOperator) policyComponent).getPolicyComponents();
+            for (int i = 0; i < policyComponents.size(); i++) {
+                collectAssertions(policyComponents.get(i), assertions);
+            }
+        } else if (policyComponent instanceof AbstractSecurityAssertion) {
+            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
+            assertions.add(abstractSecurityAssertion);
+            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
+                collectAssertions(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(), assertions);
+            }
+        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
+            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
+                                         + " type: " + policyComponent.getType());
+        }
+    }
+
+    /**
+     * @return the policy this automaton was compiled from
+     */
+    Policy getPolicy() {
+        return policy;
+    }
+
+    int getAlternativeCount() {
+        return alternatives.length;
+    }
+
+    AbstractSecurityAssertion[] getAssertions(int alternative) {
+        return alternatives[alternative];
+    }
+
+    DispatchTable getDispatchTable(boolean initiator) {
+        return dispatchTables.get(initiator ? 1 : 0);
+    }
+
+    /**
+     * Remembers the dispatch table unless another PolicyEnforcer was faster
+     */
+    void setDispatchTable(boolean initiator, DispatchTable dispatchTable) {
+        dispatchTables.compareAndSet(initiator ? 1 : 0, null, dispatchTable);
+    }
+
+    /**
+     * Maps the SecurityEvent types to the slots in the per message assertion state arrays.
+     * The slot of an assertion state is the position in which it was created, alternative by alternative.
+     */
+    static final class DispatchTable {
+
+        private static final int[] NO_SLOTS = new int[0];
+
+        private final Map<SecurityEventConstants.Event, Integer> eventIndexes;
+        private final Class<?>[][] slotClasses;
+        private final int[][] slotAssertions;
+        private final int[][][] slotsByEvent;
+        private final int[][] dispatchedSlots;
+
+        private DispatchTable(Map<SecurityEventConstants.Event, Integer> eventIndexes, Class<?>[][] slotClasses,
+                              int[][] slotAssertions, int[][][] slotsByEvent, int[][] dispatchedSlots) {
+            this.eventIndexes = eventIndexes;
+            this.slotClasses = slotClasses;
+            this.slotAssertions = slotAssertions;
+            this.slotsByEvent = slotsByEvent;
+            this.dispatchedSlots = dispatchedSlots;
+        }
+
+        /**
+         * @param assertables the assertion states of every alternative
+         * @param assertions the index of the assertion in the alternative each assertion state belongs to
+         */
+        static DispatchTable build(Assertable[][] assertables, int[][] assertions) {
+            Map<SecurityEventConstants.Event, Integer> eventIndexes = new HashMap<>();
+            List<List<List<Integer>>> slotLists = new ArrayList<>(assertables.length);
+            Class<?>[][] slotClasses = new Class<?>[assertables.length][];
+            int[][] dispatchedSlots = new int[assertables.length][];
+
+            for (int i = 0; i < assertables.length; i++) {
+                List<List<Integer>> slotsByEvent = new ArrayList<>();
+                slotLists.add(slotsByEvent);
+                slotClasses[i] = new Class<?>[assertables[i].length];
+                int[] dispatched = new int[assertables[i].length];
+                int dispatchedCount = 0;
+
+                for (int slot = 0; slot < assertables[i].length; slot++) {
+                    Assertable assertable = assertables[i][slot];
+                    slotClasses[i][slot] = assertable.getClass();
+                    SecurityEventConstants.Event[] securityEventTypes = assertable.getSecurityEventType();
+                    for (int j = 0; j < securityEventTypes.length; j++) {
+                        Integer eventIndex = eventIndexes.get(securityEventTypes[j]);
+                        if (eventIndex == null) {
+                            eventIndex = eventIndexes.size();
+                            eventIndexes.put(securityEventTypes[j], eventIndex);
+                        }
+                        while (slotsByEvent.size() <= eventIndex) {
+                            slotsByEvent.add(new ArrayList<Integer>());
+                        }
+                        List<Integer> slots = slotsByEvent.get(eventIndex);
+                        if (slots.isEmpty() || slots.get(slots.size() - 1) != slot) {
+                            slots.add(slot);
+                        }
+                    }
+                    //assertion states without a SecurityEvent type are never evaluated
+                    if (securityEventTypes.length > 0) {
+                        dispatched[dispatchedCount++] = slot;
+                    }
+                }
+                dispatchedSlots[i] = Arrays.copyOf(dispatched, dispatchedCount);
+            }
+
+            int[][][] slotsByEvent = new int[assertables.length][eventIndexes.size()][];
+            for (int i = 0; i < assertables.length; i++) {
+                List<List<Integer>> slotList = slotLists.get(i);
+                for (int eventIndex = 0; eventIndex < eventIndexes.size(); eventIndex++) {
+                    if (eventIndex >= slotList.size() || slotList.get(eventIndex).isEmpty()) {
+                        slotsByEvent[i][eventIndex] = NO_SLOTS;
+                        continue;
+                    }
+                    List<Integer> slots = slotList.get(eventIndex);
+                    slotsByEvent[i][eventIndex] = new int[slots.size()];
+                    for (int j = 0; j < slots.size(); j++) {
+                        slotsByEvent[i][eventIndex][j] = slots.get(j);
+                    }
+                }
+            }
+
+            int[][] slotAssertions = new int[assertions.length][];
+            for (int i = 0; i < assertions.length; i++) {
+                slotAssertions[i] = assertions[i].clone();
+            }
+            return new DispatchTable(eventIndexes, slotClasses, slotAssertions, slotsByEvent, dispatchedSlots);
+        }
+
+        /**
+         * The SecurityEvent types of an assertion state depend on its class only. A table built for
+         * other message can be reused when the same assertion state classes were created for the
+         * same assertions.
+         */
+        boolean matches(Assertable[][] assertables, int[][] assertions) {
+            if (assertables.length != slotClasses.length) {
+                return false;
+            }
+            for (int i = 0; i < assertables.length; i++) {
+                if (assertables[i].length != slotClasses[i].length
+                    || !Arrays.equals(assertions[i], slotAssertions[i])) {
+                    return false;
+                }
+                for (int slot = 0; slot < assertables[i].length; slot++) {
+                    if (assertables[i][slot].getClass() != slotClasses[i][slot]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the index of the SecurityEvent type or -1 if no assertion state is interested in it
+         */
+        int getEventIndex(SecurityEventConstants.Event securityEventType) {
+            Integer eventIndex = eventIndexes.get(securityEventType);
+            return eventIndex == null ? -1 : eventIndex;
+        }
+
+        int[] getSlots(int alternative, int eventIndex) {
+            return slotsByEvent[alternative][eventIndex];
+        }
+
+        int getSlotCount(int alternative) {
+            return slotClasses[alternative].length;
+        }
+
+        /**
+         * @return the slots which are registered for at least one SecurityEvent type
+         */
+        int[] getDispatchedSlots(int alternative) {
+            return dispatchedSlots[alternative];
+        }
+
+        int getAssertionIndex(int alternative, int slot) {
+            return slotAssertions[alternative][slot];
+        }
+    }
+}
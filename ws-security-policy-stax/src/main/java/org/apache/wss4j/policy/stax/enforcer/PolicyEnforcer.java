@@ -18,23 +18,17 @@
  */
 package org.apache.wss4j.policy.stax.enforcer;
 
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.apache.neethi.Assertion;
-import org.apache.neethi.ExactlyOne;
 import org.apache.neethi.Policy;
-import org.apache.neethi.PolicyComponent;
-import org.apache.neethi.PolicyContainingAssertion;
-import org.apache.neethi.PolicyOperator;
-import org.apache.neethi.builders.PrimitiveAssertion;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.policy.SPConstants;
 import org.apache.wss4j.common.WSSPolicyException;
@@ -105,7 +99,6 @@ import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
-import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 
 /**
@@ -131,9 +124,15 @@ public class PolicyEnforcer implements SecurityEventListener {
     private static final QName SOAP12_FAULT = new QName(WSSConstants.NS_SOAP12, "Fault");
 
     private final List<OperationPolicy> operationPolicies;
+    private final Map<OperationPolicy, PolicyAutomaton> policyAutomatons;
     private OperationPolicy effectivePolicy;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> failedAssertionStateMap;
+    private PolicyAutomaton policyAutomaton;
+    private PolicyAutomaton.DispatchTable dispatchTable;
+    //the assertion states of every alternative
+    private Assertable[][] assertables;
+    private boolean[] failedAlternatives;
+    private int failedAlternativeCount;
+    private int remainingAlternativeCount;
 
     private final Deque<SecurityEvent> securityEventQueue = new LinkedList<>();
     private boolean operationSecurityEventOccured = false;
@@ -147,14 +146,22 @@ public class PolicyEnforcer implements SecurityEventListener {
 
     public PolicyEnforcer(List<OperationPolicy> operationPolicies, String soapAction, boolean initiator,
                           String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter, boolean soap12
+    ) throws WSSPolicyException {
+        this(operationPolicies, null, soapAction, initiator, actorOrRole, attachmentCount, policyAsserter, soap12);
+    }
+
+    PolicyEnforcer(List<OperationPolicy> operationPolicies, Map<OperationPolicy, PolicyAutomaton> policyAutomatons,
+                   String soapAction, boolean initiator, String actorOrRole, int attachmentCount,
+                   PolicyAsserter policyAsserter, boolean soap12
     ) throws WSSPolicyException {
         this.operationPolicies = operationPolicies;
+        this.policyAutomatons = policyAutomatons;
         this.initiator = initiator;
         this.actorOrRole = actorOrRole;
         this.attachmentCount = attachmentCount;
         this.soap12 = soap12;
-        assertionStateMap = new LinkedList<>();
-        failedAssertionStateMap = new LinkedList<>();
+        this.assertables = new Assertable[0][];
+        this.failedAlternatives = new boolean[0];
 
         if (policyAsserter == null) {
             this.policyAsserter = new DummyPolicyAsserter();
@@ -165,7 +172,7 @@ public class PolicyEnforcer implements SecurityEventListener {
         if (soapAction != null && !soapAction.isEmpty()) {
             effectivePolicy = findPolicyBySOAPAction(operationPolicies, soapAction);
             if (effectivePolicy != null) {
-                buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+                buildAssertionStates(effectivePolicy);
             }
         }
     }
@@ -203,86 +210,70 @@ public class PolicyEnforcer implements SecurityEventListener {
     }
 
     /**
-     * Precondition: Policy _must_ be normalized!
+     * Creates the assertion states of every alternative of the (precompiled) operation policy
      */
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            int alternative = 0;
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                if (policyOperator instanceof ExactlyOne) {
-                    assertionStateMap.add(new HashMap<SecurityEventConstants.Event,
-                                          Map<Assertion, List<Assertable>>>());
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative++);
-                } else {
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap);
-                }
-            }
-        } else {
-            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
-                                         + " " + policyComponent.getType());
+    private void buildAssertionStates(OperationPolicy operationPolicy) throws WSSPolicyException {
+        PolicyAutomaton automaton = null;
+        if (policyAutomatons != null) {
+            automaton = policyAutomatons.get(operationPolicy);
+        }
+        if (automaton == null || automaton.getPolicy() != operationPolicy.getPolicy()) {
+            automaton = PolicyAutomaton.compile(operationPolicy.getPolicy());
         }
-    }
 
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event,
-            Map<Assertion, List<Assertable>>>> assertionStateMap,
-            int alternative
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative);
-            }
-        } else if (policyComponent instanceof AbstractSecurityAssertion) {
-            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
-
-            List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
-            Iterator<Assertable> assertableIterator = assertablesList.iterator();
-            while (assertableIterator.hasNext()) {
-                Assertable assertable = assertableIterator.next();
-                final Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMap.get(alternative);
-                final SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
-                for (int j = 0; j < securityEventType.length; j++) {
-                    SecurityEventConstants.Event event = securityEventType[j];
-                    Map<Assertion, List<Assertable>> assertables = map.get(event);
-                    if (assertables == null) {
-                        assertables = new HashMap<>();
-                        map.put(event, assertables);
+        int alternativeCount = automaton.getAlternativeCount();
+        // the assertion states of a subclass may differ from message to message, don't share their dispatch table
+        boolean shareDispatchTable = getClass() == PolicyEnforcer.class;
+        PolicyAutomaton.DispatchTable table = shareDispatchTable ? automaton.getDispatchTable(initiator) : null;
+
+        Assertable[][] assertables = new Assertable[alternativeCount][];
+        int[][] assertions = new int[alternativeCount][];
+        for (int i = 0; i < alternativeCount; i++) {
+            AbstractSecurityAssertion[] alternative = automaton.getAssertions(i);
+            int capacity = alternative.length;
+            if (table != null && table.getSlotCount(i) > capacity) {
+                capacity = table.getSlotCount(i);
+            }
+            Assertable[] alternativeAssertables = new Assertable[capacity];
+            int[] alternativeAssertions = new int[capacity];
+            int count = 0;
+            for (int j = 0; j < alternative.length; j++) {
+                List<Assertable> assertableList = getAssertableForAssertion(alternative[j]);
+                for (int k = 0; k < assertableList.size(); k++) {
+                    if (count == alternativeAssertables.length) {
+                        alternativeAssertables = Arrays.copyOf(alternativeAssertables, count * 2);
+                        alternativeAssertions = Arrays.copyOf(alternativeAssertions, count * 2);
                     }
-                    addAssertionState(assertables, abstractSecurityAssertion, assertable);
+                    alternativeAssertables[count] = assertableList.get(k);
+                    alternativeAssertions[count++] = j;
                 }
             }
-            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
-                buildAssertionStateMap(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(),
-                                       assertionStateMap, alternative);
+            if (count != alternativeAssertables.length) {
+                alternativeAssertables = Arrays.copyOf(alternativeAssertables, count);
+                alternativeAssertions = Arrays.copyOf(alternativeAssertions, count);
             }
-        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
-            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
-                                         + " type: " + policyComponent.getType());
+            assertables[i] = alternativeAssertables;
+            assertions[i] = alternativeAssertions;
         }
-    }
 
-    private void addAssertionState(Map<Assertion, List<Assertable>> assertables,
-                                   Assertion keyAssertion,
-                                   Assertable assertable) {
-        List<Assertable> assertableList = assertables.get(keyAssertion);
-        if (assertableList == null) {
-            assertableList = new LinkedList<>();
-            assertables.put(keyAssertion, assertableList);
+        if (table == null || !table.matches(assertables, assertions)) {
+            table = PolicyAutomaton.DispatchTable.build(assertables, assertions);
+            if (shareDispatchTable) {
+                automaton.setDispatchTable(initiator, table);
+            }
         }
-        assertableList.add(assertable);
+
+        this.policyAutomaton = automaton;
+        this.dispatchTable = table;
+        this.assertables = assertables;
+        this.failedAlternatives = new boolean[alternativeCount];
+        this.remainingAlternativeCount = alternativeCount;
+    }
+
+    private void alternativeFailed(int alternative) {
+        failedAlternatives[alternative] = true;
+        failedAlternativeCount++;
+        remainingAlternativeCount--;
     }
 
     // Don't return a Token that is not required
@@ -509,72 +500,49 @@ public class PolicyEnforcer implements SecurityEventListener {
      * @throws WSSPolicyException
      */
     private void verifyPolicy(SecurityEvent securityEvent) throws WSSPolicyException, XMLSecurityException {
+        int eventIndex = dispatchTable.getEventIndex(securityEvent.getSecurityEventType());
+
         // We have to check the failed assertions for logging purposes firstly...
-        if (!this.failedAssertionStateMap.isEmpty()) {
-            Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-                this.failedAssertionStateMap.iterator();
+        if (failedAlternativeCount > 0 && eventIndex >= 0) {
             alternative:
-                while (assertionStateMapIterator.hasNext()) {
-                    Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                        assertionStateMapIterator.next();
-                    // every list entry counts as an alternative...
-                    Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                    if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                        Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                            assertionListMap.entrySet().iterator();
-                        while (assertionStateIterator.hasNext()) {
-                            Map.Entry<Assertion, List<Assertable>> assertionStateEntry =
-                                assertionStateIterator.next();
-                            List<Assertable> assertionStates = assertionStateEntry.getValue();
-                            Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                            while (assertableIterator.hasNext()) {
-                                Assertable assertable = assertableIterator.next();
-                                boolean asserted = assertable.assertEvent(securityEvent);
-                                // ...so if one fails, continue with the next map entry and
-                                // increment the notAssertedCount
-                                if (!asserted) {
-                                    continue alternative;
-                                }
-                            }
-                        }
+            for (int i = 0; i < assertables.length; i++) {
+                if (!failedAlternatives[i]) {
+                    continue;
+                }
+                int[] slots = dispatchTable.getSlots(i, eventIndex);
+                for (int j = 0; j < slots.length; j++) {
+                    boolean asserted = assertables[i][slots[j]].assertEvent(securityEvent);
+                    // ...so if one fails, continue with the next alternative
+                    if (!asserted) {
+                        continue alternative;
                     }
                 }
+            }
         }
 
         String assertionMessage = null;
         //...and then check the remaining alternatives
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
-        //every map entry counts as an alternative...
-        alternative:
-            while (assertionStateMapIterator.hasNext()) {
-                Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMapIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                    Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                        assertionListMap.entrySet().iterator();
-                    while (assertionStateIterator.hasNext()) {
-                        Map.Entry<Assertion, List<Assertable>> assertionStateEntry = assertionStateIterator.next();
-                        List<Assertable> assertionStates = assertionStateEntry.getValue();
-                        Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                        while (assertableIterator.hasNext()) {
-                            Assertable assertable = assertableIterator.next();
-                            boolean asserted = assertable.assertEvent(securityEvent);
-                            //...so if one fails, continue with the next map entry and increment the notAssertedCount
-                            if (!asserted) {
-                                assertionMessage = assertable.getErrorMessage();
-                                failedAssertionStateMap.add(map);
-                                assertionStateMapIterator.remove();
-                                continue alternative;
-                            }
-                        }
+        if (eventIndex >= 0) {
+            alternative:
+            for (int i = 0; i < assertables.length; i++) {
+                if (failedAlternatives[i]) {
+                    continue;
+                }
+                int[] slots = dispatchTable.getSlots(i, eventIndex);
+                for (int j = 0; j < slots.length; j++) {
+                    Assertable assertable = assertables[i][slots[j]];
+                    boolean asserted = assertable.assertEvent(securityEvent);
+                    //...so if one fails, continue with the next alternative and mark this one as failed
+                    if (!asserted) {
+                        assertionMessage = assertable.getErrorMessage();
+                        alternativeFailed(i);
+                        continue alternative;
                     }
                 }
             }
-        //if the assertionStateMap is empty (the size of the list is equal to the alternatives)
-        //then we could not satisfy any alternative
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        }
+        //if no alternative remains then we could not satisfy any alternative
+        if (remainingAlternativeCount == 0 && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new PolicyViolationException(assertionMessage);
         }
@@ -588,36 +556,22 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicy() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
-                    }
+        for (int i = 0; i < assertables.length; i++) {
+            if (failedAlternatives[i]) {
+                continue;
+            }
+            int[] slots = dispatchTable.getDispatchedSlots(i);
+            for (int j = 0; j < slots.length; j++) {
+                Assertable assertable = assertables[i][slots[j]];
+                if (!assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    alternativeFailed(i);
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (remainingAlternativeCount == 0 && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
@@ -632,94 +586,67 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicyAfterOperationSecurityEvent() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-
-                        boolean doAssert = false;
-                        if (assertable instanceof TokenAssertionState) {
-                            TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
-                            AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
-                            AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
-                            //Other tokens may not be resolved yet fully therefore we skip it here
-                            if (assertion instanceof SupportingTokens
-                                || assertable instanceof HttpsTokenAssertionState
-                                || assertable instanceof RelTokenAssertionState
-                                || assertable instanceof SecurityContextTokenAssertionState
-                                || assertable instanceof SpnegoContextTokenAssertionState
-                                || assertable instanceof UsernameTokenAssertionState) {
-                                doAssert = true;
-                            }
-                        } else if (assertable instanceof TokenProtectionAssertionState
-                            || assertable instanceof SignatureConfirmationAssertionState
-                            || assertable instanceof IncludeTimeStampAssertionState
-                            || assertable instanceof RequiredPartsAssertionState
-                            || assertable instanceof SignatureProtectionAssertionState) {
-                            doAssert = true;
-                        }
-
-                        if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
+        for (int i = 0; i < assertables.length; i++) {
+            if (failedAlternatives[i]) {
+                continue;
+            }
+            int[] slots = dispatchTable.getDispatchedSlots(i);
+            for (int j = 0; j < slots.length; j++) {
+                Assertable assertable = assertables[i][slots[j]];
+
+                boolean doAssert = false;
+                if (assertable instanceof TokenAssertionState) {
+                    TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
+                    AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
+                    AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
+                    //Other tokens may not be resolved yet fully therefore we skip it here
+                    if (assertion instanceof SupportingTokens
+                        || assertable instanceof HttpsTokenAssertionState
+                        || assertable instanceof RelTokenAssertionState
+                        || assertable instanceof SecurityContextTokenAssertionState
+                        || assertable instanceof SpnegoContextTokenAssertionState
+                        || assertable instanceof UsernameTokenAssertionState) {
+                        doAssert = true;
                     }
+                } else if (assertable instanceof TokenProtectionAssertionState
+                    || assertable instanceof SignatureConfirmationAssertionState
+                    || assertable instanceof IncludeTimeStampAssertionState
+                    || assertable instanceof RequiredPartsAssertionState
+                    || assertable instanceof SignatureProtectionAssertionState) {
+                    doAssert = true;
+                }
+
+                if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    alternativeFailed(i);
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (remainingAlternativeCount == 0 && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
     }
 
     private void logFailedAssertions() {
-        if (this.failedAssertionStateMap.isEmpty()) {
+        if (failedAlternativeCount == 0) {
             return;
         }
 
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.failedAssertionStateMap.iterator();
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Set<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entrySet = map.entrySet();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entryIterator =
-                entrySet.iterator();
-            while (entryIterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> eventCollectionEntry =
-                    entryIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = eventCollectionEntry.getValue();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateEntryIterator =
-                    assertionListMap.entrySet().iterator();
-                while (assertionStateEntryIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> entry = assertionStateEntryIterator.next();
-                    List<Assertable> assertionStates = entry.getValue();
-                    Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted() && !assertable.isLogged()) {
-                            LOG.error(entry.getKey().getName() + " not satisfied: " + assertable.getErrorMessage());
-                            assertable.setLogged(true);
-                        }
-                    }
+        for (int i = 0; i < assertables.length; i++) {
+            if (!failedAlternatives[i]) {
+                continue;
+            }
+            AbstractSecurityAssertion[] assertions = policyAutomaton.getAssertions(i);
+            int[] slots = dispatchTable.getDispatchedSlots(i);
+            for (int j = 0; j < slots.length; j++) {
+                Assertable assertable = assertables[i][slots[j]];
+                if (!assertable.isAsserted() && !assertable.isLogged()) {
+                    Assertion assertion = assertions[dispatchTable.getAssertionIndex(i, slots[j])];
+                    LOG.error(assertion.getName() + " not satisfied: " + assertable.getErrorMessage());
+                    assertable.setLogged(true);
                 }
             }
         }
@@ -758,7 +685,7 @@ public class PolicyEnforcer implements SecurityEventListener {
                     effectivePolicy.setPolicy(new Policy());
                 }
                 try {
-                    buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+                    buildAssertionStates(effectivePolicy);
                 } catch (WSSPolicyException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
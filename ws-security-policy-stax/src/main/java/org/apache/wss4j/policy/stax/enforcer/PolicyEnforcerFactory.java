@@ -21,6 +21,7 @@ package org.apache.wss4j.policy.stax.enforcer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -105,10 +106,12 @@ public class PolicyEnforcerFactory {
 
     private Definition wsdlDefinition;
     private List<OperationPolicy> operationPolicies;
+    private final Map<OperationPolicy, PolicyAutomaton> policyAutomatons;
     private final Map<Element, Policy> elementPolicyCache;
 
     protected PolicyEnforcerFactory(List<AssertionBuilder<Element>> customAssertionBuilders) {
         elementPolicyCache = new HashMap<>();
+        policyAutomatons = new IdentityHashMap<>();
 
         assertionBuilders = new ArrayList<>();
         assertionBuilders.add(new AlgorithmSuiteBuilder());
@@ -258,12 +261,27 @@ public class PolicyEnforcerFactory {
 
                     Policy policy = getPolicy(service, port, binding, bindingOperation, operation);
                     operationPolicy.setPolicy(policy.normalize(true));
+                    compilePolicy(operationPolicy);
                 }
             }
         }
         return operationPolicyList;
     }
 
+    /**
+     * Precompiles the operation policy once so that the PolicyEnforcer instances only have to
+     * create the assertion states for a message.
+     */
+    private void compilePolicy(OperationPolicy operationPolicy) {
+        try {
+            policyAutomatons.put(operationPolicy, PolicyAutomaton.compile(operationPolicy.getPolicy()));
+        } catch (WSSPolicyException e) {
+            //the PolicyEnforcer will report the invalid policy when the operation is invoked
+            LOG.debug("Policy of operation {} can't be precompiled: {}",
+                      operationPolicy.getOperationName(), e.getMessage());
+        }
+    }
+
     private Policy getPolicy(Service service, Port port, Binding binding,
                              BindingOperation bindingOperation, Operation operation) throws WSSPolicyException {
         List<Policy> policies = new ArrayList<>();
@@ -438,6 +456,7 @@ public class PolicyEnforcerFactory {
     public PolicyEnforcer newPolicyEnforcer(String soapAction, boolean initiator,
                                             String roleOrActor, int attachmentCount,
                                             boolean soap12) throws WSSPolicyException {
-        return new PolicyEnforcer(this.operationPolicies, soapAction, initiator, roleOrActor, attachmentCount, null, soap12);
+        return new PolicyEnforcer(this.operationPolicies, this.policyAutomatons, soapAction, initiator,
+                                  roleOrActor, attachmentCount, null, soap12);
     }
 }
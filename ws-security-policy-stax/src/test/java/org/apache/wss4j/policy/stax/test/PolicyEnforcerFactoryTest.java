@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.test;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.policy.stax.PolicyViolationException;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerFactory;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The PolicyEnforcers created by a factory share the precompiled policy, the assertion states
+ * must nevertheless be independent from message to message.
+ */
+public class PolicyEnforcerFactoryTest extends AbstractPolicyTestBase {
+
+    private static final String POLICY =
+            "<sp:AlgorithmSuite xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\">\n" +
+                    "<wsp:Policy xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\">\n" +
+                    "<wsp:ExactlyOne>\n" +
+                    "<sp:Basic256/>\n" +
+                    "<sp:TripleDesRsa15/>\n" +
+                    "</wsp:ExactlyOne>\n" +
+                    "</wsp:Policy>\n" +
+                    "</sp:AlgorithmSuite>";
+
+    @Test
+    public void testSharedPolicyAlternatives() throws Exception {
+        PolicyEnforcerFactory policyEnforcerFactory = buildPolicyEnforcerFactory(POLICY, false, null);
+
+        for (int i = 0; i < 3; i++) {
+            boolean initiator = i % 2 == 1;
+            PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", initiator, null, 0, false);
+            registerEncryptionAlgorithm(policyEnforcer, "http://www.w3.org/2001/04/xmlenc#tripledes-cbc", 192);
+            policyEnforcer.doFinal();
+
+            policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", initiator, null, 0, false);
+            registerEncryptionAlgorithm(policyEnforcer, "http://www.w3.org/2001/04/xmlenc#aes256-cbc", 256);
+            policyEnforcer.doFinal();
+
+            policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", initiator, null, 0, false);
+            try {
+                registerEncryptionAlgorithm(policyEnforcer, "http://www.w3.org/2001/04/xmlenc#aes128-cbc", 128);
+                fail("Exception expected");
+            } catch (WSSecurityException e) {
+                assertTrue(e.getCause() instanceof PolicyViolationException);
+            }
+        }
+    }
+
+    @Test
+    public void testFailedAlternativeDoesNotLeak() throws Exception {
+        PolicyEnforcerFactory policyEnforcerFactory = buildPolicyEnforcerFactory(POLICY, false, null);
+
+        PolicyEnforcer first = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+        PolicyEnforcer second = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+
+        // the first message only satisfies the TripleDesRsa15 alternative...
+        registerEncryptionAlgorithm(first, "http://www.w3.org/2001/04/xmlenc#tripledes-cbc", 192);
+        // ...which must not influence the second message which only satisfies the Basic256 alternative
+        registerEncryptionAlgorithm(second, "http://www.w3.org/2001/04/xmlenc#aes256-cbc", 256);
+
+        first.doFinal();
+        second.doFinal();
+    }
+
+    private void registerEncryptionAlgorithm(PolicyEnforcer policyEnforcer, String algorithmURI, int keyLength)
+            throws WSSecurityException {
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        policyEnforcer.registerSecurityEvent(operationSecurityEvent);
+
+        AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = new AlgorithmSuiteSecurityEvent();
+        algorithmSuiteSecurityEvent.setAlgorithmURI(algorithmURI);
+        algorithmSuiteSecurityEvent.setKeyLength(keyLength);
+        algorithmSuiteSecurityEvent.setAlgorithmUsage(WSSConstants.Enc);
+        policyEnforcer.registerSecurityEvent(algorithmSuiteSecurityEvent);
+    }
+}
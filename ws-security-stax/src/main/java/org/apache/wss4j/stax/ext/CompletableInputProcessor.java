@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.ext;
+
+import java.util.Collection;
+
+import org.apache.xml.security.stax.ext.InputProcessor;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+
+/**
+ * An InputProcessor which stays in the InputProcessorChain until the end of the document, but which
+ * can tell when it does not need to see any further events. The inbound XMLStreamReader uses this to
+ * hand the remaining events directly to the application.
+ *
+ * @see WSSSecurityProperties#setFastForwardAfterSecurityHeader(boolean)
+ */
+public interface CompletableInputProcessor extends InputProcessor {
+
+    /**
+     * @return true if the remaining events of the document can bypass this processor
+     */
+    boolean isComplete(InputProcessorChain inputProcessorChain);
+
+    /**
+     * @return the Ids of the elements this processor has processed. The remaining events of the document
+     * must not contain another element with one of these Ids, which this processor would have rejected.
+     */
+    Collection<String> getProcessedIds(InputProcessorChain inputProcessorChain);
+}
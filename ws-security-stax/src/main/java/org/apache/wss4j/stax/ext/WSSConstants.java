@@ -209,11 +209,14 @@ public class WSSConstants extends XMLSecurityConstants {
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_DERIVED_KEY = "PROP_USE_THIS_TOKEN_ID_FOR_DERIVED_KEY";
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_SECURITYCONTEXTTOKEN = "PROP_USE_THIS_TOKEN_ID_FOR_SECURITYCONTEXTTOKEN";
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_CUSTOM_TOKEN = "PROP_USE_THIS_TOKEN_ID_FOR_CUSTOM_TOKEN";
+    public static final String PROP_ENCRYPTED_KEY_SESSION_KEY = "PROP_ENCRYPTED_KEY_SESSION_KEY";
 
     public static final String PROP_TIMESTAMP_SECURITYEVENT = "PROP_TIMESTAMP";
 
     public static final String PROP_ENCRYPTED_DATA_REFS = "PROP_ENCRYPTED_DATA_REFS";
 
+    public static final String PROP_SINGLE_PASS_ATTACHMENT_ENCRYPTOR = "PROP_SINGLE_PASS_ATTACHMENT_ENCRYPTOR";
+
     public static final Action TIMESTAMP = new Action(ConfigurationConstants.TIMESTAMP);
     public static final Action USERNAMETOKEN = new Action(ConfigurationConstants.USERNAME_TOKEN);
     public static final Action USERNAMETOKEN_SIGNED = new Action(ConfigurationConstants.USERNAME_TOKEN_SIGNATURE);
@@ -244,6 +247,20 @@ public class WSSConstants extends XMLSecurityConstants {
         SecurityContextToken,
     }
 
+    /**
+     * Selects how the content of an EncryptedData structure is decrypted by the inbound chain
+     */
+    public enum DecryptionMode {
+        /**
+         * A separate decryption thread writes the plaintext into a pipe which is read by the XML parser
+         */
+        DECRYPTION_THREAD,
+        /**
+         * The cipher value is decrypted incrementally on the thread which pulls the events from the parser
+         */
+        CALLING_THREAD,
+    }
+
     public enum UsernameTokenPasswordType {
         PASSWORD_NONE(null),
         PASSWORD_TEXT(NS_PASSWORD_TEXT),
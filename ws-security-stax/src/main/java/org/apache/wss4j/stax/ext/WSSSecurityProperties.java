@@ -38,11 +38,18 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.kerberos.KerberosServiceLoginCache;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
+import org.apache.wss4j.common.util.WSCurrentTimeSource;
+import org.apache.wss4j.common.util.WSTimeSource;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -115,9 +122,19 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private boolean requireTimestampExpires;
 
     private CallbackHandler attachmentCallbackHandler;
+    private boolean singlePassAttachmentEncryption;
+    private SinglePassAttachmentEncryptor.CipherTextStore singlePassAttachmentCipherTextStore;
+    private boolean fastForwardAfterSecurityHeader;
+    private long maximumHeldPushedBytes = 10L * 1024 * 1024;
     private Object msgContext;
     private boolean soap12;
     private DocumentCreator documentCreator;
+    private WSSConstants.DecryptionMode decryptionMode = WSSConstants.DecryptionMode.DECRYPTION_THREAD;
+    private SecurityMetrics securityMetrics = SecurityMetrics.NONE;
+    private EncryptedKeyCache encryptedKeyCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+    private KerberosServiceLoginCache kerberosServiceLoginCache;
+    private WSTimeSource timeSource = new WSCurrentTimeSource();
 
     public WSSSecurityProperties() {
         super();
@@ -174,11 +191,21 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.subjectDNPatterns = wssSecurityProperties.subjectDNPatterns;
         this.issuerDNPatterns = wssSecurityProperties.issuerDNPatterns;
         this.attachmentCallbackHandler = wssSecurityProperties.attachmentCallbackHandler;
+        this.singlePassAttachmentEncryption = wssSecurityProperties.singlePassAttachmentEncryption;
+        this.singlePassAttachmentCipherTextStore = wssSecurityProperties.singlePassAttachmentCipherTextStore;
+        this.fastForwardAfterSecurityHeader = wssSecurityProperties.fastForwardAfterSecurityHeader;
+        this.maximumHeldPushedBytes = wssSecurityProperties.maximumHeldPushedBytes;
         this.msgContext = wssSecurityProperties.msgContext;
         this.audienceRestrictions = wssSecurityProperties.audienceRestrictions;
         this.requireTimestampExpires = wssSecurityProperties.requireTimestampExpires;
         this.soap12 = wssSecurityProperties.soap12;
         this.documentCreator = wssSecurityProperties.documentCreator;
+        this.decryptionMode = wssSecurityProperties.decryptionMode;
+        this.securityMetrics = wssSecurityProperties.securityMetrics;
+        this.encryptedKeyCache = wssSecurityProperties.encryptedKeyCache;
+        this.encryptedKeySessionCache = wssSecurityProperties.encryptedKeySessionCache;
+        this.kerberosServiceLoginCache = wssSecurityProperties.kerberosServiceLoginCache;
+        this.timeSource = wssSecurityProperties.timeSource;
     }
 
     /**
@@ -938,6 +965,61 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public boolean isSinglePassAttachmentEncryption() {
+        return singlePassAttachmentEncryption;
+    }
+
+    /**
+     * Whether to encrypt the attachments while they are digested for the signature, when the
+     * attachments are signed and then encrypted. The attachments are then read once instead of
+     * twice, and the attachment stream does not have to be buffered for the second read.
+     */
+    public void setSinglePassAttachmentEncryption(boolean singlePassAttachmentEncryption) {
+        this.singlePassAttachmentEncryption = singlePassAttachmentEncryption;
+    }
+
+    public SinglePassAttachmentEncryptor.CipherTextStore getSinglePassAttachmentCipherTextStore() {
+        return singlePassAttachmentCipherTextStore;
+    }
+
+    /**
+     * Set where the cipher text of the attachments which are encrypted while they are digested is kept
+     * until the attachments are written. The default keeps small attachments in memory and writes larger
+     * ones to temporary files.
+     */
+    public void setSinglePassAttachmentCipherTextStore(
+        SinglePassAttachmentEncryptor.CipherTextStore singlePassAttachmentCipherTextStore
+    ) {
+        this.singlePassAttachmentCipherTextStore = singlePassAttachmentCipherTextStore;
+    }
+
+    public boolean isFastForwardAfterSecurityHeader() {
+        return fastForwardAfterSecurityHeader;
+    }
+
+    /**
+     * Whether the inbound XMLStreamReader hands the remaining events directly from the underlying
+     * XMLStreamReader to the application, once the security header is processed and no input processor
+     * needs to see further events (all signature references are verified and all encrypted elements
+     * are decrypted). This is never the case when a policy is enforced, or when trace logging is enabled.
+     */
+    public void setFastForwardAfterSecurityHeader(boolean fastForwardAfterSecurityHeader) {
+        this.fastForwardAfterSecurityHeader = fastForwardAfterSecurityHeader;
+    }
+
+    public long getMaximumHeldPushedBytes() {
+        return maximumHeldPushedBytes;
+    }
+
+    /**
+     * The maximum number of bytes a WSSecurityPushProcessor holds back, while it waits for the rest of the
+     * SOAP header or of an xenc:EncryptedData element. A message which exceeds it is rejected. The limit
+     * is checked after each pushed chunk. The default is 10 MB.
+     */
+    public void setMaximumHeldPushedBytes(long maximumHeldPushedBytes) {
+        this.maximumHeldPushedBytes = maximumHeldPushedBytes;
+    }
+
     public Object getMsgContext() {
         return msgContext;
     }
@@ -969,4 +1051,90 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     public void setDocumentCreator(DocumentCreator documentCreator) {
         this.documentCreator = documentCreator;
     }
+
+    public WSSConstants.DecryptionMode getDecryptionMode() {
+        return decryptionMode;
+    }
+
+    /**
+     * Set how inbound EncryptedData content is decrypted. The default DECRYPTION_THREAD mode
+     * decrypts in a second thread, CALLING_THREAD decrypts on the thread which reads the document.
+     *
+     * @param decryptionMode the decryption mode to use
+     */
+    public void setDecryptionMode(WSSConstants.DecryptionMode decryptionMode) {
+        this.decryptionMode = decryptionMode;
+    }
+
+    public SecurityMetrics getSecurityMetrics() {
+        return securityMetrics;
+    }
+
+    /**
+     * Set the SecurityMetrics which receive the timings of the security header handlers,
+     * the crypto operations and the replay cache lookups
+     *
+     * @param securityMetrics the SecurityMetrics to use, null disables the reporting
+     */
+    public void setSecurityMetrics(SecurityMetrics securityMetrics) {
+        this.securityMetrics = securityMetrics != null ? securityMetrics : SecurityMetrics.NONE;
+    }
+
+    public EncryptedKeyCache getEncryptedKeyCache() {
+        return encryptedKeyCache;
+    }
+
+    /**
+     * Set the cache for the symmetric keys unwrapped from EncryptedKey elements.
+     * By default no cache is used and every EncryptedKey is unwrapped with the private key.
+     *
+     * @param encryptedKeyCache the EncryptedKeyCache to use, may be null
+     */
+    public void setEncryptedKeyCache(EncryptedKeyCache encryptedKeyCache) {
+        this.encryptedKeyCache = encryptedKeyCache;
+    }
+
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the cache of the keys which were sent to a recipient in an EncryptedKey. Subsequent messages
+     * with the ENCRYPTION_WITH_DERIVED_KEY action and an EncryptedKey DerivedKeyTokenReference then
+     * reference the key with an EncryptedKeySHA1 KeyIdentifier instead of sending a new EncryptedKey.
+     *
+     * @param encryptedKeySessionCache the EncryptedKeySessionCache to use, may be null
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    public KerberosServiceLoginCache getKerberosServiceLoginCache() {
+        return kerberosServiceLoginCache;
+    }
+
+    /**
+     * Set the cache of the JAAS logins used to validate inbound Kerberos tokens. If it is not set,
+     * every Kerberos token causes a new login.
+     *
+     * @param kerberosServiceLoginCache the KerberosServiceLoginCache to use, may be null
+     */
+    public void setKerberosServiceLoginCache(KerberosServiceLoginCache kerberosServiceLoginCache) {
+        this.kerberosServiceLoginCache = kerberosServiceLoginCache;
+    }
+
+    public WSTimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Set the time source used to create and to validate Timestamps and UsernameToken Created values.
+     * The default is the current system time. A WSCachedTimeSource avoids the creation of a new Instant
+     * for every Timestamp or UsernameToken in high volume scenarios.
+     *
+     * @param timeSource the WSTimeSource to use
+     */
+    public void setTimeSource(WSTimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
 }
@@ -18,12 +18,12 @@
  */
 package org.apache.wss4j.stax.impl;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
@@ -36,6 +36,7 @@ import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.InboundSecurityContextImpl;
 import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
@@ -56,7 +57,7 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private static final org.slf4j.Logger LOG =
             org.slf4j.LoggerFactory.getLogger(InboundWSSecurityContextImpl.class);
 
-    private final Deque<SecurityEvent> securityEventQueue = new ArrayDeque<>();
+    private final SecurityEventStore securityEventStore = new SecurityEventStore();
     private boolean operationSecurityEventOccured = false;
     private boolean messageEncryptionTokenOccured = false;
     private boolean allowRSA15KeyTransportAlgorithm = false;
@@ -100,9 +101,9 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         if (WSSecurityEventConstants.OPERATION.equals(securityEvent.getSecurityEventType())) {
             operationSecurityEventOccured = true;
 
-            identifySecurityTokenDependenciesAndUsage(securityEventQueue);
+            identifySecurityTokenDependenciesAndUsage(securityEventStore);
 
-            Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
+            Iterator<SecurityEvent> securityEventIterator = securityEventStore.descendingIterator();
             while (securityEventIterator.hasNext()) {
                 SecurityEvent prevSecurityEvent = securityEventIterator.next();
                 forwardSecurityEvent(prevSecurityEvent);
@@ -110,11 +111,11 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
             //forward operation security event
             forwardSecurityEvent(securityEvent);
 
-            securityEventQueue.clear();
+            securityEventStore.clear();
             return;
         }
 
-        securityEventQueue.push(securityEvent);
+        securityEventStore.push(securityEvent);
     }
 
     @Override
@@ -140,13 +141,13 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private void identifySecurityTokenDependenciesAndUsage(
-            Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
+            SecurityEventStore securityEventStore) throws XMLSecurityException {
 
         MessageTokens messageTokens = new MessageTokens();
         HttpsTokenSecurityEvent httpsTokenSecurityEvent = null;
 
         List<TokenSecurityEvent<? extends InboundSecurityToken>> tokenSecurityEvents = new ArrayList<>();
-        Iterator<SecurityEvent> securityEventIterator = securityEventDeque.iterator();
+        Iterator<SecurityEvent> securityEventIterator = securityEventStore.iterator();
         while (securityEventIterator.hasNext()) {
             SecurityEvent securityEvent = securityEventIterator.next();
             if (securityEvent instanceof TokenSecurityEvent) {
@@ -175,24 +176,25 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         }
 
         //search the root tokens and create new TokenSecurityEvents if not already there...
+        Set<String> supportingTokenIds = new HashSet<>();
         for (int i = 0; i < tokenSecurityEvents.size(); i++) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = tokenSecurityEvents.get(i);
             InboundSecurityToken securityToken = WSSUtils.getRootToken(tokenSecurityEvent.getSecurityToken());
 
-            if (!containsSecurityToken(messageTokens.supportingTokens, securityToken)) {
+            if (securityToken != null && supportingTokenIds.add(securityToken.getId())) {
                 TokenSecurityEvent<? extends InboundSecurityToken> newTokenSecurityEvent =
                         WSSUtils.createTokenSecurityEvent(securityToken, tokenSecurityEvent.getCorrelationID());
                 messageTokens.supportingTokens = addTokenSecurityEvent(newTokenSecurityEvent, messageTokens.supportingTokens);
-                securityEventDeque.offer(newTokenSecurityEvent);
+                securityEventStore.offer(newTokenSecurityEvent);
             }
-            //remove old TokenSecurityEvent so that only root tokens are in the queue
-            securityEventDeque.remove(tokenSecurityEvent);
         }
+        //remove the old TokenSecurityEvents so that only root tokens are in the queue
+        securityEventStore.removeAll(tokenSecurityEvents);
 
-        parseSupportingTokens(messageTokens, httpsTokenSecurityEvent, securityEventDeque);
+        parseSupportingTokens(messageTokens, httpsTokenSecurityEvent, securityEventStore);
 
         if (messageTokens.messageSignatureTokens.isEmpty()) {
-            InboundSecurityToken messageSignatureToken = getSupportingTokenSigningToken(messageTokens, securityEventDeque);
+            InboundSecurityToken messageSignatureToken = getSupportingTokenSigningToken(messageTokens, securityEventStore);
 
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent =
                     getTokenSecurityEvent(messageSignatureToken, tokenSecurityEvents);
@@ -256,43 +258,47 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private void parseSupportingTokens(MessageTokens messageTokens, HttpsTokenSecurityEvent httpsTokenSecurityEvent,
-                                       Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
+                                       SecurityEventStore securityEventStore) throws XMLSecurityException {
+        if (messageTokens.supportingTokens.isEmpty()) {
+            return;
+        }
+        List<QName> securityHeader =
+            soap12 ? WSSConstants.SOAP_12_WSSE_SECURITY_HEADER_PATH : WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH;
+        List<QName> signatureElementPath = new ArrayList<>(4);
+        signatureElementPath.addAll(securityHeader);
+        signatureElementPath.add(WSSConstants.TAG_dsig_Signature);
+        List<QName> signatureConfirmationElementPath = new ArrayList<>(4);
+        signatureConfirmationElementPath.addAll(securityHeader);
+        signatureConfirmationElementPath.add(WSSConstants.TAG_WSSE11_SIG_CONF);
+        List<QName> timestampElementPath = new ArrayList<>(4);
+        timestampElementPath.addAll(securityHeader);
+        timestampElementPath.add(WSSConstants.TAG_WSU_TIMESTAMP);
+        List<QName> usernameTokenElementPath = new ArrayList<>(4);
+        usernameTokenElementPath.addAll(securityHeader);
+        usernameTokenElementPath.add(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
+
+        boolean transportSecurityActive = Boolean.TRUE.equals(get(WSSConstants.TRANSPORT_SECURITY_ACTIVE));
+
         Iterator<TokenSecurityEvent<? extends InboundSecurityToken>> supportingTokensIterator = messageTokens.supportingTokens.iterator();
         while (supportingTokensIterator.hasNext()) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = supportingTokensIterator.next();
             List<InboundSecurityToken> signingSecurityTokens =
-                isSignedToken(tokenSecurityEvent, securityEventDeque, httpsTokenSecurityEvent);
-
-            List<QName> securityHeader =
-                soap12 ? WSSConstants.SOAP_12_WSSE_SECURITY_HEADER_PATH : WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH;
-            List<QName> signatureElementPath = new ArrayList<>(4);
-            signatureElementPath.addAll(securityHeader);
-            signatureElementPath.add(WSSConstants.TAG_dsig_Signature);
-            boolean signsSignature = signsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
-            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
-
-            List<QName> signatureConfirmationElementPath = new ArrayList<>(4);
-            signatureConfirmationElementPath.addAll(securityHeader);
-            signatureConfirmationElementPath.add(WSSConstants.TAG_WSSE11_SIG_CONF);
+                isSignedToken(tokenSecurityEvent, securityEventStore, httpsTokenSecurityEvent);
+
+            boolean signsSignature = signsElement(tokenSecurityEvent, signatureElementPath, securityEventStore);
+            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, signatureElementPath, securityEventStore);
+
             boolean signsSignatureConfirmation =
-                signsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                signsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventStore);
             boolean encryptsSignatureConfirmation =
-                encryptsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                encryptsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventStore);
 
-            List<QName> timestampElementPath = new ArrayList<>(4);
-            timestampElementPath.addAll(securityHeader);
-            timestampElementPath.add(WSSConstants.TAG_WSU_TIMESTAMP);
-            boolean signsTimestamp = signsElement(tokenSecurityEvent, timestampElementPath, securityEventDeque);
+            boolean signsTimestamp = signsElement(tokenSecurityEvent, timestampElementPath, securityEventStore);
 
-            List<QName> usernameTokenElementPath = new ArrayList<>(4);
-            usernameTokenElementPath.addAll(securityHeader);
-            usernameTokenElementPath.add(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
-            boolean encryptsUsernameToken = encryptsElement(tokenSecurityEvent, usernameTokenElementPath, securityEventDeque);
-
-            boolean transportSecurityActive = Boolean.TRUE.equals(get(WSSConstants.TRANSPORT_SECURITY_ACTIVE));
+            boolean encryptsUsernameToken = encryptsElement(tokenSecurityEvent, usernameTokenElementPath, securityEventStore);
 
             List<InboundSecurityToken> encryptingSecurityTokens =
-                isEncryptedToken(tokenSecurityEvent, securityEventDeque, httpsTokenSecurityEvent);
+                isEncryptedToken(tokenSecurityEvent, securityEventStore, httpsTokenSecurityEvent);
 
             boolean signatureUsage =
                 tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TokenUsage_Signature);
@@ -390,19 +396,6 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         return tokenSecurityEventList;
     }
 
-    private boolean containsSecurityToken(List<TokenSecurityEvent<? extends InboundSecurityToken>> supportingTokens,
-                                          SecurityToken securityToken) {
-        if (securityToken != null) {
-            for (int i = 0; i < supportingTokens.size(); i++) {
-                TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = supportingTokens.get(i);
-                if (tokenSecurityEvent.getSecurityToken().getId().equals(securityToken.getId())) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     private TokenSecurityEvent<? extends InboundSecurityToken> getTokenSecurityEvent(
             InboundSecurityToken securityToken,
             List<TokenSecurityEvent<? extends InboundSecurityToken>> tokenSecurityEvents) throws XMLSecurityException {
@@ -419,34 +412,34 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
 
     private InboundSecurityToken getSupportingTokenSigningToken(
             MessageTokens messageTokens,
-            Deque<SecurityEvent> securityEventDeque
+            SecurityEventStore securityEventStore
     ) throws XMLSecurityException {
 
         //todo we have to check if the signingTokens also cover the other supporting tokens!
         for (int i = 0; i < messageTokens.signedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = messageTokens.signedSupportingTokens.get(i);
-            List<? extends InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<? extends InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventStore);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEndorsingSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEndorsingSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventStore);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEncryptedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEncryptedSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventStore);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEndorsingEncryptedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEndorsingEncryptedSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventStore);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
@@ -455,23 +448,8 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private List<InboundSecurityToken> getSigningToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                                       Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        List<InboundSecurityToken> signingSecurityTokens = new ArrayList<>();
-
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && WSSUtils.pathMatches(
-                        signedElementSecurityEvent.getElementPath(),
-                        ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getElementPath(), false)
-                        ) {
-                    signingSecurityTokens.add((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken());
-                }
-            }
-        }
-        return signingSecurityTokens;
+                                                       SecurityEventStore securityEventStore) throws XMLSecurityException {
+        return securityEventStore.getSigningTokens(((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getElementPath());
     }
 
     private void setTokenUsage(List<TokenSecurityEvent<? extends InboundSecurityToken>> tokenSecurityEvents,
@@ -491,108 +469,85 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private List<InboundSecurityToken> isSignedToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                              Deque<SecurityEvent> securityEventDeque,
+                                              SecurityEventStore securityEventStore,
                                               HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
-        List<InboundSecurityToken> securityTokenList = new ArrayList<>();
         if (httpsTokenSecurityEvent != null) {
+            List<InboundSecurityToken> securityTokenList = new ArrayList<>();
             securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
             return securityTokenList;
         }
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && tokenSecurityEvent.getSecurityToken() != null
-                        && signedElementSecurityEvent.getXmlSecEvent() != null
-                        && signedElementSecurityEvent.getXmlSecEvent()
-                            == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
-                        && !securityTokenList.contains(signedElementSecurityEvent.getSecurityToken())) {
-                    securityTokenList.add((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken());
-                }
-            }
+        if (tokenSecurityEvent.getSecurityToken() == null) {
+            return Collections.emptyList();
+        }
+        XMLSecEvent xmlSecEvent = ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent();
+        if (xmlSecEvent == null) {
+            return Collections.emptyList();
         }
-        return securityTokenList;
+        return securityEventStore.getSigningTokens(xmlSecEvent);
     }
 
     private List<InboundSecurityToken> isEncryptedToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                                 Deque<SecurityEvent> securityEventDeque,
+                                                 SecurityEventStore securityEventStore,
                                                  HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
 
-        List<InboundSecurityToken> securityTokenList = new ArrayList<>();
         if (httpsTokenSecurityEvent != null) {
+            List<InboundSecurityToken> securityTokenList = new ArrayList<>();
             securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
             return securityTokenList;
         }
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
-                EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
-                if (encryptedElementSecurityEvent.isEncrypted()
-                        && tokenSecurityEvent.getSecurityToken() != null
-                        && encryptedElementSecurityEvent.getXmlSecEvent() != null
-                        && encryptedElementSecurityEvent.getXmlSecEvent()
-                            == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
-                        && !securityTokenList.contains(encryptedElementSecurityEvent.getSecurityToken())) {
-                    securityTokenList.add((InboundSecurityToken)encryptedElementSecurityEvent.getSecurityToken());
-                }
-            }
+        if (tokenSecurityEvent.getSecurityToken() == null) {
+            return Collections.emptyList();
+        }
+        XMLSecEvent xmlSecEvent = ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent();
+        if (xmlSecEvent == null) {
+            return Collections.emptyList();
         }
-        return securityTokenList;
+        return securityEventStore.getEncryptingTokens(xmlSecEvent);
     }
 
     private boolean signsElement(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent, List<QName> elementPath,
-                                 Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && matchesTokenOrWrappedTokenId(tokenSecurityEvent.getSecurityToken(),
-                        signedElementSecurityEvent.getSecurityToken().getId(),
-                        SecurityTokenConstants.TokenUsage_Signature)
-                        && WSSUtils.pathMatches(elementPath, signedElementSecurityEvent.getElementPath(), false)) {
+                                 SecurityEventStore securityEventStore) throws XMLSecurityException {
+        return signsElement(tokenSecurityEvent.getSecurityToken(), elementPath, securityEventStore);
+    }
+
+    /**
+     * @return true if the token or one of its wrapped tokens, which carries the signature usage, signed the element
+     */
+    private boolean signsElement(SecurityToken securityToken, List<QName> elementPath,
+                                 SecurityEventStore securityEventStore) throws XMLSecurityException {
+        if (securityToken.getTokenUsages().contains(SecurityTokenConstants.TokenUsage_Signature)) {
+            List<SignedElementSecurityEvent> signedElementSecurityEvents =
+                securityEventStore.getSignedElements(securityToken.getId());
+            for (int i = 0; i < signedElementSecurityEvents.size(); i++) {
+                if (WSSUtils.pathMatches(elementPath, signedElementSecurityEvents.get(i).getElementPath(), false)) {
                     return true;
                 }
             }
         }
-        return false;
-    }
-
-    private boolean matchesTokenOrWrappedTokenId(
-            SecurityToken securityToken, String id,
-            SecurityTokenConstants.TokenUsage tokenUsage) throws XMLSecurityException {
-        if (securityToken.getId().equals(id) && securityToken.getTokenUsages().contains(tokenUsage)) {
-            return true;
-        }
         List<? extends SecurityToken> wrappedTokens = securityToken.getWrappedTokens();
         for (int i = 0; i < wrappedTokens.size(); i++) {
-            boolean match = matchesTokenOrWrappedTokenId(wrappedTokens.get(i), id, tokenUsage);
-            if (match) {
-                return match;
+            if (signsElement(wrappedTokens.get(i), elementPath, securityEventStore)) {
+                return true;
             }
         }
         return false;
     }
 
     private boolean encryptsElement(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent, List<QName> elementPath,
-                                    Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
+                                    SecurityEventStore securityEventStore) throws XMLSecurityException {
+        List<SecurityEvent> encryptedElementSecurityEvents =
+            securityEventStore.getEncryptedElements(tokenSecurityEvent.getSecurityToken().getId());
+        for (int i = 0; i < encryptedElementSecurityEvents.size(); i++) {
+            SecurityEvent securityEvent = encryptedElementSecurityEvents.get(i);
             if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
                 EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
-                if (encryptedElementSecurityEvent.isEncrypted()
-                        && encryptedElementSecurityEvent.getSecurityToken().getId().equals(tokenSecurityEvent.getSecurityToken().getId())
-                        && WSSUtils.pathMatches(elementPath, encryptedElementSecurityEvent.getElementPath(), false)) {
+                if (WSSUtils.pathMatches(elementPath, encryptedElementSecurityEvent.getElementPath(), false)) {
                     return true;
                 }
-            } else if (WSSecurityEventConstants.ContentEncrypted.equals(securityEvent.getSecurityEventType())) {
+            } else {
                 ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
                     (ContentEncryptedElementSecurityEvent) securityEvent;
-                String tokenId = tokenSecurityEvent.getSecurityToken().getId();
-                if (contentEncryptedElementSecurityEvent.isEncrypted()
-                        && contentEncryptedElementSecurityEvent.getSecurityToken().getId().equals(tokenId)
-                        && contentEncryptedElementSecurityEvent.getXmlSecEvent()
+                if (contentEncryptedElementSecurityEvent.getXmlSecEvent()
                             == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
                         && WSSUtils.pathMatches(elementPath, contentEncryptedElementSecurityEvent.getElementPath(), false)) {
                     return true;
@@ -0,0 +1,845 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.config.ConfigurationProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.stax.XMLSecCharactersImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecCommentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndElementImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartElementImpl;
+
+/**
+ * A non-blocking XML parser. The document is fed in chunks of bytes as they arrive, and every event is
+ * handed to the consumer as soon as it is complete, without waiting for further input.
+ * <p/>
+ * Only the subset of XML a SOAP message may use is supported: the document must be UTF-8 encoded and must
+ * neither contain a DTD nor processing instructions, so the only entity references are the predefined
+ * entities and character references. Character data is reported in segments of at most 8k characters, and
+ * any other markup (a tag, comment or CDATA section) may not exceed MAXIMUM_MARKUP_LENGTH characters, so
+ * the memory the parser holds is bounded regardless of the size of the document.
+ */
+public class NonBlockingXMLParser {
+
+    /**
+     * The maximum number of characters of a tag, comment or CDATA section
+     */
+    public static final int MAXIMUM_MARKUP_LENGTH = 1024 * 1024;
+
+    private static final int TEXT_SEGMENT_LENGTH = 8192;
+
+    // the longest entity reference is a character reference like &#x10FFFF;
+    private static final int MAXIMUM_ENTITY_REFERENCE_LENGTH = 12;
+
+    private static final int MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH =
+        Integer.parseInt(ConfigurationProperties.getProperty("MaximumAllowedXMLStructureDepth"));
+
+    private static final Pattern XML_DECLARATION_PATTERN = Pattern.compile(
+        "\\s+version\\s*=\\s*([\"'])(1\\.0)\\1"
+        + "(?:\\s+encoding\\s*=\\s*([\"'])([A-Za-z][A-Za-z0-9._-]*)\\3)?"
+        + "(?:\\s+standalone\\s*=\\s*([\"'])(yes|no)\\5)?\\s*");
+
+    private enum State {
+        PROLOG, CONTENT, EPILOG
+    }
+
+    private final Consumer<XMLSecEvent> eventConsumer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    // the bytes of a character which is split between two chunks
+    private final ByteBuffer pendingBytes = ByteBuffer.allocate(8);
+    private final CharBuffer decodedChars = CharBuffer.allocate(TEXT_SEGMENT_LENGTH);
+
+    private char[] chars = new char[2 * TEXT_SEGMENT_LENGTH];
+    private int position;
+    private int limit;
+
+    // where the search for the end of an incomplete piece of markup resumes, relative to the position
+    private int scanOffset;
+    private char scanQuote;
+
+    private boolean pendingCarriageReturn;
+    private boolean byteOrderMarkChecked;
+    private boolean documentStarted;
+    private boolean endOfInput;
+    private boolean failed;
+    private State state = State.PROLOG;
+    private final List<Element> elements = new ArrayList<>();
+
+    public NonBlockingXMLParser(Consumer<XMLSecEvent> eventConsumer) {
+        this.eventConsumer = eventConsumer;
+    }
+
+    /**
+     * Parse the given bytes of the document. All events which are complete are handed to the consumer,
+     * the remaining bytes are kept until the next call.
+     * @param data the next bytes of the document. The buffer is consumed completely.
+     * @throws XMLStreamException if the document is not well-formed or not supported
+     */
+    public void feed(ByteBuffer data) throws XMLStreamException {
+        if (endOfInput) {
+            throw new XMLStreamException("The end of the document was already reached");
+        }
+        process(data, false);
+    }
+
+    /**
+     * Signal the end of the document. The remaining events, including the END_DOCUMENT event, are handed
+     * to the consumer.
+     * @throws XMLStreamException if the document is not complete
+     */
+    public void endOfInput() throws XMLStreamException {
+        if (endOfInput) {
+            return;
+        }
+        endOfInput = true;
+        process(ByteBuffer.allocate(0), true);
+        if (!documentStarted || state == State.PROLOG) {
+            throw fail("The document has no root element");
+        }
+        if (position < limit || state != State.EPILOG) {
+            throw fail("Unexpected end of the document");
+        }
+        eventConsumer.accept(new XMLSecEndDocumentImpl());
+    }
+
+    private void process(ByteBuffer data, boolean last) throws XMLStreamException {
+        if (failed) {
+            throw new XMLStreamException("The document was rejected before");
+        }
+        try {
+            // complete a character which was split between the chunks first
+            while (pendingBytes.position() > 0 && data.hasRemaining()) {
+                pendingBytes.put(data.get());
+                pendingBytes.flip();
+                decode(pendingBytes, false);
+                pendingBytes.compact();
+            }
+            if (pendingBytes.position() > 0 && last) {
+                pendingBytes.flip();
+                decode(pendingBytes, true);
+            } else {
+                decode(data, last);
+                pendingBytes.put(data);
+            }
+            if (last) {
+                decodedChars.clear();
+                decoder.flush(decodedChars);
+                decodedChars.flip();
+                append(decodedChars);
+                parse();
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void decode(ByteBuffer data, boolean last) throws XMLStreamException {
+        while (true) {
+            decodedChars.clear();
+            CoderResult result = decoder.decode(data, decodedChars, last);
+            decodedChars.flip();
+            append(decodedChars);
+            parse();
+            if (result.isError()) {
+                throw fail("Invalid UTF-8 byte sequence");
+            }
+            if (result.isUnderflow()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Append the decoded characters, normalizing the line breaks and checking that they are legal XML
+     * characters
+     */
+    private void append(CharBuffer decoded) throws XMLStreamException {
+        ensureCapacity(decoded.remaining());
+        while (decoded.hasRemaining()) {
+            char c = decoded.get();
+            if (!byteOrderMarkChecked) {
+                byteOrderMarkChecked = true;
+                if (c == '\uFEFF') {
+                    continue;
+                }
+            }
+            if (pendingCarriageReturn) {
+                pendingCarriageReturn = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\r') {
+                c = '\n';
+                pendingCarriageReturn = true;
+            } else if (c < 0x20 && c != '\t' && c != '\n' || c == '\uFFFE' || c == '\uFFFF') {
+                throw fail("Illegal XML character 0x" + Integer.toHexString(c));
+            }
+            chars[limit++] = c;
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (limit + length <= chars.length) {
+            return;
+        }
+        int remaining = limit - position;
+        char[] target = chars;
+        if (remaining + length > chars.length) {
+            target = new char[Math.max(2 * chars.length, remaining + length)];
+        }
+        System.arraycopy(chars, position, target, 0, remaining);
+        chars = target;
+        position = 0;
+        limit = remaining;
+    }
+
+    private void parse() throws XMLStreamException {
+        if (!documentStarted && !startDocument()) {
+            return;
+        }
+        while (position < limit) {
+            boolean parsed;
+            if (chars[position] == '<') {
+                parsed = parseMarkup();
+            } else if (state == State.CONTENT) {
+                parsed = parseText();
+            } else {
+                parsed = skipWhitespace();
+            }
+            if (!parsed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Emit the START_DOCUMENT event, with the values of the XML declaration if there is one
+     */
+    private boolean startDocument() throws XMLStreamException {
+        String xmlDeclarationStart = "<?xml";
+        int available = limit - position;
+        if (available <= xmlDeclarationStart.length()) {
+            if (regionMatches(position, xmlDeclarationStart, available) && !endOfInput) {
+                return false;
+            }
+        } else if (regionMatches(position, xmlDeclarationStart, xmlDeclarationStart.length())
+            && isWhitespace(chars[position + xmlDeclarationStart.length()])) {
+            int end = indexOf("?>", position + xmlDeclarationStart.length());
+            if (end < 0) {
+                return incomplete();
+            }
+            Matcher matcher = XML_DECLARATION_PATTERN.matcher(
+                CharBuffer.wrap(chars, position + xmlDeclarationStart.length(), end - position - xmlDeclarationStart.length()));
+            if (!matcher.matches()) {
+                throw fail("Invalid XML declaration");
+            }
+            String encoding = matcher.group(4);
+            if (encoding != null && !"UTF-8".equalsIgnoreCase(encoding)) {
+                throw fail("Unsupported encoding " + encoding + ", only UTF-8 is supported");
+            }
+            String standalone = matcher.group(6);
+            eventConsumer.accept(new XMLSecStartDocumentImpl(
+                null, encoding, standalone == null ? null : "yes".equals(standalone), matcher.group(2)));
+            documentStarted = true;
+            consumed(end + 2);
+            return true;
+        }
+        eventConsumer.accept(new XMLSecStartDocumentImpl(null, null, null, null));
+        documentStarted = true;
+        return true;
+    }
+
+    private boolean skipWhitespace() throws XMLStreamException {
+        while (position < limit && chars[position] != '<') {
+            if (!isWhitespace(chars[position])) {
+                throw fail("Content is not allowed outside of the root element");
+            }
+            position++;
+        }
+        return true;
+    }
+
+    private boolean parseMarkup() throws XMLStreamException {
+        int start = position;
+        if (start + 1 >= limit) {
+            return incomplete();
+        }
+        switch (chars[start + 1]) {
+        case '/':
+            int endTagEnd = indexOf('>', start + 2);
+            if (endTagEnd < 0) {
+                return incomplete();
+            }
+            parseEndTag(start + 2, endTagEnd);
+            consumed(endTagEnd + 1);
+            return true;
+        case '?':
+            throw fail("Processing instructions are not allowed in a SOAP message");
+        case '!':
+            return parseDeclaration(start);
+        default:
+            int startTagEnd = indexOfStartTagEnd(start + 1);
+            if (startTagEnd < 0) {
+                return incomplete();
+            }
+            parseStartTag(start + 1, startTagEnd);
+            consumed(startTagEnd + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Parse a comment or a CDATA section. Anything else starting with "&lt;!" is a DTD, which is not allowed.
+     */
+    private boolean parseDeclaration(int start) throws XMLStreamException {
+        String commentStart = "<!--";
+        String cdataStart = "<![CDATA[";
+        int available = limit - start;
+        if (regionMatches(start, commentStart, Math.min(available, commentStart.length()))) {
+            if (available < commentStart.length()) {
+                return incomplete();
+            }
+            int end = indexOf("-->", start + commentStart.length());
+            if (end < 0) {
+                return incomplete();
+            }
+            String comment = new String(chars, start + commentStart.length(), end - start - commentStart.length());
+            // "--->" is no valid end of a comment either, the comment must not end with a '-'
+            if (comment.contains("--") || comment.endsWith("-")) {
+                throw fail("The string \"--\" is not allowed in a comment");
+            }
+            eventConsumer.accept(new XMLSecCommentImpl(comment, currentElement()));
+            consumed(end + 3);
+            return true;
+        }
+        if (regionMatches(start, cdataStart, Math.min(available, cdataStart.length()))) {
+            if (available < cdataStart.length()) {
+                return incomplete();
+            }
+            if (state != State.CONTENT) {
+                throw fail("A CDATA section is not allowed outside of the root element");
+            }
+            int end = indexOf("]]>", start + cdataStart.length());
+            if (end < 0) {
+                return incomplete();
+            }
+            int textStart = start + cdataStart.length();
+            char[] text = new char[end - textStart];
+            System.arraycopy(chars, textStart, text, 0, text.length);
+            eventConsumer.accept(new XMLSecCharactersImpl(text, true, false, isWhitespace(text), currentElement()));
+            consumed(end + 3);
+            return true;
+        }
+        throw fail("DOCTYPE is not allowed in a SOAP message");
+    }
+
+    private boolean parseText() throws XMLStreamException {
+        int end = indexOf('<', position);
+        if (end < 0) {
+            if (limit - position < TEXT_SEGMENT_LENGTH) {
+                return false;
+            }
+            end = textSegmentEnd();
+        }
+        char[] text = unescape(position, end, false);
+        eventConsumer.accept(new XMLSecCharactersImpl(text, false, false, isWhitespace(text), currentElement()));
+        consumed(end);
+        return true;
+    }
+
+    /**
+     * The end of a segment of a long text, which doesn't split an entity reference, a surrogate pair or
+     * a "]]&gt;"
+     */
+    private int textSegmentEnd() {
+        int end = limit;
+        for (int i = limit - 1; i > position && i >= limit - MAXIMUM_ENTITY_REFERENCE_LENGTH; i--) {
+            if (chars[i] == ';') {
+                break;
+            } else if (chars[i] == '&') {
+                end = i;
+                break;
+            }
+        }
+        // keep the "]]" of a split "]]>" for the next segment, but no more of a long run of ']'
+        for (int i = 0; i < 2 && end > position + 1 && chars[end - 1] == ']'; i++) {
+            end--;
+        }
+        if (Character.isHighSurrogate(chars[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    private void parseStartTag(int start, int end) throws XMLStreamException {
+        if (state == State.EPILOG) {
+            throw fail("Only one root element is allowed");
+        }
+        if (elements.size() >= MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH) {
+            throw new XMLStreamException(
+                new XMLSecurityException("secureProcessing.MaximumAllowedXMLStructureDepth",
+                                         new Object[] {MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH}));
+        }
+        boolean emptyElement = chars[end - 1] == '/';
+        int contentEnd = emptyElement ? end - 1 : end;
+
+        int nameEnd = nameEnd(start, contentEnd);
+        String elementName = qualifiedName(start, nameEnd);
+
+        List<String> attributeNamesAndValues = new ArrayList<>();
+        List<XMLSecNamespace> namespaces = null;
+        int i = nameEnd;
+        while (true) {
+            int whitespaceStart = i;
+            i = skipWhitespace(i, contentEnd);
+            if (i >= contentEnd) {
+                break;
+            }
+            if (i == whitespaceStart) {
+                throw fail("Whitespace is required between the attributes of element " + elementName);
+            }
+            int attributeNameEnd = nameEnd(i, contentEnd);
+            String attributeName = qualifiedName(i, attributeNameEnd);
+            i = skipWhitespace(attributeNameEnd, contentEnd);
+            if (i >= contentEnd || chars[i] != '=') {
+                throw fail("Attribute " + attributeName + " of element " + elementName + " has no value");
+            }
+            i = skipWhitespace(i + 1, contentEnd);
+            if (i >= contentEnd || chars[i] != '"' && chars[i] != '\'') {
+                throw fail("The value of attribute " + attributeName + " of element " + elementName + " is not quoted");
+            }
+            int valueEnd = indexOf(chars[i], i + 1, contentEnd);
+            if (valueEnd < 0) {
+                throw fail("The value of attribute " + attributeName + " of element " + elementName + " is not closed");
+            }
+            String value = new String(unescape(i + 1, valueEnd, true));
+            i = valueEnd + 1;
+
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(attributeName)
+                || attributeName.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                if (namespaces == null) {
+                    namespaces = new ArrayList<>();
+                }
+                namespaces.add(createNamespace(attributeName, value, namespaces));
+            } else {
+                attributeNamesAndValues.add(attributeName);
+                attributeNamesAndValues.add(value);
+            }
+        }
+
+        Element element = new Element(elementName, namespaces);
+        elements.add(element);
+
+        List<XMLSecAttribute> attributes = null;
+        if (!attributeNamesAndValues.isEmpty()) {
+            attributes = new ArrayList<>(attributeNamesAndValues.size() / 2);
+            Set<QName> attributeQNames = new HashSet<>();
+            for (int j = 0; j < attributeNamesAndValues.size(); j += 2) {
+                QName attributeQName = resolve(attributeNamesAndValues.get(j), false);
+                if (!attributeQNames.add(attributeQName)) {
+                    throw fail("Duplicate attribute " + attributeNamesAndValues.get(j) + " of element " + elementName);
+                }
+                attributes.add(XMLSecEventFactory.createXMLSecAttribute(attributeQName, attributeNamesAndValues.get(j + 1)));
+            }
+        }
+
+        XMLSecStartElement parent = elements.size() > 1 ? elements.get(elements.size() - 2).startElement : null;
+        element.startElement = new XMLSecStartElementImpl(resolve(elementName, true), attributes, namespaces, parent);
+        state = State.CONTENT;
+        eventConsumer.accept(element.startElement);
+
+        if (emptyElement) {
+            endElement();
+        }
+    }
+
+    private XMLSecNamespace createNamespace(String attributeName, String namespaceURI, List<XMLSecNamespace> namespaces)
+        throws XMLStreamException {
+        String prefix = XMLConstants.DEFAULT_NS_PREFIX;
+        if (attributeName.length() > XMLConstants.XMLNS_ATTRIBUTE.length()) {
+            prefix = attributeName.substring(XMLConstants.XMLNS_ATTRIBUTE.length() + 1);
+            if (namespaceURI.isEmpty()) {
+                throw fail("The namespace prefix " + prefix + " can't be undeclared");
+            }
+        }
+        if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix) || XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)
+            || XMLConstants.XML_NS_PREFIX.equals(prefix) != XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+            throw fail("Illegal declaration of the namespace prefix " + prefix);
+        }
+        for (XMLSecNamespace namespace : namespaces) {
+            if (prefix.equals(namespace.getPrefix())) {
+                throw fail("Duplicate declaration of the namespace prefix " + prefix);
+            }
+        }
+        return XMLSecEventFactory.createXMLSecNamespace(prefix, namespaceURI);
+    }
+
+    private void parseEndTag(int start, int end) throws XMLStreamException {
+        int nameEnd = skipWhitespaceBackwards(start, end);
+        if (elements.isEmpty()) {
+            throw fail("Unexpected end tag");
+        }
+        String elementName = elements.get(elements.size() - 1).name;
+        if (nameEnd - start != elementName.length() || !regionMatches(start, elementName, elementName.length())) {
+            throw fail("The element " + elementName + " must be terminated by the matching end tag");
+        }
+        endElement();
+    }
+
+    private void endElement() {
+        Element element = elements.remove(elements.size() - 1);
+        eventConsumer.accept(new XMLSecEndElementImpl(element.startElement.getName(), element.startElement));
+        if (elements.isEmpty()) {
+            state = State.EPILOG;
+        }
+    }
+
+    private XMLSecStartElement currentElement() {
+        return elements.isEmpty() ? null : elements.get(elements.size() - 1).startElement;
+    }
+
+    /**
+     * Resolve the namespace of the given qualified name in the current scope
+     */
+    private QName resolve(String qualifiedName, boolean elementName) throws XMLStreamException {
+        int colon = qualifiedName.indexOf(':');
+        if (colon < 0) {
+            String namespaceURI = elementName ? lookupNamespaceURI(XMLConstants.DEFAULT_NS_PREFIX) : null;
+            return new QName(namespaceURI == null ? XMLConstants.NULL_NS_URI : namespaceURI, qualifiedName);
+        }
+        String prefix = qualifiedName.substring(0, colon);
+        String namespaceURI = lookupNamespaceURI(prefix);
+        if (namespaceURI == null) {
+            throw fail("The namespace prefix " + prefix + " of " + qualifiedName + " is not bound");
+        }
+        return new QName(namespaceURI, qualifiedName.substring(colon + 1), prefix);
+    }
+
+    private String lookupNamespaceURI(String prefix) {
+        if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+            return XMLConstants.XML_NS_URI;
+        }
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            List<XMLSecNamespace> namespaces = elements.get(i).namespaces;
+            if (namespaces != null) {
+                for (int j = 0; j < namespaces.size(); j++) {
+                    XMLSecNamespace namespace = namespaces.get(j);
+                    if (prefix.equals(namespace.getPrefix())) {
+                        return namespace.getNamespaceURI();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the characters of the given range, with the entity references replaced, and in attribute
+     * values the whitespace characters normalized
+     */
+    private char[] unescape(int start, int end, boolean attributeValue) throws XMLStreamException {
+        StringBuilder text = null;
+        int copied = start;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == '&') {
+                int referenceEnd = indexOf(';', i + 1, Math.min(end, i + MAXIMUM_ENTITY_REFERENCE_LENGTH));
+                if (referenceEnd < 0) {
+                    throw fail("Invalid entity reference");
+                }
+                if (text == null) {
+                    text = new StringBuilder(end - start);
+                }
+                text.append(chars, copied, i - copied);
+                appendEntityReference(text, new String(chars, i + 1, referenceEnd - i - 1));
+                i = referenceEnd;
+                copied = referenceEnd + 1;
+            } else if (attributeValue && c == '<') {
+                throw fail("The character '<' is not allowed in an attribute value");
+            } else if (attributeValue && (c == '\n' || c == '\t')) {
+                if (text == null) {
+                    text = new StringBuilder(end - start);
+                }
+                text.append(chars, copied, i - copied).append(' ');
+                copied = i + 1;
+            } else if (!attributeValue && c == '>' && i - start >= 2 && chars[i - 1] == ']' && chars[i - 2] == ']') {
+                throw fail("The string \"]]>\" is not allowed in character data");
+            }
+        }
+        if (text == null) {
+            char[] result = new char[end - start];
+            System.arraycopy(chars, start, result, 0, result.length);
+            return result;
+        }
+        text.append(chars, copied, end - copied);
+        char[] result = new char[text.length()];
+        text.getChars(0, result.length, result, 0);
+        return result;
+    }
+
+    private void appendEntityReference(StringBuilder text, String reference) throws XMLStreamException {
+        switch (reference) {
+        case "lt":
+            text.append('<');
+            return;
+        case "gt":
+            text.append('>');
+            return;
+        case "amp":
+            text.append('&');
+            return;
+        case "apos":
+            text.append('\'');
+            return;
+        case "quot":
+            text.append('"');
+            return;
+        default:
+            break;
+        }
+        if (reference.length() < 2 || reference.charAt(0) != '#') {
+            throw fail("The entity \"" + reference + "\" was referenced, but not declared");
+        }
+        int codePoint;
+        try {
+            if (reference.charAt(1) == 'x') {
+                codePoint = Integer.parseInt(reference.substring(2), 16);
+            } else {
+                codePoint = Integer.parseInt(reference.substring(1), 10);
+            }
+        } catch (NumberFormatException e) {
+            throw fail("Invalid character reference &" + reference + ";");
+        }
+        if (!isXMLCharacter(codePoint) || reference.indexOf('-') >= 0 || reference.indexOf('+') >= 0) {
+            throw fail("Invalid character reference &" + reference + ";");
+        }
+        text.appendCodePoint(codePoint);
+    }
+
+    private static boolean isXMLCharacter(int codePoint) {
+        return codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD
+            || codePoint >= 0x20 && codePoint <= 0xD7FF
+            || codePoint >= 0xE000 && codePoint <= 0xFFFD
+            || codePoint >= 0x10000 && codePoint <= 0x10FFFF;
+    }
+
+    /**
+     * The end of the name starting at the given index
+     */
+    private int nameEnd(int start, int end) throws XMLStreamException {
+        int i = start;
+        while (i < end && !isWhitespace(chars[i]) && chars[i] != '=' && chars[i] != '/'
+            && chars[i] != '"' && chars[i] != '\'') {
+            i++;
+        }
+        if (i == start) {
+            throw fail("A name is expected");
+        }
+        return i;
+    }
+
+    /**
+     * Return the qualified name of the given range: an XML name with at most one colon, which is neither
+     * the first nor the last character
+     */
+    private String qualifiedName(int start, int end) throws XMLStreamException {
+        String name = new String(chars, start, end - start);
+        int colon = name.indexOf(':');
+        boolean valid = colon != 0 && colon != name.length() - 1 && name.indexOf(':', colon + 1) < 0;
+        int i = 0;
+        while (valid && i < name.length()) {
+            int codePoint = name.codePointAt(i);
+            boolean nameStart = i == 0 || i == colon + 1;
+            valid = codePoint == ':' || (nameStart ? isNameStartChar(codePoint) : isNameChar(codePoint));
+            i += Character.charCount(codePoint);
+        }
+        if (!valid) {
+            throw fail("Invalid name " + name);
+        }
+        return name;
+    }
+
+    /**
+     * The NameStartChar production of XML 1.0, without the colon, which is checked by the caller
+     */
+    private static boolean isNameStartChar(int codePoint) {
+        return codePoint >= 'a' && codePoint <= 'z' || codePoint >= 'A' && codePoint <= 'Z' || codePoint == '_'
+            || codePoint >= 0xC0 && codePoint <= 0xD6 || codePoint >= 0xD8 && codePoint <= 0xF6
+            || codePoint >= 0xF8 && codePoint <= 0x2FF || codePoint >= 0x370 && codePoint <= 0x37D
+            || codePoint >= 0x37F && codePoint <= 0x1FFF || codePoint >= 0x200C && codePoint <= 0x200D
+            || codePoint >= 0x2070 && codePoint <= 0x218F || codePoint >= 0x2C00 && codePoint <= 0x2FEF
+            || codePoint >= 0x3001 && codePoint <= 0xD7FF || codePoint >= 0xF900 && codePoint <= 0xFDCF
+            || codePoint >= 0xFDF0 && codePoint <= 0xFFFD || codePoint >= 0x10000 && codePoint <= 0xEFFFF;
+    }
+
+    /**
+     * The NameChar production of XML 1.0, without the colon
+     */
+    private static boolean isNameChar(int codePoint) {
+        return isNameStartChar(codePoint) || codePoint >= '0' && codePoint <= '9' || codePoint == '-'
+            || codePoint == '.' || codePoint == 0xB7 || codePoint >= 0x300 && codePoint <= 0x36F
+            || codePoint >= 0x203F && codePoint <= 0x2040;
+    }
+
+    private int indexOfStartTagEnd(int start) throws XMLStreamException {
+        char quote = scanQuote;
+        for (int i = Math.max(start, position + scanOffset); i < limit; i++) {
+            char c = chars[i];
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            } else if (c == '<') {
+                throw fail("The character '<' is not allowed in a tag");
+            }
+        }
+        scanQuote = quote;
+        scanOffset = limit - position;
+        return -1;
+    }
+
+    private int indexOf(char c, int start) {
+        int index = indexOf(c, Math.max(start, position + scanOffset), limit);
+        if (index < 0) {
+            scanOffset = limit - position;
+        }
+        return index;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(String delimiter, int start) {
+        int from = Math.max(start, position + scanOffset - delimiter.length() + 1);
+        for (int i = from; i <= limit - delimiter.length(); i++) {
+            if (regionMatches(i, delimiter, delimiter.length())) {
+                return i;
+            }
+        }
+        scanOffset = limit - position;
+        return -1;
+    }
+
+    private boolean regionMatches(int start, String string, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int start, int end) {
+        int i = start;
+        while (i < end && isWhitespace(chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWhitespaceBackwards(int start, int end) {
+        int i = end;
+        while (i > start && isWhitespace(chars[i - 1])) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    private static boolean isWhitespace(char[] text) {
+        for (char c : text) {
+            if (!isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void consumed(int newPosition) {
+        position = newPosition;
+        scanOffset = 0;
+        scanQuote = 0;
+    }
+
+    private boolean incomplete() throws XMLStreamException {
+        if (limit - position > MAXIMUM_MARKUP_LENGTH) {
+            throw fail("The markup exceeds the maximum length of " + MAXIMUM_MARKUP_LENGTH + " characters");
+        }
+        return false;
+    }
+
+    private XMLStreamException fail(String message) {
+        failed = true;
+        return new XMLStreamException(message);
+    }
+
+    private static final class Element {
+        private final String name;
+        private final List<XMLSecNamespace> namespaces;
+        private XMLSecStartElement startElement;
+
+        Element(String name, List<XMLSecNamespace> namespaces) {
+            this.name = name;
+            this.namespaces = namespaces;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+
+/**
+ * Holds the SecurityEvents of the security header until the OperationSecurityEvent occurs.
+ * The signed and encrypted element events are indexed by the id of the token which protects
+ * the element, by the protected XMLSecEvent and by the element path, so that the token usages can
+ * be identified without scanning all events for every token.
+ */
+final class SecurityEventStore {
+
+    private final Deque<SecurityEvent> securityEvents = new ArrayDeque<>();
+
+    private boolean indexed;
+    private final Map<String, List<SignedElementSecurityEvent>> signedElementsByTokenId = new HashMap<>();
+    private final Map<XMLSecEvent, List<InboundSecurityToken>> signingTokensByXMLSecEvent = new IdentityHashMap<>();
+    private final Map<List<QName>, List<InboundSecurityToken>> signingTokensByElementPath = new HashMap<>();
+    private final Map<String, List<SecurityEvent>> encryptedElementsByTokenId = new HashMap<>();
+    private final Map<XMLSecEvent, List<InboundSecurityToken>> encryptingTokensByXMLSecEvent = new IdentityHashMap<>();
+
+    /**
+     * Adds the SecurityEvent in front of the previous ones
+     */
+    void push(SecurityEvent securityEvent) {
+        securityEvents.push(securityEvent);
+        indexed = false;
+    }
+
+    /**
+     * Adds the SecurityEvent behind the previous ones
+     */
+    void offer(SecurityEvent securityEvent) {
+        securityEvents.offer(securityEvent);
+        indexed = false;
+    }
+
+    void removeAll(Collection<? extends SecurityEvent> securityEventsToRemove) {
+        if (securityEventsToRemove.isEmpty()) {
+            return;
+        }
+        final Set<SecurityEvent> toRemove = Collections.newSetFromMap(new IdentityHashMap<SecurityEvent, Boolean>());
+        toRemove.addAll(securityEventsToRemove);
+        securityEvents.removeIf(toRemove::contains);
+        indexed = false;
+    }
+
+    /**
+     * @return the SecurityEvents, the last pushed one first
+     */
+    Iterator<SecurityEvent> iterator() {
+        return securityEvents.iterator();
+    }
+
+    /**
+     * @return the SecurityEvents in the order they were pushed
+     */
+    Iterator<SecurityEvent> descendingIterator() {
+        return securityEvents.descendingIterator();
+    }
+
+    void clear() {
+        securityEvents.clear();
+        clearIndex();
+    }
+
+    /**
+     * @return the distinct tokens which signed the given XMLSecEvent
+     */
+    List<InboundSecurityToken> getSigningTokens(XMLSecEvent xmlSecEvent) {
+        index();
+        return getList(signingTokensByXMLSecEvent, xmlSecEvent);
+    }
+
+    /**
+     * @return the tokens which signed the element with the given path, one for every signature reference
+     */
+    List<InboundSecurityToken> getSigningTokens(List<QName> elementPath) {
+        index();
+        return getList(signingTokensByElementPath, elementPath);
+    }
+
+    /**
+     * @return the distinct tokens which encrypted the given XMLSecEvent
+     */
+    List<InboundSecurityToken> getEncryptingTokens(XMLSecEvent xmlSecEvent) {
+        index();
+        return getList(encryptingTokensByXMLSecEvent, xmlSecEvent);
+    }
+
+    /**
+     * @return the signed elements which were signed by the token with the given id
+     */
+    List<SignedElementSecurityEvent> getSignedElements(String tokenId) {
+        index();
+        return getList(signedElementsByTokenId, tokenId);
+    }
+
+    /**
+     * @return the Encrypted- and ContentEncryptedElementSecurityEvents of the token with the given id
+     */
+    List<SecurityEvent> getEncryptedElements(String tokenId) {
+        index();
+        return getList(encryptedElementsByTokenId, tokenId);
+    }
+
+    private void index() {
+        if (indexed) {
+            return;
+        }
+        clearIndex();
+        Iterator<SecurityEvent> iterator = securityEvents.iterator();
+        while (iterator.hasNext()) {
+            SecurityEvent securityEvent = iterator.next();
+            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
+                indexSignedElement((SignedElementSecurityEvent) securityEvent);
+            } else if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
+                EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
+                if (encryptedElementSecurityEvent.isEncrypted()) {
+                    InboundSecurityToken securityToken = (InboundSecurityToken) encryptedElementSecurityEvent.getSecurityToken();
+                    add(encryptedElementsByTokenId, securityToken.getId(), securityEvent);
+                    if (encryptedElementSecurityEvent.getXmlSecEvent() != null) {
+                        addDistinct(encryptingTokensByXMLSecEvent, encryptedElementSecurityEvent.getXmlSecEvent(), securityToken);
+                    }
+                }
+            } else if (WSSecurityEventConstants.ContentEncrypted.equals(securityEvent.getSecurityEventType())) {
+                ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
+                    (ContentEncryptedElementSecurityEvent) securityEvent;
+                if (contentEncryptedElementSecurityEvent.isEncrypted()) {
+                    add(encryptedElementsByTokenId, contentEncryptedElementSecurityEvent.getSecurityToken().getId(), securityEvent);
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    private void indexSignedElement(SignedElementSecurityEvent signedElementSecurityEvent) {
+        if (!signedElementSecurityEvent.isSigned()) {
+            return;
+        }
+        InboundSecurityToken securityToken = (InboundSecurityToken) signedElementSecurityEvent.getSecurityToken();
+        add(signedElementsByTokenId, securityToken.getId(), signedElementSecurityEvent);
+        if (signedElementSecurityEvent.getXmlSecEvent() != null) {
+            addDistinct(signingTokensByXMLSecEvent, signedElementSecurityEvent.getXmlSecEvent(), securityToken);
+        }
+        if (signedElementSecurityEvent.getElementPath() != null) {
+            add(signingTokensByElementPath, signedElementSecurityEvent.getElementPath(), securityToken);
+        }
+    }
+
+    private void clearIndex() {
+        indexed = false;
+        signedElementsByTokenId.clear();
+        signingTokensByXMLSecEvent.clear();
+        signingTokensByElementPath.clear();
+        encryptedElementsByTokenId.clear();
+        encryptingTokensByXMLSecEvent.clear();
+    }
+
+    private static <K, V> void add(Map<K, List<V>> map, K key, V value) {
+        List<V> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<>(2);
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static <K, V> void addDistinct(Map<K, List<V>> map, K key, V value) {
+        List<V> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<>(2);
+            map.put(key, values);
+        }
+        if (!values.contains(value)) {
+            values.add(value);
+        }
+    }
+
+    private static <K, V> List<V> getList(Map<K, List<V>> map, K key) {
+        List<V> values = map.get(key);
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl;
+
+import java.nio.ByteBuffer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.XMLEventConsumer;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.impl.processor.input.PushedEventsInputProcessor;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+
+/**
+ * The push-based counterpart of the WSSecurityStreamReader. The message is pushed in chunks of bytes,
+ * which are parsed by a NonBlockingXMLParser, and the events are run through the InputProcessorChain and
+ * handed to the XMLEventConsumer as far as the pushed bytes allow. No call blocks to wait for further
+ * input. The SecurityEvents are reported to the SecurityEventListeners as the message is processed.
+ * <p/>
+ * The SOAP header and every xenc:EncryptedData element are held in memory until they are complete. The
+ * message is rejected once more than WSSSecurityProperties#getMaximumHeldPushedBytes() bytes were pushed
+ * while events were held.
+ * <p/>
+ * An instance processes one message and is not thread-safe, but the calls may come from different threads.
+ */
+public class WSSecurityPushProcessor {
+
+    private final InputProcessorChain inputProcessorChain;
+    private final PushedEventsInputProcessor pushedEventsInputProcessor;
+    private final WSSSecurityProperties securityProperties;
+    private final XMLEventConsumer xmlEventConsumer;
+    private final boolean initiator;
+    private final boolean returnSecurityError;
+    private final NonBlockingXMLParser xmlParser;
+
+    // whether a processor of the chain may still hold events which don't need further input
+    private boolean chainHoldsEvents;
+    // the bytes pushed since the PushedEventsInputProcessor started to hold events
+    private long heldBytes;
+    private boolean finished;
+    private boolean failed;
+
+    public WSSecurityPushProcessor(InputProcessorChain inputProcessorChain,
+            PushedEventsInputProcessor pushedEventsInputProcessor, WSSSecurityProperties securityProperties,
+            XMLEventConsumer xmlEventConsumer, boolean initiator, boolean returnSecurityError) {
+        this.inputProcessorChain = inputProcessorChain;
+        this.pushedEventsInputProcessor = pushedEventsInputProcessor;
+        this.securityProperties = securityProperties;
+        this.xmlEventConsumer = xmlEventConsumer;
+        this.initiator = initiator;
+        this.returnSecurityError = returnSecurityError;
+        this.xmlParser = new NonBlockingXMLParser(pushedEventsInputProcessor::addEvent);
+    }
+
+    /**
+     * Process the next chunk of the message. All events which can be processed with the bytes pushed so far
+     * are handed to the XMLEventConsumer before this method returns.
+     *
+     * @param data the next bytes of the message. The buffer is consumed completely.
+     * @throws XMLStreamException if the message is invalid or the security processing failed
+     */
+    public void push(ByteBuffer data) throws XMLStreamException {
+        checkState();
+        int length = data.remaining();
+        try {
+            xmlParser.feed(data);
+        } catch (XMLStreamException e) {
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(e, initiator, returnSecurityError);
+        }
+        processEvents();
+        checkHeldBytes(length);
+    }
+
+    private void checkHeldBytes(int pushedBytes) throws XMLStreamException {
+        if (!pushedEventsInputProcessor.isHoldingEvents()) {
+            heldBytes = 0;
+            return;
+        }
+        heldBytes += pushedBytes;
+        if (heldBytes > securityProperties.getMaximumHeldPushedBytes()) {
+            failed = true;
+            XMLStreamException e = new XMLStreamException(new WSSecurityException(
+                WSSecurityException.ErrorCode.INVALID_SECURITY, "empty",
+                new Object[] {"The SOAP header or an EncryptedData element exceeds the maximum held size of "
+                    + securityProperties.getMaximumHeldPushedBytes() + " bytes"}));
+            throw WSSecurityStreamReader.maskSecurityError(e, initiator, returnSecurityError);
+        }
+    }
+
+    /**
+     * Signal the end of the message. The remaining events are handed to the XMLEventConsumer, and the
+     * final checks of the security processing are done.
+     *
+     * @throws XMLStreamException if the message is invalid or incomplete, or the security processing failed
+     */
+    public void finish() throws XMLStreamException {
+        checkState();
+        try {
+            xmlParser.endOfInput();
+        } catch (XMLStreamException e) {
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(e, initiator, returnSecurityError);
+        }
+        processEvents();
+        if (!finished) {
+            failed = true;
+            throw new XMLStreamException("The message was not processed completely");
+        }
+    }
+
+    /**
+     * Returns true if the complete message was processed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void checkState() throws XMLStreamException {
+        if (failed) {
+            throw new XMLStreamException("The processing of the message failed before");
+        }
+        if (finished) {
+            throw new XMLStreamException("The message was already processed completely");
+        }
+    }
+
+    private void processEvents() throws XMLStreamException {
+        while (!finished && (chainHoldsEvents || pushedEventsInputProcessor.isEventAvailable())) {
+            XMLSecEvent xmlSecEvent = nextEvent();
+            if (xmlSecEvent == null) {
+                return;
+            }
+            int eventType = xmlSecEvent.getEventType();
+            if (eventType == XMLStreamConstants.START_DOCUMENT && securityProperties.isSkipDocumentEvents()) {
+                continue;
+            }
+            xmlEventConsumer.add(xmlSecEvent);
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                doFinal();
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the next event of the chain, or null if the chain needs further input
+     */
+    private XMLSecEvent nextEvent() throws XMLStreamException {
+        try {
+            inputProcessorChain.reset();
+            XMLSecEvent xmlSecEvent = inputProcessorChain.processEvent();
+            chainHoldsEvents = true;
+            return xmlSecEvent;
+        } catch (XMLStreamException e) {
+            if (pushedEventsInputProcessor.isWaitingForEvents()) {
+                chainHoldsEvents = false;
+                return null;
+            }
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(e, initiator, returnSecurityError);
+        } catch (XMLSecurityException e) {
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(new XMLStreamException(e), initiator, returnSecurityError);
+        }
+    }
+
+    private void doFinal() throws XMLStreamException {
+        try {
+            inputProcessorChain.reset();
+            inputProcessorChain.doFinal();
+        } catch (XMLStreamException e) {
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(e, initiator, returnSecurityError);
+        } catch (XMLSecurityException e) {
+            failed = true;
+            throw WSSecurityStreamReader.maskSecurityError(new XMLStreamException(e), initiator, returnSecurityError);
+        }
+    }
+}
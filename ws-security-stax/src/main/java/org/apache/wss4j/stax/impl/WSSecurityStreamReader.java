@@ -18,44 +18,378 @@
  */
 package org.apache.wss4j.stax.impl;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.apache.wss4j.common.WSSPolicyException;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.stax.ext.CompletableInputProcessor;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.config.ConfigurationProperties;
+import org.apache.xml.security.stax.ext.InputProcessor;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.impl.XMLSecurityStreamReader;
+import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
 
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+/**
+ * The inbound XMLStreamReader. If a "fast-forward" XMLStreamReader is given, the events are read directly
+ * from it, instead of through the InputProcessorChain, as soon as no InputProcessor needs to see further
+ * events: the security header was processed and the remaining processors are complete
+ * CompletableInputProcessors. The fast-forwarded elements are still checked for Ids of elements which were
+ * signed or encrypted, so that the processed elements can't be duplicated in the remaining document.
+ */
 public class WSSecurityStreamReader extends XMLSecurityStreamReader {
 
+    private static final int MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH =
+        Integer.parseInt(ConfigurationProperties.getProperty("MaximumAllowedXMLStructureDepth"));
+
+    private static final QName ATT_XML_ID = new QName(XMLConstants.XML_NS_URI, "id");
+
+    private final InputProcessorChain inputProcessorChain;
     private final boolean initiator;
     private final boolean returnSecurityError;
+    private final XMLStreamReader fastForwardReader;
+    private boolean fastForwardPossible;
+    private boolean fastForward;
+    private Set<String> processedIds;
+    private int currentXMLStructureDepth;
 
     public WSSecurityStreamReader(InputProcessorChain inputProcessorChain,
             XMLSecurityProperties securityProperties, boolean initiator,
             boolean returnSecurityError) {
+        this(inputProcessorChain, securityProperties, initiator, returnSecurityError, null);
+    }
+
+    /**
+     * @param fastForwardReader the XMLStreamReader the XMLEventReaderInputProcessor of the chain reads
+     *                          from, or null to always read through the InputProcessorChain
+     */
+    public WSSecurityStreamReader(InputProcessorChain inputProcessorChain,
+            XMLSecurityProperties securityProperties, boolean initiator,
+            boolean returnSecurityError, XMLStreamReader fastForwardReader) {
         super(inputProcessorChain, securityProperties);
+        this.inputProcessorChain = inputProcessorChain;
         this.initiator = initiator;
         this.returnSecurityError = returnSecurityError;
+        this.fastForwardReader = fastForwardReader;
     }
 
     @Override
     public int next() throws XMLStreamException {
         try {
-            return super.next();
+            if (fastForward) {
+                return updateDepth(fastForwardReader.next());
+            }
+            if (fastForwardPossible) {
+                //the XMLEventReaderInputProcessor has already advanced the underlying reader to the next event
+                fastForward = true;
+                return updateDepth(fastForwardReader.getEventType());
+            }
+            int eventType = updateDepth(super.next());
+            if (fastForwardReader != null && eventType != XMLStreamConstants.END_DOCUMENT) {
+                fastForwardPossible = isChainComplete();
+            }
+            return eventType;
         } catch (XMLStreamException e) {
-            Throwable cause = e.getCause();
+            throw maskSecurityError(e, initiator, returnSecurityError);
+        }
+    }
+
+    /**
+     * Returns the exception which is thrown to the caller for the given processing error
+     */
+    static XMLStreamException maskSecurityError(XMLStreamException e, boolean initiator, boolean returnSecurityError) {
+        Throwable cause = e.getCause();
+
+        // Allow a WSSPolicyException
+        if (returnSecurityError || initiator
+            || cause != null && cause.getCause() instanceof WSSPolicyException) {
+            return e;
+        }
+
+        // Mask the real error
+        return new XMLStreamException(
+            new WSSecurityException(WSSecurityException.ErrorCode.SECURITY_ERROR));
+    }
+
+    /**
+     * Returns true if the events are currently read directly from the underlying XMLStreamReader
+     */
+    public boolean isFastForward() {
+        return fastForward;
+    }
+
+    private boolean isChainComplete() {
+        List<InputProcessor> inputProcessors = inputProcessorChain.getProcessors();
+        for (int i = 0; i < inputProcessors.size(); i++) {
+            InputProcessor inputProcessor = inputProcessors.get(i);
+            if (inputProcessor instanceof XMLEventReaderInputProcessor) {
+                continue;
+            }
+            if (!(inputProcessor instanceof CompletableInputProcessor)
+                || !((CompletableInputProcessor) inputProcessor).isComplete(inputProcessorChain)) {
+                return false;
+            }
+        }
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < inputProcessors.size(); i++) {
+            InputProcessor inputProcessor = inputProcessors.get(i);
+            if (inputProcessor instanceof CompletableInputProcessor) {
+                ids.addAll(((CompletableInputProcessor) inputProcessor).getProcessedIds(inputProcessorChain));
+            }
+        }
+        processedIds = ids;
+        return true;
+    }
 
-            // Allow a WSSPolicyException
-            if (returnSecurityError || initiator
-                || cause != null && cause.getCause() instanceof WSSPolicyException) {
-                throw e;
+    /**
+     * The processors reject an element whose Id matches an already processed reference
+     * (signature wrapping). Do the same for the elements which bypass them.
+     */
+    private void checkProcessedIds() throws XMLStreamException {
+        if (processedIds.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < fastForwardReader.getAttributeCount(); i++) {
+            QName attributeName = fastForwardReader.getAttributeName(i);
+            if ((WSSConstants.ATT_WSU_ID.equals(attributeName)
+                || XMLSecurityConstants.ATT_NULL_Id.equals(attributeName)
+                || WSSConstants.ATT_NULL_ID.equals(attributeName)
+                || WSSConstants.ATT_NULL_ASSERTION_ID.equals(attributeName)
+                || ATT_XML_ID.equals(attributeName))
+                && processedIds.contains(fastForwardReader.getAttributeValue(i))) {
+                throw new XMLStreamException(new XMLSecurityException("signature.Verification.MultipleIDs"));
             }
+        }
+    }
+
+    private int updateDepth(int eventType) throws XMLStreamException {
+        if (eventType == XMLStreamConstants.START_ELEMENT) {
+            currentXMLStructureDepth++;
+            // The XMLEventReaderInputProcessor enforces the limit as long as events go through the chain
+            if (fastForward) {
+                if (currentXMLStructureDepth > MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH) {
+                    throw new XMLStreamException(
+                        new XMLSecurityException("secureProcessing.MaximumAllowedXMLStructureDepth",
+                                                 new Object[] {MAXIMUM_ALLOWED_XML_STRUCTURE_DEPTH}));
+                }
+                checkProcessedIds();
+            }
+        } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+            currentXMLStructureDepth--;
+        }
+        return eventType;
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (fastForward) {
+            fastForwardReader.require(type, namespaceURI, localName);
+        } else {
+            super.require(type, namespaceURI, localName);
+        }
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (fastForward) {
+            String text = fastForwardReader.getElementText();
+            updateDepth(XMLStreamConstants.END_ELEMENT);
+            return text;
+        }
+        return super.getElementText();
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        if (fastForward) {
+            return updateDepth(fastForwardReader.nextTag());
+        }
+        return super.nextTag();
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        if (fastForward) {
+            return fastForwardReader.getEventType() != XMLStreamConstants.END_DOCUMENT;
+        }
+        return super.hasNext();
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return fastForward ? fastForwardReader.getNamespaceURI(prefix) : super.getNamespaceURI(prefix);
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return fastForward ? fastForwardReader.isStartElement() : super.isStartElement();
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return fastForward ? fastForwardReader.isEndElement() : super.isEndElement();
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return fastForward ? fastForwardReader.isCharacters() : super.isCharacters();
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return fastForward ? fastForwardReader.isWhiteSpace() : super.isWhiteSpace();
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        return fastForward
+            ? fastForwardReader.getAttributeValue(namespaceURI, localName)
+            : super.getAttributeValue(namespaceURI, localName);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return fastForward ? fastForwardReader.getAttributeCount() : super.getAttributeCount();
+    }
 
-            // Mask the real error
-            throw new XMLStreamException(
-                new WSSecurityException(WSSecurityException.ErrorCode.SECURITY_ERROR));
+    @Override
+    public QName getAttributeName(int index) {
+        return fastForward ? fastForwardReader.getAttributeName(index) : super.getAttributeName(index);
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        return fastForward ? fastForwardReader.getAttributeNamespace(index) : super.getAttributeNamespace(index);
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return fastForward ? fastForwardReader.getAttributeLocalName(index) : super.getAttributeLocalName(index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return fastForward ? fastForwardReader.getAttributePrefix(index) : super.getAttributePrefix(index);
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        return fastForward ? fastForwardReader.getAttributeType(index) : super.getAttributeType(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return fastForward ? fastForwardReader.getAttributeValue(index) : super.getAttributeValue(index);
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        return fastForward ? fastForwardReader.isAttributeSpecified(index) : super.isAttributeSpecified(index);
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        return fastForward ? fastForwardReader.getNamespaceCount() : super.getNamespaceCount();
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        return fastForward ? fastForwardReader.getNamespacePrefix(index) : super.getNamespacePrefix(index);
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        return fastForward ? fastForwardReader.getNamespaceURI(index) : super.getNamespaceURI(index);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return fastForward ? fastForwardReader.getNamespaceContext() : super.getNamespaceContext();
+    }
+
+    @Override
+    public int getEventType() {
+        return fastForward ? fastForwardReader.getEventType() : super.getEventType();
+    }
+
+    @Override
+    public String getText() {
+        return fastForward ? fastForwardReader.getText() : super.getText();
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return fastForward ? fastForwardReader.getTextCharacters() : super.getTextCharacters();
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length)
+        throws XMLStreamException {
+        if (fastForward) {
+            return fastForwardReader.getTextCharacters(sourceStart, target, targetStart, length);
         }
+        return super.getTextCharacters(sourceStart, target, targetStart, length);
+    }
+
+    @Override
+    public int getTextStart() {
+        return fastForward ? fastForwardReader.getTextStart() : super.getTextStart();
+    }
+
+    @Override
+    public int getTextLength() {
+        return fastForward ? fastForwardReader.getTextLength() : super.getTextLength();
+    }
+
+    @Override
+    public boolean hasText() {
+        return fastForward ? fastForwardReader.hasText() : super.hasText();
+    }
+
+    @Override
+    public QName getName() {
+        return fastForward ? fastForwardReader.getName() : super.getName();
+    }
+
+    @Override
+    public String getLocalName() {
+        return fastForward ? fastForwardReader.getLocalName() : super.getLocalName();
+    }
+
+    @Override
+    public boolean hasName() {
+        return fastForward ? fastForwardReader.hasName() : super.hasName();
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return fastForward ? fastForwardReader.getNamespaceURI() : super.getNamespaceURI();
     }
 
+    @Override
+    public String getPrefix() {
+        return fastForward ? fastForwardReader.getPrefix() : super.getPrefix();
+    }
+
+    @Override
+    public String getPITarget() {
+        return fastForward ? fastForwardReader.getPITarget() : super.getPITarget();
+    }
+
+    @Override
+    public String getPIData() {
+        return fastForward ? fastForwardReader.getPIData() : super.getPIData();
+    }
 }
@@ -0,0 +1,522 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.namespace.QName;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.stax.XMLSecCharactersImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndElementImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartElementImpl;
+
+/**
+ * A compact, array-backed buffer for XMLSecEvents. Instead of holding on to the event objects
+ * (each of them with its own attribute and namespace lists), start-elements, end-elements and
+ * characters are stored as records in parallel arrays. QNames are interned per buffer and the
+ * namespace declarations of an element are shared between all elements declaring the same set.
+ *
+ * The buffer is a log in document order: events are appended with {@link #add(XMLSecEvent)} and
+ * replayed with {@link #pollOldest()}. An event object is materialized from its record the first time
+ * it is requested, and the same object is returned by every later request, so security tokens and
+ * security events may hold on to buffered events and compare them by identity. The materialized
+ * events are equal in content, structure and document level to the added ones, but they are not the
+ * added objects. Events of other types than start-element, end-element and characters are kept as
+ * they are.
+ *
+ * This class is not thread safe.
+ */
+public class XMLSecEventBuffer implements Iterable<XMLSecEvent> {
+
+    private static final byte VERBATIM = 0;
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+    private static final byte CHARACTERS = 3;
+    private static final byte TYPE_MASK = 0x07;
+
+    //the record was replaced by the materialized event
+    private static final byte FLAG_MATERIALIZED = 0x08;
+    private static final byte FLAG_CDATA = 0x10;
+    private static final byte FLAG_IGNORABLE_WHITESPACE = 0x20;
+    private static final byte FLAG_WHITESPACE = 0x40;
+
+    private static final int NO_PARENT = -1;
+
+    private final Symbols symbols;
+
+    private byte[] types;
+    private int[] parents;
+    private int[] scopes;
+    private QName[] names;
+    private Object[] data;
+    private int mask;
+
+    //absolute sequence numbers of the oldest and one past the newest buffered event
+    private int start;
+    private int end;
+
+    //the currently open start-elements while buffering. Used to resolve the parent of a new event.
+    private final ElementPath openElements = new ElementPath();
+    //the start-elements on the path to the last replayed event. Used to resolve the parent of the next one.
+    private final ElementPath replayedElements = new ElementPath();
+
+    //parents which are not part of this buffer, e.g. the wsse:Security element on the outbound side
+    private List<XMLSecStartElement> externalParents = Collections.emptyList();
+
+    public XMLSecEventBuffer() {
+        this(new Symbols(), 64);
+    }
+
+    /**
+     * Creates a new buffer which shares the interned QNames and namespace scopes with the given buffer.
+     */
+    public XMLSecEventBuffer(XMLSecEventBuffer symbolSource) {
+        this(symbolSource.symbols, 16);
+    }
+
+    private XMLSecEventBuffer(Symbols symbols, int initialCapacity) {
+        this.symbols = symbols;
+        allocate(initialCapacity);
+    }
+
+    private void allocate(int capacity) {
+        types = new byte[capacity];
+        parents = new int[capacity];
+        scopes = new int[capacity];
+        names = new QName[capacity];
+        data = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        byte[] oldTypes = types;
+        int[] oldParents = parents;
+        int[] oldScopes = scopes;
+        QName[] oldNames = names;
+        Object[] oldData = data;
+        int oldMask = mask;
+        allocate(types.length << 1);
+        for (int seq = start; seq < end; seq++) {
+            int oldIdx = seq & oldMask;
+            int idx = seq & mask;
+            types[idx] = oldTypes[oldIdx];
+            parents[idx] = oldParents[oldIdx];
+            scopes[idx] = oldScopes[oldIdx];
+            names[idx] = oldNames[oldIdx];
+            data[idx] = oldData[oldIdx];
+        }
+    }
+
+    /**
+     * Appends the next event in document order
+     */
+    public void add(XMLSecEvent xmlSecEvent) {
+        if (xmlSecEvent == null) {
+            throw new NullPointerException();
+        }
+        if (end - start == types.length) {
+            grow();
+        }
+        final int seq = end;
+        final int idx = seq & mask;
+        final Class<?> clazz = xmlSecEvent.getClass();
+        if (clazz == XMLSecStartElementImpl.class) {
+            XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+            types[idx] = START_ELEMENT;
+            parents[idx] = parentReference(xmlSecStartElement.getParentXMLSecStartElement());
+            names[idx] = symbols.intern(xmlSecStartElement.getName());
+            scopes[idx] = symbols.scope(xmlSecStartElement.getOnElementDeclaredNamespaces());
+            data[idx] = compactAttributes(xmlSecStartElement.getOnElementDeclaredAttributes());
+            openElements.push(seq, xmlSecStartElement);
+        } else if (clazz == XMLSecEndElementImpl.class) {
+            types[idx] = END_ELEMENT;
+            parents[idx] = parentReference(xmlSecEvent.getParentXMLSecStartElement());
+            names[idx] = symbols.intern(xmlSecEvent.asEndElement().getName());
+            data[idx] = null;
+            openElements.popIfTop(parents[idx]);
+        } else if (clazz == XMLSecCharactersImpl.class) {
+            XMLSecCharactersImpl xmlSecCharacters = (XMLSecCharactersImpl) xmlSecEvent;
+            byte type = CHARACTERS;
+            if (xmlSecCharacters.isCData()) {
+                type |= FLAG_CDATA;
+            }
+            if (xmlSecCharacters.isIgnorableWhiteSpace()) {
+                type |= FLAG_IGNORABLE_WHITESPACE;
+            }
+            if (xmlSecCharacters.isWhiteSpace()) {
+                type |= FLAG_WHITESPACE;
+            }
+            types[idx] = type;
+            parents[idx] = parentReference(xmlSecEvent.getParentXMLSecStartElement());
+            names[idx] = null;
+            //a String is stored latin-1 compacted which halves the size of base64 content
+            data[idx] = xmlSecCharacters.getData();
+        } else {
+            types[idx] = VERBATIM;
+            parents[idx] = NO_PARENT;
+            names[idx] = null;
+            data[idx] = xmlSecEvent;
+        }
+        end++;
+    }
+
+    private int parentReference(XMLSecStartElement parent) {
+        if (parent == null) {
+            return NO_PARENT;
+        }
+        int parentSeq = openElements.find(parent);
+        if (parentSeq != NO_PARENT) {
+            return parentSeq;
+        }
+        int externalIndex = -1;
+        for (int i = 0; i < externalParents.size(); i++) {
+            if (externalParents.get(i) == parent) {
+                externalIndex = i;
+                break;
+            }
+        }
+        if (externalIndex == -1) {
+            if (externalParents.isEmpty()) {
+                externalParents = new ArrayList<>(1);
+            }
+            externalParents.add(parent);
+            externalIndex = externalParents.size() - 1;
+        }
+        return NO_PARENT - 1 - externalIndex;
+    }
+
+    private Object[] compactAttributes(List<XMLSecAttribute> attributes) {
+        if (attributes.isEmpty()) {
+            return null;
+        }
+        Object[] compact = new Object[attributes.size() << 1];
+        for (int i = 0; i < attributes.size(); i++) {
+            XMLSecAttribute xmlSecAttribute = attributes.get(i);
+            compact[i << 1] = symbols.intern(xmlSecAttribute.getName());
+            compact[(i << 1) + 1] = xmlSecAttribute.getValue();
+        }
+        return compact;
+    }
+
+    /**
+     * Removes and returns the oldest event, or returns null if the buffer is empty
+     */
+    public XMLSecEvent pollOldest() {
+        if (start == end) {
+            return null;
+        }
+        final int seq = start;
+        final int idx = seq & mask;
+        XMLSecEvent xmlSecEvent = materialize(seq);
+        if (parents[idx] > NO_PARENT) {
+            replayedElements.find(parents[idx]);
+        }
+        if ((types[idx] & TYPE_MASK) == START_ELEMENT) {
+            replayedElements.push(seq, xmlSecEvent.asStartElement());
+        }
+        release(seq);
+        start++;
+        if (start == end) {
+            clear();
+        }
+        return xmlSecEvent;
+    }
+
+    /**
+     * Removes and returns the newest event, or returns null if the buffer is empty
+     */
+    public XMLSecEvent pollNewest() {
+        if (start == end) {
+            return null;
+        }
+        final int seq = end - 1;
+        XMLSecEvent xmlSecEvent = materialize(seq);
+        openElements.popIfTop(seq);
+        release(seq);
+        end--;
+        return xmlSecEvent;
+    }
+
+    /**
+     * Returns the newest event, or null if the buffer is empty
+     */
+    public XMLSecEvent peekNewest() {
+        if (start == end) {
+            return null;
+        }
+        return materialize(end - 1);
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+
+    public void clear() {
+        for (int seq = start; seq < end; seq++) {
+            release(seq);
+        }
+        start = end = 0;
+        openElements.clear();
+        replayedElements.clear();
+        externalParents = Collections.emptyList();
+    }
+
+    /**
+     * Iterates the buffered events in document order, beginning with the oldest one
+     */
+    @Override
+    public Iterator<XMLSecEvent> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Iterates the buffered events in document order, beginning with the given index counted from the
+     * oldest event. The events before it are not materialized.
+     */
+    public Iterator<XMLSecEvent> iterator(int index) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return new SeqIterator(start + index);
+    }
+
+    private void release(int seq) {
+        int idx = seq & mask;
+        names[idx] = null;
+        data[idx] = null;
+    }
+
+    private XMLSecEvent materialize(int seq) {
+        final int idx = seq & mask;
+        final byte type = types[idx];
+        if ((type & FLAG_MATERIALIZED) != 0 || (type & TYPE_MASK) == VERBATIM) {
+            return (XMLSecEvent) data[idx];
+        }
+        final XMLSecStartElement parent = resolveParent(parents[idx]);
+        final XMLSecEvent xmlSecEvent;
+        switch (type & TYPE_MASK) {
+            case START_ELEMENT:
+                xmlSecEvent = startElement(idx, parent);
+                break;
+            case END_ELEMENT:
+                xmlSecEvent = new XMLSecEndElementImpl(names[idx], parent);
+                break;
+            default:
+                xmlSecEvent = new XMLSecCharactersImpl((String) data[idx], (type & FLAG_CDATA) != 0,
+                        (type & FLAG_IGNORABLE_WHITESPACE) != 0, (type & FLAG_WHITESPACE) != 0, parent);
+                break;
+        }
+        types[idx] = (byte) (type | FLAG_MATERIALIZED);
+        names[idx] = null;
+        data[idx] = xmlSecEvent;
+        return xmlSecEvent;
+    }
+
+    private XMLSecStartElement startElement(int idx, XMLSecStartElement parent) {
+        List<XMLSecAttribute> attributes = null;
+        Object[] compact = (Object[]) data[idx];
+        if (compact != null) {
+            attributes = new ArrayList<>(compact.length >> 1);
+            for (int i = 0; i < compact.length; i += 2) {
+                attributes.add(XMLSecEventFactory.createXMLSecAttribute((QName) compact[i], (String) compact[i + 1]));
+            }
+        }
+        List<XMLSecNamespace> namespaces = null;
+        if (scopes[idx] != 0) {
+            namespaces = new ArrayList<>(symbols.namespaceScopes.get(scopes[idx]));
+        }
+        return new XMLSecStartElementImpl(names[idx], attributes, namespaces, parent);
+    }
+
+    private XMLSecStartElement resolveParent(int parentReference) {
+        if (parentReference == NO_PARENT) {
+            return null;
+        }
+        if (parentReference < NO_PARENT) {
+            return externalParents.get(NO_PARENT - 1 - parentReference);
+        }
+        if (parentReference >= start) {
+            return materialize(parentReference).asStartElement();
+        }
+        //the parent was already replayed
+        XMLSecStartElement parent = replayedElements.get(parentReference);
+        if (parent == null) {
+            throw new IllegalStateException("The parent of a buffered event is not available anymore");
+        }
+        return parent;
+    }
+
+    /**
+     * The start-elements on a path through the buffer, with their sequence numbers
+     */
+    private static final class ElementPath {
+
+        private int[] seqs = new int[16];
+        private XMLSecStartElement[] elements = new XMLSecStartElement[16];
+        private int depth;
+
+        void push(int seq, XMLSecStartElement xmlSecStartElement) {
+            if (depth == seqs.length) {
+                int[] newSeqs = new int[depth << 1];
+                System.arraycopy(seqs, 0, newSeqs, 0, depth);
+                seqs = newSeqs;
+                XMLSecStartElement[] newElements = new XMLSecStartElement[depth << 1];
+                System.arraycopy(elements, 0, newElements, 0, depth);
+                elements = newElements;
+            }
+            seqs[depth] = seq;
+            elements[depth] = xmlSecStartElement;
+            depth++;
+        }
+
+        void popIfTop(int seq) {
+            if (depth > 0 && seqs[depth - 1] == seq) {
+                depth--;
+                elements[depth] = null;
+            }
+        }
+
+        /**
+         * Returns the sequence number of the given element and truncates the path after it,
+         * or returns NO_PARENT if the element is not on the path
+         */
+        int find(XMLSecStartElement xmlSecStartElement) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (elements[i] == xmlSecStartElement) {
+                    truncate(i + 1);
+                    return seqs[i];
+                }
+            }
+            return NO_PARENT;
+        }
+
+        /**
+         * Returns the element with the given sequence number and truncates the path after it,
+         * or returns null if the element is not on the path
+         */
+        XMLSecStartElement find(int seq) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (seqs[i] == seq) {
+                    truncate(i + 1);
+                    return elements[i];
+                }
+            }
+            return null;
+        }
+
+        XMLSecStartElement get(int seq) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (seqs[i] == seq) {
+                    return elements[i];
+                }
+            }
+            return null;
+        }
+
+        private void truncate(int newDepth) {
+            for (int i = newDepth; i < depth; i++) {
+                elements[i] = null;
+            }
+            depth = newDepth;
+        }
+
+        void clear() {
+            truncate(0);
+        }
+    }
+
+    /**
+     * Iterates from the given to the newest event (document order)
+     */
+    private final class SeqIterator implements Iterator<XMLSecEvent> {
+
+        private int cursor;
+
+        SeqIterator(int from) {
+            this.cursor = from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return Math.max(cursor, start) < end;
+        }
+
+        @Override
+        public XMLSecEvent next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            cursor = Math.max(cursor, start);
+            return materialize(cursor++);
+        }
+    }
+
+    /**
+     * Interned QNames and namespace scopes. Can be shared by several buffers of the same message.
+     */
+    private static final class Symbols {
+
+        private final Map<QName, QName> qNames = new HashMap<>();
+        private final Map<List<XMLSecNamespace>, Integer> scopeIndex = new HashMap<>();
+        private final List<List<XMLSecNamespace>> namespaceScopes = new ArrayList<>();
+
+        Symbols() {
+            //scope 0 is the empty scope
+            namespaceScopes.add(Collections.<XMLSecNamespace>emptyList());
+        }
+
+        QName intern(QName qName) {
+            QName interned = qNames.get(qName);
+            if (interned == null) {
+                qNames.put(qName, qName);
+                return qName;
+            }
+            return interned;
+        }
+
+        int scope(List<XMLSecNamespace> namespaces) {
+            if (namespaces.isEmpty()) {
+                return 0;
+            }
+            Integer index = scopeIndex.get(namespaces);
+            if (index == null) {
+                List<XMLSecNamespace> scope = Collections.unmodifiableList(new ArrayList<>(namespaces));
+                index = namespaceScopes.size();
+                namespaceScopes.add(scope);
+                scopeIndex.put(scope, index);
+            }
+            return index;
+        }
+    }
+}
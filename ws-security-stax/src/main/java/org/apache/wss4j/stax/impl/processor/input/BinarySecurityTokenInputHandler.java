@@ -27,6 +27,7 @@ import javax.xml.namespace.QName;
 import org.apache.wss4j.binding.wss10.BinarySecurityTokenType;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -42,7 +43,6 @@ import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityToken;
@@ -63,7 +63,7 @@ public class BinarySecurityTokenInputHandler extends AbstractInputSecurityHeader
         checkBSPCompliance(inputProcessorChain, binarySecurityTokenType);
 
         if (binarySecurityTokenType.getId() == null) {
-            binarySecurityTokenType.setId(IDGenerator.generateID(null));
+            binarySecurityTokenType.setId(SecureRandomPool.generateID(null));
         }
 
         final WSInboundSecurityContext wsInboundSecurityContext =
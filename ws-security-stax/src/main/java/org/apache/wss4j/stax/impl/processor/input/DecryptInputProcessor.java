@@ -18,22 +18,41 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
-import jakarta.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
 
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.bsp.BSPRule;
@@ -41,7 +60,9 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.stax.ext.CompletableInputProcessor;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -54,11 +75,14 @@ import org.apache.xml.security.binding.xmldsig.TransformType;
 import org.apache.xml.security.binding.xmldsig.TransformsType;
 import org.apache.xml.security.binding.xmlenc.CipherReferenceType;
 import org.apache.xml.security.binding.xmlenc.EncryptedDataType;
+import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
 import org.apache.xml.security.binding.xmlenc.ReferenceList;
 import org.apache.xml.security.binding.xmlenc.ReferenceType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.ConfigurationProperties;
+import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
 import org.apache.xml.security.stax.config.TransformerAlgorithmMapper;
+import org.apache.xml.security.stax.ext.AbstractInputProcessor;
 import org.apache.xml.security.stax.ext.DocumentContext;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
@@ -66,18 +90,28 @@ import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.XMLSecurityUtils;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
 import org.apache.xml.security.stax.impl.processor.input.AbstractDecryptInputProcessor;
+import org.apache.xml.security.stax.impl.processor.input.XMLEncryptedKeyInputHandler;
+import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 
 /**
  * Processor for decryption of EncryptedData XML structures
  */
-public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
+
+public class DecryptInputProcessor extends AbstractDecryptInputProcessor implements CompletableInputProcessor {
 
     private static final transient org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(DecryptInputProcessor.class);
@@ -87,11 +121,23 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
 
     private List<DeferredAttachment> attachmentReferences = new ArrayList<>();
 
+    private final KeyInfoType keyInfoType;
+    private final boolean decryptInCallingThread;
+
+    // the events of an EncryptedHeader read ahead in the CALLING_THREAD mode, replayed if it isn't ours
+    private final Deque<XMLSecEvent> encryptedHeaderEvents = new ArrayDeque<>();
+
+    // true while AbstractDecryptInputProcessor replays the buffered events of an EncryptedHeader which isn't ours
+    private boolean replayingEncryptedHeader;
+
     public DecryptInputProcessor(KeyInfoType keyInfoType, ReferenceList referenceList,
                                  WSSSecurityProperties securityProperties, WSInboundSecurityContext securityContext)
             throws XMLSecurityException {
 
         super(keyInfoType, referenceList, securityProperties);
+        this.keyInfoType = keyInfoType;
+        this.decryptInCallingThread =
+            securityProperties.getDecryptionMode() == WSSConstants.DecryptionMode.CALLING_THREAD;
         checkBSPCompliance(keyInfoType, referenceList, securityContext, BSPRule.R3006);
     }
 
@@ -120,8 +166,292 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         }
     }
 
+    @Override
+    public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (decryptInCallingThread) {
+            return trackReplayedEncryptedHeader(processEventInCallingThread(inputProcessorChain, true));
+        }
+        return trackReplayedEncryptedHeader(super.processHeaderEvent(inputProcessorChain));
+    }
+
+    @Override
+    public XMLSecEvent processEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (decryptInCallingThread) {
+            return trackReplayedEncryptedHeader(processEventInCallingThread(inputProcessorChain, false));
+        }
+        return trackReplayedEncryptedHeader(super.processEvent(inputProcessorChain));
+    }
+
+    /**
+     * An EncryptedHeader start element is only returned by AbstractDecryptInputProcessor when its EncryptedData
+     * doesn't match our references. The buffered events are then replayed up to the EncryptedData start element.
+     */
+    private XMLSecEvent trackReplayedEncryptedHeader(XMLSecEvent xmlSecEvent) {
+        if (xmlSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            QName name = xmlSecEvent.asStartElement().getName();
+            if (XMLSecurityConstants.TAG_wsse11_EncryptedHeader.equals(name)) {
+                replayingEncryptedHeader = true;
+            } else if (XMLSecurityConstants.TAG_xenc_EncryptedData.equals(name)) {
+                replayingEncryptedHeader = false;
+            }
+        }
+        return xmlSecEvent;
+    }
+
+    /**
+     * The CALLING_THREAD counterpart of the EncryptedData handling of AbstractDecryptInputProcessor, which
+     * decrypts an inline CipherValue in a separate thread. Here the decrypted stream is read by the XML parser
+     * on the calling thread, and the CipherValue is Base64 decoded and decrypted on demand.
+     */
+    private XMLSecEvent processEventInCallingThread(InputProcessorChain inputProcessorChain, boolean headerEvent)
+            throws XMLStreamException, XMLSecurityException {
+
+        if (!encryptedHeaderEvents.isEmpty()) {
+            return encryptedHeaderEvents.pollFirst();
+        }
+        XMLSecEvent xmlSecEvent =
+            headerEvent ? inputProcessorChain.processHeaderEvent() : inputProcessorChain.processEvent();
+        if (xmlSecEvent.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            return xmlSecEvent;
+        }
+
+        boolean encryptedHeader = false;
+        if (XMLSecurityConstants.TAG_wsse11_EncryptedHeader.equals(xmlSecEvent.asStartElement().getName())) {
+            //read ahead up to the EncryptedData to find out whether it is referenced by us
+            InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this);
+            encryptedHeaderEvents.add(xmlSecEvent);
+            do {
+                xmlSecEvent = nextEvent(subInputProcessorChain, headerEvent);
+                encryptedHeaderEvents.add(xmlSecEvent);
+            } while (!xmlSecEvent.isStartElement()
+                || !XMLSecurityConstants.TAG_xenc_EncryptedData.equals(xmlSecEvent.asStartElement().getName()));
+            encryptedHeader = true;
+        }
+
+        XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+        if (!XMLSecurityConstants.TAG_xenc_EncryptedData.equals(xmlSecStartElement.getName())) {
+            return xmlSecEvent;
+        }
+
+        ReferenceType referenceType = null;
+        if (getReferences() != null) {
+            referenceType = matchesReferenceId(xmlSecStartElement);
+            if (referenceType == null) {
+                //not our EncryptedData
+                return encryptedHeaderEvents.isEmpty() ? xmlSecEvent : encryptedHeaderEvents.pollFirst();
+            }
+            if (getProcessedReferences().contains(referenceType)) {
+                throw new XMLSecurityException("signature.Verification.MultipleIDs");
+            }
+            getProcessedReferences().add(referenceType);
+        }
+        encryptedHeaderEvents.clear();
+
+        return decryptEncryptedData(inputProcessorChain, headerEvent, encryptedHeader, xmlSecStartElement, referenceType);
+    }
+
+    private XMLSecEvent decryptEncryptedData(InputProcessorChain inputProcessorChain, boolean headerEvent,
+                                             boolean encryptedHeader, XMLSecStartElement xmlSecStartElement,
+                                             ReferenceType referenceType)
+            throws XMLStreamException, XMLSecurityException {
+
+        InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this);
+        EncryptedDataType encryptedDataType =
+            parseEncryptedDataStructure(subInputProcessorChain, headerEvent, xmlSecStartElement);
+        if (encryptedDataType.getId() == null) {
+            encryptedDataType.setId(IDGenerator.generateID(null));
+        }
+
+        InboundSecurityToken inboundSecurityToken =
+            getInboundSecurityToken(inputProcessorChain, xmlSecStartElement, encryptedDataType);
+        handleSecurityToken(inboundSecurityToken, inputProcessorChain.getSecurityContext(), encryptedDataType);
+
+        final String algorithmURI = encryptedDataType.getEncryptionMethod().getAlgorithm();
+        Cipher cipher = getCipher(algorithmURI);
+
+        if (encryptedDataType.getCipherData().getCipherReference() != null) {
+            handleCipherReference(inputProcessorChain, encryptedDataType, cipher, inboundSecurityToken);
+            return nextEvent(subInputProcessorChain, headerEvent);
+        }
+
+        checkEncryptionAlgorithm(encryptedDataType, inputProcessorChain.getSecurityContext());
+
+        XMLSecStartElement parentXMLSecStartElement = xmlSecStartElement.getParentXMLSecStartElement();
+        if (encryptedHeader) {
+            parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+        }
+        CallingThreadEventReaderInputProcessor eventReaderInputProcessor =
+            new CallingThreadEventReaderInputProcessor(
+                SecurePart.Modifier.getModifier(encryptedDataType.getType()), encryptedHeader,
+                parentXMLSecStartElement, encryptedDataType, inboundSecurityToken);
+        inputProcessorChain.addProcessor(eventReaderInputProcessor);
+        inputProcessorChain.getDocumentContext().setIsInEncryptedContent(
+            inputProcessorChain.getProcessors().indexOf(eventReaderInputProcessor), eventReaderInputProcessor);
+
+        if (SecurePart.Modifier.Content.getModifier().equals(encryptedDataType.getType())) {
+            handleEncryptedContent(inputProcessorChain, xmlSecStartElement.getParentXMLSecStartElement(),
+                                   inboundSecurityToken, encryptedDataType);
+        }
+
+        InputStream decryptInputStream;
+        XMLSecEvent xmlSecEvent = nextEvent(subInputProcessorChain, headerEvent);
+        if (xmlSecEvent.isStartElement()
+            && XMLSecurityConstants.TAG_XOP_INCLUDE.equals(xmlSecEvent.asStartElement().getName())) {
+            Attribute href = xmlSecEvent.asStartElement().getAttributeByName(new QName("href"));
+            decryptInputStream = handleXOPInclude(inputProcessorChain, encryptedDataType,
+                                                  href != null ? href.getValue() : null, cipher, inboundSecurityToken);
+        } else {
+            Key secretKey =
+                inboundSecurityToken.getSecretKey(algorithmURI, XMLSecurityConstants.Enc, encryptedDataType.getId());
+            secretKey = XMLSecurityUtils.prepareSecretKey(algorithmURI, secretKey.getEncoded());
+
+            CipherValueInputStream cipherValueInputStream =
+                new CipherValueInputStream(subInputProcessorChain, headerEvent, xmlSecEvent);
+            eventReaderInputProcessor.setCipherValueInputStream(cipherValueInputStream);
+            decryptInputStream = setupDecryptionStream(
+                algorithmURI, cipher, secretKey, Base64.getMimeDecoder().wrap(cipherValueInputStream));
+        }
+        decryptInputStream = applyTransforms(referenceType, decryptInputStream);
+
+        //the decrypted content is parsed within a wrapper element, which declares the namespaces in scope
+        QName wrapperElementName = new QName("http://dummy", IDGenerator.generateID(null), "dummy");
+        InputStream wrappedInputStream = new SequenceInputStream(
+            new SequenceInputStream(
+                createWrapperStartElement(wrapperElementName, xmlSecStartElement), decryptInputStream),
+            new ByteArrayInputStream(
+                ("</" + wrapperElementName.getPrefix() + ":" + wrapperElementName.getLocalPart() + ">")
+                    .getBytes(StandardCharsets.UTF_8)));
+
+        XMLInputFactory xmlInputFactory = inputProcessorChain.getSecurityContext().get(XMLSecurityConstants.XMLINPUTFACTORY);
+        eventReaderInputProcessor.setXmlStreamReader(
+            xmlInputFactory.createXMLStreamReader(wrappedInputStream, StandardCharsets.UTF_8.name()), wrapperElementName);
+
+        return headerEvent
+            ? eventReaderInputProcessor.processHeaderEvent(inputProcessorChain)
+            : eventReaderInputProcessor.processEvent(inputProcessorChain);
+    }
+
+    private static XMLSecEvent nextEvent(InputProcessorChain subInputProcessorChain, boolean headerEvent)
+            throws XMLStreamException, XMLSecurityException {
+        subInputProcessorChain.reset();
+        return headerEvent ? subInputProcessorChain.processHeaderEvent() : subInputProcessorChain.processEvent();
+    }
+
+    /**
+     * Unmarshal the EncryptedData up to the CipherValue, or completely if it carries a CipherReference.
+     */
+    private EncryptedDataType parseEncryptedDataStructure(InputProcessorChain subInputProcessorChain, boolean headerEvent,
+                                                          XMLSecStartElement xmlSecStartElement)
+            throws XMLStreamException, XMLSecurityException {
+
+        Deque<XMLSecEvent> xmlSecEvents = new ArrayDeque<>();
+        xmlSecEvents.push(xmlSecStartElement);
+        int keyInfoDepth = 0;
+        XMLSecEvent xmlSecEvent;
+        do {
+            xmlSecEvent = nextEvent(subInputProcessorChain, headerEvent);
+            xmlSecEvents.push(xmlSecEvent);
+            if (xmlSecEvents.size() >= maximumAllowedEncryptedDataEvents) {
+                throw new XMLSecurityException("stax.xmlStructureSizeExceeded",
+                                               new Object[] {maximumAllowedEncryptedDataEvents});
+            }
+            if (xmlSecEvent.isStartElement()
+                && XMLSecurityConstants.TAG_dsig_KeyInfo.equals(xmlSecEvent.asStartElement().getName())) {
+                keyInfoDepth++;
+            } else if (xmlSecEvent.isEndElement()
+                && XMLSecurityConstants.TAG_dsig_KeyInfo.equals(xmlSecEvent.asEndElement().getName())) {
+                keyInfoDepth--;
+            }
+        } while (keyInfoDepth > 0
+            || !(xmlSecEvent.isStartElement()
+                    && XMLSecurityConstants.TAG_xenc_CipherValue.equals(xmlSecEvent.asStartElement().getName())
+                || xmlSecEvent.isEndElement()
+                    && XMLSecurityConstants.TAG_xenc_EncryptedData.equals(xmlSecEvent.asEndElement().getName())));
+
+        if (xmlSecEvent.isStartElement()) {
+            //the CipherValue itself is not unmarshalled
+            xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_CipherValue));
+            xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_CipherData));
+            xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_xenc_EncryptedData));
+        }
+        try {
+            Unmarshaller unmarshaller =
+                XMLSecurityConstants.getJaxbUnmarshaller(getSecurityProperties().isDisableSchemaValidation());
+            @SuppressWarnings("unchecked")
+            JAXBElement<EncryptedDataType> encryptedDataTypeJAXBElement =
+                (JAXBElement<EncryptedDataType>) unmarshaller.unmarshal(new XMLSecurityEventReader(xmlSecEvents, 0));
+            return encryptedDataTypeJAXBElement.getValue();
+        } catch (JAXBException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    private InboundSecurityToken getInboundSecurityToken(InputProcessorChain inputProcessorChain,
+                                                         XMLSecStartElement xmlSecStartElement,
+                                                         EncryptedDataType encryptedDataType) throws XMLSecurityException {
+        KeyInfoType keyInfo = keyInfoType != null ? keyInfoType : encryptedDataType.getKeyInfo();
+        if (keyInfo != null) {
+            EncryptedKeyType encryptedKeyType =
+                XMLSecurityUtils.getQNameType(keyInfo.getContent(), XMLSecurityConstants.TAG_xenc_EncryptedKey);
+            if (encryptedKeyType != null) {
+                new XMLEncryptedKeyInputHandler().handle(
+                    inputProcessorChain, encryptedKeyType, xmlSecStartElement, getSecurityProperties());
+                SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider =
+                    inputProcessorChain.getSecurityContext().getSecurityTokenProvider(encryptedKeyType.getId());
+                return securityTokenProvider.getSecurityToken();
+            }
+        }
+        return SecurityTokenFactory.getInstance().getSecurityToken(
+            keyInfo, SecurityTokenConstants.KeyUsage_Decryption, getSecurityProperties(),
+            inputProcessorChain.getSecurityContext());
+    }
+
+    private static Cipher getCipher(String algorithmURI) throws XMLSecurityException {
+        String jceName = JCEAlgorithmMapper.translateURItoJCEID(algorithmURI);
+        if (jceName == null) {
+            throw new XMLSecurityException("algorithms.NoSuchMap", new Object[] {algorithmURI});
+        }
+        String jceProvider = JCEAlgorithmMapper.getJCEProviderFromURI(algorithmURI);
+        try {
+            return jceProvider != null ? Cipher.getInstance(jceName, jceProvider) : Cipher.getInstance(jceName);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    private static InputStream createWrapperStartElement(QName wrapperElementName, XMLSecStartElement xmlSecStartElement) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append('<').append(wrapperElementName.getPrefix()).append(':')
+            .append(wrapperElementName.getLocalPart())
+            .append(" xmlns:").append(wrapperElementName.getPrefix())
+            .append("=\"").append(wrapperElementName.getNamespaceURI()).append('"');
+
+        List<XMLSecNamespace> namespaces = new ArrayList<>();
+        xmlSecStartElement.getNamespacesFromCurrentScope(namespaces);
+        Set<String> prefixes = new HashSet<>();
+        //the innermost declaration of a prefix wins
+        for (int i = namespaces.size() - 1; i >= 0; i--) {
+            XMLSecNamespace namespace = namespaces.get(i);
+            String prefix = namespace.getPrefix() != null ? namespace.getPrefix() : "";
+            if (!prefixes.add(prefix)) {
+                continue;
+            }
+            stringBuilder.append(prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix)
+                .append("=\"").append(namespace.getNamespaceURI()).append('"');
+        }
+        stringBuilder.append('>');
+        return new ByteArrayInputStream(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     protected InputStream applyTransforms(ReferenceType referenceType, InputStream inputStream) throws XMLSecurityException {
+        SecurityMetrics securityMetrics = ((WSSSecurityProperties) getSecurityProperties()).getSecurityMetrics();
+        if (securityMetrics.isEnabled() && !(inputStream instanceof DecryptionMetricInputStream)) {
+            //decrypted by the decryption thread of AbstractDecryptInputProcessor, the cipher text length is unknown
+            inputStream = new DecryptionMetricInputStream(inputStream, null, securityMetrics);
+        }
         if (referenceType != null) {
             TransformsType transformsType =
                     XMLSecurityUtils.getQNameType(referenceType.getAny(), XMLSecurityConstants.TAG_dsig_Transforms);
@@ -247,8 +577,19 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         final Key symmetricKey =
             inboundSecurityToken.getSecretKey(encAlgo, XMLSecurityConstants.Enc, encryptedDataType.getId());
 
-        return
-            AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
+        return setupDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
+    }
+
+    private InputStream setupDecryptionStream(String encAlgo, Cipher cipher, Key symmetricKey, InputStream cipherText)
+            throws XMLSecurityException {
+        SecurityMetrics securityMetrics = ((WSSSecurityProperties) getSecurityProperties()).getSecurityMetrics();
+        if (!securityMetrics.isEnabled()) {
+            return AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, cipherText);
+        }
+        CountingInputStream countingInputStream = new CountingInputStream(cipherText);
+        return new DecryptionMetricInputStream(
+            AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, countingInputStream),
+            countingInputStream, securityMetrics);
     }
 
     @Override
@@ -256,6 +597,15 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
             boolean encryptedHeader, XMLSecStartElement xmlSecStartElement, EncryptedDataType encryptedDataType,
             InboundSecurityToken inboundSecurityToken, InboundSecurityContext inboundSecurityContext) throws XMLSecurityException {
 
+        checkEncryptionAlgorithm(encryptedDataType, inboundSecurityContext);
+
+        return new DecryptedEventReaderInputProcessor(getSecurityProperties(),
+                SecurePart.Modifier.getModifier(encryptedDataType.getType()),
+                encryptedHeader, xmlSecStartElement, encryptedDataType, this, inboundSecurityToken);
+    }
+
+    private void checkEncryptionAlgorithm(EncryptedDataType encryptedDataType, InboundSecurityContext inboundSecurityContext)
+            throws XMLSecurityException {
         // Check encryption algorithm against the required algorithm, if defined
         String encryptionAlgorithm = encryptedDataType.getEncryptionMethod().getAlgorithm();
         if (this.getSecurityProperties().getEncryptionSymAlgorithm() != null
@@ -273,10 +623,6 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
                 && !WSSConstants.NS_XENC11_AES256_GCM.equals(encryptionAlgorithm)) {
             ((WSInboundSecurityContext) inboundSecurityContext).handleBSPRule(BSPRule.R5620);
         }
-
-        return new DecryptedEventReaderInputProcessor(getSecurityProperties(),
-                SecurePart.Modifier.getModifier(encryptedDataType.getType()),
-                encryptedHeader, xmlSecStartElement, encryptedDataType, this, inboundSecurityToken);
     }
 
     @Override
@@ -288,6 +634,39 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         inboundSecurityContext.registerSecurityEvent(tokenSecurityEvent);
     }
 
+    @Override
+    public boolean isComplete(InputProcessorChain inputProcessorChain) {
+        if (replayingEncryptedHeader) {
+            return false;
+        }
+        //every reference must have been decrypted, either by this processor or by the EncryptedDataInputHandler
+        List<String> encryptedDataRefs = inputProcessorChain.getSecurityContext().getAsList(WSSConstants.PROP_ENCRYPTED_DATA_REFS);
+        List<ReferenceType> processedReferences = getProcessedReferences();
+        Map<String, ReferenceType> references = getReferences();
+        if (references != null) {
+            for (ReferenceType referenceType : references.values()) {
+                if (!processedReferences.contains(referenceType)
+                    && (encryptedDataRefs == null
+                        || !encryptedDataRefs.contains(WSSUtils.dropReferenceMarker(referenceType.getURI())))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<String> getProcessedIds(InputProcessorChain inputProcessorChain) {
+        List<String> processedIds = new ArrayList<>();
+        Map<String, ReferenceType> references = getReferences();
+        if (references != null) {
+            for (ReferenceType referenceType : references.values()) {
+                processedIds.add(WSSUtils.dropReferenceMarker(referenceType.getURI()));
+            }
+        }
+        return processedIds;
+    }
+
     @Override
     public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
         //find already processed references by the EncryptedDataHandler
@@ -355,7 +734,7 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
                 inboundSecurityToken.getSecretKey(encAlgo, XMLSecurityConstants.Enc, encryptedDataType.getId());
 
             InputStream attachmentInputStream = //NOPMD
-                AttachmentUtils.setupAttachmentDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
+                setupDecryptionStream(encAlgo, cipher, symmetricKey, attachment.getSourceStream());
 
             Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachment.getId());
@@ -419,6 +798,195 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         }
     }
 
+    /**
+     * Counts the cipher text bytes which are fed into the cipher.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int r = super.read();
+            if (r >= 0) {
+                count++;
+            }
+            return r;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int r = super.read(b, off, len);
+            if (r > 0) {
+                count += r;
+            }
+            return r;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Records the decryption when the decrypted stream is exhausted, that is when the cipher has finished.
+     */
+    private static final class DecryptionMetricInputStream extends FilterInputStream {
+
+        private final CountingInputStream cipherText;
+        private final SecurityMetrics securityMetrics;
+        private boolean recorded;
+
+        DecryptionMetricInputStream(InputStream in, CountingInputStream cipherText, SecurityMetrics securityMetrics) {
+            super(in);
+            this.cipherText = cipherText;
+            this.securityMetrics = securityMetrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int r = super.read();
+            if (r < 0) {
+                record();
+            }
+            return r;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int r = super.read(b, off, len);
+            if (r < 0) {
+                record();
+            }
+            return r;
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                securityMetrics.recordCryptoOperation(
+                    SecurityMetrics.CryptoOperation.DECRYPTION, cipherText != null ? cipherText.getCount() : 0L);
+            }
+        }
+    }
+
+    /**
+     * Streams the base64 encoded CipherValue as ascii bytes. The character events are pulled from the
+     * chain only when the decrypting stream (and therefore the XML parser) needs more data.
+     */
+    static final class CipherValueInputStream extends InputStream {
+
+        private final InputProcessorChain inputProcessorChain;
+        private final boolean headerEvent;
+        private XMLSecEvent xmlSecEvent;
+        private char[] text;
+        private int textPos;
+        private Exception failure;
+
+        CipherValueInputStream(InputProcessorChain inputProcessorChain, boolean headerEvent, XMLSecEvent firstEvent) {
+            this.inputProcessorChain = inputProcessorChain;
+            this.headerEvent = headerEvent;
+            this.xmlSecEvent = firstEvent;
+        }
+
+        Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < len) {
+                if (text == null || textPos == text.length) {
+                    // only block for the next event if we don't have anything to return yet
+                    if (count > 0 || !nextText()) {
+                        break;
+                    }
+                    continue;
+                }
+                char c = text[textPos++];
+                //base64 is plain ascii, everything else would be dropped by the decoder anyway
+                if (c < 0x80) {
+                    b[off + count++] = (byte) c;
+                }
+            }
+            return count == 0 && xmlSecEvent == null ? -1 : count;
+        }
+
+        private boolean nextText() throws IOException {
+            if (xmlSecEvent == null) {
+                return false;
+            }
+            try {
+                switch (xmlSecEvent.getEventType()) {
+                    case XMLStreamConstants.END_ELEMENT:
+                        //end of the CipherValue, the rest of the EncryptedData is consumed by the event reader
+                        xmlSecEvent = null;
+                        text = null;
+                        return false;
+                    case XMLStreamConstants.CHARACTERS:
+                        text = xmlSecEvent.asCharacters().getText();
+                        textPos = 0;
+                        break;
+                    default:
+                        throw new XMLSecurityException("stax.unexpectedXMLEvent",
+                                                       new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)});
+                }
+                inputProcessorChain.reset();
+                xmlSecEvent = headerEvent ? inputProcessorChain.processHeaderEvent() : inputProcessorChain.processEvent();
+                return true;
+            } catch (XMLStreamException | XMLSecurityException e) {
+                failure = e;
+                xmlSecEvent = null;
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private static void registerEncryptedElementSecurityEvent(
+            InputProcessorChain inputProcessorChain, XMLSecStartElement xmlSecStartElement,
+            InboundSecurityToken inboundSecurityToken, EncryptedDataType encryptedDataType) throws XMLSecurityException {
+
+        //fire a SecurityEvent:
+        final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
+        List<QName> elementPath = xmlSecStartElement.getElementPath();
+        if (elementPath.size() == 3 && WSSUtils.isInSOAPHeader(elementPath)) {
+            EncryptedPartSecurityEvent encryptedPartSecurityEvent =
+                    new EncryptedPartSecurityEvent(inboundSecurityToken, true, documentContext.getProtectionOrder());
+            encryptedPartSecurityEvent.setElementPath(elementPath);
+            encryptedPartSecurityEvent.setXmlSecEvent(xmlSecStartElement);
+            encryptedPartSecurityEvent.setCorrelationID(encryptedDataType.getId());
+            inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedPartSecurityEvent);
+        } else {
+            EncryptedElementSecurityEvent encryptedElementSecurityEvent =
+                    new EncryptedElementSecurityEvent(inboundSecurityToken, true, documentContext.getProtectionOrder());
+            encryptedElementSecurityEvent.setElementPath(elementPath);
+            encryptedElementSecurityEvent.setXmlSecEvent(xmlSecStartElement);
+            encryptedElementSecurityEvent.setCorrelationID(encryptedDataType.getId());
+            inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedElementSecurityEvent);
+        }
+    }
+
     /**
      * The DecryptedEventReaderInputProcessor reads the decrypted stream with a StAX reader and
      * forwards the generated XMLEvents
@@ -440,25 +1008,150 @@ public class DecryptInputProcessor extends AbstractDecryptInputProcessor {
         protected void handleEncryptedElement(
                 InputProcessorChain inputProcessorChain, XMLSecStartElement xmlSecStartElement,
                 InboundSecurityToken inboundSecurityToken, EncryptedDataType encryptedDataType) throws XMLSecurityException {
+            registerEncryptedElementSecurityEvent(
+                inputProcessorChain, xmlSecStartElement, inboundSecurityToken, encryptedDataType);
+        }
+    }
 
-            //fire a SecurityEvent:
-            final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
-            List<QName> elementPath = xmlSecStartElement.getElementPath();
-            if (elementPath.size() == 3 && WSSUtils.isInSOAPHeader(elementPath)) {
-                EncryptedPartSecurityEvent encryptedPartSecurityEvent =
-                        new EncryptedPartSecurityEvent(inboundSecurityToken, true, documentContext.getProtectionOrder());
-                encryptedPartSecurityEvent.setElementPath(elementPath);
-                encryptedPartSecurityEvent.setXmlSecEvent(xmlSecStartElement);
-                encryptedPartSecurityEvent.setCorrelationID(encryptedDataType.getId());
-                inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedPartSecurityEvent);
-            } else {
-                EncryptedElementSecurityEvent encryptedElementSecurityEvent =
-                        new EncryptedElementSecurityEvent(inboundSecurityToken, true, documentContext.getProtectionOrder());
-                encryptedElementSecurityEvent.setElementPath(elementPath);
-                encryptedElementSecurityEvent.setXmlSecEvent(xmlSecStartElement);
-                encryptedElementSecurityEvent.setCorrelationID(encryptedDataType.getId());
-                inputProcessorChain.getSecurityContext().registerSecurityEvent(encryptedElementSecurityEvent);
+    /**
+     * The CALLING_THREAD counterpart of the DecryptedEventReaderInputProcessor. The StAX reader pulls the
+     * CipherValue through the decrypting stream, so no decryption thread is involved.
+     */
+    private final class CallingThreadEventReaderInputProcessor extends AbstractInputProcessor {
+
+        private final boolean encryptedHeader;
+        private final EncryptedDataType encryptedDataType;
+        private final InboundSecurityToken inboundSecurityToken;
+        private XMLSecStartElement parentXmlSecStartElement;
+        private boolean rootElementProcessed;
+        private int currentXMLStructureDepth;
+        private XMLStreamReader xmlStreamReader;
+        private QName wrapperElementName;
+        private CipherValueInputStream cipherValueInputStream;
+
+        CallingThreadEventReaderInputProcessor(
+                SecurePart.Modifier encryptionModifier, boolean encryptedHeader,
+                XMLSecStartElement parentXmlSecStartElement, EncryptedDataType encryptedDataType,
+                InboundSecurityToken inboundSecurityToken) {
+            super(DecryptInputProcessor.this.getSecurityProperties());
+            addAfterProcessor(DecryptInputProcessor.this);
+            this.rootElementProcessed = encryptionModifier == SecurePart.Modifier.Content;
+            this.encryptedHeader = encryptedHeader;
+            this.parentXmlSecStartElement = parentXmlSecStartElement;
+            this.encryptedDataType = encryptedDataType;
+            this.inboundSecurityToken = inboundSecurityToken;
+            if (parentXmlSecStartElement != null) {
+                this.currentXMLStructureDepth = parentXmlSecStartElement.getDocumentLevel();
+            }
+        }
+
+        void setCipherValueInputStream(CipherValueInputStream cipherValueInputStream) {
+            this.cipherValueInputStream = cipherValueInputStream;
+        }
+
+        void setXmlStreamReader(XMLStreamReader xmlStreamReader, QName wrapperElementName) throws XMLStreamException {
+            this.xmlStreamReader = xmlStreamReader;
+            this.wrapperElementName = wrapperElementName;
+            //position the reader on the first event of the decrypted content
+            do {
+                next();
+            } while (!xmlStreamReader.isStartElement() || !wrapperElementName.equals(xmlStreamReader.getName()));
+            next();
+        }
+
+        @Override
+        public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain)
+                throws XMLStreamException, XMLSecurityException {
+            return processEvent(inputProcessorChain, true);
+        }
+
+        @Override
+        public XMLSecEvent processEvent(InputProcessorChain inputProcessorChain)
+                throws XMLStreamException, XMLSecurityException {
+            return processEvent(inputProcessorChain, false);
+        }
+
+        private XMLSecEvent processEvent(InputProcessorChain inputProcessorChain, boolean headerEvent)
+                throws XMLStreamException, XMLSecurityException {
+
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    currentXMLStructureDepth++;
+                    if (currentXMLStructureDepth > maximumAllowedXMLStructureDepth) {
+                        throw new XMLSecurityException("secureProcessing.MaximumAllowedXMLStructureDepth",
+                                                       new Object[] {maximumAllowedXMLStructureDepth});
+                    }
+                    parentXmlSecStartElement = xmlSecEvent.asStartElement();
+                    if (!rootElementProcessed) {
+                        registerEncryptedElementSecurityEvent(inputProcessorChain, xmlSecEvent.asStartElement(),
+                                                              inboundSecurityToken, encryptedDataType);
+                        rootElementProcessed = true;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    currentXMLStructureDepth--;
+                    if (parentXmlSecStartElement != null) {
+                        parentXmlSecStartElement = parentXmlSecStartElement.getParentXMLSecStartElement();
+                    }
+                    if (wrapperElementName.equals(xmlSecEvent.asEndElement().getName())) {
+                        return finish(inputProcessorChain, headerEvent);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            next();
+            return xmlSecEvent;
+        }
+
+        /**
+         * The decrypted content is complete: skip the rest of the EncryptedData (and EncryptedHeader)
+         * and continue with the event that follows it.
+         */
+        private XMLSecEvent finish(InputProcessorChain inputProcessorChain, boolean headerEvent)
+                throws XMLStreamException, XMLSecurityException {
+            InputProcessorChain subInputProcessorChain = inputProcessorChain.createSubChain(this);
+            QName endElementName =
+                encryptedHeader ? XMLSecurityConstants.TAG_wsse11_EncryptedHeader : XMLSecurityConstants.TAG_xenc_EncryptedData;
+            XMLSecEvent xmlSecEvent;
+            do {
+                xmlSecEvent = nextEvent(subInputProcessorChain, headerEvent);
+            } while (!xmlSecEvent.isEndElement() || !endElementName.equals(xmlSecEvent.asEndElement().getName()));
+
+            inputProcessorChain.getDocumentContext().unsetIsInEncryptedContent(this);
+            xmlSecEvent = headerEvent ? inputProcessorChain.processHeaderEvent() : inputProcessorChain.processEvent();
+            inputProcessorChain.removeProcessor(this);
+            return xmlSecEvent;
+        }
+
+        private void next() throws XMLStreamException {
+            try {
+                xmlStreamReader.next();
+            } catch (XMLStreamException e) {
+                throw unwrapDecryptionFailure(e);
+            } catch (RuntimeException e) {
+                //some parsers report I/O errors of the underlying stream lazily as runtime exceptions
+                if (cipherValueInputStream == null || cipherValueInputStream.getFailure() == null) {
+                    throw e;
+                }
+                throw unwrapDecryptionFailure(new XMLStreamException(e));
+            }
+        }
+
+        /**
+         * A failure while reading the CipherValue reaches us wrapped by the XML parser. Rethrow it
+         * like the decryption thread would have reported it.
+         */
+        private XMLStreamException unwrapDecryptionFailure(XMLStreamException e) {
+            if (cipherValueInputStream == null || cipherValueInputStream.getFailure() == null) {
+                return e;
+            }
+            Exception failure = cipherValueInputStream.getFailure();
+            if (failure instanceof XMLStreamException) {
+                return (XMLStreamException) failure;
             }
+            return new XMLStreamException(failure);
         }
     }
 }
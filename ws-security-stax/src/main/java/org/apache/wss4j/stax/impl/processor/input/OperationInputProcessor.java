@@ -24,6 +24,7 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.utils.WSSUtils;
@@ -33,7 +34,6 @@ import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 /**
  * Processor which emits the Operation-Security-Event
@@ -62,7 +62,7 @@ public class OperationInputProcessor extends AbstractInputProcessor {
             if (elementPath.size() == 3 && WSSUtils.isInSOAPBody(elementPath)) {
                 OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
                 operationSecurityEvent.setOperation(xmlSecEvent.asStartElement().getName());
-                operationSecurityEvent.setCorrelationID(IDGenerator.generateID(null));
+                operationSecurityEvent.setCorrelationID(SecureRandomPool.generateID(null));
                 inputProcessorChain.getSecurityContext().registerSecurityEvent(operationSecurityEvent);
                 inputProcessorChain.removeProcessor(this);
             }
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.utils.WSSUtils;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.AbstractInputProcessor;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+
+/**
+ * The first processor of a push-based InputProcessorChain. It replaces the XMLEventReaderInputProcessor
+ * and hands out the events which were pushed to it, e.g. by a NonBlockingXMLParser.
+ * <p/>
+ * The processors above read ahead in some places: the SecurityHeaderInputProcessor reads the complete
+ * SOAP header before it returns the first event, and the DecryptInputProcessor reads a complete
+ * xenc:EncryptedData element and the event after it. So the pushed events are only made available once
+ * these parts are complete. They are held in memory until then, up to the limit the WSSecurityPushProcessor
+ * enforces (see WSSSecurityProperties#setMaximumHeldPushedBytes(long)).
+ * <p/>
+ * When a processor asks for an event which is not available yet, an XMLStreamException is thrown and
+ * isWaitingForEvents() returns true. This only happens to processors which ask for a single event at a time,
+ * so the chain can be advanced again once the next events were added.
+ */
+public class PushedEventsInputProcessor extends AbstractInputProcessor {
+
+    private final Deque<XMLSecEvent> events = new ArrayDeque<>();
+    private int availableEvents;
+    private boolean waitingForEvents;
+    private boolean bodyStarted;
+    private XMLSecStartElement heldEncryptedData;
+    private boolean encryptedDataComplete;
+
+    public PushedEventsInputProcessor(XMLSecurityProperties securityProperties) {
+        super(securityProperties);
+        setPhase(WSSConstants.Phase.PREPROCESSING);
+    }
+
+    /**
+     * Add the next event of the document
+     */
+    public void addEvent(XMLSecEvent xmlSecEvent) {
+        events.add(xmlSecEvent);
+        waitingForEvents = false;
+        if (encryptedDataComplete) {
+            heldEncryptedData = null;
+            encryptedDataComplete = false;
+        }
+        switch (xmlSecEvent.getEventType()) {
+        case XMLStreamConstants.START_ELEMENT:
+            XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+            if (!bodyStarted) {
+                bodyStarted = isBodyStart(xmlSecStartElement);
+            } else if (heldEncryptedData == null
+                && WSSConstants.TAG_xenc_EncryptedData.equals(xmlSecStartElement.getName())) {
+                heldEncryptedData = xmlSecStartElement;
+            }
+            break;
+        case XMLStreamConstants.END_ELEMENT:
+            if (heldEncryptedData != null
+                && xmlSecEvent.asEndElement().getParentXMLSecStartElement() == heldEncryptedData) {
+                // the DecryptInputProcessor reads one event beyond the end of the EncryptedData
+                encryptedDataComplete = true;
+            }
+            break;
+        case XMLStreamConstants.END_DOCUMENT:
+            bodyStarted = true;
+            heldEncryptedData = null;
+            encryptedDataComplete = false;
+            break;
+        default:
+            break;
+        }
+        if (bodyStarted && heldEncryptedData == null) {
+            availableEvents = events.size();
+        }
+    }
+
+    /**
+     * Returns true if the next event can be processed by the chain
+     */
+    public boolean isEventAvailable() {
+        return availableEvents > 0;
+    }
+
+    /**
+     * Returns true if events were added which are not available to the chain yet
+     */
+    public boolean isHoldingEvents() {
+        return events.size() > availableEvents;
+    }
+
+    /**
+     * Returns true if the chain asked for an event which was not available
+     */
+    public boolean isWaitingForEvents() {
+        return waitingForEvents;
+    }
+
+    private static boolean isBodyStart(XMLSecStartElement xmlSecStartElement) {
+        String soapNamespace = WSSUtils.getSOAPMessageVersionNamespace(xmlSecStartElement);
+        if (soapNamespace == null) {
+            // not a SOAP message, let the chain reject it right away
+            return true;
+        }
+        return xmlSecStartElement.getDocumentLevel() == 2
+            && soapNamespace.equals(xmlSecStartElement.getName().getNamespaceURI())
+            && WSSConstants.TAG_SOAP_BODY_LN.equals(xmlSecStartElement.getName().getLocalPart());
+    }
+
+    @Override
+    public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        return nextEvent();
+    }
+
+    @Override
+    public XMLSecEvent processEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        return nextEvent();
+    }
+
+    @Override
+    public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        // this is the first processor of the chain, so there is no processor to call
+    }
+
+    private XMLSecEvent nextEvent() throws XMLStreamException {
+        if (availableEvents == 0) {
+            waitingForEvents = true;
+            throw new XMLStreamException("The next event is not available yet");
+        }
+        availableEvents--;
+        return events.poll();
+    }
+}
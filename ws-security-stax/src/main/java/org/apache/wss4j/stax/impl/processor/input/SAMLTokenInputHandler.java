@@ -45,6 +45,7 @@ import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -74,7 +75,6 @@ import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
 import org.apache.xml.security.stax.impl.securityToken.AbstractInboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.SignedElementSecurityEvent;
@@ -319,7 +319,7 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
             }
 
             return new AbstractInboundSecurityToken(
-                    inputProcessorChain.getSecurityContext(), IDGenerator.generateID(null),
+                    inputProcessorChain.getSecurityContext(), SecureRandomPool.generateID(null),
                     WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true) {
                 @Override
                 public WSSecurityTokenConstants.TokenType getTokenType() {
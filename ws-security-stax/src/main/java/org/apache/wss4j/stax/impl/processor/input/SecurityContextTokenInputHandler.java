@@ -19,6 +19,7 @@
 package org.apache.wss4j.stax.impl.processor.input;
 
 import org.apache.wss4j.binding.wssc.AbstractSecurityContextTokenType;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -29,7 +30,6 @@ import org.apache.wss4j.stax.validate.TokenContext;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.*;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 
@@ -51,7 +51,7 @@ public class SecurityContextTokenInputHandler extends AbstractInputSecurityHeade
                 parseStructure(eventQueue, index, securityProperties);
         final AbstractSecurityContextTokenType securityContextTokenType = securityContextTokenTypeJAXBElement.getValue();
         if (securityContextTokenType.getId() == null) {
-            securityContextTokenType.setId(IDGenerator.generateID(null));
+            securityContextTokenType.setId(SecureRandomPool.generateID(null));
         }
 
         final QName identifierElementName = new QName(securityContextTokenTypeJAXBElement.getName().getNamespaceURI(),
@@ -21,6 +21,7 @@ package org.apache.wss4j.stax.impl.processor.input;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Iterator;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
@@ -28,9 +29,15 @@ import javax.xml.stream.XMLStreamException;
 
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.ProcessorEvent;
+import org.apache.wss4j.common.jfr.SecurityEvents;
+import org.apache.wss4j.common.jfr.SecurityHeaderEvent;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.impl.XMLSecEventBuffer;
 import org.apache.wss4j.stax.securityEvent.NoSecuritySecurityEvent;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.exceptions.XMLSecurityException;
@@ -43,7 +50,6 @@ import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 /**
  * Processor for the Security-Header XML Structure.
@@ -54,8 +60,9 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
     protected static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SecurityHeaderInputProcessor.class);
 
-    private final ArrayDeque<XMLSecEvent> xmlSecEventList = new ArrayDeque<>();
+    private final XMLSecEventBuffer xmlSecEventList = new XMLSecEventBuffer();
     private int startIndexForProcessor;
+    private int engagedHandlers;
 
     public SecurityHeaderInputProcessor(WSSSecurityProperties securityProperties) {
         super(securityProperties);
@@ -78,6 +85,9 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
                 = new InternalSecurityHeaderBufferProcessor(getSecurityProperties());
         subInputProcessorChain.addProcessor(internalSecurityHeaderBufferProcessor);
 
+        final SecurityHeaderEvent securityHeaderEvent = SecurityEvents.securityHeader();
+        securityHeaderEvent.begin();
+
         boolean responsibleSecurityHeaderFound = false;
         boolean timestampFound = false;
 
@@ -135,6 +145,7 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
                     if (documentLevel == 3 && responsibleSecurityHeaderFound
                             && xmlSecEndElement.getName().equals(WSSConstants.TAG_WSSE_SECURITY)) {
 
+                        commitSecurityHeaderEvent(securityHeaderEvent);
                         return finalizeHeaderProcessing(
                                 inputProcessorChain, subInputProcessorChain,
                                 internalSecurityHeaderBufferProcessor, xmlSecEventList);
@@ -171,19 +182,30 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
         //if we reach this state we didn't find a security header
         //issue a security event to notify about this fact:
         NoSecuritySecurityEvent noSecuritySecurityEvent = new NoSecuritySecurityEvent();
-        noSecuritySecurityEvent.setCorrelationID(IDGenerator.generateID(null));
+        noSecuritySecurityEvent.setCorrelationID(SecureRandomPool.generateID(null));
         inputProcessorChain.getSecurityContext().registerSecurityEvent(noSecuritySecurityEvent);
 
+        commitSecurityHeaderEvent(securityHeaderEvent);
         return finalizeHeaderProcessing(
                 inputProcessorChain, subInputProcessorChain,
                 internalSecurityHeaderBufferProcessor, xmlSecEventList);
     }
 
+    private void commitSecurityHeaderEvent(SecurityHeaderEvent securityHeaderEvent) {
+        if (securityHeaderEvent.shouldCommit()) {
+            securityHeaderEvent.setDirection("inbound");
+            securityHeaderEvent.setStreaming(true);
+            securityHeaderEvent.setActor(((WSSSecurityProperties) getSecurityProperties()).getActor());
+            securityHeaderEvent.setElements(engagedHandlers);
+            securityHeaderEvent.commit();
+        }
+    }
+
     private XMLSecEvent finalizeHeaderProcessing(
             InputProcessorChain originalInputProcessorChain,
             InputProcessorChain subInputProcessorChain,
             InternalSecurityHeaderBufferProcessor internalSecurityHeaderBufferProcessor,
-            Deque<XMLSecEvent> xmlSecEventList) {
+            XMLSecEventBuffer xmlSecEventList) {
 
         subInputProcessorChain.removeProcessor(internalSecurityHeaderBufferProcessor);
         subInputProcessorChain.addProcessor(
@@ -197,14 +219,14 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
         originalInputProcessorChain.getProcessors().addAll(subInputProcessorChain.getProcessors());
 
         //return first event now;
-        return xmlSecEventList.pollLast();
+        return xmlSecEventList.pollOldest();
     }
 
     @SuppressWarnings("unchecked")
     private void engageSecurityHeaderHandler(InputProcessorChain inputProcessorChain,
                                              XMLSecurityProperties securityProperties,
-                                             Deque<XMLSecEvent> eventQueue,
-                                             Integer index,
+                                             XMLSecEventBuffer eventQueue,
+                                             int index,
                                              QName elementName)
             throws WSSecurityException, XMLStreamException {
 
@@ -216,7 +238,34 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
         }
         try {
             XMLSecurityHeaderHandler xmlSecurityHeaderHandler = clazz.getDeclaredConstructor().newInstance();
-            xmlSecurityHeaderHandler.handle(inputProcessorChain, securityProperties, eventQueue, index);
+            //hand over only the events beginning with the handlers element, so that the
+            //buffered events before it don't need to be materialized
+            final Deque<XMLSecEvent> handlerEventQueue = new ArrayDeque<>(eventQueue.size() - index);
+            Iterator<XMLSecEvent> xmlSecEventIterator = eventQueue.iterator(index);
+            while (xmlSecEventIterator.hasNext()) {
+                handlerEventQueue.push(xmlSecEventIterator.next());
+            }
+            final SecurityMetrics securityMetrics = ((WSSSecurityProperties) securityProperties).getSecurityMetrics();
+            final ProcessorEvent processorEvent = SecurityEvents.processor();
+            processorEvent.begin();
+            long start = securityMetrics.isEnabled() ? System.nanoTime() : 0L;
+            xmlSecurityHeaderHandler.handle(inputProcessorChain, securityProperties, handlerEventQueue, 0);
+            //a handler may take out the newest events to replay them itself (e.g. the EncryptedDataInputHandler)
+            while (eventQueue.size() > index && eventQueue.peekNewest() != handlerEventQueue.peekFirst()) {
+                eventQueue.pollNewest();
+            }
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordTiming(
+                    SecurityMetrics.TimingType.INPUT_HANDLER, elementName.getLocalPart(), System.nanoTime() - start
+                );
+            }
+            if (processorEvent.shouldCommit()) {
+                processorEvent.setTokenType(elementName.getLocalPart());
+                processorEvent.setNamespace(elementName.getNamespaceURI());
+                processorEvent.setProcessor(clazz.getName());
+                processorEvent.commit();
+            }
+            engagedHandlers++;
         } catch (NoSuchMethodException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
         } catch (WSSecurityException e) {
@@ -241,7 +290,7 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
         public XMLSecEvent processHeaderEvent(InputProcessorChain inputProcessorChain)
                 throws XMLStreamException, XMLSecurityException {
             XMLSecEvent xmlSecEvent = inputProcessorChain.processHeaderEvent();
-            xmlSecEventList.push(xmlSecEvent);
+            xmlSecEventList.add(xmlSecEvent);
             return xmlSecEvent;
         }
 
@@ -276,7 +325,7 @@ public class SecurityHeaderInputProcessor extends AbstractInputProcessor {
                 throws XMLStreamException, XMLSecurityException {
 
             if (!xmlSecEventList.isEmpty()) {
-                return xmlSecEventList.pollLast();
+                return xmlSecEventList.pollOldest();
             } else {
                 inputProcessorChain.removeProcessor(this);
                 return inputProcessorChain.processEvent();
@@ -21,6 +21,8 @@ package org.apache.wss4j.stax.impl.processor.input;
 import org.apache.wss4j.binding.wsu10.TimestampType;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.DateUtil;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -34,12 +36,12 @@ import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 import jakarta.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
@@ -75,7 +77,7 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         checkBSPCompliance(inputProcessorChain, timestampType, xmlSecEvents);
 
         if (timestampType.getId() == null) {
-            timestampType.setId(IDGenerator.generateID(null));
+            timestampType.setId(SecureRandomPool.generateID(null));
         }
 
         TimestampValidator timestampValidator = wssSecurityProperties.getValidator(WSSConstants.TAG_WSU_TIMESTAMP);
@@ -89,7 +91,7 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         if (timestampType.getCreated() != null) {
             try {
                 timestampSecurityEvent.setCreated(
-                        timestampType.getCreated().getAsZonedDateTime().toInstant());
+                        DateUtil.parseDateTime(timestampType.getCreated().getValue()));
             } catch (IllegalArgumentException e) { //NOPMD
                 //ignore
             }
@@ -97,7 +99,7 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         if (timestampType.getExpires() != null) {
             try {
                 timestampSecurityEvent.setExpires(
-                        timestampType.getExpires().getAsZonedDateTime().toInstant());
+                        DateUtil.parseDateTime(timestampType.getExpires().getValue()));
             } catch (IllegalArgumentException e) { //NOPMD
                 //ignore
             }
@@ -146,17 +148,9 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         }
 
         if (timestampType.getCreated() != null) {
-            ZonedDateTime createdDate;
-            try {
-                createdDate = timestampType.getCreated().getAsZonedDateTime();
-            } catch (DateTimeParseException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
-            
-            if (!ZoneOffset.UTC.equals(createdDate.getZone())) {
-                securityContext.handleBSPRule(BSPRule.R3217);
-            }
-            
+            Instant createdDate =
+                parseDateTime(timestampType.getCreated().getValue(), securityContext, BSPRule.R3217);
+
             if (createdDate.getNano() > 0) {
                 int milliseconds = createdDate.get(ChronoField.MILLI_OF_SECOND);
                 if (milliseconds * 1000000 != createdDate.getNano()) {
@@ -174,17 +168,9 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         }
 
         if (timestampType.getExpires() != null) {
-            ZonedDateTime expiresDate;
-            try {
-                expiresDate = timestampType.getExpires().getAsZonedDateTime();
-            } catch (DateTimeParseException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
-            
-            if (!ZoneOffset.UTC.equals(expiresDate.getZone())) {
-                securityContext.handleBSPRule(BSPRule.R3223);
-            }
-            
+            Instant expiresDate =
+                parseDateTime(timestampType.getExpires().getValue(), securityContext, BSPRule.R3223);
+
             if (expiresDate.getNano() > 0) {
                 int milliseconds = expiresDate.get(ChronoField.MILLI_OF_SECOND);
                 if (milliseconds * 1000000 != expiresDate.getNano()) {
@@ -200,4 +186,21 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         }
     }
 
+    private Instant parseDateTime(String dateTime, WSInboundSecurityContext securityContext, BSPRule utcRule)
+        throws WSSecurityException {
+        Instant instant = DateUtil.parseUTCDateTime(dateTime);
+        if (instant != null) {
+            return instant;
+        }
+        try {
+            ZonedDateTime zonedDateTime = ZonedDateTime.parse(dateTime);
+            if (!ZoneOffset.UTC.equals(zonedDateTime.getZone())) {
+                securityContext.handleBSPRule(utcRule);
+            }
+            return zonedDateTime.toInstant();
+        } catch (DateTimeParseException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+    }
+
 }
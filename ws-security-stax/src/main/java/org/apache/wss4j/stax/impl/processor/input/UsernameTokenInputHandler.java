@@ -25,7 +25,9 @@ import org.apache.wss4j.binding.wsu10.AttributedDateTime;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.DateUtil;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -37,7 +39,6 @@ import org.apache.wss4j.stax.validate.UsernameTokenValidatorImpl;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.*;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 
@@ -46,7 +47,6 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 
 import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.Deque;
 import java.util.List;
@@ -69,12 +69,13 @@ public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandle
         checkBSPCompliance(inputProcessorChain, usernameTokenType, xmlSecEvents);
 
         if (usernameTokenType.getId() == null) {
-            usernameTokenType.setId(IDGenerator.generateID(null));
+            usernameTokenType.setId(SecureRandomPool.generateID(null));
         }
 
         // Verify Created
         final WSSSecurityProperties wssSecurityProperties = (WSSSecurityProperties) securityProperties;
-        Instant created = verifyCreated(wssSecurityProperties, usernameTokenType);
+        Instant now = wssSecurityProperties.getTimeSource().now();
+        Instant created = verifyCreated(wssSecurityProperties, usernameTokenType, now);
 
         ReplayCache replayCache = wssSecurityProperties.getNonceReplayCache();  //NOPMD
         final EncodedString encodedNonce =
@@ -82,7 +83,12 @@ public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandle
         if (encodedNonce != null && replayCache != null) {
             // Check for replay attacks
             String nonce = encodedNonce.getValue();
-            if (replayCache.contains(nonce)) {
+            boolean replayed = replayCache.contains(nonce);
+            SecurityMetrics securityMetrics = wssSecurityProperties.getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, replayed);
+            }
+            if (replayed) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
             }
 
@@ -93,7 +99,7 @@ public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandle
             if (created == null || utTTL <= 0) {
                 replayCache.add(nonce);
             } else {
-                replayCache.add(nonce, Instant.now().plusSeconds(utTTL));
+                replayCache.add(nonce, now.plusSeconds(utTTL));
             }
         }
 
@@ -190,7 +196,8 @@ public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandle
 
     private Instant verifyCreated(
         WSSSecurityProperties wssSecurityProperties,
-        UsernameTokenType usernameTokenType
+        UsernameTokenType usernameTokenType,
+        Instant now
     ) throws WSSecurityException {
         // Verify Created
         int ttl = wssSecurityProperties.getUtTTL();
@@ -201,18 +208,18 @@ public class UsernameTokenInputHandler extends AbstractInputSecurityHeaderHandle
 
         if (attributedDateTimeCreated != null) {
             // Parse the Date
-            ZonedDateTime created;
+            Instant created;
             try {
-                created = ZonedDateTime.parse(attributedDateTimeCreated.getValue());
+                created = DateUtil.parseDateTime(attributedDateTimeCreated.getValue());
             } catch (DateTimeParseException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
 
             // Validate whether the security semantics have expired
-            if (!DateUtil.verifyCreated(created.toInstant(), ttl, futureTTL)) {
+            if (!DateUtil.verifyCreated(created, ttl, futureTTL, now)) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
             }
-            return created.toInstant();
+            return created;
         }
         return null;
     }
@@ -18,21 +18,46 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
+import java.security.Key;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.namespace.QName;
+
 import org.apache.wss4j.binding.wss10.ObjectFactory;
 import org.apache.wss4j.binding.wss10.ReferenceType;
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
+import org.apache.xml.security.binding.xmldsig.DigestMethodType;
 import org.apache.xml.security.binding.xmldsig.KeyInfoType;
 import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
 import org.apache.xml.security.binding.xmlenc.EncryptionMethodType;
+import org.apache.xml.security.binding.xmlenc11.MGFType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
+import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.processor.input.XMLEncryptedKeyInputHandler;
+import org.apache.xml.security.stax.impl.securityToken.AbstractInboundSecurityToken;
+import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.XMLUtils;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 
@@ -64,6 +89,78 @@ public class WSSEncryptedKeyInputHandler extends XMLEncryptedKeyInputHandler {
         }
 
         super.handle(inputProcessorChain, encryptedKeyType, responsibleXMLSecStartXMLEvent, securityProperties);
+
+        EncryptedKeyCache encryptedKeyCache = ((WSSSecurityProperties) securityProperties).getEncryptedKeyCache();
+        if (encryptedKeyCache != null) {
+            registerCachingSecurityTokenProvider(inputProcessorChain, encryptedKeyType,
+                                                 (WSSSecurityProperties) securityProperties, encryptedKeyCache);
+        }
+    }
+
+    /**
+     * The unwrap of the key happens inside the SecurityToken created by the super class. To be able to
+     * cache the unwrapped key, the registered SecurityTokenProvider is replaced by one which hands out a
+     * CachingSecurityToken delegating to that SecurityToken. It puts a cached key into the key table of the
+     * SecurityToken before asking it for the key, so that the SecurityToken doesn't unwrap the key again.
+     * The CachingSecurityToken is added to the wrapped tokens of the key wrapping token as well, next to the
+     * SecurityToken itself, which is still referenced by the EncryptedKeyTokenSecurityEvent.
+     * An EncryptedKey carried as a XOP attachment is not cached, as the attachment is only read by the unwrap.
+     */
+    private void registerCachingSecurityTokenProvider(
+        InputProcessorChain inputProcessorChain, EncryptedKeyType encryptedKeyType,
+        WSSSecurityProperties securityProperties, EncryptedKeyCache encryptedKeyCache
+    ) throws XMLSecurityException {
+        final byte[] encryptedKey = getInlineCipherValue(encryptedKeyType);
+        if (encryptedKey == null || encryptedKeyType.getEncryptionMethod() == null) {
+            return;
+        }
+
+        final InboundSecurityContext inboundSecurityContext = inputProcessorChain.getSecurityContext();
+        final SecurityTokenProvider<? extends InboundSecurityToken> securityTokenProvider =
+            inboundSecurityContext.getSecurityTokenProvider(encryptedKeyType.getId());
+        if (securityTokenProvider == null
+            || !(securityTokenProvider.getSecurityToken() instanceof AbstractInboundSecurityToken)) {
+            return;
+        }
+
+        final InboundSecurityToken cachingSecurityToken =
+            new CachingSecurityToken(
+                (AbstractInboundSecurityToken) securityTokenProvider.getSecurityToken(), encryptedKeyType,
+                encryptedKey, inboundSecurityContext, securityProperties, encryptedKeyCache
+            );
+
+        inboundSecurityContext.registerSecurityTokenProvider(
+            encryptedKeyType.getId(),
+            new SecurityTokenProvider<InboundSecurityToken>() {
+
+                @Override
+                public InboundSecurityToken getSecurityToken() throws XMLSecurityException {
+                    return cachingSecurityToken;
+                }
+
+                @Override
+                public String getId() {
+                    return securityTokenProvider.getId();
+                }
+            });
+    }
+
+    private static byte[] getInlineCipherValue(EncryptedKeyType encryptedKeyType) {
+        if (encryptedKeyType.getCipherData() == null || encryptedKeyType.getCipherData().getCipherValue() == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object content : encryptedKeyType.getCipherData().getCipherValue().getContent()) {
+            if (!(content instanceof String)) {
+                // the key is in an attachment
+                return null;
+            }
+            sb.append((String) content);
+        }
+        if (sb.length() == 0) {
+            return null;
+        }
+        return Base64.getMimeDecoder().decode(sb.toString());
     }
 
     //if this EncryptedKey structure contains a reference list, instantiate a new DecryptInputProcessor
@@ -114,6 +211,205 @@ public class WSSEncryptedKeyInputHandler extends XMLEncryptedKeyInputHandler {
         }
     }
 
+    /**
+     * Serves the requests for the symmetric key of an EncryptedKey SecurityToken from the EncryptedKeyCache,
+     * and delegates everything else to the SecurityToken. A cache hit does everything the unwrap would do
+     * except the private key operation, i.e. the private key is still retrieved and the same security events
+     * are registered.
+     */
+    private static final class CachingSecurityToken implements InboundSecurityToken {
+
+        private final AbstractInboundSecurityToken securityToken;
+        private final EncryptedKeyType encryptedKeyType;
+        private final byte[] encryptedKey;
+        private final InboundSecurityContext inboundSecurityContext;
+        private final WSSSecurityProperties securityProperties;
+        private final EncryptedKeyCache encryptedKeyCache;
+        private boolean wrappedTokenAdded;
+
+        CachingSecurityToken(AbstractInboundSecurityToken securityToken, EncryptedKeyType encryptedKeyType,
+                             byte[] encryptedKey, InboundSecurityContext inboundSecurityContext,
+                             WSSSecurityProperties securityProperties, EncryptedKeyCache encryptedKeyCache) {
+            this.securityToken = securityToken;
+            this.encryptedKeyType = encryptedKeyType;
+            this.encryptedKey = encryptedKey;
+            this.inboundSecurityContext = inboundSecurityContext;
+            this.securityProperties = securityProperties;
+            this.encryptedKeyCache = encryptedKeyCache;
+        }
+
+        @Override
+        public String getId() {
+            return securityToken.getId();
+        }
+
+        @Override
+        public boolean isAsymmetric() throws XMLSecurityException {
+            return securityToken.isAsymmetric();
+        }
+
+        @Override
+        public Map<String, Key> getSecretKey() throws XMLSecurityException {
+            return securityToken.getSecretKey();
+        }
+
+        @Override
+        public PublicKey getPublicKey() throws XMLSecurityException {
+            return securityToken.getPublicKey();
+        }
+
+        @Override
+        public X509Certificate[] getX509Certificates() throws XMLSecurityException {
+            return securityToken.getX509Certificates();
+        }
+
+        @Override
+        public InboundSecurityToken getKeyWrappingToken() throws XMLSecurityException {
+            InboundSecurityToken wrappingSecurityToken = securityToken.getKeyWrappingToken();
+            if (wrappingSecurityToken != null && !wrappedTokenAdded) {
+                wrappingSecurityToken.addWrappedToken(this);
+                wrappedTokenAdded = true;
+            }
+            return wrappingSecurityToken;
+        }
+
+        @Override
+        public List<InboundSecurityToken> getWrappedTokens() {
+            return securityToken.getWrappedTokens();
+        }
+
+        @Override
+        public SecurityTokenConstants.KeyIdentifier getKeyIdentifier() {
+            return securityToken.getKeyIdentifier();
+        }
+
+        @Override
+        public SecurityTokenConstants.TokenType getTokenType() {
+            return securityToken.getTokenType();
+        }
+
+        @Override
+        public List<SecurityTokenConstants.TokenUsage> getTokenUsages() {
+            return securityToken.getTokenUsages();
+        }
+
+        @Override
+        public void addTokenUsage(SecurityTokenConstants.TokenUsage tokenUsage) throws XMLSecurityException {
+            securityToken.addTokenUsage(tokenUsage);
+        }
+
+        @Override
+        public String getSha1Identifier() {
+            return securityToken.getSha1Identifier();
+        }
+
+        @Override
+        public PublicKey getPublicKey(String algorithmURI, XMLSecurityConstants.AlgorithmUsage algorithmUsage,
+                                      String correlationID) throws XMLSecurityException {
+            return securityToken.getPublicKey(algorithmURI, algorithmUsage, correlationID);
+        }
+
+        @Override
+        public void addWrappedToken(InboundSecurityToken inboundSecurityToken) {
+            securityToken.addWrappedToken(inboundSecurityToken);
+        }
+
+        @Override
+        public void verify() throws XMLSecurityException {
+            securityToken.verify();
+        }
+
+        @Override
+        public List<QName> getElementPath() {
+            return securityToken.getElementPath();
+        }
+
+        @Override
+        public XMLSecEvent getXMLSecEvent() {
+            return securityToken.getXMLSecEvent();
+        }
+
+        @Override
+        public boolean isIncludedInMessage() {
+            return securityToken.isIncludedInMessage();
+        }
+
+        @Override
+        public Key getSecretKey(String algorithmURI, XMLSecurityConstants.AlgorithmUsage algorithmUsage,
+                                String correlationID) throws XMLSecurityException {
+            if (securityToken.getSecretKey().get(algorithmURI) != null) {
+                // the key was already unwrapped for this algorithm
+                return securityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+            }
+            InboundSecurityToken wrappingSecurityToken = getKeyWrappingToken();
+            String cacheKey = getCacheKey(wrappingSecurityToken);
+            if (cacheKey == null) {
+                return securityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+            }
+
+            byte[] secret = encryptedKeyCache.get(cacheKey);
+            SecurityMetrics securityMetrics = securityProperties.getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.ENCRYPTED_KEY, secret != null);
+            }
+            if (secret == null) {
+                Key key = securityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+                // this includes the random key of a failed unwrap, see EncryptedKeyCache
+                encryptedKeyCache.add(cacheKey, key.getEncoded());
+                return key;
+            }
+
+            String transportAlgorithm = encryptedKeyType.getEncryptionMethod().getAlgorithm();
+            wrappingSecurityToken.getSecretKey(transportAlgorithm, XMLSecurityConstants.Asym_Key_Wrap, correlationID);
+            DigestMethodType digestMethodType =
+                XMLSecurityUtils.getQNameType(encryptedKeyType.getEncryptionMethod().getContent(),
+                                              XMLSecurityConstants.TAG_dsig_DigestMethod);
+            if (digestMethodType != null) {
+                AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = new AlgorithmSuiteSecurityEvent();
+                algorithmSuiteSecurityEvent.setAlgorithmURI(digestMethodType.getAlgorithm());
+                algorithmSuiteSecurityEvent.setAlgorithmUsage(XMLSecurityConstants.EncDig);
+                algorithmSuiteSecurityEvent.setCorrelationID(correlationID);
+                inboundSecurityContext.registerSecurityEvent(algorithmSuiteSecurityEvent);
+            }
+            if (securityToken.getSha1Identifier() == null) {
+                securityToken.setSha1Identifier(XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedKey)));
+            }
+
+            String keyAlgorithm = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(algorithmURI);
+            securityToken.setSecretKey(algorithmURI, new SecretKeySpec(secret, keyAlgorithm));
+            return securityToken.getSecretKey(algorithmURI, algorithmUsage, correlationID);
+        }
+
+        private String getCacheKey(InboundSecurityToken wrappingSecurityToken) throws XMLSecurityException {
+            if (wrappingSecurityToken == null || !wrappingSecurityToken.isAsymmetric()) {
+                return null;
+            }
+            PublicKey publicKey = wrappingSecurityToken.getPublicKey();
+            X509Certificate[] x509Certificates = wrappingSecurityToken.getX509Certificates();
+            if (publicKey == null && x509Certificates != null && x509Certificates.length > 0) {
+                publicKey = x509Certificates[0].getPublicKey();
+            }
+            if (publicKey == null) {
+                return null;
+            }
+
+            List<Object> encryptionMethodContent = encryptedKeyType.getEncryptionMethod().getContent();
+            DigestMethodType digestMethodType =
+                XMLSecurityUtils.getQNameType(encryptionMethodContent, XMLSecurityConstants.TAG_dsig_DigestMethod);
+            MGFType mgfType = XMLSecurityUtils.getQNameType(encryptionMethodContent, XMLSecurityConstants.TAG_xenc11_MGF);
+            byte[] oaepParams = XMLSecurityUtils.getQNameType(encryptionMethodContent,
+                                                              XMLSecurityConstants.TAG_xenc_OAEPparams);
+
+            // the same parameters as in the DOM EncryptedKeyProcessor, so that a cache can be shared
+            return EncryptedKeyCache.createCacheKey(
+                publicKey.getEncoded(), encryptedKey, encryptedKeyType.getEncryptionMethod().getAlgorithm(),
+                digestMethodType != null ? digestMethodType.getAlgorithm() : null,
+                mgfType != null ? mgfType.getAlgorithm() : null,
+                oaepParams != null ? oaepParams : new byte[0]
+            );
+        }
+    }
+
     @Override
     protected byte[] getBytesFromAttachment(String xopUri, final XMLSecurityProperties securityProperties) throws XMLSecurityException {
         WSSSecurityProperties securityProps = (WSSSecurityProperties)securityProperties;
@@ -24,7 +24,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -42,7 +44,9 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.stax.ext.CompletableInputProcessor;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -75,7 +79,8 @@ import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
-public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
+public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor
+    implements CompletableInputProcessor {
 
     private boolean replayChecked = false;
 
@@ -272,6 +277,39 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
         return super.processEvent(inputProcessorChain);
     }
 
+    @Override
+    public boolean isComplete(InputProcessorChain inputProcessorChain) {
+        if (!replayChecked) {
+            return false;
+        }
+        //every same-document reference must have been found. The digest of a reference is computed by an
+        //InternalSignatureReferenceVerifier, which stays in the chain until the end of the referenced element
+        List<ReferenceType> processedReferences = getProcessedReferences();
+        List<ReferenceType> references = getSignatureType().getSignedInfo().getReference();
+        for (int i = 0; i < references.size(); i++) {
+            ReferenceType referenceType = references.get(i);
+            String uri = referenceType.getURI();
+            if ((uri == null || uri.isEmpty() || uri.charAt(0) == '#')
+                && !processedReferences.contains(referenceType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Collection<String> getProcessedIds(InputProcessorChain inputProcessorChain) {
+        List<ReferenceType> processedReferences = getProcessedReferences();
+        List<String> processedIds = new ArrayList<>(processedReferences.size());
+        for (int i = 0; i < processedReferences.size(); i++) {
+            String uri = processedReferences.get(i).getURI();
+            if (uri != null && !uri.isEmpty()) {
+                processedIds.add(XMLSecurityUtils.dropReferenceMarker(uri));
+            }
+        }
+        return processedIds;
+    }
+
     @Override
     protected void processElementPath(List<QName> elementPath, InputProcessorChain inputProcessorChain,
                                       XMLSecEvent xmlSecEvent, ReferenceType referenceType)
@@ -313,7 +351,12 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             final String cacheKey =
                     timestampSecurityEvent.getCreated().get(ChronoField.MILLI_OF_SECOND)
                     + "" + Arrays.hashCode(getSignatureType().getSignatureValue().getValue());
-            if (replayCache.contains(cacheKey)) {
+            boolean replayed = replayCache.contains(cacheKey);
+            SecurityMetrics securityMetrics = ((WSSSecurityProperties)getSecurityProperties()).getSecurityMetrics();
+            if (securityMetrics.isEnabled()) {
+                securityMetrics.recordCacheAccess(SecurityMetrics.CacheType.REPLAY, replayed);
+            }
+            if (replayed) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
             }
 
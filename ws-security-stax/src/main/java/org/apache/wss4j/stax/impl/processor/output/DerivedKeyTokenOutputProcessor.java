@@ -33,6 +33,7 @@ import org.apache.wss4j.common.derivedKey.DerivationAlgorithm;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -45,7 +46,6 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
@@ -76,7 +76,7 @@ public class DerivedKeyTokenOutputProcessor extends AbstractOutputProcessor {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE);
             }
 
-            final String wsuIdDKT = IDGenerator.generateID(null);
+            final String wsuIdDKT = SecureRandomPool.generateID(null);
 
             int offset = 0;
             int length = 0;
@@ -106,7 +106,7 @@ public class DerivedKeyTokenOutputProcessor extends AbstractOutputProcessor {
                 WSSConstants.WS_SEC_CONV_DEFAULT_LABEL + WSSConstants.WS_SEC_CONV_DEFAULT_LABEL;
             byte[] label = defaultLabel.getBytes(StandardCharsets.UTF_8);
 
-            byte[] nonce = WSSConstants.generateBytes(16);
+            byte[] nonce = SecureRandomPool.generateBytes(16);
 
             byte[] seed = new byte[label.length + nonce.length];
             System.arraycopy(label, 0, seed, 0, label.length);
@@ -263,7 +263,7 @@ public class DerivedKeyTokenOutputProcessor extends AbstractOutputProcessor {
 
             SecurityToken wrappingToken = securityToken.getKeyWrappingToken();
             List<XMLSecAttribute> attributes = new ArrayList<>(2);
-            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
             if (WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE.equals(keyIdentifier) && !useSingleCertificate) {
                 attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_X509_PKIPATH_V1));
             } else if (derivedKeyTokenReference == WSSConstants.DerivedKeyTokenReference.EncryptedKey
@@ -277,7 +277,11 @@ public class DerivedKeyTokenOutputProcessor extends AbstractOutputProcessor {
             X509Certificate[] x509Certificates = wrappingToken.getX509Certificates();
             String tokenId = wrappingToken.getId();
 
-            if (derivedKeyTokenReference == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
+            if (derivedKeyTokenReference == WSSConstants.DerivedKeyTokenReference.EncryptedKey
+                && wrappingToken.getKeyWrappingToken() == null && sha1Identifier != null) {
+                // The EncryptedKey was sent in a previous message
+                WSSUtils.createEncryptedKeySha1IdentifierStructure(this, outputProcessorChain, sha1Identifier);
+            } else if (derivedKeyTokenReference == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
                 String valueType = WSSConstants.NS_WSS_ENC_KEY_VALUE_TYPE;
                 WSSUtils.createBSTReferenceStructure(this, outputProcessorChain, tokenId, valueType, true);
             } else if (WSSecurityTokenConstants.KeyIdentifier_IssuerSerial.equals(keyIdentifier)) {
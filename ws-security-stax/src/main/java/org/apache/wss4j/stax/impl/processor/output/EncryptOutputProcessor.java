@@ -18,20 +18,26 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Cipher;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
@@ -41,6 +47,8 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -55,14 +63,18 @@ import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.ext.SecurePart.Modifier;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.EncryptionPartDef;
+import org.apache.xml.security.stax.impl.XMLSecurityEventWriter;
 import org.apache.xml.security.stax.impl.processor.output.AbstractEncryptOutputProcessor;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.xml.security.stax.impl.util.TrimmerOutputStream;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants.KeyIdentifier;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.XMLUtils;
 
 /**
  * Processor to encrypt XML structures
@@ -72,6 +84,19 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(EncryptOutputProcessor.class);
 
+    //the plaintext is serialized inside of a dummy wrapper element, which is trimmed before the encryption
+    private static final XMLSecStartElement WRAPPER_START_ELEMENT =
+        XMLSecEventFactory.createXmlSecStartElement(new QName("a"), (List<XMLSecAttribute>) null, null);
+    private static final XMLSecEndElement WRAPPER_END_ELEMENT =
+        XMLSecEventFactory.createXmlSecEndElement(new QName("a"));
+
+    private static final char[] BASE64_ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int BASE64_LINE_LENGTH = 76;
+
+    private static final ConcurrentMap<Class<?>, Constructor<OutputStream>> TRANSFORMER_CONSTRUCTORS =
+        new ConcurrentHashMap<>();
+
     public EncryptOutputProcessor() throws XMLSecurityException {
         super();
     }
@@ -104,7 +129,7 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                     EncryptionPartDef encryptionPartDef = new EncryptionPartDef();
                     encryptionPartDef.setSecurePart(securePart);
                     encryptionPartDef.setModifier(securePart.getModifier());
-                    encryptionPartDef.setEncRefId(IDGenerator.generateID(null));
+                    encryptionPartDef.setEncRefId(SecureRandomPool.generateID(null));
 
                     Map<Object, SecurePart> dynamicSecureParts =
                         outputProcessorChain.getSecurityContext().getAsMap(WSSConstants.SIGNATURE_PARTS);
@@ -232,11 +257,17 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
             );
         }
 
+        //attachments which were already encrypted when they were digested for the signature
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor =
+            outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_SINGLE_PASS_ATTACHMENT_ENCRYPTOR);
+
         List<Attachment> attachments = attachmentRequestCallback.getAttachments();
         if (attachments != null) {
             for (int i = 0; i < attachments.size(); i++) {
                 final Attachment attachment = attachments.get(i);
                 final String attachmentId = attachment.getId();
+                final boolean encryptedWithSignature = singlePassAttachmentEncryptor != null
+                    && singlePassAttachmentEncryptor.isEncrypted(attachmentId);
 
                 String tokenId = outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION);
                 SecurityTokenProvider<OutboundSecurityToken> securityTokenProvider =
@@ -247,11 +278,22 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                 encryptionPartDef.setModifier(attachmentSecurePart.getModifier());
                 encryptionPartDef.setCipherReferenceId(attachment.getId());
                 encryptionPartDef.setMimeType(attachment.getMimeType());
-                encryptionPartDef.setEncRefId(IDGenerator.generateID(null));
+                encryptionPartDef.setEncRefId(SecureRandomPool.generateID(null));
                 encryptionPartDef.setKeyId(securityTokenProvider.getId());
                 encryptionPartDef.setSymmetricKey(securityToken.getSecretKey(getSecurityProperties().getEncryptionSymAlgorithm()));
+                if (encryptedWithSignature) {
+                    singlePassAttachmentEncryptor.checkEncryptionParameters(
+                        getSecurityProperties().getEncryptionSymAlgorithm(), encryptionPartDef.getSymmetricKey(),
+                        SecurePart.Modifier.Element == encryptionPartDef.getModifier()
+                    );
+                    encryptionPartDef.setMimeType(singlePassAttachmentEncryptor.getOriginalMimeType(attachmentId));
+                }
                 outputProcessorChain.getSecurityContext().putAsList(EncryptionPartDef.class, encryptionPartDef);
 
+                if (encryptedWithSignature) {
+                    continue;
+                }
+
                 final Attachment resultAttachment = new Attachment();
                 resultAttachment.setId(attachmentId);
                 resultAttachment.setMimeType("application/octet-stream");
@@ -267,7 +309,7 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                     cipher = Cipher.getInstance(jceAlgorithm);
 
                     int ivLen = JCEMapper.getIVLengthFromURI(encryptionSymAlgorithm) / 8;
-                    byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+                    byte[] iv = SecureRandomPool.generateBytes(ivLen);
                     AlgorithmParameterSpec paramSpec =
                         XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv);
                     cipher.init(Cipher.ENCRYPT_MODE, encryptionPartDef.getSymmetricKey(), paramSpec);
@@ -299,12 +341,23 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
     }
 
     /**
-     * Processor which handles the effective encryption of the data
+     * Processor which handles the effective encryption of the data.
+     *
+     * The plaintext events are serialized, encrypted and base64 encoded with fixed size buffers per
+     * encrypted part, and the CipherValue characters are output in chunks as soon as they are encoded,
+     * instead of being collected in intermediate byte arrays, Strings and buffered character events.
+     * The cipher and stream setup of the super class are private, so we have to take over init(),
+     * processEvent() and doFinalInternal() here.
      */
     class InternalEncryptionOutputProcessor extends AbstractInternalEncryptionOutputProcessor {
 
         private boolean doEncryptedHeader = false;
         private final OutboundSecurityToken securityToken;
+        private XMLEventWriter xmlEventWriter;
+        private OutputStream plaintextOutputStream;
+        private OutputProcessorChain currentOutputProcessorChain;
+        private OutputProcessorChain charactersOutputProcessorChain;
+        private int elementCounter;
 
         InternalEncryptionOutputProcessor(EncryptionPartDef encryptionPartDef, XMLSecStartElement xmlSecStartElement,
                                           String encoding, OutboundSecurityToken securityToken)
@@ -317,6 +370,41 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
             this.securityToken = securityToken;
         }
 
+        @Override
+        public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
+            String encryptionSymAlgorithm = getSecurityProperties().getEncryptionSymAlgorithm();
+            String jceAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(encryptionSymAlgorithm);
+            if (jceAlgorithm == null) {
+                throw new XMLSecurityException("algorithms.NoSuchMap", new Object[] {encryptionSymAlgorithm});
+            }
+
+            try {
+                Cipher cipher = Cipher.getInstance(jceAlgorithm);
+
+                int ivLen = JCEMapper.getIVLengthFromURI(encryptionSymAlgorithm) / 8;
+                byte[] iv = SecureRandomPool.generateBytes(ivLen);
+                AlgorithmParameterSpec paramSpec =
+                    XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv);
+                cipher.init(Cipher.ENCRYPT_MODE, getEncryptionPartDef().getSymmetricKey(), paramSpec);
+
+                CipherValueOutputStream cipherValueOutputStream =
+                    new CipherValueOutputStream(cipher, !XMLUtils.isIgnoreLineBreaks());
+                //the iv is prepended to the cipher data
+                cipherValueOutputStream.encode(iv, 0, iv.length);
+
+                plaintextOutputStream =
+                    new TrimmerOutputStream(applyTransforms(cipherValueOutputStream), 8192 * 10, 3, 4);
+                xmlEventWriter = new XMLSecurityEventWriter(
+                    XMLSecurityConstants.xmlOutputFactoryNonRepairingNs.createXMLStreamWriter(
+                        plaintextOutputStream, StandardCharsets.UTF_8.name()));
+                xmlEventWriter.add(WRAPPER_START_ELEMENT);
+            } catch (GeneralSecurityException | IOException | XMLStreamException e) {
+                throw new XMLSecurityException(e);
+            }
+
+            outputProcessorChain.addProcessor(this);
+        }
+
         protected OutputStream applyTransforms(OutputStream outputStream) throws XMLSecurityException {
             String compressionAlgorithm = ((WSSSecurityProperties)getSecurityProperties()).getEncryptionCompressionAlgorithm();
             if (compressionAlgorithm != null) {
@@ -326,7 +414,11 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                                 compressionAlgorithm, XMLSecurityConstants.DIRECTION.OUT
                         );
                 try {
-                    Constructor<OutputStream> constructor = transformerClass.getConstructor(OutputStream.class);
+                    Constructor<OutputStream> constructor = TRANSFORMER_CONSTRUCTORS.get(transformerClass);
+                    if (constructor == null) {
+                        constructor = transformerClass.getConstructor(OutputStream.class);
+                        TRANSFORMER_CONSTRUCTORS.putIfAbsent(transformerClass, constructor);
+                    }
                     outputStream = constructor.newInstance(outputStream);
                 } catch (InvocationTargetException | NoSuchMethodException
                     | InstantiationException | IllegalAccessException e) {
@@ -336,6 +428,57 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
             return outputStream;
         }
 
+        @Override
+        public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+
+            currentOutputProcessorChain = outputProcessorChain;
+            try {
+                switch (xmlSecEvent.getEventType()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+                        if (elementCounter == 0 && xmlSecStartElement.getName().equals(getXmlSecStartElement().getName())) {
+                            //if the user selected element encryption we have to encrypt the current element-event...
+                            if (Modifier.Element == getEncryptionPartDef().getModifier()) {
+                                processEventInternal(xmlSecStartElement, outputProcessorChain.createSubChain(this));
+                                xmlEventWriter.add(xmlSecEvent);
+                            } else if (Modifier.Content == getEncryptionPartDef().getModifier()) {
+                                //...otherwise the current start element is output unencrypted
+                                outputProcessorChain.createSubChain(this).processEvent(xmlSecEvent);
+                                processEventInternal(xmlSecStartElement, outputProcessorChain.createSubChain(this));
+                            }
+                        } else {
+                            xmlEventWriter.add(xmlSecEvent);
+                        }
+                        elementCounter++;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        elementCounter--;
+                        if (elementCounter == 0 && xmlSecEvent.asEndElement().getName().equals(getXmlSecStartElement().getName())) {
+                            OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
+                            if (Modifier.Element == getEncryptionPartDef().getModifier()) {
+                                xmlEventWriter.add(xmlSecEvent);
+                                doFinalInternal(subOutputProcessorChain);
+                            } else if (Modifier.Content == getEncryptionPartDef().getModifier()) {
+                                doFinalInternal(subOutputProcessorChain);
+                                outputAsEvent(subOutputProcessorChain, xmlSecEvent);
+                            }
+                            subOutputProcessorChain.removeProcessor(this);
+                            setActiveInternalEncryptionOutputProcessor(null);
+                        } else {
+                            xmlEventWriter.add(xmlSecEvent);
+                        }
+                        break;
+                    default:
+                        xmlEventWriter.add(xmlSecEvent);
+                        break;
+                }
+            } finally {
+                currentOutputProcessorChain = null;
+                charactersOutputProcessorChain = null;
+            }
+        }
+
         /**
          * Creates the Data structure around the cipher data
          */
@@ -414,28 +557,28 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
                 boolean isSAMLToken = false;
                 if (WSSecurityTokenConstants.KERBEROS_TOKEN.equals(securityToken.getTokenType())) {
                     List<XMLSecAttribute> attributes = new ArrayList<>(2);
-                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                     attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_GSS_KERBEROS5_AP_REQ));
                     createStartElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE,
                                                        false, attributes);
                 } else if (WSSecurityTokenConstants.SAML_10_TOKEN.equals(securityToken.getTokenType())
                     || WSSecurityTokenConstants.SAML_11_TOKEN.equals(securityToken.getTokenType())) {
                     List<XMLSecAttribute> attributes = new ArrayList<>(2);
-                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                     attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_SAML11_TOKEN_PROFILE_TYPE));
                     createStartElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE,
                                                        false, attributes);
                     isSAMLToken = true;
                 } else if (WSSecurityTokenConstants.SAML_20_TOKEN.equals(securityToken.getTokenType())) {
                     List<XMLSecAttribute> attributes = new ArrayList<>(2);
-                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                     attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_SAML20_TOKEN_PROFILE_TYPE));
                     createStartElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE,
                                                        false, attributes);
                     isSAMLToken = true;
                 } else if (WSSecurityTokenConstants.EncryptedKeyToken.equals(securityToken.getTokenType())) {
                     List<XMLSecAttribute> attributes = new ArrayList<>(2);
-                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                     attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_WSS_ENC_KEY_VALUE_TYPE));
                     createStartElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE,
                                                        false, attributes);
@@ -483,11 +626,158 @@ public class EncryptOutputProcessor extends AbstractEncryptOutputProcessor {
         @Override
         protected void doFinalInternal(OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
 
-            super.doFinalInternal(outputProcessorChain);
+            OutputProcessorChain previousOutputProcessorChain = currentOutputProcessorChain;
+            currentOutputProcessorChain = outputProcessorChain;
+            charactersOutputProcessorChain = null;
+            try {
+                //flushes and encrypts the remaining plaintext and outputs the remaining CipherValue characters
+                xmlEventWriter.add(WRAPPER_END_ELEMENT);
+                xmlEventWriter.close();
+                plaintextOutputStream.close();
+            } catch (IOException e) {
+                throw new XMLStreamException(e);
+            } finally {
+                currentOutputProcessorChain = previousOutputProcessorChain;
+                charactersOutputProcessorChain = null;
+            }
+
+            createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_CipherValue);
+            createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_CipherData);
+            createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_EncryptedData);
 
             if (doEncryptedHeader) {
                 createEndElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_wsse11_EncryptedHeader);
             }
         }
+
+        /**
+         * Outputs the given characters of the CipherValue after this processor
+         */
+        private void outputCipherValueCharacters(char[] characters, int length) throws IOException {
+            try {
+                if (charactersOutputProcessorChain == null) {
+                    charactersOutputProcessorChain = currentOutputProcessorChain.createSubChain(this);
+                }
+                outputAsEvent(charactersOutputProcessorChain,
+                              XMLSecEventFactory.createXmlSecCharacters(characters, 0, length));
+            } catch (XMLStreamException | XMLSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Encrypts the serialized plaintext into a reusable byte buffer, and base64 encodes the cipher
+         * data into a reusable char buffer, which is output as a characters event whenever it is full.
+         */
+        private final class CipherValueOutputStream extends OutputStream {
+
+            private static final int CHUNK_SIZE = 8192;
+
+            private final Cipher cipher;
+            private final boolean lineBreaks;
+            private byte[] cipherBuffer;
+            private final char[] characters = new char[CHUNK_SIZE];
+            private int characterCount;
+            private int lineLength;
+            private int quantum;
+            private int quantumLength;
+            private boolean closed;
+
+            CipherValueOutputStream(Cipher cipher, boolean lineBreaks) {
+                this.cipher = cipher;
+                this.lineBreaks = lineBreaks;
+                this.cipherBuffer = new byte[cipher.getOutputSize(CHUNK_SIZE)];
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int chunkLength = Math.min(len, CHUNK_SIZE);
+                    ensureCipherBufferCapacity(cipher.getOutputSize(chunkLength));
+                    try {
+                        int cipherLength = cipher.update(b, off, chunkLength, cipherBuffer, 0);
+                        encode(cipherBuffer, 0, cipherLength);
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException(e);
+                    }
+                    off += chunkLength;
+                    len -= chunkLength;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                ensureCipherBufferCapacity(cipher.getOutputSize(0));
+                try {
+                    int cipherLength = cipher.doFinal(cipherBuffer, 0);
+                    encode(cipherBuffer, 0, cipherLength);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+
+                if (quantumLength == 1) {
+                    appendQuantum(BASE64_ALPHABET[(quantum >>> 2) & 0x3f], BASE64_ALPHABET[(quantum << 4) & 0x3f], '=', '=');
+                } else if (quantumLength == 2) {
+                    appendQuantum(BASE64_ALPHABET[(quantum >>> 10) & 0x3f], BASE64_ALPHABET[(quantum >>> 4) & 0x3f],
+                                  BASE64_ALPHABET[(quantum << 2) & 0x3f], '=');
+                }
+                if (lineBreaks && lineLength > 0) {
+                    characters[characterCount++] = '\r';
+                    characters[characterCount++] = '\n';
+                }
+                flushCharacters();
+            }
+
+            void encode(byte[] b, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++) {
+                    quantum = (quantum << 8) | (b[i] & 0xff);
+                    if (++quantumLength == 3) {
+                        appendQuantum(BASE64_ALPHABET[(quantum >>> 18) & 0x3f], BASE64_ALPHABET[(quantum >>> 12) & 0x3f],
+                                      BASE64_ALPHABET[(quantum >>> 6) & 0x3f], BASE64_ALPHABET[quantum & 0x3f]);
+                        quantum = 0;
+                        quantumLength = 0;
+                    }
+                }
+            }
+
+            private void appendQuantum(char c1, char c2, char c3, char c4) throws IOException {
+                //room for the quantum, a line break and a final line break
+                if (characterCount > characters.length - 8) {
+                    flushCharacters();
+                }
+                characters[characterCount++] = c1;
+                characters[characterCount++] = c2;
+                characters[characterCount++] = c3;
+                characters[characterCount++] = c4;
+                lineLength += 4;
+                if (lineBreaks && lineLength == BASE64_LINE_LENGTH) {
+                    characters[characterCount++] = '\r';
+                    characters[characterCount++] = '\n';
+                    lineLength = 0;
+                }
+            }
+
+            private void flushCharacters() throws IOException {
+                if (characterCount > 0) {
+                    outputCipherValueCharacters(characters, characterCount);
+                    characterCount = 0;
+                }
+            }
+
+            private void ensureCipherBufferCapacity(int length) {
+                if (cipherBuffer.length < length) {
+                    cipherBuffer = new byte[length];
+                }
+            }
+        }
     }
 }
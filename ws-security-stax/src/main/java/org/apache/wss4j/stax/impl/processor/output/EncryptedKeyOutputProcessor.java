@@ -28,6 +28,7 @@ import java.security.cert.X509Certificate;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.MGF1ParameterSpec;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.Cipher;
@@ -40,8 +41,12 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
@@ -54,7 +59,6 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.apache.xml.security.utils.XMLUtils;
@@ -318,6 +322,20 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
                     }
                     byte[] encryptedEphemeralKey = cipher.wrap(secretKey);
 
+                    SessionKey encryptedKeySessionKey =
+                        outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_ENCRYPTED_KEY_SESSION_KEY);
+                    EncryptedKeySessionCache encryptedKeySessionCache =
+                        ((WSSSecurityProperties)getSecurityProperties()).getEncryptedKeySessionCache();
+                    if (encryptedKeySessionKey != null && encryptedKeySessionCache != null) {
+                        // Reuse the key for the next messages to this recipient
+                        byte[] secret = secretKey.getEncoded();
+                        encryptedKeySessionCache.addSession(
+                            encryptedKeySessionKey, secret,
+                            XMLUtils.encodeToString(KeyUtils.generateDigest(encryptedEphemeralKey))
+                        );
+                        Arrays.fill(secret, (byte) 0);
+                    }
+
                     if (((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler() != null) {
                         // Store the Encrypted Key in the CallbackHandler for processing on the inbound side
                         WSPasswordCallback callback =
@@ -371,7 +389,7 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
             }
 
             List<XMLSecAttribute> attributes = new ArrayList<>(2);
-            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
             if (WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE.equals(keyIdentifier) && !useSingleCertificate) {
                 attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_X509_PKIPATH_V1));
             }
@@ -39,6 +39,7 @@ import org.apache.wss4j.common.saml.SAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.bean.KeyInfoBean;
 import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConfigurationException;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurePart;
@@ -55,7 +56,6 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
@@ -107,7 +107,7 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
                 }
             }
 
-            final String securityTokenReferenceId = IDGenerator.generateID(null);
+            final String securityTokenReferenceId = SecureRandomPool.generateID(null);
             final String tokenId = samlAssertionWrapper.getId();
 
             final FinalSAMLTokenOutputProcessor finalSAMLTokenOutputProcessor;
@@ -251,7 +251,7 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
         }
 
-        final String binarySecurityTokenId = IDGenerator.generateID(null);
+        final String binarySecurityTokenId = SecureRandomPool.generateID(null);
 
         final GenericOutboundSecurityToken bstSecurityToken =
                 new GenericOutboundSecurityToken(binarySecurityTokenId, WSSecurityTokenConstants.X509V3Token,
@@ -18,9 +18,7 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.util.ArrayDeque;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -31,9 +29,12 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.jfr.SecurityEvents;
+import org.apache.wss4j.common.jfr.SecurityHeaderEvent;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.SecurityHeaderOrder;
+import org.apache.wss4j.stax.impl.XMLSecEventBuffer;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.AbstractOutputProcessor;
@@ -53,11 +54,12 @@ import org.apache.xml.security.stax.impl.processor.output.FinalOutputProcessor;
  */
 public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
 
-    private final Map<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> actionEventMap =
+    private final Map<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, XMLSecEventBuffer>> actionEventMap =
             new LinkedHashMap<>();
 
     private int securityHeaderIndex;
-    private Deque<XMLSecEvent> currentDeque;
+    private XMLSecEventBuffer currentBuffer;
+    private final SecurityHeaderEvent securityHeaderEvent = SecurityEvents.securityHeader();
 
     public SecurityHeaderReorderProcessor() throws XMLSecurityException {
         super();
@@ -68,11 +70,12 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
     @Override
     public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
         super.init(outputProcessorChain);
+        securityHeaderEvent.begin();
 
         List<XMLSecurityConstants.Action> outActions = getSecurityProperties().getActions();
         for (int i = outActions.size() - 1; i >= 0; i--) {
             XMLSecurityConstants.Action outAction = outActions.get(i);
-            actionEventMap.put(outAction, new TreeMap<SecurityHeaderOrder, Deque<XMLSecEvent>>(new Comparator<SecurityHeaderOrder>() {
+            actionEventMap.put(outAction, new TreeMap<SecurityHeaderOrder, XMLSecEventBuffer>(new Comparator<SecurityHeaderOrder>() {
                 @Override
                 public int compare(SecurityHeaderOrder o1, SecurityHeaderOrder o2) {
                     if (WSSConstants.TAG_dsig_Signature.equals(o1.getSecurityHeaderElementName())) {
@@ -103,21 +106,21 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
             if (xmlSecEvent.isEndElement() && xmlSecEvent.asEndElement().getName().equals(WSSConstants.TAG_WSSE_SECURITY)) {
                 OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
 
-                Iterator<Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>>> iterator =
+                Iterator<Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, XMLSecEventBuffer>>> iterator =
                     actionEventMap.entrySet().iterator();
                 loop:
                 while (iterator.hasNext()) {
-                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> next = iterator.next();
+                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, XMLSecEventBuffer>> next = iterator.next();
 
                     boolean encryptAction = false;
-                    Iterator<Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>>> entryIterator = next.getValue().entrySet().iterator();
+                    Iterator<Map.Entry<SecurityHeaderOrder, XMLSecEventBuffer>> entryIterator = next.getValue().entrySet().iterator();
                     while (entryIterator.hasNext()) {
-                        Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>> entry = entryIterator.next();
+                        Map.Entry<SecurityHeaderOrder, XMLSecEventBuffer> entry = entryIterator.next();
                         //output all non encrypted headers until...
                         if (!entry.getKey().isEncrypted()) {
-                            Deque<XMLSecEvent> xmlSecEvents = entry.getValue();
+                            XMLSecEventBuffer xmlSecEvents = entry.getValue();
                             while (!xmlSecEvents.isEmpty()) {
-                                XMLSecEvent event = xmlSecEvents.pop();
+                                XMLSecEvent event = xmlSecEvents.pollOldest();
                                 subOutputProcessorChain.reset();
                                 subOutputProcessorChain.processEvent(event);
                             }
@@ -137,19 +140,27 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
                 //...loop again over the headers and output the leftover headers
                 iterator = actionEventMap.entrySet().iterator();
                 while (iterator.hasNext()) {
-                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, Deque<XMLSecEvent>>> next = iterator.next();
-                    Iterator<Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>>> entryIterator = next.getValue().entrySet().iterator();
+                    Map.Entry<XMLSecurityConstants.Action, Map<SecurityHeaderOrder, XMLSecEventBuffer>> next = iterator.next();
+                    Iterator<Map.Entry<SecurityHeaderOrder, XMLSecEventBuffer>> entryIterator = next.getValue().entrySet().iterator();
                     while (entryIterator.hasNext()) {
-                        Map.Entry<SecurityHeaderOrder, Deque<XMLSecEvent>> entry = entryIterator.next();
-                        Deque<XMLSecEvent> xmlSecEvents = entry.getValue();
+                        Map.Entry<SecurityHeaderOrder, XMLSecEventBuffer> entry = entryIterator.next();
+                        XMLSecEventBuffer xmlSecEvents = entry.getValue();
                         while (!xmlSecEvents.isEmpty()) {
-                            XMLSecEvent event = xmlSecEvents.pop();
+                            XMLSecEvent event = xmlSecEvents.pollOldest();
                             subOutputProcessorChain.reset();
                             subOutputProcessorChain.processEvent(event);
                         }
                     }
                 }
                 outputProcessorChain.removeProcessor(this);
+
+                if (securityHeaderEvent.shouldCommit()) {
+                    securityHeaderEvent.setDirection("outbound");
+                    securityHeaderEvent.setStreaming(true);
+                    securityHeaderEvent.setActor(((WSSSecurityProperties) getSecurityProperties()).getActor());
+                    securityHeaderEvent.setElements(securityHeaderIndex);
+                    securityHeaderEvent.commit();
+                }
             }
             outputProcessorChain.processEvent(xmlSecEvent);
             return;
@@ -168,12 +179,13 @@ public class SecurityHeaderReorderProcessor extends AbstractOutputProcessor {
                                 + " but got " + xmlSecStartElement.getName()});
             }
 
-            Map<SecurityHeaderOrder, Deque<XMLSecEvent>> map = actionEventMap.get(securityHeaderOrder.getAction());
-            currentDeque = new ArrayDeque<>();
-            map.put(securityHeaderOrder, currentDeque);
+            Map<SecurityHeaderOrder, XMLSecEventBuffer> map = actionEventMap.get(securityHeaderOrder.getAction());
+            //all headers share the interned names and namespaces of the first header buffer
+            currentBuffer = currentBuffer == null ? new XMLSecEventBuffer() : new XMLSecEventBuffer(currentBuffer);
+            map.put(securityHeaderOrder, currentBuffer);
 
             securityHeaderIndex++;
         }
-        currentDeque.offer(xmlSecEvent);
+        currentBuffer.add(xmlSecEvent);
     }
 }
@@ -24,6 +24,7 @@ import java.util.List;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.utils.WSSUtils;
@@ -32,7 +33,6 @@ import org.apache.xml.security.stax.ext.AbstractOutputProcessor;
 import org.apache.xml.security.stax.ext.OutputProcessorChain;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
@@ -70,7 +70,7 @@ public class SignatureConfirmationOutputProcessor extends AbstractOutputProcesso
                     OutputProcessorUtils.updateSecurityHeaderOrder(outputProcessorChain, headerElementName, getAction(), false);
 
                     List<XMLSecAttribute> attributes = new ArrayList<>(2);
-                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                    attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                     String base64SigValue =
                         XMLUtils.encodeToString(signatureValueSecurityEvent.getSignatureValue());
                     attributes.add(createAttribute(WSSConstants.ATT_NULL_VALUE, base64SigValue));
@@ -82,7 +82,7 @@ public class SignatureConfirmationOutputProcessor extends AbstractOutputProcesso
             if (!aSignatureFound) {
                 OutputProcessorUtils.updateSecurityHeaderOrder(outputProcessorChain, headerElementName, getAction(), false);
                 List<XMLSecAttribute> attributes = new ArrayList<>(1);
-                attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+                attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
                 createStartElementAndOutputAsEvent(subOutputProcessorChain, headerElementName, true, attributes);
                 createEndElementAndOutputAsEvent(subOutputProcessorChain, headerElementName);
             }
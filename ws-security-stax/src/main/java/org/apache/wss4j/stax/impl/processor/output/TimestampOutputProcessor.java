@@ -19,8 +19,6 @@
 package org.apache.wss4j.stax.impl.processor.output;
 
 import java.time.Instant;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
@@ -65,7 +63,7 @@ public class TimestampOutputProcessor extends AbstractOutputProcessor {
             final QName headerElementName = WSSConstants.TAG_WSU_TIMESTAMP;
             OutputProcessorUtils.updateSecurityHeaderOrder(outputProcessorChain, headerElementName, getAction(), false);
 
-            Instant created = Instant.now();
+            Instant created = ((WSSSecurityProperties) getSecurityProperties()).getTimeSource().now();
 
             int ttl = ((WSSSecurityProperties) getSecurityProperties()).getTimestampTTL();
             Instant expires = created.plusSeconds(ttl);
@@ -74,11 +72,10 @@ public class TimestampOutputProcessor extends AbstractOutputProcessor {
             //wsu:id is optional and will be added when signing...
             createStartElementAndOutputAsEvent(subOutputProcessorChain, headerElementName, true, null);
             createStartElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_WSU_CREATED, false, null);
-            DateTimeFormatter formatter = DateUtil.getDateTimeFormatter(true);
-            createCharactersAndOutputAsEvent(subOutputProcessorChain, created.atZone(ZoneOffset.UTC).format(formatter));
+            createCharactersAndOutputAsEvent(subOutputProcessorChain, DateUtil.formatDateTime(created, true));
             createEndElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_WSU_CREATED);
             createStartElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_WSU_EXPIRES, false, null);
-            createCharactersAndOutputAsEvent(subOutputProcessorChain, expires.atZone(ZoneOffset.UTC).format(formatter));
+            createCharactersAndOutputAsEvent(subOutputProcessorChain, DateUtil.formatDateTime(expires, true));
             createEndElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_WSU_EXPIRES);
             createEndElementAndOutputAsEvent(subOutputProcessorChain, headerElementName);
 
@@ -21,6 +21,7 @@ package org.apache.wss4j.stax.impl.processor.output;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.DateUtil;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.common.util.UsernameTokenUtil;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -30,7 +31,6 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.*;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.apache.xml.security.utils.XMLUtils;
@@ -40,7 +40,6 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
 import java.time.Instant;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -80,7 +79,7 @@ public class UsernameTokenOutputProcessor extends AbstractOutputProcessor {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noPassword", args);
             }
 
-            final String wsuId = IDGenerator.generateID(null);
+            final String wsuId = SecureRandomPool.generateID(null);
 
             boolean useDerivedKeyForMAC =
                 ((WSSSecurityProperties)getSecurityProperties()).isUseDerivedKeyForMAC();
@@ -94,14 +93,14 @@ public class UsernameTokenOutputProcessor extends AbstractOutputProcessor {
             byte[] nonceValue = null;
             if (usernameTokenPasswordType == WSSConstants.UsernameTokenPasswordType.PASSWORD_DIGEST
                 || ((WSSSecurityProperties) getSecurityProperties()).isAddUsernameTokenNonce()) {
-                nonceValue = WSSConstants.generateBytes(16);
+                nonceValue = SecureRandomPool.generateBytes(16);
             }
 
             String createdStr = "";
             if (usernameTokenPasswordType == WSSConstants.UsernameTokenPasswordType.PASSWORD_DIGEST
                 || ((WSSSecurityProperties) getSecurityProperties()).isAddUsernameTokenCreated()) {
-                Instant created = Instant.now();
-                createdStr = created.atZone(ZoneOffset.UTC).format(DateUtil.getDateTimeFormatter(true));
+                Instant created = ((WSSSecurityProperties) getSecurityProperties()).getTimeSource().now();
+                createdStr = DateUtil.formatDateTime(created, true);
             }
 
             final OutputProcessor outputProcessor = this;
@@ -19,6 +19,7 @@
 package org.apache.wss4j.stax.impl.processor.output;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.SecurityHeaderOrder;
@@ -33,7 +34,6 @@ import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.SignaturePartDef;
 import org.apache.xml.security.stax.impl.algorithms.SignatureAlgorithm;
 import org.apache.xml.security.stax.impl.processor.output.AbstractSignatureEndingOutputProcessor;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 
@@ -106,7 +106,7 @@ public class WSSSignatureEndingOutputProcessor extends AbstractSignatureEndingOu
         } else {
             boolean isSAMLToken = false;
             List<XMLSecAttribute> attributes = new ArrayList<>(2);
-            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, IDGenerator.generateID(null)));
+            attributes.add(createAttribute(WSSConstants.ATT_WSU_ID, SecureRandomPool.generateID(null)));
             if (WSSecurityTokenConstants.SAML_10_TOKEN.equals(securityToken.getTokenType())
                 || WSSecurityTokenConstants.SAML_11_TOKEN.equals(securityToken.getTokenType())) {
                 attributes.add(createAttribute(WSSConstants.ATT_WSSE11_TOKEN_TYPE, WSSConstants.NS_SAML11_TOKEN_PROFILE_TYPE));
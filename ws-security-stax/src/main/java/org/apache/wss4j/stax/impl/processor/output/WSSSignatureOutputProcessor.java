@@ -21,11 +21,13 @@ package org.apache.wss4j.stax.impl.processor.output;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.Key;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.crypto.SecretKey;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.stream.XMLStreamConstants;
@@ -37,6 +39,8 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.SecureRandomPool;
+import org.apache.wss4j.common.util.SinglePassAttachmentEncryptor;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurePart;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -47,13 +51,15 @@ import org.apache.xml.security.stax.ext.OutputProcessorChain;
 import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.ext.Transformer;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
+import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.EncryptionPartDef;
 import org.apache.xml.security.stax.impl.SignaturePartDef;
 import org.apache.xml.security.stax.impl.processor.output.AbstractSignatureOutputProcessor;
 import org.apache.xml.security.stax.impl.util.DigestOutputStream;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.utils.XMLUtils;
 
 public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcessor {
@@ -100,7 +106,7 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                     if (securePart.getIdToSecure() == null) {
                         signaturePartDef.setGenerateXPointer(securePart.isGenerateXPointer());
-                        signaturePartDef.setSigRefId(IDGenerator.generateID(null));
+                        signaturePartDef.setSigRefId(SecureRandomPool.generateID(null));
 
                         Attribute attribute = xmlSecStartElement.getAttributeByName(WSSConstants.ATT_WSU_ID);
                         if (attribute != null) {
@@ -175,6 +181,15 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                         WSSecurityException.ErrorCode.FAILED_SIGNATURE, e
                 );
             }
+            SecurePart attachmentEncryptionPart = getSinglePassAttachmentEncryptionPart(outputProcessorChain);
+            String encryptedAttachmentId = null;
+            SinglePassAttachmentEncryptor singlePassAttachmentEncryptor = null;
+            if (attachmentEncryptionPart != null) {
+                encryptedAttachmentId = AttachmentUtils.getAttachmentId(attachmentEncryptionPart.getExternalReference());
+                singlePassAttachmentEncryptor =
+                    getSinglePassAttachmentEncryptor(outputProcessorChain, attachmentEncryptionPart);
+            }
+
             List<Attachment> attachments = attachmentRequestCallback.getAttachments();
             if (attachments != null) {
                 for (int i = 0; i < attachments.size(); i++) {
@@ -199,12 +214,23 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     }
 
                     DigestOutputStream digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());  //NOPMD
-                    InputStream inputStream = attachment.getSourceStream(); //NOPMD
-                    if (!inputStream.markSupported()) {
-                        inputStream = new BufferedInputStream(inputStream);
+                    InputStream inputStream; //NOPMD
+                    SinglePassAttachmentEncryptor.EncryptingInputStream encryptingInputStream = null;
+                    if (singlePassAttachmentEncryptor != null
+                        && ("Attachments".equals(encryptedAttachmentId) || encryptedAttachmentId.equals(attachment.getId()))
+                        && !isEncrypted(outputProcessorChain, attachment.getId())) {
+                        //encrypt the attachment while it is digested, instead of reading it again for the encryption
+                        encryptingInputStream = singlePassAttachmentEncryptor.encrypt(attachment);
+                        inputStream = encryptingInputStream;
+                    } else {
+                        inputStream = attachment.getSourceStream();
+                        if (!inputStream.markSupported()) {
+                            inputStream = new BufferedInputStream(inputStream);
+                        }
+                        inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
                     }
-                    inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
 
+                    Attachment resultAttachment;
                     try {
                         Transformer transformer = buildTransformerChain(digestOutputStream, signaturePartDef, null);
 
@@ -217,8 +243,20 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                         digestOutputStream.close();
 
-                        //reset the inputStream to be able to reuse it
-                        inputStream.reset();
+                        if (encryptingInputStream != null) {
+                            //the result is the encrypted attachment
+                            resultAttachment = encryptingInputStream.finish();
+                        } else {
+                            //reset the inputStream to be able to reuse it
+                            inputStream.reset();
+
+                            //create a new attachment for the result callback
+                            resultAttachment = new Attachment();
+                            resultAttachment.setId(attachment.getId());
+                            resultAttachment.setMimeType(attachment.getMimeType());
+                            resultAttachment.addHeaders(attachment.getHeaders());
+                            resultAttachment.setSourceStream(inputStream);
+                        }
                     } catch (IOException | XMLStreamException e) {
                         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, e);
                     }
@@ -228,13 +266,6 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                     signaturePartDef.setDigestValue(calculatedDigest);
 
-                    //create a new attachment and do the result callback
-                    Attachment resultAttachment = new Attachment();
-                    resultAttachment.setId(attachment.getId());
-                    resultAttachment.setMimeType(attachment.getMimeType());
-                    resultAttachment.addHeaders(attachment.getHeaders());
-                    resultAttachment.setSourceStream(inputStream);
-
                     AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
                     attachmentResultCallback.setAttachmentId(resultAttachment.getId());
                     attachmentResultCallback.setAttachment(resultAttachment);
@@ -252,6 +283,83 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
         }
     }
 
+    /**
+     * Return the encryption SecurePart of the attachments, if they are to be encrypted in the same
+     * pass in which they are digested
+     */
+    private SecurePart getSinglePassAttachmentEncryptionPart(OutputProcessorChain outputProcessorChain) {
+        if (!((WSSSecurityProperties) getSecurityProperties()).isSinglePassAttachmentEncryption()) {
+            return null;
+        }
+        Map<Object, SecurePart> encryptionParts =
+            outputProcessorChain.getSecurityContext().getAsMap(XMLSecurityConstants.ENCRYPTION_PARTS);
+        if (encryptionParts != null) {
+            for (SecurePart securePart : encryptionParts.values()) {
+                String externalReference = securePart.getExternalReference();
+                if (externalReference != null && externalReference.startsWith("cid:")) {
+                    return securePart;
+                }
+            }
+        }
+        return null;
+    }
+
+    private SinglePassAttachmentEncryptor getSinglePassAttachmentEncryptor(
+        OutputProcessorChain outputProcessorChain, SecurePart attachmentEncryptionPart
+    ) throws XMLSecurityException {
+        SinglePassAttachmentEncryptor singlePassAttachmentEncryptor =
+            outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_SINGLE_PASS_ATTACHMENT_ENCRYPTOR);
+        if (singlePassAttachmentEncryptor != null) {
+            return singlePassAttachmentEncryptor;
+        }
+
+        String tokenId = outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION);
+        if (tokenId == null) {
+            return null;
+        }
+        SecurityTokenProvider<OutboundSecurityToken> securityTokenProvider =
+            outputProcessorChain.getSecurityContext().getSecurityTokenProvider(tokenId);
+        if (securityTokenProvider == null) {
+            return null;
+        }
+        String encryptionSymAlgorithm = getSecurityProperties().getEncryptionSymAlgorithm();
+        Key key = securityTokenProvider.getSecurityToken().getSecretKey(encryptionSymAlgorithm);
+        if (!(key instanceof SecretKey)) {
+            return null;
+        }
+
+        SinglePassAttachmentEncryptor.CipherTextStore cipherTextStore =
+            ((WSSSecurityProperties) getSecurityProperties()).getSinglePassAttachmentCipherTextStore();
+        if (cipherTextStore == null) {
+            cipherTextStore = new SinglePassAttachmentEncryptor.TemporaryFileCipherTextStore();
+        }
+        singlePassAttachmentEncryptor =
+            new SinglePassAttachmentEncryptor(
+                encryptionSymAlgorithm, (SecretKey) key,
+                SecurePart.Modifier.Element == attachmentEncryptionPart.getModifier(), cipherTextStore
+            );
+        outputProcessorChain.getSecurityContext().put(
+            WSSConstants.PROP_SINGLE_PASS_ATTACHMENT_ENCRYPTOR, singlePassAttachmentEncryptor
+        );
+        return singlePassAttachmentEncryptor;
+    }
+
+    /**
+     * Return whether the attachment was already encrypted, i.e. it is encrypted before it is signed
+     */
+    private boolean isEncrypted(OutputProcessorChain outputProcessorChain, String attachmentId) {
+        List<EncryptionPartDef> encryptionPartDefs =
+            outputProcessorChain.getSecurityContext().getAsList(EncryptionPartDef.class);
+        if (encryptionPartDefs != null) {
+            for (EncryptionPartDef encryptionPartDef : encryptionPartDefs) {
+                if (attachmentId.equals(encryptionPartDef.getCipherReferenceId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     protected SecurePart securePartMatches(XMLSecStartElement xmlSecStartElement, Map<Object, SecurePart> secureParts) {
 
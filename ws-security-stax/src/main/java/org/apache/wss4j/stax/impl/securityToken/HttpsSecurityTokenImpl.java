@@ -24,11 +24,11 @@ import java.security.cert.X509Certificate;
 import javax.security.auth.Subject;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.securityToken.HttpsSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.impl.securityToken.AbstractInboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 public class HttpsSecurityTokenImpl extends AbstractInboundSecurityToken implements HttpsSecurityToken {
 
@@ -44,18 +44,18 @@ public class HttpsSecurityTokenImpl extends AbstractInboundSecurityToken impleme
     }
 
     public HttpsSecurityTokenImpl() {
-        super(null, IDGenerator.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
+        super(null, SecureRandomPool.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
         this.authenticationType = AuthenticationType.noAuthentication;
     }
 
     public HttpsSecurityTokenImpl(X509Certificate x509Certificate) {
-        super(null, IDGenerator.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
+        super(null, SecureRandomPool.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
         setX509Certificates(new X509Certificate[]{x509Certificate});
         this.authenticationType = AuthenticationType.httpsClientAuthentication;
     }
 
     public HttpsSecurityTokenImpl(boolean basicAuthentication, String username) {
-        super(null, IDGenerator.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
+        super(null, SecureRandomPool.generateID(null), WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo, true);
         if (basicAuthentication) {
             this.authenticationType = AuthenticationType.httpBasicAuthentication;
         } else {
@@ -36,6 +36,7 @@ import org.apache.wss4j.common.ext.WSSecurityException.ErrorCode;
 import org.apache.wss4j.common.kerberos.KerberosContextAndServiceNameCallback;
 import org.apache.wss4j.common.kerberos.KerberosServiceContext;
 import org.apache.wss4j.common.kerberos.KerberosServiceExceptionAction;
+import org.apache.wss4j.common.kerberos.KerberosServiceLoginCache;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoder;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoderException;
 import org.apache.wss4j.common.util.KeyUtils;
@@ -53,6 +54,7 @@ public class KerberosServiceSecurityTokenImpl extends AbstractInboundSecurityTok
     private String kerberosTokenValueType;
 
     private KerberosTokenDecoder kerberosTokenDecoder;
+    private KerberosServiceLoginCache kerberosServiceLoginCache;
     private Subject subject;
     private Principal principal;
     private byte[] sessionKey;
@@ -91,11 +93,18 @@ public class KerberosServiceSecurityTokenImpl extends AbstractInboundSecurityTok
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "kerberosCallbackServiceNameNotSupplied");
             }
 
-            LoginContext loginContext = new LoginContext(contextAndServiceNameCallback.getContextName(), callbackHandler);
-            loginContext.login();
+            if (kerberosServiceLoginCache != null) {
+                this.subject = kerberosServiceLoginCache.getSubject(contextAndServiceNameCallback.getContextName(),
+                                                                    contextAndServiceNameCallback.getServiceName(),
+                                                                    callbackHandler);
+            } else {
+                LoginContext loginContext =
+                    new LoginContext(contextAndServiceNameCallback.getContextName(), callbackHandler);
+                loginContext.login();
+                this.subject = loginContext.getSubject();
+            }
 
             // Get the service name to use - fall back on the principal
-            this.subject = loginContext.getSubject();
 
             String service = contextAndServiceNameCallback.getServiceName();
             if (service == null) {
@@ -200,4 +209,17 @@ public class KerberosServiceSecurityTokenImpl extends AbstractInboundSecurityTok
     public void setKerberosTokenDecoder(KerberosTokenDecoder kerberosTokenDecoder) {
         this.kerberosTokenDecoder = kerberosTokenDecoder;
     }
+
+    public KerberosServiceLoginCache getKerberosServiceLoginCache() {
+        return kerberosServiceLoginCache;
+    }
+
+    /**
+     * Set the KerberosServiceLoginCache instance used to reuse the JAAS login between tokens. If it is
+     * null, the token causes a new login.
+     * @param kerberosServiceLoginCache the KerberosServiceLoginCache instance
+     */
+    public void setKerberosServiceLoginCache(KerberosServiceLoginCache kerberosServiceLoginCache) {
+        this.kerberosServiceLoginCache = kerberosServiceLoginCache;
+    }
 }
@@ -31,6 +31,8 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
@@ -588,6 +590,18 @@ public final class ConfigurationConverter {
             properties.setTimestampReplayCache(timestampCache);
         }
 
+        EncryptedKeyCache encryptedKeyCache =
+            (EncryptedKeyCache)config.get(ConfigurationConstants.ENCRYPTED_KEY_CACHE_INSTANCE);
+        if (encryptedKeyCache != null) {
+            properties.setEncryptedKeyCache(encryptedKeyCache);
+        }
+
+        EncryptedKeySessionCache encryptedKeySessionCache =
+            (EncryptedKeySessionCache)config.get(ConfigurationConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+        if (encryptedKeySessionCache != null) {
+            properties.setEncryptedKeySessionCache(encryptedKeySessionCache);
+        }
+
         ReplayCache samlOneTimeUseCache = //NOPMD
             (ReplayCache)config.get(ConfigurationConstants.SAML_ONE_TIME_USE_CACHE_INSTANCE);
         if (samlOneTimeUseCache != null) {
@@ -27,14 +27,18 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.XMLEventConsumer;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.DocumentCreatorImpl;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.InboundWSSecurityContextImpl;
+import org.apache.wss4j.stax.impl.WSSecurityPushProcessor;
 import org.apache.wss4j.stax.impl.WSSecurityStreamReader;
 import org.apache.wss4j.stax.impl.processor.input.OperationInputProcessor;
+import org.apache.wss4j.stax.impl.processor.input.PushedEventsInputProcessor;
 import org.apache.wss4j.stax.impl.processor.input.SecurityHeaderInputProcessor;
 import org.apache.wss4j.stax.impl.processor.input.SignatureConfirmationInputProcessor;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
@@ -44,7 +48,6 @@ import org.apache.xml.security.stax.impl.DocumentContextImpl;
 import org.apache.xml.security.stax.impl.InputProcessorChainImpl;
 import org.apache.xml.security.stax.impl.processor.input.LogInputProcessor;
 import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
@@ -181,6 +184,69 @@ public class InboundWSSec {
             XMLStreamReader xmlStreamReader, List<SecurityEvent> requestSecurityEvents,
             List<SecurityEventListener> securityEventListeners) throws XMLStreamException, WSSecurityException {
 
+        String encoding = xmlStreamReader.getEncoding() != null ? xmlStreamReader.getEncoding() : StandardCharsets.UTF_8.name();
+        InputProcessorChainImpl inputProcessorChain =
+            createInputProcessorChain(new XMLEventReaderInputProcessor(securityProperties, xmlStreamReader), encoding,
+                                      requestSecurityEvents, securityEventListeners);
+
+        XMLStreamReader fastForwardReader =
+            securityProperties.isFastForwardAfterSecurityHeader() ? xmlStreamReader : null;
+        return new WSSecurityStreamReader(inputProcessorChain, securityProperties, initiator, returnSecurityError,
+                                          fastForwardReader);
+    }
+
+    /**
+     * This method is the entry point for the incoming security-engine, if the message is not read from a
+     * blocking XMLStreamReader, but pushed in chunks of bytes as they arrive, e.g. in an event-loop server.
+     * The returned WSSecurityPushProcessor parses the chunks with a non-blocking parser and hands the
+     * processed events to the given XMLEventConsumer as soon as they are available.
+     * <p/>
+     * The message must be UTF-8 encoded and may neither contain a DTD nor processing instructions.
+     * The SOAP header and every xenc:EncryptedData element are buffered completely, everything else is
+     * processed event by event. The buffered parts are limited by
+     * {@link WSSSecurityProperties#setMaximumHeldPushedBytes(long)}, a larger one fails the message.
+     *
+     * @param xmlEventConsumer The XMLEventConsumer which receives the processed events
+     * @return A new WSSecurityPushProcessor to push the message to
+     * @throws WSSecurityException
+     */
+    public WSSecurityPushProcessor createPushProcessor(XMLEventConsumer xmlEventConsumer) throws WSSecurityException {
+        return createPushProcessor(xmlEventConsumer, null, null);
+    }
+
+    /**
+     * This method is the entry point for the incoming security-engine, if the message is not read from a
+     * blocking XMLStreamReader, but pushed in chunks of bytes as they arrive, e.g. in an event-loop server.
+     * The returned WSSecurityPushProcessor parses the chunks with a non-blocking parser and hands the
+     * processed events to the given XMLEventConsumer as soon as they are available.
+     * <p/>
+     * The message must be UTF-8 encoded and may neither contain a DTD nor processing instructions.
+     * The SOAP header and every xenc:EncryptedData element are buffered completely, everything else is
+     * processed event by event. The buffered parts are limited by
+     * {@link WSSSecurityProperties#setMaximumHeldPushedBytes(long)}, a larger one fails the message.
+     *
+     * @param xmlEventConsumer The XMLEventConsumer which receives the processed events
+     * @param requestSecurityEvents The SecurityEvents of the request, if this is a response
+     * @param securityEventListeners A list of SecurityEventListeners to receive security-relevant events.
+     * @return A new WSSecurityPushProcessor to push the message to
+     * @throws WSSecurityException
+     */
+    public WSSecurityPushProcessor createPushProcessor(
+            XMLEventConsumer xmlEventConsumer, List<SecurityEvent> requestSecurityEvents,
+            List<SecurityEventListener> securityEventListeners) throws WSSecurityException {
+
+        PushedEventsInputProcessor pushedEventsInputProcessor = new PushedEventsInputProcessor(securityProperties);
+        InputProcessorChainImpl inputProcessorChain =
+            createInputProcessorChain(pushedEventsInputProcessor, StandardCharsets.UTF_8.name(),
+                                      requestSecurityEvents, securityEventListeners);
+        return new WSSecurityPushProcessor(inputProcessorChain, pushedEventsInputProcessor, securityProperties,
+                                           xmlEventConsumer, initiator, returnSecurityError);
+    }
+
+    private InputProcessorChainImpl createInputProcessorChain(
+            InputProcessor eventSourceInputProcessor, String encoding, List<SecurityEvent> requestSecurityEvents,
+            List<SecurityEventListener> securityEventListeners) throws WSSecurityException {
+
         if (requestSecurityEvents == null) {
             requestSecurityEvents = Collections.emptyList();
         }
@@ -235,7 +301,7 @@ public class InboundWSSec {
                                 if (this.id == null) {
                                     this.id = tokenSecurityEvent.getSecurityToken().getId();
                                     if (this.id == null) {
-                                        this.id = IDGenerator.generateID(null);
+                                        this.id = SecureRandomPool.generateID(null);
                                     }
                                 }
                                 return this.id;
@@ -252,9 +318,9 @@ public class InboundWSSec {
         securityContextImpl.put(WSSConstants.XMLINPUTFACTORY, XML_INPUT_FACTORY);
 
         DocumentContextImpl documentContext = new DocumentContextImpl();
-        documentContext.setEncoding(xmlStreamReader.getEncoding() != null ? xmlStreamReader.getEncoding() : StandardCharsets.UTF_8.name());
+        documentContext.setEncoding(encoding);
         InputProcessorChainImpl inputProcessorChain = new InputProcessorChainImpl(securityContextImpl, documentContext);
-        inputProcessorChain.addProcessor(new XMLEventReaderInputProcessor(securityProperties, xmlStreamReader));
+        inputProcessorChain.addProcessor(eventSourceInputProcessor);
         inputProcessorChain.addProcessor(new SecurityHeaderInputProcessor(securityProperties));
         inputProcessorChain.addProcessor(new OperationInputProcessor(securityProperties));
 
@@ -277,6 +343,6 @@ public class InboundWSSec {
             }
         }
 
-        return new WSSecurityStreamReader(inputProcessorChain, securityProperties, initiator, returnSecurityError);
+        return inputProcessorChain;
     }
 }
@@ -23,6 +23,7 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
@@ -30,10 +31,13 @@ import javax.crypto.spec.SecretKeySpec;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.EncryptedKeySession;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SecureRandomPool;
 import org.apache.wss4j.stax.ext.DocumentCreatorImpl;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -67,7 +71,6 @@ import org.apache.xml.security.stax.impl.OutputProcessorChainImpl;
 import org.apache.xml.security.stax.impl.XMLSecurityStreamWriter;
 import org.apache.xml.security.stax.impl.processor.output.FinalOutputProcessor;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
-import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
@@ -184,7 +187,7 @@ public class OutboundWSSec {
                 setupSignatureKey(outputProcessorChain, securityProperties, configuredAction.signedSAML);
             }
             if (configuredAction.encryptionAction) {
-                setupEncryptionKey(outputProcessorChain, securityProperties);
+                setupEncryptionKey(outputProcessorChain, securityProperties, configuredAction.encryptedKeySession);
             }
             if (configuredAction.kerberos) {
                 setupKerberosKey(outputProcessorChain, securityProperties,
@@ -307,7 +310,7 @@ public class OutboundWSSec {
         }
 
         // Create a new outbound Signature token for the generated key / cert
-        final String id = IDGenerator.generateID(null);
+        final String id = SecureRandomPool.generateID(null);
         final GenericOutboundSecurityToken binarySecurityToken =
                 new GenericOutboundSecurityToken(id, WSSecurityTokenConstants.X509V3Token, key, x509Certificates);
 
@@ -332,7 +335,8 @@ public class OutboundWSSec {
 
     private void setupEncryptionKey(
         OutputProcessorChainImpl outputProcessorChain,
-        WSSSecurityProperties securityProperties
+        WSSSecurityProperties securityProperties,
+        EncryptedKeySession encryptedKeySession
     ) throws XMLSecurityException {
         final String symmetricEncryptionAlgorithm = securityProperties.getEncryptionSymAlgorithm();
 
@@ -352,14 +356,27 @@ public class OutboundWSSec {
             //whereas bouncy castle expects the block size of 128 or 192 bits
             if (keyAlgorithm.contains("AES")) {
                 int keyLength = JCEAlgorithmMapper.getKeyLengthFromURI(securityProperties.getEncryptionSymAlgorithm());
-                keyGen.init(keyLength);
+                keyGen.init(keyLength, SecureRandomPool.getSecureRandom());
+            } else {
+                keyGen.init(SecureRandomPool.getSecureRandom());
             }
 
-            final Key symmetricKey = keyGen.generateKey();
-            final String symmId = IDGenerator.generateID(null);
+            final Key symmetricKey;
+            if (encryptedKeySession != null) {
+                // Reuse the key of an EncryptedKey which was sent to the recipient in a previous message
+                byte[] secret = encryptedKeySession.getSecret();
+                symmetricKey = new SecretKeySpec(secret, keyAlgorithm);
+                Arrays.fill(secret, (byte) 0);
+            } else {
+                symmetricKey = keyGen.generateKey();
+            }
+            final String symmId = SecureRandomPool.generateID(null);
 
             final GenericOutboundSecurityToken symmetricSecurityToken =
                 new GenericOutboundSecurityToken(symmId, WSSecurityTokenConstants.EncryptedKeyToken, symmetricKey);
+            if (encryptedKeySession != null) {
+                symmetricSecurityToken.setSha1Identifier(encryptedKeySession.getEncryptedKeySHA1());
+            }
             securityToken = symmetricSecurityToken;
             final SecurityTokenProvider<OutboundSecurityToken> securityTokenProvider =
                 new SecurityTokenProvider<OutboundSecurityToken>() {
@@ -379,7 +396,7 @@ public class OutboundWSSec {
             outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION, symmId);
         }
 
-        if (!securityProperties.isEncryptSymmetricEncryptionKey()) {
+        if (!securityProperties.isEncryptSymmetricEncryptionKey() || encryptedKeySession != null) {
             // No EncryptedKey Token required here, so return
             return;
         }
@@ -419,7 +436,7 @@ public class OutboundWSSec {
         }
 
         // Create a new outbound EncryptedKey token for the cert
-        final String id = IDGenerator.generateID(null);
+        final String id = SecureRandomPool.generateID(null);
         final GenericOutboundSecurityToken encryptedKeyToken =
             new GenericOutboundSecurityToken(id, WSSecurityTokenConstants.X509V3Token, publicKey, x509Certificates);
 
@@ -457,7 +474,7 @@ public class OutboundWSSec {
         // First off, see if we have a supplied token
         if (securityToken == null) {
             // If not then generate a new key
-            final String id = IDGenerator.generateID(null);
+            final String id = SecureRandomPool.generateID(null);
             kerberosId = id;
             final KerberosClientSecurityToken kerberosClientSecurityToken =
                     new KerberosClientSecurityToken(
@@ -557,6 +574,31 @@ public class OutboundWSSec {
         return null;
     }
 
+    /**
+     * Get the key of the session whose EncryptedKey may be reused for this message, i.e. if an
+     * EncryptedKeySessionCache is configured and the EncryptedKey is only used to derive the encryption key
+     */
+    private SessionKey getEncryptedKeySessionKey(OutputProcessorChainImpl outputProcessorChain)
+        throws XMLSecurityException {
+        if (securityProperties.getEncryptionUser() == null
+            || securityProperties.getEncryptedKeySessionCache() == null
+            || securityProperties.getDerivedKeyTokenReference() != WSSConstants.DerivedKeyTokenReference.EncryptedKey
+            || !securityProperties.isEncryptSymmetricEncryptionKey()
+            || securityProperties.isUseReqSigCertForEncryption()
+            || securityProperties.getEncryptionUseThisCertificate() != null
+            || outputProcessorChain.getSecurityContext().get(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION) != null) {
+            return null;
+        }
+        List<XMLSecurityConstants.Action> actions = securityProperties.getActions();
+        if (!actions.contains(WSSConstants.ENCRYPTION_WITH_DERIVED_KEY)
+            || actions.contains(WSSConstants.ENCRYPTION) || actions.contains(WSSConstants.SIGNATURE_WITH_DERIVED_KEY)) {
+            return null;
+        }
+        return new SessionKey(securityProperties.getEncryptionUser(), securityProperties.getEncryptionSymAlgorithm(),
+                              securityProperties.getEncryptionKeyTransportAlgorithm(),
+                              securityProperties.getEncryptionCrypto());
+    }
+
     private void setDerivedIdentifier(OutputProcessorChainImpl outputProcessorChain, String id) {
         WSSConstants.DerivedKeyTokenReference derivedKeyTokenReference = securityProperties.getDerivedKeyTokenReference();
             switch (derivedKeyTokenReference) {
@@ -595,6 +637,14 @@ public class OutboundWSSec {
             }
         }
 
+        SessionKey encryptedKeySessionKey = getEncryptedKeySessionKey(outputProcessorChain);
+        if (encryptedKeySessionKey != null) {
+            outputProcessorChain.getSecurityContext().put(
+                WSSConstants.PROP_ENCRYPTED_KEY_SESSION_KEY, encryptedKeySessionKey);
+            configuredAction.encryptedKeySession =
+                securityProperties.getEncryptedKeySessionCache().getSession(encryptedKeySessionKey);
+        }
+
         int actionOrder = -1;
         for (XMLSecurityConstants.Action action : securityProperties.getActions()) {
             if (WSSConstants.TIMESTAMP.equals(action)) {
@@ -680,7 +730,8 @@ public class OutboundWSSec {
                 EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = null;
 
                 ++actionOrder;
-                if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
+                if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey
+                    && configuredAction.encryptedKeySession == null) {
                     encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
                     initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action, actionOrder);
 
@@ -775,5 +826,6 @@ public class OutboundWSSec {
         boolean encryptionKerberos = false;
         boolean derivedSignature = false;
         boolean derivedEncryption = false;
+        EncryptedKeySession encryptedKeySession;
     }
 }
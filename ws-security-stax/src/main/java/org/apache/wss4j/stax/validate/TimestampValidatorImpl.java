@@ -19,7 +19,6 @@
 package org.apache.wss4j.stax.validate;
 
 import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 
 import org.apache.wss4j.binding.wsu10.TimestampType;
@@ -40,20 +39,20 @@ public class TimestampValidatorImpl implements TimestampValidator {
         try {
             // Validate whether the security semantics have expired
             //created and expires is optional per spec. But we enforce the created element in the validation
-            ZonedDateTime createdDate = null;
+            Instant createdDate = null;
             if (timestampType.getCreated() != null) {
                 try {
-                    createdDate = ZonedDateTime.parse(timestampType.getCreated().getValue());
+                    createdDate = DateUtil.parseDateTime(timestampType.getCreated().getValue());
                 } catch (DateTimeParseException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
                 LOG.debug("Timestamp created: {}", createdDate.toString());
             }
 
-            ZonedDateTime expiresDate = null;
+            Instant expiresDate = null;
             if (timestampType.getExpires() != null) {
                 try {
-                    expiresDate = ZonedDateTime.parse(timestampType.getExpires().getValue());
+                    expiresDate = DateUtil.parseDateTime(timestampType.getExpires().getValue());
                 } catch (DateTimeParseException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
@@ -66,15 +65,15 @@ public class TimestampValidatorImpl implements TimestampValidator {
             int ttl = tokenContext.getWssSecurityProperties().getTimestampTTL();
             int futureTTL = tokenContext.getWssSecurityProperties().getTimeStampFutureTTL();
 
-            Instant rightNow = Instant.now();
+            Instant rightNow = tokenContext.getWssSecurityProperties().getTimeSource().now();
             if (expiresDate != null && tokenContext.getWssSecurityProperties().isStrictTimestampCheck()
-                && expiresDate.toInstant().isBefore(rightNow)) {
+                && expiresDate.isBefore(rightNow)) {
                 LOG.debug("Time now: {}", rightNow.toString());
                 throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED, "invalidTimestamp",
                                               new Object[] {"The security semantics of the message have expired"});
             }
 
-            if (createdDate != null && !DateUtil.verifyCreated(createdDate.toInstant(), ttl, futureTTL)) {
+            if (createdDate != null && !DateUtil.verifyCreated(createdDate, ttl, futureTTL, rightNow)) {
                 LOG.debug("Time now: {}", rightNow.toString());
                 throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED, "invalidTimestamp",
                                               new Object[] {"The security semantics of the message have expired"});
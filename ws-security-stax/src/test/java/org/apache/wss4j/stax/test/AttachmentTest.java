@@ -20,6 +20,7 @@ package org.apache.wss4j.stax.test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
@@ -1042,6 +1043,139 @@ public class AttachmentTest extends AbstractTestBase {
         assertEquals(6, attHeaders.size());
     }
 
+    @Test
+    public void testXMLAttachmentCmplSignCmplEncSinglePass() throws Exception {
+
+        final String attachmentId = UUID.randomUUID().toString();
+        final Attachment[] attachment = new Attachment[1];
+        attachment[0] = new Attachment();
+        attachment[0].setMimeType("text/xml");
+        attachment[0].addHeaders(getHeaders(attachmentId));
+        attachment[0].setId(attachmentId);
+        // The attachment stream can only be read once
+        final byte[] attachmentContent = SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8);
+        final int[] bytesRead = new int[1];
+        attachment[0].setSourceStream(new FilterInputStream(new ByteArrayInputStream(attachmentContent)) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read != -1) {
+                    bytesRead[0]++;
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bytesRead[0] += read;
+                }
+                return read;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        });
+        final int[] resultCallbacks = new int[1];
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            actions.add(WSSConstants.ENCRYPTION);
+            securityProperties.setActions(actions);
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+            securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Element));
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+            securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setEncryptionUser("receiver");
+            securityProperties.addEncryptionPart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Content));
+            securityProperties.addEncryptionPart(new SecurePart("cid:Attachments", SecurePart.Modifier.Element));
+            securityProperties.setSinglePassAttachmentEncryption(true);
+
+            securityProperties.setAttachmentCallbackHandler(new CallbackHandler() {
+                @Override
+                public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                    if (callbacks[0] instanceof AttachmentRequestCallback) {
+                        AttachmentRequestCallback attachmentRequestCallback = (AttachmentRequestCallback) callbacks[0];
+                        List<Attachment> attachments = new ArrayList<>();
+                        attachments.add(attachment[0]);
+                        attachmentRequestCallback.setAttachments(attachments);
+                    } else {
+                        AttachmentResultCallback attachmentResultCallback = (AttachmentResultCallback) callbacks[0];
+                        attachment[0] = attachmentResultCallback.getAttachment();
+                        resultCallbacks[0]++;
+                    }
+                }
+            });
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+
+            Document securedDoc = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+
+            NodeList securityHeaderElement = securedDoc.getElementsByTagNameNS(WSConstants.WSSE_NS, "Security");
+            assertEquals(1, securityHeaderElement.getLength());
+            NodeList childs = securityHeaderElement.item(0).getChildNodes();
+            assertEquals(3, childs.getLength());
+            assertEquals(childs.item(0).getLocalName(), "EncryptedKey");
+            assertEquals(childs.item(1).getLocalName(), "EncryptedData");
+            assertEquals(childs.item(2).getLocalName(), "Signature");
+
+            assertEquals(1, attachment[0].getHeaders().size());
+            assertEquals(attachmentContent.length, bytesRead[0]);
+            assertEquals(1, resultCallbacks[0]);
+            assertEquals("application/octet-stream", attachment[0].getMimeType());
+        }
+
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+            securityProperties.setAttachmentCallbackHandler(new CallbackHandler() {
+                @Override
+                public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+                    if (callbacks[0] instanceof AttachmentRequestCallback) {
+                        AttachmentRequestCallback attachmentRequestCallback = (AttachmentRequestCallback)callbacks[0];
+
+                        if (!attachment[0].getId().equals(attachmentRequestCallback.getAttachmentId())) {
+                            throw new RuntimeException("wrong attachment requested");
+                        }
+
+                        List<Attachment> attachments = new ArrayList<>();
+                        attachments.add(attachment[0]);
+                        attachmentRequestCallback.setAttachments(attachments);
+                    } else {
+                        AttachmentResultCallback attachmentResultCallback = (AttachmentResultCallback)callbacks[0];
+                        attachment[0] = attachmentResultCallback.getAttachment();
+                    }
+                }
+            });
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+        }
+
+        byte[] attachmentBytes = readInputStream(attachment[0].getSourceStream());
+        assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("text/xml", attachment[0].getMimeType());
+
+        Map<String, String> attHeaders = attachment[0].getHeaders();
+        assertEquals(6, attHeaders.size());
+    }
+
     @Test
     public void testInvalidXMLAttachmentCmplSignCmplEnc() throws Exception {
 
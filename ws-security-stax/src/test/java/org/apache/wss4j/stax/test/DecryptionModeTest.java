@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.wss4j.common.metrics.JMXSecurityMetrics;
+import org.apache.wss4j.common.metrics.SecurityMetrics;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the CALLING_THREAD decryption mode with the default DECRYPTION_THREAD mode.
+ */
+public class DecryptionModeTest extends AbstractTestBase {
+
+    private static final int ITEMS = 500;
+
+    @Test
+    public void testAES128CBC() throws Exception {
+        compareModes(WSSConstants.NS_XENC_AES128, false);
+    }
+
+    @Test
+    public void testAES256GCM() throws Exception {
+        compareModes(WSSConstants.NS_XENC11_AES256_GCM, false);
+    }
+
+    @Test
+    public void testEncryptedHeader() throws Exception {
+        compareModes(WSSConstants.NS_XENC_AES256, true);
+    }
+
+    @Test
+    public void testTamperedCipherValue() throws Exception {
+        for (String algorithm : new String[]{WSSConstants.NS_XENC_AES128, WSSConstants.NS_XENC11_AES256_GCM}) {
+            String encrypted = new String(encrypt(algorithm, false), StandardCharsets.UTF_8);
+            int index = encrypted.lastIndexOf("</xenc:CipherValue>") - 30;
+            char replacement = encrypted.charAt(index) == 'A' ? 'B' : 'A';
+            byte[] tampered =
+                (encrypted.substring(0, index) + replacement + encrypted.substring(index + 1)).getBytes(StandardCharsets.UTF_8);
+
+            for (WSSConstants.DecryptionMode decryptionMode : WSSConstants.DecryptionMode.values()) {
+                assertThrows(Exception.class, () -> decrypt(tampered, decryptionMode));
+            }
+        }
+    }
+
+    @Test
+    public void testDecryptionMetrics() throws Exception {
+        byte[] encrypted = encrypt(WSSConstants.NS_XENC_AES128, true);
+        for (WSSConstants.DecryptionMode decryptionMode : WSSConstants.DecryptionMode.values()) {
+            JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+            decrypt(encrypted, decryptionMode, securityMetrics);
+            // the body content and the header element
+            assertEquals(Long.valueOf(2L), securityMetrics.getCryptoOperationCounts().get("DECRYPTION"));
+            if (decryptionMode == WSSConstants.DecryptionMode.CALLING_THREAD) {
+                long bytes = securityMetrics.getCryptoOperationBytes().get("DECRYPTION");
+                // IV and padded cipher blocks of the two EncryptedData elements
+                assertTrue(bytes > ITEMS * 16);
+                assertEquals(0, bytes % 16);
+            }
+        }
+    }
+
+    private void compareModes(String algorithm, boolean encryptHeader) throws Exception {
+        byte[] encrypted = encrypt(algorithm, encryptHeader);
+
+        Document threadDocument = decrypt(encrypted, WSSConstants.DecryptionMode.DECRYPTION_THREAD);
+        Document callingDocument = decrypt(encrypted, WSSConstants.DecryptionMode.CALLING_THREAD);
+        assertEquals(toString(threadDocument), toString(callingDocument));
+
+        NodeList nodeList = callingDocument.getElementsByTagNameNS("urn:test", "item");
+        assertEquals(ITEMS, nodeList.getLength());
+        nodeList = callingDocument.getElementsByTagNameNS("urn:test", "header");
+        assertEquals(1, nodeList.getLength());
+        nodeList = callingDocument.getElementsByTagNameNS(
+            WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+        assertEquals(0, nodeList.getLength());
+    }
+
+    private byte[] encrypt(String algorithm, boolean encryptHeader) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.ENCRYPTION);
+        securityProperties.setActions(actions);
+        securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        securityProperties.setEncryptionUser("receiver");
+        securityProperties.setEncryptionSymAlgorithm(algorithm);
+        securityProperties.addEncryptionPart(new SecurePart(WSSConstants.TAG_SOAP11_BODY, SecurePart.Modifier.Content));
+        if (encryptHeader) {
+            securityProperties.addEncryptionPart(new SecurePart(new QName("urn:test", "header"), SecurePart.Modifier.Element));
+        }
+        return doOutboundSecurity(securityProperties, new ByteArrayInputStream(createMessage())).toByteArray();
+    }
+
+    private Document decrypt(byte[] message, WSSConstants.DecryptionMode decryptionMode) throws Exception {
+        return decrypt(message, decryptionMode, SecurityMetrics.NONE);
+    }
+
+    private Document decrypt(byte[] message, WSSConstants.DecryptionMode decryptionMode, SecurityMetrics securityMetrics)
+            throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.setSecurityMetrics(securityMetrics);
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        securityProperties.setDecryptionMode(decryptionMode);
+        return doInboundSecurity(securityProperties, new ByteArrayInputStream(message));
+    }
+
+    private static byte[] createMessage() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">");
+        stringBuilder.append("<soap:Header><t:header xmlns:t=\"urn:test\">header</t:header></soap:Header>");
+        stringBuilder.append("<soap:Body><t:echo xmlns:t=\"urn:test\">");
+        for (int i = 0; i < ITEMS; i++) {
+            stringBuilder.append("<t:item id=\"").append(i).append("\">value &amp; ").append(i).append("</t:item>");
+        }
+        stringBuilder.append("</t:echo></soap:Body></soap:Envelope>");
+        return stringBuilder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String toString(Document document) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(stringWriter));
+        return stringWriter.toString();
+    }
+}
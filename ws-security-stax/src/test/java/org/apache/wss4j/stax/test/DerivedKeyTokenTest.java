@@ -34,6 +34,9 @@ import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.EncryptedKeySession;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache.SessionKey;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -65,6 +68,7 @@ import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.w3c.dom.Attr;
@@ -72,6 +76,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DerivedKeyTokenTest extends AbstractTestBase {
 
@@ -1135,4 +1142,77 @@ public class DerivedKeyTokenTest extends AbstractTestBase {
             assertEquals(nodeList.getLength(), 0);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEncryptionDecryptionEncryptedKeySessionOutbound() throws Exception {
+        try (EncryptedKeySessionCache cache = new EncryptedKeySessionCache(60L, 10)) {
+            WSSSecurityProperties securityProperties = createEncryptedKeySessionProperties(cache);
+
+            // The first message transports the key in an EncryptedKey
+            byte[] message = sendEncryptedKeySessionMessage(securityProperties);
+            String outputString = new String(message, StandardCharsets.UTF_8);
+            assertTrue(outputString.contains(":EncryptedKey "));
+            assertEquals(1, cache.size());
+
+            Document document = doInboundSecurity(message, new CallbackHandlerImpl());
+            NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+            assertEquals(nodeList.getLength(), 0);
+
+            EncryptedKeySession session = cache.getSession(
+                new SessionKey("receiver", WSSConstants.NS_XENC_AES256, WSSConstants.NS_XENC_RSAOAEPMGF1P,
+                               securityProperties.getEncryptionCrypto()));
+            assertNotNull(session);
+
+            // The second message references the key via an EncryptedKeySHA1 KeyIdentifier
+            message = sendEncryptedKeySessionMessage(securityProperties);
+            outputString = new String(message, StandardCharsets.UTF_8);
+            assertFalse(outputString.contains(":EncryptedKey "));
+            assertTrue(outputString.contains(SecurityTokenReference.ENC_KEY_SHA1_URI));
+            assertTrue(outputString.contains(session.getEncryptedKeySHA1()));
+
+            document = doInboundSecurity(message, new CallbackHandlerImpl(session.getSecret()));
+            nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+            assertEquals(nodeList.getLength(), 0);
+
+            // The key is not reused with another symmetric algorithm
+            securityProperties.setEncryptionSymAlgorithm(WSSConstants.NS_XENC_AES128);
+            message = sendEncryptedKeySessionMessage(securityProperties);
+            outputString = new String(message, StandardCharsets.UTF_8);
+            assertTrue(outputString.contains(":EncryptedKey "));
+            assertFalse(outputString.contains(session.getEncryptedKeySHA1()));
+            assertEquals(2, cache.size());
+        }
+    }
+
+    private WSSSecurityProperties createEncryptedKeySessionProperties(EncryptedKeySessionCache cache) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.ENCRYPTION_WITH_DERIVED_KEY);
+        securityProperties.setActions(actions);
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        securityProperties.setEncryptionUser("receiver");
+        securityProperties.setEncryptionKeyIdentifier(WSSecurityTokenConstants.KEYIDENTIFIER_THUMBPRINT_IDENTIFIER);
+        securityProperties.setEncryptedKeySessionCache(cache);
+        return securityProperties;
+    }
+
+    private byte[] sendEncryptedKeySessionMessage(WSSSecurityProperties securityProperties) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+        XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        return baos.toByteArray();
+    }
+
+    private Document doInboundSecurity(byte[] message, CallbackHandlerImpl callbackHandler) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(callbackHandler);
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+        XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message)));
+        return StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+    }
+}
@@ -51,9 +51,11 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.metrics.JMXSecurityMetrics;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
@@ -64,6 +66,7 @@ import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityEvent.EncryptedPartSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.wss4j.stax.securityEvent.X509TokenSecurityEvent;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.setup.ConfigurationConverter;
 import org.apache.wss4j.stax.setup.InboundWSSec;
@@ -79,6 +82,7 @@ import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurit
 import org.apache.xml.security.stax.securityEvent.EncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.xml.security.utils.XMLUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.jupiter.api.Test;
@@ -239,6 +243,64 @@ public class EncDecryptionTest extends AbstractTestBase {
         }
     }
 
+    /**
+     * Test that a repeated EncryptedKey is served from the EncryptedKeyCache, and that another
+     * EncryptedKey for the same recipient is unwrapped
+     */
+    @Test
+    public void testEncryptedKeyCacheInbound() throws Exception {
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            Document securedDocument =
+                doOutboundSecurityWithWSS4J(sourceDocument, WSHandlerConstants.ENCRYPTION, new Properties());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+            messages.add(baos.toByteArray());
+        }
+
+        EncryptedKeyCache encryptedKeyCache = new EncryptedKeyCache();
+        JMXSecurityMetrics securityMetrics = new JMXSecurityMetrics();
+        // the first message twice (miss, hit), then the second one (miss)
+        byte[][] inboundMessages = new byte[][] {messages.get(0), messages.get(0), messages.get(1)};
+        for (int i = 0; i < inboundMessages.length; i++) {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+            securityProperties.setEncryptedKeyCache(encryptedKeyCache);
+            securityProperties.setSecurityMetrics(securityMetrics);
+
+            WSSecurityEventConstants.Event[] expectedSecurityEvents = new WSSecurityEventConstants.Event[]{
+                    WSSecurityEventConstants.AlgorithmSuite,
+                    WSSecurityEventConstants.AlgorithmSuite,
+                    WSSecurityEventConstants.X509Token,
+                    WSSecurityEventConstants.ENCRYPTED_PART,
+                    WSSecurityEventConstants.OPERATION,
+            };
+            final TestSecurityEventListener securityEventListener = new TestSecurityEventListener(expectedSecurityEvents);
+
+            Document document = doInboundSecurity(securityProperties,
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(inboundMessages[i])), securityEventListener);
+
+            NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_EncryptedData.getNamespaceURI(), WSSConstants.TAG_xenc_EncryptedData.getLocalPart());
+            assertEquals(nodeList.getLength(), 0);
+
+            securityEventListener.compare();
+
+            X509TokenSecurityEvent x509TokenSecurityEvent = securityEventListener.getSecurityEvent(WSSecurityEventConstants.X509Token);
+            EncryptedPartSecurityEvent encryptedPartSecurityEvent = securityEventListener.getSecurityEvent(WSSecurityEventConstants.ENCRYPTED_PART);
+            SecurityToken encryptionToken = encryptedPartSecurityEvent.getSecurityToken();
+            assertEquals(WSSecurityTokenConstants.EncryptedKeyToken, encryptionToken.getTokenType());
+            assertEquals(x509TokenSecurityEvent.getSecurityToken().getId(), encryptionToken.getKeyWrappingToken().getId());
+        }
+
+        assertEquals(2, encryptedKeyCache.size());
+        assertEquals(Long.valueOf(1L), securityMetrics.getCacheHits().get("ENCRYPTED_KEY"));
+        assertEquals(Long.valueOf(2L), securityMetrics.getCacheMisses().get("ENCRYPTED_KEY"));
+    }
+
     @Test
     public void testEncDecryptionCryptoPropertiesOutbound() throws Exception {
 
@@ -1830,6 +1892,47 @@ public class EncDecryptionTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testEncDecryptionLargeBodyOutbound() throws Exception {
+
+        //the body is larger than the buffers of the encryption processor
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            body.append("<ns1:item xmlns:ns1=\"http://items\" id=\"").append(i).append("\">Value ").append(i).append("</ns1:item>");
+        }
+        String sourceDocument =
+            "<env:Envelope xmlns:env=\"http://schemas.xmlsoap.org/soap/envelope/\"><env:Header/><env:Body>"
+                + body + "</env:Body></env:Envelope>";
+
+        ByteArrayOutputStream baos;
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.ENCRYPTION);
+            securityProperties.setActions(actions);
+            securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setEncryptionUser("receiver");
+
+            baos = doOutboundSecurity(securityProperties, new ByteArrayInputStream(sourceDocument.getBytes(StandardCharsets.UTF_8)));
+
+            Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+            NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_xenc_CipherValue.getNamespaceURI(), WSSConstants.TAG_xenc_CipherValue.getLocalPart());
+            assertEquals(nodeList.getLength(), 2);
+            assertEquals(nodeList.item(1).getChildNodes().getLength(), 1);
+            nodeList = document.getElementsByTagNameNS("http://items", "item");
+            assertEquals(nodeList.getLength(), 0);
+        }
+
+        //done encryption; now test decryption:
+        {
+            String action = WSHandlerConstants.ENCRYPTION;
+            Document document = doInboundSecurityWithWSS4J(documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray())), action);
+            NodeList nodeList = document.getElementsByTagNameNS("http://items", "item");
+            assertEquals(nodeList.getLength(), 20000);
+            assertEquals(nodeList.item(19999).getTextContent(), "Value 19999");
+        }
+    }
+
     /**
      * rsa-oaep-mgf1p, Digest:SHA256, MGF:SHA1, PSource: None
      */
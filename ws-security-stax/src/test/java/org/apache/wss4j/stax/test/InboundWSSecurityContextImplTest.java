@@ -728,6 +728,115 @@ public class InboundWSSecurityContextImplTest {
         return securityEventList;
     }
 
+    @Test
+    public void testTokenIdentificationManySupportingTokens() throws Exception {
+        final int usernameTokenCount = 200;
+
+        final List<SecurityEvent> securityEventList = new LinkedList<>();
+        InboundWSSecurityContextImpl inboundWSSecurityContext = new InboundWSSecurityContextImpl();
+        inboundWSSecurityContext.addSecurityEventListener(new SecurityEventListener() {
+            @Override
+            public void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+                securityEventList.add(securityEvent);
+            }
+        });
+
+        List<XMLSecurityConstants.ContentType> protectionOrder = new LinkedList<>();
+        protectionOrder.add(XMLSecurityConstants.ContentType.SIGNATURE);
+        protectionOrder.add(XMLSecurityConstants.ContentType.ENCRYPTION);
+
+        List<QName> bstPath = new LinkedList<>();
+        bstPath.addAll(WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH);
+        bstPath.add(WSSConstants.TAG_WSSE_BINARY_SECURITY_TOKEN);
+
+        List<QName> timestampPath = new LinkedList<>();
+        timestampPath.addAll(WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH);
+        timestampPath.add(WSSConstants.TAG_WSU_TIMESTAMP);
+
+        List<QName> usernameTokenPath = new LinkedList<>();
+        usernameTokenPath.addAll(WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH);
+        usernameTokenPath.add(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
+
+        X509SecurityTokenImpl recipientToken = getX509Token(WSSecurityTokenConstants.X509V3Token);
+        recipientToken.setElementPath(bstPath);
+        recipientToken.addTokenUsage(WSSecurityTokenConstants.TokenUsage_Encryption);
+        X509TokenSecurityEvent recipientX509TokenSecurityEvent = new X509TokenSecurityEvent();
+        recipientX509TokenSecurityEvent.setSecurityToken(recipientToken);
+        inboundWSSecurityContext.registerSecurityEvent(recipientX509TokenSecurityEvent);
+
+        X509SecurityTokenImpl initiatorToken = getX509Token(WSSecurityTokenConstants.X509V3Token);
+        initiatorToken.setElementPath(bstPath);
+        initiatorToken.setXMLSecEvent(XMLSecEventFactory.createXmlSecStartElement(WSSConstants.TAG_WSSE_BINARY_SECURITY_TOKEN, null, null));
+        initiatorToken.addTokenUsage(WSSecurityTokenConstants.TokenUsage_Signature);
+        X509TokenSecurityEvent initiatorX509TokenSecurityEvent = new X509TokenSecurityEvent();
+        initiatorX509TokenSecurityEvent.setSecurityToken(initiatorToken);
+        inboundWSSecurityContext.registerSecurityEvent(initiatorX509TokenSecurityEvent);
+
+        String created = DateUtil.getDateTimeFormatter(true).format(ZonedDateTime.now(ZoneOffset.UTC));
+        for (int i = 0; i < usernameTokenCount; i++) {
+            XMLSecEvent usernameTokenXmlEvent = XMLSecEventFactory.createXmlSecStartElement(WSSConstants.TAG_WSSE_USERNAME_TOKEN, null, null);
+
+            UsernameSecurityTokenImpl usernameSecurityToken = new UsernameSecurityTokenImpl(
+                    WSSConstants.UsernameTokenPasswordType.PASSWORD_TEXT,
+                    "username" + i, "password", created, null, new byte[10], 10L,
+                    null, IDGenerator.generateID(null), WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE);
+            usernameSecurityToken.setElementPath(usernameTokenPath);
+            usernameSecurityToken.setXMLSecEvent(usernameTokenXmlEvent);
+            UsernameTokenSecurityEvent usernameTokenSecurityEvent = new UsernameTokenSecurityEvent();
+            usernameTokenSecurityEvent.setSecurityToken(usernameSecurityToken);
+            inboundWSSecurityContext.registerSecurityEvent(usernameTokenSecurityEvent);
+
+            SignedElementSecurityEvent signedElementSecurityEvent = new SignedElementSecurityEvent(initiatorToken, true, protectionOrder);
+            signedElementSecurityEvent.setElementPath(usernameTokenPath);
+            signedElementSecurityEvent.setXmlSecEvent(usernameTokenXmlEvent);
+            inboundWSSecurityContext.registerSecurityEvent(signedElementSecurityEvent);
+
+            if (i % 2 == 1) {
+                EncryptedElementSecurityEvent encryptedElementSecurityEvent = new EncryptedElementSecurityEvent(recipientToken, true, protectionOrder);
+                encryptedElementSecurityEvent.setElementPath(usernameTokenPath);
+                encryptedElementSecurityEvent.setXmlSecEvent(usernameTokenXmlEvent);
+                inboundWSSecurityContext.registerSecurityEvent(encryptedElementSecurityEvent);
+            }
+        }
+
+        SignedElementSecurityEvent signedTimestampElementSecurityEvent = new SignedElementSecurityEvent(initiatorToken, true, protectionOrder);
+        signedTimestampElementSecurityEvent.setElementPath(timestampPath);
+        inboundWSSecurityContext.registerSecurityEvent(signedTimestampElementSecurityEvent);
+
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        inboundWSSecurityContext.registerSecurityEvent(operationSecurityEvent);
+
+        assertEquals(2 + usernameTokenCount * 2 + usernameTokenCount / 2 + 2, securityEventList.size());
+
+        int signedSupportingTokens = 0;
+        int signedEncryptedSupportingTokens = 0;
+        int x509Tokens = 0;
+        for (SecurityEvent securityEvent : securityEventList) {
+            if (securityEvent instanceof UsernameTokenSecurityEvent) {
+                UsernameTokenSecurityEvent tokenSecurityEvent = (UsernameTokenSecurityEvent) securityEvent;
+                assertEquals(tokenSecurityEvent.getSecurityToken().getTokenUsages().size(), 1);
+                if (tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TOKENUSAGE_SIGNED_SUPPORTING_TOKENS)) {
+                    signedSupportingTokens++;
+                } else if (tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TOKENUSAGE_SIGNED_ENCRYPTED_SUPPORTING_TOKENS)) {
+                    signedEncryptedSupportingTokens++;
+                }
+            } else if (securityEvent instanceof X509TokenSecurityEvent) {
+                X509TokenSecurityEvent tokenSecurityEvent = (X509TokenSecurityEvent) securityEvent;
+                assertEquals(tokenSecurityEvent.getSecurityToken().getTokenUsages().size(), 1);
+                if (tokenSecurityEvent.getSecurityToken() == initiatorToken) {
+                    assertTrue(tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TOKENUSAGE_MAIN_SIGNATURE));
+                } else {
+                    assertTrue(tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TOKENUSAGE_MAIN_ENCRYPTION));
+                }
+                x509Tokens++;
+            }
+        }
+        assertEquals(2, x509Tokens);
+        assertEquals(usernameTokenCount / 2, signedSupportingTokens);
+        assertEquals(usernameTokenCount / 2, signedEncryptedSupportingTokens);
+    }
+
     private X509SecurityTokenImpl getX509Token(WSSecurityTokenConstants.TokenType tokenType) throws Exception {
 
         final KeyStore keyStore = KeyStore.getInstance("jks");
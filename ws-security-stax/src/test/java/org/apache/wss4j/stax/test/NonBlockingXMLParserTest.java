@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import org.apache.wss4j.stax.impl.NonBlockingXMLParser;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Conformance tests for the NonBlockingXMLParser: the events of every document are compared with the ones
+ * Woodstox reports, for every chunk size the document is fed in.
+ */
+public class NonBlockingXMLParserTest {
+
+    private static final XMLInputFactory WOODSTOX_INPUT_FACTORY = new WstxInputFactory();
+
+    static {
+        WOODSTOX_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        WOODSTOX_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        WSSec.init();
+    }
+
+    @Test
+    public void testWellFormedDocuments() throws Exception {
+        String[] documents = {
+            "<a/>",
+            "<?xml version=\"1.0\"?><a/>",
+            "<?xml version='1.0' encoding='UTF-8' standalone='yes'?>\r\n<a/>\n",
+            "\uFEFF<a>text</a>",
+            "<a xmlns='urn:a' xmlns:p=\"urn:p\" p:x='1' y = \"2\"><p:b/><c xmlns=''/></a>",
+            "<a xml:lang='en' x='&lt;&amp;&gt;&quot;&apos;&#65;&#x20AC;' y='a\tb\nc\r\nd'/>",
+            "<a>line\r\nbreak\rcarriage&#13;return</a>",
+            "<a><!-- comment - with dashes -->x<!----></a><!-- epilog -->",
+            "<a><![CDATA[<b>&amp;]]]]><![CDATA[>]]></a>",
+            "<a>]]&gt; ] ]] &#x5D;]></a>",
+            "<\u00E9l\u00E8ve \u03A9='1' _x.y-z='2' a\u00B7b='3' a\u0301='4'>\u65E5\u672C</\u00E9l\u00E8ve>",
+            "<\u65E5\u672C\u8A9E xmlns:\u00FC='urn:u'><\u00FC:\u00E4/></\u65E5\u672C\u8A9E>",
+            "<a b='\uD83D\uDE00'>\uD83D\uDE00\u00E4\u20AC</a>",
+            "<a   ><b\n/></a\t>",
+        };
+        for (String document : documents) {
+            byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+            List<String> expected = parseWithWoodstox(bytes);
+            for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+                assertEquals(expected, parse(bytes, chunkSize), document + ", chunk size " + chunkSize);
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedDocuments() throws Exception {
+        String[] documents = {
+            "",
+            "text",
+            "<a>",
+            "<a></b>",
+            "<a/><b/>",
+            "<a/>text",
+            "<a><!-- a --></a><!-- b --->",
+            "<a><!-- a --- b --></a>",
+            "<a><!-- a -- b --></a>",
+            "<a><!--->",
+            "<a>]]></a>",
+            "<a x='1' x='2'/>",
+            "<a x='1'y='2'/>",
+            "<a x=1/>",
+            "<a x='<'/>",
+            "<a x/>",
+            "<p:a/>",
+            "<a xmlns:p=''/>",
+            "<a xmlns:xmlns='urn:a'/>",
+            "<a xmlns:p='urn:p' xmlns:p='urn:p'/>",
+            "<a>&e;</a>",
+            "<a>&#0;</a>",
+            "<a>&#xD800;</a>",
+            "<a>&amp</a>",
+            "<a>\u0001</a>",
+            "<1a/>",
+            "<-a/>",
+            "<.a/>",
+            "<:a/>",
+            "<a:/>",
+            "<a:b:c/>",
+            "<\u00B7a/>",
+            "<\u0301a/>",
+            "<a\u00D7/>",
+            "<a\u2000b/>",
+            "<a \u00F7='1'/>",
+            "<a p:\u0300='1' xmlns:p='urn:p'/>",
+            "<a><![CDATA[x</a>",
+            "<?xml version='1.0' standalone='maybe'?><a/>",
+        };
+        for (String document : documents) {
+            byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+            assertThrows(XMLStreamException.class, () -> parseWithWoodstox(bytes), document);
+            for (int chunkSize = 1; chunkSize <= Math.max(1, bytes.length); chunkSize++) {
+                int size = chunkSize;
+                assertThrows(XMLStreamException.class, () -> parse(bytes, size), document + ", chunk size " + size);
+            }
+        }
+    }
+
+    /**
+     * Documents which are well-formed, but outside of the subset of XML the NonBlockingXMLParser supports
+     */
+    @Test
+    public void testUnsupportedDocuments() throws Exception {
+        String[] documents = {
+            "<?xml version='1.1'?><a/>",
+            "<?xml version='1.0' encoding='ISO-8859-1'?><a/>",
+            "<!DOCTYPE a><a/>",
+            "<a><?pi data?></a>",
+        };
+        for (String document : documents) {
+            byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+            parseWithWoodstox(bytes);
+            assertThrows(XMLStreamException.class, () -> parse(bytes, bytes.length), document);
+        }
+    }
+
+    @Test
+    public void testInvalidUTF8() throws Exception {
+        byte[][] documents = {
+            {'<', 'a', '>', (byte) 0xC3, '<', '/', 'a', '>'},
+            {'<', 'a', '>', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '<', '/', 'a', '>'},
+            {'<', 'a', '>', (byte) 0xC3},
+        };
+        for (byte[] document : documents) {
+            assertThrows(XMLStreamException.class, () -> parseWithWoodstox(document));
+            for (int chunkSize = 1; chunkSize <= document.length; chunkSize++) {
+                int size = chunkSize;
+                assertThrows(XMLStreamException.class, () -> parse(document, size));
+            }
+        }
+    }
+
+    /**
+     * Parse the document with the NonBlockingXMLParser, feeding it in chunks of the given size
+     */
+    private static List<String> parse(byte[] document, int chunkSize) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<>();
+        NonBlockingXMLParser parser = new NonBlockingXMLParser(events::add);
+        for (int offset = 0; offset < document.length; offset += chunkSize) {
+            parser.feed(ByteBuffer.wrap(document, offset, Math.min(chunkSize, document.length - offset)));
+        }
+        parser.endOfInput();
+        return describe(events);
+    }
+
+    private static List<String> parseWithWoodstox(byte[] document) throws XMLStreamException {
+        List<XMLEvent> events = new ArrayList<>();
+        XMLEventReader xmlEventReader = WOODSTOX_INPUT_FACTORY.createXMLEventReader(new ByteArrayInputStream(document));
+        while (xmlEventReader.hasNext()) {
+            events.add(xmlEventReader.nextEvent());
+        }
+        xmlEventReader.close();
+        return describe(events);
+    }
+
+    /**
+     * Describe the events in a form independent of how the parser splits the character data: adjacent
+     * character data is merged, and the whitespace outside of the root element, which Woodstox reports
+     * and the NonBlockingXMLParser skips, is left out.
+     */
+    private static List<String> describe(List<XMLEvent> events) {
+        List<String> descriptions = new ArrayList<>();
+        StringBuilder text = null;
+        int depth = 0;
+        for (XMLEvent event : events) {
+            if (event.isCharacters()) {
+                if (depth > 0) {
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(event.asCharacters().getData());
+                }
+                continue;
+            }
+            if (text != null) {
+                descriptions.add("CHARACTERS " + text);
+                text = null;
+            }
+            switch (event.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                descriptions.add(describe(event.asStartElement()));
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                depth--;
+                descriptions.add("END_ELEMENT " + event.asEndElement().getName());
+                break;
+            case XMLStreamConstants.COMMENT:
+                descriptions.add("COMMENT " + ((Comment) event).getText());
+                break;
+            default:
+                descriptions.add(Integer.toString(event.getEventType()));
+                break;
+            }
+        }
+        return descriptions;
+    }
+
+    private static String describe(StartElement startElement) {
+        TreeSet<String> namespaces = new TreeSet<>();
+        Iterator<Namespace> namespaceIterator = startElement.getNamespaces();
+        while (namespaceIterator.hasNext()) {
+            Namespace namespace = namespaceIterator.next();
+            namespaces.add(namespace.getPrefix() + "=" + namespace.getNamespaceURI());
+        }
+        TreeSet<String> attributes = new TreeSet<>();
+        Iterator<Attribute> attributeIterator = startElement.getAttributes();
+        while (attributeIterator.hasNext()) {
+            Attribute attribute = attributeIterator.next();
+            attributes.add(attribute.getName() + "=" + attribute.getValue());
+        }
+        return "START_ELEMENT " + startElement.getName() + " " + startElement.getName().getPrefix()
+            + " " + namespaces + " " + attributes;
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.impl.WSSecurityPushProcessor;
+import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the push-based inbound processing with a WSSecurityPushProcessor
+ */
+public class PushProcessingTest extends AbstractTestBase {
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    @Test
+    public void testSignatureVerification() throws Exception {
+        byte[] message = secureMessage(WSHandlerConstants.TIMESTAMP + " " + WSHandlerConstants.SIGNATURE);
+
+        WSSecurityEventConstants.Event[] expectedSecurityEvents = new WSSecurityEventConstants.Event[]{
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.X509Token,
+                WSSecurityEventConstants.SignatureValue,
+                WSSecurityEventConstants.TIMESTAMP,
+                WSSecurityEventConstants.SIGNED_PART,
+                WSSecurityEventConstants.OPERATION,
+        };
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener(expectedSecurityEvents);
+        String pushResult = processPushed(createSecurityProperties(), message, 7, securityEventListener);
+        securityEventListener.compare();
+
+        assertEquals(processPulled(createSecurityProperties(), message), pushResult);
+    }
+
+    @Test
+    public void testDecryption() throws Exception {
+        byte[] message = secureMessage(WSHandlerConstants.ENCRYPTION);
+
+        WSSecurityEventConstants.Event[] expectedSecurityEvents = new WSSecurityEventConstants.Event[]{
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.AlgorithmSuite,
+                WSSecurityEventConstants.X509Token,
+                WSSecurityEventConstants.ENCRYPTED_PART,
+                WSSecurityEventConstants.OPERATION,
+        };
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener(expectedSecurityEvents);
+        String pushResult = processPushed(createSecurityProperties(), message, 3, securityEventListener);
+        securityEventListener.compare();
+
+        assertFalse(pushResult.contains("EncryptedData"));
+        assertEquals(processPulled(createSecurityProperties(), message), pushResult);
+    }
+
+    @Test
+    public void testChunkSizes() throws Exception {
+        byte[] message = secureMessage(WSHandlerConstants.SIGNATURE + " " + WSHandlerConstants.ENCRYPTION);
+        String pullResult = processPulled(createSecurityProperties(), message);
+        for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+            assertEquals(pullResult, processPushed(createSecurityProperties(), message, chunkSize, null));
+        }
+        assertEquals(pullResult, processPushed(createSecurityProperties(), message, message.length, null));
+    }
+
+    @Test
+    public void testIncrementalProcessing() throws Exception {
+        byte[] message = secureMessage(WSHandlerConstants.SIGNATURE);
+        int bodyEnd = new String(message, StandardCharsets.UTF_8).indexOf("</env:Body>");
+        assertTrue(bodyEnd > 0);
+
+        List<XMLEvent> events = new ArrayList<>();
+        List<SecurityEvent> securityEvents = new ArrayList<>();
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(createSecurityProperties());
+        WSSecurityPushProcessor pushProcessor =
+            wsSecIn.createPushProcessor(events::add, null, Collections.singletonList(securityEvents::add));
+
+        // the security header is only processed once it is complete
+        pushProcessor.push(ByteBuffer.wrap(message, 0, 100));
+        assertTrue(events.isEmpty());
+        assertTrue(securityEvents.isEmpty());
+
+        pushProcessor.push(ByteBuffer.wrap(message, 100, bodyEnd - 100));
+        assertFalse(pushProcessor.isFinished());
+        assertTrue(events.stream().anyMatch(event -> event.isStartElement()
+            && "definitions".equals(event.asStartElement().getName().getLocalPart())));
+        assertTrue(securityEvents.stream().anyMatch(
+            event -> WSSecurityEventConstants.OPERATION.equals(event.getSecurityEventType())));
+        assertFalse(events.stream().anyMatch(event -> event.isEndElement()
+            && "Body".equals(event.asEndElement().getName().getLocalPart())));
+
+        pushProcessor.push(ByteBuffer.wrap(message, bodyEnd, message.length - bodyEnd));
+        pushProcessor.finish();
+        assertTrue(pushProcessor.isFinished());
+        assertTrue(events.get(events.size() - 1).isEndDocument());
+    }
+
+    @Test
+    public void testModifiedSignedBody() throws Exception {
+        String message = new String(secureMessage(WSHandlerConstants.SIGNATURE), StandardCharsets.UTF_8);
+        assertTrue(message.contains("comprehensive types test"));
+        byte[] modifiedMessage =
+            message.replace("comprehensive types test", "comprehensive types tests").getBytes(StandardCharsets.UTF_8);
+
+        XMLStreamException exception = assertThrows(XMLStreamException.class,
+            () -> processPushed(createSecurityProperties(), modifiedMessage, 5, null));
+        assertTrue(exception.getCause() instanceof WSSecurityException);
+        assertEquals(WSSecurityException.ErrorCode.SECURITY_ERROR,
+                     ((WSSecurityException) exception.getCause()).getErrorCode());
+    }
+
+    @Test
+    public void testMalformedMessages() throws Exception {
+        String[] messages = {
+            "<!DOCTYPE Envelope [<!ENTITY e \"e\">]>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body/></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><?pi?></soap:Body></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body a='1' a='2'/></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><p:e/></soap:Body></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>&e;</soap:Body></soap:Envelope>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body/></soap:Envelope><e/>",
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body/>",
+            "<Envelope><Body/></Envelope>",
+        };
+        for (String message : messages) {
+            assertThrows(XMLStreamException.class,
+                () -> processPushed(createSecurityProperties(), message.getBytes(StandardCharsets.UTF_8), 4, null),
+                message);
+        }
+    }
+
+    @Test
+    public void testPlainMessage() throws Exception {
+        String message = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+            + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+            + "<ns1:e xmlns:ns1=\"urn:test\" a=\"x&amp;&#x20AC;&lt;\"><!-- comment -->ä😀&gt;&#10;"
+            + "</ns1:e></soap:Body></soap:Envelope>";
+        WSSSecurityProperties securityProperties = createSecurityProperties();
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        String pullResult = processPulled(securityProperties, bytes);
+        for (int chunkSize = 1; chunkSize <= 3; chunkSize++) {
+            assertEquals(pullResult, processPushed(securityProperties, bytes, chunkSize, null));
+        }
+
+        bytes = message.replace("<!--", "<![CDATA[<cdata>]]><!--").getBytes(StandardCharsets.UTF_8);
+        assertTrue(processPushed(securityProperties, bytes, 2, null).contains("<![CDATA[<cdata>]]>"));
+    }
+
+    @Test
+    public void testLongRunOfBrackets() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append(']');
+        }
+        String message = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+            + "<ns1:e xmlns:ns1=\"urn:test\">" + text + "</ns1:e></soap:Body></soap:Envelope>";
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+
+        List<XMLEvent> events = new ArrayList<>();
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(createSecurityProperties());
+        WSSecurityPushProcessor pushProcessor = wsSecIn.createPushProcessor(events::add, null, null);
+        for (int offset = 0; offset < bytes.length; offset += 1000) {
+            pushProcessor.push(ByteBuffer.wrap(bytes, offset, Math.min(1000, bytes.length - offset)));
+        }
+        pushProcessor.finish();
+
+        StringBuilder characters = new StringBuilder();
+        int charactersEvents = 0;
+        for (XMLEvent event : events) {
+            if (event.isCharacters()) {
+                characters.append(event.asCharacters().getData());
+                charactersEvents++;
+            }
+        }
+        assertEquals(text.toString(), characters.toString());
+        // the text is split in segments, not in single characters
+        assertTrue(charactersEvents < 100, "characters events: " + charactersEvents);
+    }
+
+    @Test
+    public void testMaximumHeldPushedBytes() throws Exception {
+        byte[] message = secureMessage(WSHandlerConstants.ENCRYPTION);
+        WSSSecurityProperties securityProperties = createSecurityProperties();
+        securityProperties.setMaximumHeldPushedBytes(512);
+
+        XMLStreamException exception = assertThrows(XMLStreamException.class,
+            () -> processPushed(securityProperties, message, 64, null));
+        assertTrue(exception.getCause() instanceof WSSecurityException);
+
+        securityProperties.setMaximumHeldPushedBytes(message.length);
+        assertEquals(processPulled(createSecurityProperties(), message),
+                     processPushed(securityProperties, message, 64, null));
+    }
+
+    private byte[] secureMessage(String action) throws Exception {
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, new Properties());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        TRANSFORMER_FACTORY.newTransformer().transform(new DOMSource(securedDocument), new StreamResult(baos));
+        return baos.toByteArray();
+    }
+
+    private WSSSecurityProperties createSecurityProperties() throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadSignatureVerificationKeystore(
+            this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.loadDecryptionKeystore(
+            this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        return securityProperties;
+    }
+
+    private String processPushed(WSSSecurityProperties securityProperties, byte[] message, int chunkSize,
+                                 TestSecurityEventListener securityEventListener) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        XMLEventWriter xmlEventWriter = XML_OUTPUT_FACTORY.createXMLEventWriter(stringWriter);
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+        WSSecurityPushProcessor pushProcessor = wsSecIn.createPushProcessor(xmlEventWriter, null,
+            securityEventListener == null ? null : Collections.singletonList(securityEventListener));
+        for (int offset = 0; offset < message.length; offset += chunkSize) {
+            pushProcessor.push(ByteBuffer.wrap(message, offset, Math.min(chunkSize, message.length - offset)));
+        }
+        pushProcessor.finish();
+        xmlEventWriter.close();
+        return stringWriter.toString();
+    }
+
+    private String processPulled(WSSSecurityProperties securityProperties, byte[] message) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        XMLEventWriter xmlEventWriter = XML_OUTPUT_FACTORY.createXMLEventWriter(stringWriter);
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+        XMLStreamReader xmlStreamReader =
+            wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message)));
+        xmlEventWriter.add(xmlInputFactory.createXMLEventReader(xmlStreamReader));
+        xmlEventWriter.close();
+        return stringWriter.toString();
+    }
+}
@@ -45,19 +45,26 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 
 import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.token.X509Security;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.impl.WSSecurityStreamReader;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.wss4j.stax.securityEvent.X509TokenSecurityEvent;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.setup.ConfigurationConverter;
 import org.apache.wss4j.stax.setup.InboundWSSec;
@@ -68,6 +75,7 @@ import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
@@ -1702,4 +1710,178 @@ public class SignatureTest extends AbstractTestBase {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSignatureFastForwardInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.TIMESTAMP + " " + WSHandlerConstants.SIGNATURE;
+            Properties properties = new Properties();
+            properties.setProperty(WSHandlerConstants.SIGNATURE_PARTS,
+                    "{Element}{" + WSSConstants.NS_WSU10 + "}Timestamp;");
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //only the timestamp is signed, so the body is handed directly to the application:
+        Document[] documents = new Document[2];
+        for (int i = 0; i < documents.length; i++) {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setFastForwardAfterSecurityHeader(i == 1);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            documents[i] = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+            assertEquals(i == 1, ((WSSecurityStreamReader) xmlStreamReader).isFastForward());
+        }
+
+        Element body = getBody(documents[0]);
+        Element fastForwardedBody = getBody(documents[1]);
+        assertEquals(body.getElementsByTagName("*").getLength(), fastForwardedBody.getElementsByTagName("*").getLength());
+        assertTrue(body.isEqualNode(fastForwardedBody));
+    }
+
+    @Test
+    public void testSignatureFastForwardModifiedBodyInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.SIGNATURE;
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, new Properties());
+
+            //modify the signed body
+            Element body = getBody(securedDocument);
+            body.appendChild(securedDocument.createElementNS("http://www.example.com", "ns:modified"));
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //the body is signed, so it must still go through the signature reference verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setFastForwardAfterSecurityHeader(true);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("Exception expected");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getCause() instanceof WSSecurityException);
+            }
+        }
+    }
+
+    @Test
+    public void testSignatureFastForwardDuplicateIdInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.TIMESTAMP + " " + WSHandlerConstants.SIGNATURE;
+            Properties properties = new Properties();
+            properties.setProperty(WSHandlerConstants.SIGNATURE_PARTS,
+                    "{Element}{" + WSSConstants.NS_WSU10 + "}Timestamp;");
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            //add an element with the Id of the signed timestamp to the unsigned body
+            Element timestamp = (Element) securedDocument.getElementsByTagNameNS(WSSConstants.NS_WSU10, "Timestamp").item(0);
+            Element duplicate = securedDocument.createElementNS("http://www.example.com", "ns:duplicate");
+            duplicate.setAttributeNS(WSSConstants.NS_WSU10, "wsu:Id", timestamp.getAttributeNS(WSSConstants.NS_WSU10, "Id"));
+            getBody(securedDocument).appendChild(duplicate);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //the duplicate Id must be detected with and without fast-forwarding:
+        for (int i = 0; i < 2; i++) {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setFastForwardAfterSecurityHeader(i == 1);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("Exception expected");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getCause() instanceof WSSecurityException);
+            }
+            assertEquals(i == 1, ((WSSecurityStreamReader) xmlStreamReader).isFastForward());
+        }
+    }
+
+    @Test
+    public void testSignedSupportingBinarySecurityTokenInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+
+            Document doc = documentBuilderFactory.newDocumentBuilder().parse(sourceDocument);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+            timestamp.build();
+
+            //a BinarySecurityToken which is signed but not used for the signature
+            Crypto crypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+            CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+            cryptoType.setAlias("transmitter");
+            X509Security bst = new X509Security(doc);
+            bst.setID("X509-supporting");
+            bst.setX509Certificate(crypto.getX509Certificates(cryptoType)[0]);
+            secHeader.getSecurityHeaderElement().appendChild(bst.getElement());
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("transmitter", "default");
+            sign.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            sign.getParts().add(new WSEncryptionPart(WSConstants.TIMESTAMP_TOKEN_LN, WSConstants.WSU_NS, "Element"));
+            sign.getParts().add(new WSEncryptionPart(WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, "Content"));
+            sign.getParts().add(new WSEncryptionPart("X509-supporting"));
+            Document securedDocument = sign.build(crypto);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //the buffered security header must be replayed with the events the handlers have seen,
+        //otherwise the signed token can't be identified as such:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            TestSecurityEventListener securityEventListener = new TestSecurityEventListener(new SecurityEventConstants.Event[]{});
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+                    xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())), null, securityEventListener);
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            X509TokenSecurityEvent supportingTokenSecurityEvent = null;
+            List<X509TokenSecurityEvent> x509TokenSecurityEvents =
+                    securityEventListener.getSecurityEvents(WSSecurityEventConstants.X509Token);
+            for (X509TokenSecurityEvent x509TokenSecurityEvent : x509TokenSecurityEvents) {
+                if ("X509-supporting".equals(x509TokenSecurityEvent.getSecurityToken().getId())) {
+                    supportingTokenSecurityEvent = x509TokenSecurityEvent;
+                }
+            }
+            assertNotNull(supportingTokenSecurityEvent);
+            assertTrue(supportingTokenSecurityEvent.getSecurityToken().getTokenUsages().contains(
+                    WSSecurityTokenConstants.TOKENUSAGE_SIGNED_SUPPORTING_TOKENS));
+        }
+    }
+
+    private static Element getBody(Document document) {
+        NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.NS_SOAP11, "Body");
+        return (Element) nodeList.item(0);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.apache.xml.security.stax.ext.SecurePart;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * A stress test which secures and processes many messages concurrently on virtual threads with the
+ * streaming API, and checks that WSS4J doesn't pin the carrier threads. It is skipped on JDKs without
+ * virtual threads.
+ */
+public class VirtualThreadPinningTest extends AbstractTestBase {
+
+    private static final int MESSAGES = 1000;
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testNoPinningOnSignedEncryptedMessages() throws Exception {
+        WSSSecurityProperties outboundSecurityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.TIMESTAMP);
+        actions.add(WSSConstants.SIGNATURE);
+        actions.add(WSSConstants.ENCRYPTION);
+        outboundSecurityProperties.setActions(actions);
+        outboundSecurityProperties.loadEncryptionKeystore(
+            this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        outboundSecurityProperties.setEncryptionUser("receiver");
+        outboundSecurityProperties.loadSignatureKeyStore(
+            this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+        outboundSecurityProperties.setSignatureUser("transmitter");
+        outboundSecurityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        outboundSecurityProperties.addSignaturePart(
+            new SecurePart(new QName(WSSConstants.NS_WSU10, "Timestamp"), SecurePart.Modifier.Element));
+        outboundSecurityProperties.addSignaturePart(
+            new SecurePart(new QName(WSSConstants.NS_SOAP11, "Body"), SecurePart.Modifier.Element));
+        OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(outboundSecurityProperties);
+
+        WSSSecurityProperties inboundSecurityProperties = new WSSSecurityProperties();
+        inboundSecurityProperties.loadSignatureVerificationKeystore(
+            this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        inboundSecurityProperties.loadDecryptionKeystore(
+            this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        inboundSecurityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(inboundSecurityProperties);
+
+        assertNoPinning(MESSAGES, () -> processMessage(wsSecIn, createMessage(wsSecOut)));
+    }
+
+    /**
+     * Run the task once, so that the classes are loaded and initialized outside the recording, and then
+     * the given number of times concurrently on virtual threads. Every run must return the same number of
+     * security events as the first one, and no virtual thread may be pinned in a WSS4J frame.
+     */
+    private void assertNoPinning(int messages, Callable<Integer> task) throws Exception {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        assumeTrue(executor != null, "Virtual threads are not available");
+        int expectedResults = task.call();
+
+        Path recordingFile = tempDir.resolve("pinning.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            try {
+                List<Future<Integer>> results = new ArrayList<>(messages);
+                for (int i = 0; i < messages; i++) {
+                    results.add(executor.submit(task));
+                }
+                for (Future<Integer> result : results) {
+                    assertEquals(expectedResults, result.get(5, TimeUnit.MINUTES).intValue());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<String> pinnedStackTraces = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            if (PINNED_EVENT.equals(event.getEventType().getName()) && isPinnedByWss4j(event)) {
+                pinnedStackTraces.add(event.getStackTrace().toString());
+            }
+        }
+        assertTrue(pinnedStackTraces.isEmpty(), "Virtual threads were pinned: " + pinnedStackTraces);
+    }
+
+    private byte[] createMessage(OutboundWSSec wsSecOut) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter xmlStreamWriter =
+            wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        try (InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml")) {
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        }
+        xmlStreamWriter.close();
+        return baos.toByteArray();
+    }
+
+    private int processMessage(InboundWSSec wsSecIn, byte[] message) throws Exception {
+        List<SecurityEvent> securityEvents = new ArrayList<>();
+        XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message)), null, securityEvents::add);
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+        }
+        xmlStreamReader.close();
+        return securityEvents.size();
+    }
+
+    private static boolean isPinnedByWss4j(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return false;
+        }
+        for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+            if (frame.getMethod().getType().getName().startsWith("org.apache.wss4j.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is only available from Java 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+}
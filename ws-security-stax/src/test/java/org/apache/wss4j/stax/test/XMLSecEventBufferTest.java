@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.wss4j.stax.impl.XMLSecEventBuffer;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XMLSecEventBufferTest {
+
+    private static final String SOAP_MESSAGE =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<soap:Header>"
+        + "<wsse:Security xmlns:wsse=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd\""
+        + " xmlns:wsu=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\">"
+        + "<wsu:Timestamp wsu:Id=\"TS-1\"><wsu:Created>2023-01-01T00:00:00Z</wsu:Created>"
+        + "<wsu:Expires>2023-01-01T00:05:00Z</wsu:Expires></wsu:Timestamp>"
+        + "<wsse:BinarySecurityToken xmlns:x=\"urn:x\" EncodingType=\"base64\" wsu:Id=\"X509-1\">"
+        + "MIIBkTCB+wIJAL<![CDATA[cdata]]></wsse:BinarySecurityToken>"
+        + "<!-- comment -->"
+        + "</wsse:Security>"
+        + "</soap:Header>"
+        + "<soap:Body><ns:echo xmlns:ns=\"urn:ns\">  </ns:echo></soap:Body>"
+        + "</soap:Envelope>";
+
+    @Test
+    public void testReplayInDocumentOrder() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer buffer = new XMLSecEventBuffer();
+        for (XMLSecEvent xmlSecEvent : original) {
+            buffer.add(xmlSecEvent);
+        }
+        assertEquals(original.size(), buffer.size());
+
+        List<XMLSecEvent> replayed = new ArrayList<>();
+        while (!buffer.isEmpty()) {
+            replayed.add(buffer.pollOldest());
+        }
+        assertNull(buffer.pollOldest());
+        assertEquivalent(original, replayed);
+    }
+
+    @Test
+    public void testIterators() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer buffer = new XMLSecEventBuffer();
+        for (XMLSecEvent xmlSecEvent : original) {
+            buffer.add(xmlSecEvent);
+        }
+
+        List<XMLSecEvent> inDocumentOrder = new ArrayList<>();
+        for (XMLSecEvent xmlSecEvent : buffer) {
+            inDocumentOrder.add(xmlSecEvent);
+        }
+        assertEquivalent(original, inDocumentOrder);
+
+        assertEquals(serialize(original.get(original.size() - 1)), serialize(buffer.peekNewest()));
+        //iterating doesn't consume the buffer
+        assertEquals(original.size(), buffer.size());
+    }
+
+    @Test
+    public void testEventIdentity() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer buffer = new XMLSecEventBuffer();
+        for (XMLSecEvent xmlSecEvent : original) {
+            buffer.add(xmlSecEvent);
+        }
+
+        //every request for an event returns the same object
+        List<XMLSecEvent> iterated = new ArrayList<>();
+        for (XMLSecEvent xmlSecEvent : buffer) {
+            iterated.add(xmlSecEvent);
+        }
+        Iterator<XMLSecEvent> iterator = buffer.iterator(3);
+        for (int i = 3; i < iterated.size(); i++) {
+            assertSame(iterated.get(i), iterator.next());
+        }
+        assertSame(iterated.get(iterated.size() - 1), buffer.peekNewest());
+
+        for (int i = 0; i < iterated.size(); i++) {
+            XMLSecEvent replayed = buffer.pollOldest();
+            assertSame(iterated.get(i), replayed);
+            if (replayed.isStartElement() || replayed.isEndElement() || replayed.isCharacters()) {
+                //the parent chain is made of the replayed start-elements
+                XMLSecStartElement parent = replayed.getParentXMLSecStartElement();
+                assertTrue(parent == null || iterated.indexOf(parent) >= 0 && iterated.indexOf(parent) < i);
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorFromIndex() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer buffer = new XMLSecEventBuffer();
+        int timestampIndex = -1;
+        for (XMLSecEvent xmlSecEvent : original) {
+            buffer.add(xmlSecEvent);
+            if (xmlSecEvent.isStartElement()
+                && "Timestamp".equals(xmlSecEvent.asStartElement().getName().getLocalPart())) {
+                timestampIndex = buffer.size() - 1;
+            }
+        }
+        assertTrue(timestampIndex > 0);
+
+        Iterator<XMLSecEvent> iterator = buffer.iterator(timestampIndex);
+        XMLSecEvent first = iterator.next();
+        assertTrue(first.isStartElement());
+        XMLSecStartElement timestamp = first.asStartElement();
+        assertEquals("Timestamp", timestamp.getName().getLocalPart());
+        assertEquals(4, timestamp.getDocumentLevel());
+        assertEquals(original.get(timestampIndex).getElementPath(), timestamp.getElementPath());
+        assertEquals("TS-1", timestamp.getAttributeByName(new QName(
+            "http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd", "Id")).getValue());
+    }
+
+    @Test
+    public void testPollNewestAndAddAgain() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer buffer = new XMLSecEventBuffer();
+        XMLSecEvent newest = null;
+        for (XMLSecEvent xmlSecEvent : original) {
+            buffer.add(xmlSecEvent);
+            if (xmlSecEvent.isStartElement()
+                && "BinarySecurityToken".equals(xmlSecEvent.asStartElement().getName().getLocalPart())) {
+                newest = buffer.pollNewest();
+                assertEquals(serialize(xmlSecEvent), serialize(newest));
+                assertEquals(buffer.size(), original.indexOf(xmlSecEvent));
+                //add the materialized copy, its children still reference the original element
+                buffer.add(newest);
+            }
+        }
+        List<XMLSecEvent> replayed = new ArrayList<>();
+        while (!buffer.isEmpty()) {
+            replayed.add(buffer.pollOldest());
+        }
+        assertEquivalent(original, replayed);
+    }
+
+    @Test
+    public void testExternalParent() throws Exception {
+        List<XMLSecEvent> original = parse(SOAP_MESSAGE);
+        XMLSecEventBuffer first = null;
+        XMLSecEventBuffer second = null;
+        List<XMLSecEvent> headerEvents = new ArrayList<>();
+        for (XMLSecEvent xmlSecEvent : original) {
+            if (xmlSecEvent.getDocumentLevel() < 4) {
+                continue;
+            }
+            if (first == null) {
+                first = new XMLSecEventBuffer();
+            }
+            if (xmlSecEvent.isStartElement() && xmlSecEvent.getDocumentLevel() == 4
+                && "BinarySecurityToken".equals(xmlSecEvent.asStartElement().getName().getLocalPart())) {
+                second = new XMLSecEventBuffer(first);
+            }
+            (second != null ? second : first).add(xmlSecEvent);
+            headerEvents.add(xmlSecEvent);
+        }
+        List<XMLSecEvent> replayed = new ArrayList<>();
+        while (!first.isEmpty()) {
+            replayed.add(first.pollOldest());
+        }
+        while (!second.isEmpty()) {
+            replayed.add(second.pollOldest());
+        }
+        assertEquivalent(headerEvents, replayed);
+        assertSame(headerEvents.get(0).getParentXMLSecStartElement(), replayed.get(0).getParentXMLSecStartElement());
+    }
+
+    private static void assertEquivalent(List<XMLSecEvent> expected, List<XMLSecEvent> actual) throws Exception {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            XMLSecEvent expectedEvent = expected.get(i);
+            XMLSecEvent actualEvent = actual.get(i);
+            assertEquals(expectedEvent.getEventType(), actualEvent.getEventType());
+            assertEquals(expectedEvent.getDocumentLevel(), actualEvent.getDocumentLevel());
+            assertEquals(expectedEvent.getElementPath(), actualEvent.getElementPath());
+            assertEquals(serialize(expectedEvent), serialize(actualEvent));
+            if (expectedEvent.isStartElement()) {
+                List<XMLSecNamespace> expectedNamespaces = new ArrayList<>();
+                expectedEvent.asStartElement().getNamespacesFromCurrentScope(expectedNamespaces);
+                List<XMLSecNamespace> actualNamespaces = new ArrayList<>();
+                actualEvent.asStartElement().getNamespacesFromCurrentScope(actualNamespaces);
+                assertEquals(expectedNamespaces, actualNamespaces);
+            }
+            if (expectedEvent.isCharacters()) {
+                assertEquals(expectedEvent.asCharacters().isWhiteSpace(), actualEvent.asCharacters().isWhiteSpace());
+                assertEquals(expectedEvent.asCharacters().isCData(), actualEvent.asCharacters().isCData());
+            }
+        }
+    }
+
+    private static String serialize(XMLSecEvent xmlSecEvent) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        xmlSecEvent.writeAsEncodedUnicode(stringWriter);
+        return stringWriter.toString();
+    }
+
+    private static List<XMLSecEvent> parse(String xml) throws Exception {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+        List<XMLSecEvent> xmlSecEvents = new ArrayList<>();
+        XMLSecStartElement parent = null;
+        while (true) {
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parent);
+            xmlSecEvents.add(xmlSecEvent);
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    parent = xmlSecEvent.asStartElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    parent = parent.getParentXMLSecStartElement();
+                    break;
+                default:
+                    break;
+            }
+            if (!xmlStreamReader.hasNext()) {
+                break;
+            }
+            xmlStreamReader.next();
+        }
+        return xmlSecEvents;
+    }
+}
@@ -18,19 +18,48 @@
  */
 package org.apache.wss4j.web;
 
+import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
 
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSWarmUp;
 
 /**
  * ServletContextListener that cleans up WSS4J security providers at context
  * destruction.
+ *
+ * It can also warm up WSS4J at context initialization (see WSSWarmUp), so that the first
+ * requests after a deployment do not pay for the initialization. The warm-up is enabled with the
+ * "org.apache.wss4j.warmUp" context parameter, and configured with the following optional
+ * context parameters:
+ * <ul>
+ * <li>"org.apache.wss4j.warmUp.cryptoProperties": a comma separated list of crypto properties
+ * files to load. The loaded Crypto instances are stored in the "org.apache.wss4j.warmUp.cryptos"
+ * context attribute, as a Map keyed by the properties file.</li>
+ * <li>"org.apache.wss4j.warmUp.roundTrips": the number of synthetic round trips to run</li>
+ * <li>"org.apache.wss4j.warmUp.initSaml": whether to initialize OpenSAML, true by default</li>
+ * <li>"org.apache.wss4j.warmUp.threads": the maximum number of threads to use</li>
+ * <li>"org.apache.wss4j.warmUp.failOnError": whether a failed warm-up fails the deployment,
+ * false by default</li>
+ * </ul>
  */
 @WebListener
 public class WssServletContextListener implements ServletContextListener {
 
+    public static final String WARM_UP = "org.apache.wss4j.warmUp";
+    public static final String WARM_UP_CRYPTO_PROPERTIES = WARM_UP + ".cryptoProperties";
+    public static final String WARM_UP_ROUND_TRIPS = WARM_UP + ".roundTrips";
+    public static final String WARM_UP_INIT_SAML = WARM_UP + ".initSaml";
+    public static final String WARM_UP_THREADS = WARM_UP + ".threads";
+    public static final String WARM_UP_FAIL_ON_ERROR = WARM_UP + ".failOnError";
+    public static final String WARM_UP_CRYPTOS = WARM_UP + ".cryptos";
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WssServletContextListener.class);
+
     @Override
     public void contextDestroyed(ServletContextEvent servletContextEvent) {
         WSSConfig.cleanUp();
@@ -38,6 +67,43 @@ public class WssServletContextListener implements ServletContextListener {
 
     @Override
     public void contextInitialized(ServletContextEvent servletContextEvent) {
+        ServletContext servletContext = servletContextEvent.getServletContext();
+        if (!Boolean.parseBoolean(servletContext.getInitParameter(WARM_UP))) {
+            return;
+        }
+
+        WSSWarmUp warmUp = new WSSWarmUp();
+        warmUp.setClassLoader(servletContext.getClassLoader());
+        String cryptoProperties = servletContext.getInitParameter(WARM_UP_CRYPTO_PROPERTIES);
+        if (cryptoProperties != null) {
+            for (String cryptoPropertiesFile : cryptoProperties.split(",")) {
+                if (!cryptoPropertiesFile.trim().isEmpty()) {
+                    warmUp.addCryptoPropertiesFile(cryptoPropertiesFile.trim());
+                }
+            }
+        }
+        String roundTrips = servletContext.getInitParameter(WARM_UP_ROUND_TRIPS);
+        if (roundTrips != null) {
+            warmUp.setRoundTrips(Integer.parseInt(roundTrips.trim()));
+        }
+        String initSaml = servletContext.getInitParameter(WARM_UP_INIT_SAML);
+        if (initSaml != null) {
+            warmUp.setInitSaml(Boolean.parseBoolean(initSaml.trim()));
+        }
+        String threads = servletContext.getInitParameter(WARM_UP_THREADS);
+        if (threads != null) {
+            warmUp.setThreads(Integer.parseInt(threads.trim()));
+        }
+
+        try {
+            warmUp.run();
+        } catch (WSSecurityException ex) {
+            if (Boolean.parseBoolean(servletContext.getInitParameter(WARM_UP_FAIL_ON_ERROR))) {
+                throw new IllegalStateException("The WSS4J warm-up failed", ex);
+            }
+            LOG.warn("The WSS4J warm-up failed: {}", ex.getMessage(), ex);
+        }
+        servletContext.setAttribute(WARM_UP_CRYPTOS, warmUp.getCryptos());
     }
 
 }